@@ -3,23 +3,28 @@ package tech.heartin.books.serverlesscookbook;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.BufferedReader;
 
 import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 
-import org.json.simple.JSONObject;
-import org.json.simple.parser.ParseException;
-import org.json.simple.parser.JSONParser;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 
 /**
  *  Proxy Stream Handler.
+ *  The proxy event is read with a streaming parser that only extracts the fields used for the
+ *  greeting and skips everything else, and the response is generated straight to the output stream.
  */
 public class ProxyStreamHandlerLambda implements RequestStreamHandler {
 
+    // Thread safe and reused across invocations; parsers and generators recycle its buffers.
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     /**
      * handleRequest implementation.
      * @param inputStream - Input stream from API Gateway.
@@ -35,59 +40,39 @@ public class ProxyStreamHandlerLambda implements RequestStreamHandler {
         context.getLogger().log("Inside Proxy Stream Handler.");
 
         final String greeting = generateGreetingFromInputStream(inputStream);
-        final JSONObject responseJson = generateResponseJson(greeting);
-
-        logger.log(responseJson.toJSONString());
+        logger.log(greeting);
 
-        OutputStreamWriter writer = new OutputStreamWriter(outputStream, "UTF-8");
-        writer.write(responseJson.toJSONString());
-        writer.close();
+        writeResponse(greeting, outputStream);
     }
 
     private String generateGreetingFromInputStream(final InputStream inputStream) {
 
-        final JSONParser parser = new JSONParser();
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-
         String name = "User";
         String application = "";
         String time = "Day";
         String userAgent = "";
 
-        try {
-            final JSONObject event = (JSONObject) parser.parse(reader);
-
-            if (event.get("pathParameters") != null) {
-                JSONObject pathParams = (JSONObject) event.get("pathParameters");
-                if (pathParams.get("proxy") != null) {
-                    application = (String) pathParams.get("proxy");
-                }
-            }
-
-            if (event.get("queryStringParameters") != null) {
-                JSONObject queryParams = (JSONObject) event.get("queryStringParameters");
-                if (queryParams.get("name") != null) {
-                    name = (String) queryParams.get("name");
-                }
-            }
-
-            if (event.get("body") != null) {
-                JSONObject body = (JSONObject) parser.parse((String) event.get("body"));
-                if (body.get("time") != null) {
-                    time = (String) body.get("time");
-                }
-            }
-
-            if (event.get("headers") != null) {
-                JSONObject headers = (JSONObject) event.get("headers");
-                if (headers.get("User-Agent") != null) {
-                    userAgent = (String) headers.get("User-Agent");
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String field = parser.currentName();
+                    parser.nextToken();
+
+                    if ("pathParameters".equals(field)) {
+                        application = readField(parser, "proxy", application);
+                    } else if ("queryStringParameters".equals(field)) {
+                        name = readField(parser, "name", name);
+                    } else if ("body".equals(field) && parser.currentToken() == JsonToken.VALUE_STRING) {
+                        time = readBodyTime(parser, time);
+                    } else if ("headers".equals(field)) {
+                        userAgent = readField(parser, "User-Agent", userAgent);
+                    } else {
+                        parser.skipChildren();
+                    }
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
-        } catch (ParseException e) {
-            e.printStackTrace();
         }
 
         String greeting = "Good " + time + ", " + name + ". ";
@@ -99,22 +84,61 @@ public class ProxyStreamHandlerLambda implements RequestStreamHandler {
         return greeting;
     }
 
-    private JSONObject generateResponseJson(final String greeting) {
-
-        JSONObject responseBody = new JSONObject();
-        responseBody.put("message", greeting);
+    /**
+     * Read one string field of the object at the current token, skipping all other fields.
+     */
+    private String readField(final JsonParser parser, final String fieldName, final String defaultValue)
+            throws IOException {
 
-        JSONObject headers = new JSONObject();
-        //Not required, shown to demo the possibility.
-        headers.put("Content-Type", "application/json");
+        String value = defaultValue;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return value;
+        }
 
-        JSONObject responseJson = new JSONObject();
-        responseJson.put("isBase64Encoded", false);
-        responseJson.put("statusCode", "200");
-        responseJson.put("headers", headers);
-        responseJson.put("body", responseBody.toString());
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.currentName();
+            final JsonToken token = parser.nextToken();
+            if (fieldName.equals(field) && token == JsonToken.VALUE_STRING) {
+                value = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
 
-        return responseJson;
+    /**
+     * The body is a JSON document inside a string; parse it in place from the parser's text buffer.
+     */
+    private String readBodyTime(final JsonParser parser, final String defaultValue) {
+        try (JsonParser body = JSON_FACTORY.createParser(
+                parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength())) {
+            if (body.nextToken() == JsonToken.START_OBJECT) {
+                return readField(body, "time", defaultValue);
+            }
+        } catch (IOException e) {
+            // Not a JSON body; keep the default.
+        }
+        return defaultValue;
+    }
 
+    private void writeResponse(final String greeting, final OutputStream outputStream) throws IOException {
+        final StringBuilder body = new StringBuilder(greeting.length() + "{\"message\":\"\"}".length())
+                .append("{\"message\":\"");
+        JsonStringEncoder.getInstance().quoteAsString(greeting, body);
+        body.append("\"}");
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeBooleanField("isBase64Encoded", false);
+            generator.writeStringField("statusCode", "200");
+            generator.writeObjectFieldStart("headers");
+            //Not required, shown to demo the possibility.
+            generator.writeStringField("Content-Type", "application/json");
+            generator.writeEndObject();
+            generator.writeStringField("body", body.toString());
+            generator.writeEndObject();
+        }
     }
 }
@@ -0,0 +1,204 @@
+package tech.heartin.books.serverlesscookbook;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Latency, allocation and GC per event of the streaming handler against the previous json-simple tree parsing.
+ * The figures are written as one JSON line per variant to target/proxy-stream-handler-benchmark.json.<br/>
+ * Run with: mvn test -Dproxy.benchmark=true
+ */
+@EnabledIfSystemProperty(named = "proxy.benchmark", matches = "true")
+public class ProxyStreamHandlerBenchmarkTest {
+
+    private static final int WARM_UP_EVENTS = 20_000;
+    private static final int EVENTS = 100_000;
+    // Large unused request context, as sent by API Gateway with authorizers and many headers.
+    private static final int PADDING_FIELDS = 200;
+    private static final Path REPORT = Paths.get("target", "proxy-stream-handler-benchmark.json");
+
+    @Test
+    public void benchmarkStreamingAgainstTreeParsing() throws IOException {
+        final byte[] event = largeEvent();
+        final Context context = mock(Context.class);
+        when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
+        final ProxyStreamHandlerLambda streaming = new ProxyStreamHandlerLambda();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        final Measurement tree = measure("json-simple tree", event.length, () -> {
+            output.reset();
+            treeParsing(new ByteArrayInputStream(event), output);
+        });
+        final Measurement stream = measure("streaming", event.length, () -> {
+            output.reset();
+            streaming.handleRequest(new ByteArrayInputStream(event), output, context);
+        });
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, List.of(tree.toJson(), stream.toJson()));
+
+        assertTrue(stream.bytesPerEvent < tree.bytesPerEvent, stream.toJson());
+    }
+
+    /**
+     * Handles the event after a warm-up, and measures it on the calling thread.
+     */
+    private static Measurement measure(final String name, final int eventBytes, final Invocation invocation)
+            throws IOException {
+        for (int i = 0; i < WARM_UP_EVENTS; i++) {
+            invocation.run();
+        }
+
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long gcCountBefore = gcCount();
+        final long gcMillisBefore = gcMillis();
+        final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        for (int i = 0; i < EVENTS; i++) {
+            invocation.run();
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        return new Measurement(name, eventBytes, elapsed / EVENTS, allocated / EVENTS, gcCount() - gcCountBefore,
+                gcMillis() - gcMillisBefore);
+    }
+
+    private static byte[] largeEvent() {
+        final StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < PADDING_FIELDS; i++) {
+            padding.append(i == 0 ? "" : ",").append("\"claim").append(i).append("\":\"value-").append(i).append('"');
+        }
+        return ProxyStreamHandlerLambdaTest.EVENT
+                .replace("\"identity\":", "\"authorizer\":{" + padding + "},\"identity\":")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    /**
+     * The previous implementation: parse the whole event and the body into trees and write a tree.
+     */
+    @SuppressWarnings("unchecked")
+    private static void treeParsing(final InputStream inputStream, final OutputStream outputStream)
+            throws IOException {
+        final JSONParser parser = new JSONParser();
+        String name = "User";
+        String application = "";
+        String time = "Day";
+        String userAgent = "";
+        try {
+            final JSONObject event = (JSONObject) parser.parse(new BufferedReader(new InputStreamReader(inputStream)));
+            final JSONObject pathParams = (JSONObject) event.get("pathParameters");
+            if (pathParams != null && pathParams.get("proxy") != null) {
+                application = (String) pathParams.get("proxy");
+            }
+            final JSONObject queryParams = (JSONObject) event.get("queryStringParameters");
+            if (queryParams != null && queryParams.get("name") != null) {
+                name = (String) queryParams.get("name");
+            }
+            if (event.get("body") != null) {
+                final JSONObject body = (JSONObject) parser.parse((String) event.get("body"));
+                if (body.get("time") != null) {
+                    time = (String) body.get("time");
+                }
+            }
+            final JSONObject headers = (JSONObject) event.get("headers");
+            if (headers != null && headers.get("User-Agent") != null) {
+                userAgent = (String) headers.get("User-Agent");
+            }
+        } catch (ParseException e) {
+            throw new IOException(e);
+        }
+
+        String greeting = "Good " + time + ", " + name + ". " + "Welcome to " + application + ". ";
+        if (!userAgent.isEmpty()) {
+            greeting += "Client User-Agent is " + userAgent + ".";
+        }
+
+        final JSONObject responseBody = new JSONObject();
+        responseBody.put("message", greeting);
+        final JSONObject headers = new JSONObject();
+        headers.put("Content-Type", "application/json");
+        final JSONObject responseJson = new JSONObject();
+        responseJson.put("isBase64Encoded", false);
+        responseJson.put("statusCode", "200");
+        responseJson.put("headers", headers);
+        responseJson.put("body", responseBody.toString());
+
+        final OutputStreamWriter writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        writer.write(responseJson.toJSONString());
+        writer.flush();
+    }
+
+    /**
+     * One handler invocation.
+     */
+    @FunctionalInterface
+    private interface Invocation {
+        void run() throws IOException;
+    }
+
+    /**
+     * Figures of one variant, per event except for the GC totals.
+     */
+    private static final class Measurement {
+        private final String name;
+        private final int eventBytes;
+        private final long nanosPerEvent;
+        private final long bytesPerEvent;
+        private final long gcCount;
+        private final long gcMillis;
+
+        Measurement(final String name, final int eventBytes, final long nanosPerEvent, final long bytesPerEvent,
+                    final long gcCount, final long gcMillis) {
+            this.name = name;
+            this.eventBytes = eventBytes;
+            this.nanosPerEvent = nanosPerEvent;
+            this.bytesPerEvent = bytesPerEvent;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        String toJson() {
+            return "{\"benchmark\":\"" + name + "\",\"eventBytes\":" + eventBytes + ",\"events\":" + EVENTS
+                    + ",\"nanosPerEvent\":" + nanosPerEvent + ",\"bytesPerEvent\":" + bytesPerEvent
+                    + ",\"gcCount\":" + gcCount + ",\"gcMillis\":" + gcMillis + "}";
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package tech.heartin.books.serverlesscookbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ProxyStreamHandlerLambdaTest {
+
+    static final String EVENT = "{"
+            + "\"resource\":\"/{proxy+}\","
+            + "\"path\":\"/hello\","
+            + "\"httpMethod\":\"POST\","
+            + "\"headers\":{\"Accept\":\"*/*\",\"User-Agent\":\"curl/7.61.0\"},"
+            + "\"multiValueHeaders\":{\"Accept\":[\"*/*\"],\"User-Agent\":[\"curl/7.61.0\"]},"
+            + "\"queryStringParameters\":{\"name\":\"Heartin\"},"
+            + "\"pathParameters\":{\"proxy\":\"hello\"},"
+            + "\"requestContext\":{\"accountId\":\"123456789012\",\"identity\":{\"sourceIp\":\"127.0.0.1\"}},"
+            + "\"body\":\"{\\\"time\\\":\\\"Morning\\\",\\\"extra\\\":[1,2,3]}\","
+            + "\"isBase64Encoded\":false"
+            + "}";
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    @BeforeEach
+    public void setUp() {
+        when(context.getLogger()).thenReturn(logger);
+    }
+
+    @Test
+    public void testGreetingFromProxyEvent() throws IOException {
+        assertEquals("{\"isBase64Encoded\":false,\"statusCode\":\"200\","
+                + "\"headers\":{\"Content-Type\":\"application/json\"},"
+                + "\"body\":\"{\\\"message\\\":\\\"Good Morning, Heartin. Welcome to hello. "
+                + "Client User-Agent is curl/7.61.0.\\\"}\"}", invoke(EVENT));
+    }
+
+    @Test
+    public void testDefaultsWhenFieldsAreMissingOrNull() throws IOException {
+        assertEquals("{\"isBase64Encoded\":false,\"statusCode\":\"200\","
+                + "\"headers\":{\"Content-Type\":\"application/json\"},"
+                + "\"body\":\"{\\\"message\\\":\\\"Good Day, User. Welcome to . \\\"}\"}",
+                invoke("{\"pathParameters\":null,\"queryStringParameters\":null,\"body\":\"plain text\"}"));
+    }
+
+    private String invoke(final String event) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ProxyStreamHandlerLambda().handleRequest(
+                new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)), output, context);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
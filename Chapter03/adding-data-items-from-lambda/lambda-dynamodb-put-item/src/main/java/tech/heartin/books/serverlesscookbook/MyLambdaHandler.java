@@ -5,15 +5,26 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import tech.heartin.books.serverlesscookbook.domain.Request;
 import tech.heartin.books.serverlesscookbook.domain.Response;
 import tech.heartin.books.serverlesscookbook.services.DynamoDBService;
-import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceImpl1;
-import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceImpl2;
+import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceFactory;
 
 /**
  * RequestHandler implementation.
  */
 public final class MyLambdaHandler implements RequestHandler<Request, Response> {
 
-    private DynamoDBService service;
+    // Created once per container, during init, and reused by all warm invocations.
+    private static final DynamoDBServiceFactory SERVICE_FACTORY = new DynamoDBServiceFactory();
+
+    private final DynamoDBServiceFactory serviceFactory;
+
+    public MyLambdaHandler() {
+        this(SERVICE_FACTORY);
+    }
+
+    public MyLambdaHandler(final DynamoDBServiceFactory serviceFactory) {
+        this.serviceFactory = serviceFactory;
+        this.serviceFactory.getService();
+    }
 
     /**
      * Handle request.
@@ -25,13 +36,10 @@ public final class MyLambdaHandler implements RequestHandler<Request, Response>
     public Response handleRequest(final Request request, final Context context) {
         context.getLogger().log("Put item on table " + request.getTableName());
 
-        final String version = System.getenv("API_VERSION");
-        if (version != null && version.equals("V2")) {
-            service = new DynamoDBServiceImpl2();
-        } else {
-            service = new DynamoDBServiceImpl1();
+        final DynamoDBService service = this.serviceFactory.getService();
+        if (request.getItems() != null && !request.getItems().isEmpty()) {
+            return service.batchPutItems(request);
         }
-
         return service.putItem(request);
     }
 }
@@ -0,0 +1,16 @@
+package tech.heartin.books.serverlesscookbook.domain;
+
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * Key values and attributes of one item, used for bulk ingest.
+ */
+@Data
+public class ItemData {
+    private String partitionKeyValue;
+    private Integer sortKeyValue;
+    private Map<String, String> stringData;
+    private Map<String, Integer> integerData;
+}
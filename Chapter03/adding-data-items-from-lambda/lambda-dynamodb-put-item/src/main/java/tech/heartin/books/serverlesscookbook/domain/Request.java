@@ -1,5 +1,6 @@
 package tech.heartin.books.serverlesscookbook.domain;
 
+import java.util.List;
 import java.util.Map;
 
 import lombok.Data;
@@ -17,4 +18,7 @@ public class Request {
     private boolean waitForActive;
     private Map<String, String> stringData;
     private Map<String, Integer> integerData;
+    // Bulk ingest: items written with BatchWriteItem and the number of batches kept in flight.
+    private List<ItemData> items;
+    private Integer maxInFlight;
 }
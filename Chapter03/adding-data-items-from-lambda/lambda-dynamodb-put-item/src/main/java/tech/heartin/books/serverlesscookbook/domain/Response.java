@@ -11,4 +11,11 @@ import lombok.Data;
 public class Response {
     private String message;
     private String errorMessage;
+    // Set only for bulk ingest.
+    private Integer successCount;
+    private Integer failureCount;
+
+    public Response(final String message, final String errorMessage) {
+        this(message, errorMessage, null, null);
+    }
 }
@@ -0,0 +1,26 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter, used when DynamoDB leaves work unprocessed.
+ */
+final class Backoff {
+
+    private static final long BASE_MILLIS = 50;
+    private static final long MAX_MILLIS = 5000;
+    private static final int MAX_SHIFT = 16;
+
+    private Backoff() {
+    }
+
+    /**
+     * Random delay between zero and min(MAX_MILLIS, BASE_MILLIS * 2^attempt).
+     * @param attempt retry attempt, starting at 1.
+     * @return delay in milliseconds.
+     */
+    static long fullJitterMillis(final int attempt) {
+        final long ceiling = Math.min(MAX_MILLIS, BASE_MILLIS << Math.min(attempt, MAX_SHIFT));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
@@ -0,0 +1,203 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import tech.heartin.books.serverlesscookbook.domain.ItemData;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+/**
+ * Writes many items with BatchWriteItem.<br/>
+ * Items are grouped into batches of 25, up to maxInFlight batches run concurrently on the
+ * {@link ServiceExecutor} and unprocessed items are re-driven with jittered exponential backoff.
+ */
+final class BatchWriter {
+
+    static final int MAX_ITEMS_PER_BATCH = 25;
+    static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    static final int MAX_RETRIES = 8;
+
+    private final DynamoDbClient dynamoDbClient;
+
+    BatchWriter(final DynamoDbClient dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+    }
+
+    Response write(final Request request, final String apiVersion) {
+        final String tableName = request.getTableName();
+
+        final Map<WriteRequest, Integer> itemCounts = toWriteRequests(request);
+        final List<WriteRequest> pending = new ArrayList<>(itemCounts.keySet());
+
+        final int maxInFlight = maxInFlight(request);
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final List<Future<BatchResult>> batches = new ArrayList<>();
+        final List<Integer> batchItemCounts = new ArrayList<>();
+
+        int success = 0;
+        int failure = 0;
+        String lastError = null;
+        try {
+            for (int from = 0; from < pending.size(); from += MAX_ITEMS_PER_BATCH) {
+                final List<WriteRequest> batch = pending.subList(from,
+                        Math.min(from + MAX_ITEMS_PER_BATCH, pending.size()));
+                batchItemCounts.add(itemCount(itemCounts, batch));
+                inFlight.acquire();
+                batches.add(ServiceExecutor.get().submit(() -> {
+                    try {
+                        return writeBatch(tableName, batch, itemCounts);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+
+            for (int i = 0; i < batches.size(); i++) {
+                try {
+                    final BatchResult result = batches.get(i).get();
+                    success += result.success;
+                    failure += result.failure;
+                } catch (ExecutionException e) {
+                    failure += batchItemCounts.get(i);
+                    lastError = e.getCause().getMessage();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batches.forEach(batch -> batch.cancel(true));
+            return new Response(null, "Bulk ingest interrupted with API version " + apiVersion + ".");
+        }
+
+        final String message = "Bulk ingest into " + tableName + " with API version " + apiVersion
+                + ": " + success + " items written, " + failure + " items failed.";
+        return new Response(failure == 0 ? message : null,
+                failure == 0 ? null : message + (lastError != null ? " Last error: " + lastError : ""),
+                success, failure);
+    }
+
+    private BatchResult writeBatch(final String tableName, final List<WriteRequest> batch,
+            final Map<WriteRequest, Integer> itemCounts) throws InterruptedException {
+
+        Map<String, List<WriteRequest>> requestItems = Collections.singletonMap(tableName, batch);
+        int attempt = 0;
+
+        while (true) {
+            final BatchWriteItemResponse response = dynamoDbClient.batchWriteItem(BatchWriteItemRequest.builder()
+                    .requestItems(requestItems)
+                    .build());
+
+            requestItems = response.unprocessedItems();
+            if (requestItems == null || requestItems.isEmpty()) {
+                return new BatchResult(itemCount(itemCounts, batch), 0);
+            }
+            if (++attempt > MAX_RETRIES) {
+                final int unprocessed = itemCount(itemCounts, requestItems.get(tableName));
+                return new BatchResult(itemCount(itemCounts, batch) - unprocessed, unprocessed);
+            }
+            Thread.sleep(Backoff.fullJitterMillis(attempt));
+        }
+    }
+
+    /**
+     * One put request per distinct item key of the request, in request order, with the number of
+     * request items it writes.
+     */
+    static Map<WriteRequest, Integer> toWriteRequests(final Request request) {
+        // BatchWriteItem rejects duplicate keys within a request, so keep the last item per key
+        // (same end state as putting them one after the other). The items it replaces are written
+        // if and only if it is.
+        final Map<List<String>, WriteRequest> writeRequests = new LinkedHashMap<>();
+        final Map<List<String>, Integer> counts = new HashMap<>();
+        for (ItemData itemData : request.getItems()) {
+            final List<String> key =
+                    Arrays.asList(itemData.getPartitionKeyValue(), String.valueOf(itemData.getSortKeyValue()));
+            writeRequests.put(key, WriteRequest.builder()
+                    .putRequest(PutRequest.builder().item(toItem(itemData, request)).build())
+                    .build());
+            counts.merge(key, 1, Integer::sum);
+        }
+
+        final Map<WriteRequest, Integer> itemCounts = new LinkedHashMap<>();
+        writeRequests.forEach((key, writeRequest) -> itemCounts.put(writeRequest, counts.get(key)));
+        return itemCounts;
+    }
+
+    /**
+     * Number of request items written by the given put requests.
+     */
+    static int itemCount(final Map<WriteRequest, Integer> itemCounts, final Collection<WriteRequest> writeRequests) {
+        int count = 0;
+        for (WriteRequest writeRequest : writeRequests) {
+            count += itemCounts.getOrDefault(writeRequest, 1);
+        }
+        return count;
+    }
+
+    static int maxInFlight(final Request request) {
+        return request.getMaxInFlight() != null && request.getMaxInFlight() > 0
+                ? Math.min(request.getMaxInFlight(), ServiceExecutor.MAX_THREADS) : DEFAULT_MAX_IN_FLIGHT;
+    }
+
+    private static Map<String, AttributeValue> toItem(final ItemData itemData, final Request request) {
+        final Map<String, AttributeValue> item = new HashMap<>();
+
+        item.put(request.getPartitionKey(),
+            AttributeValue.builder().s(itemData.getPartitionKeyValue()).build());
+
+        if (request.getSortKey() != null && itemData.getSortKeyValue() != null) {
+            item.put(request.getSortKey(),
+                AttributeValue.builder().n(String.valueOf(itemData.getSortKeyValue())).build());
+        }
+
+        if (itemData.getStringData() != null) {
+            itemData.getStringData().forEach((k, v) ->
+                item.put(k, AttributeValue.builder().s(v).build()));
+        }
+
+        if (itemData.getIntegerData() != null) {
+            itemData.getIntegerData().forEach((k, v) ->
+                item.put(k, AttributeValue.builder().n(String.valueOf(v)).build()));
+        }
+
+        return item;
+    }
+
+    /**
+     * Number of request items of one batch written and not written after all retries.
+     */
+    static final class BatchResult {
+        private final int success;
+        private final int failure;
+
+        BatchResult(final int success, final int failure) {
+            this.success = success;
+            this.failure = failure;
+        }
+
+        int getSuccess() {
+            return success;
+        }
+
+        int getFailure() {
+            return failure;
+        }
+    }
+}
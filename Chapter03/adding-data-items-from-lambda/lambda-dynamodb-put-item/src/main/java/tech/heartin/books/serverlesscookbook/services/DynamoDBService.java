@@ -14,4 +14,11 @@ public interface DynamoDBService {
      * @return Response object.
      */
     Response putItem(Request request);
+
+    /**
+     * Put Items in bulk with BatchWriteItem.
+     * @param request table name and items.
+     * @return Response object with success and failure counts.
+     */
+    Response batchPutItems(Request request);
 }
@@ -0,0 +1,112 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+
+/**
+ * Creates the DynamoDBService for a Lambda container.<br/>
+ * API_VERSION is resolved once and a single DynamoDbClient (or DynamoDbAsyncClient for V3)
+ * is built on first use, so warm invocations reuse the same connection pool and credentials.
+ */
+public final class DynamoDBServiceFactory {
+
+    private static final int MAX_CONNECTIONS = 50;
+    private static final Duration CONNECTION_TIMEOUT = Duration.ofSeconds(2);
+    private static final Duration SOCKET_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration API_CALL_ATTEMPT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration API_CALL_TIMEOUT = Duration.ofSeconds(12);
+
+    private final String apiVersion;
+    private final Supplier<DynamoDbClient> clientSupplier;
+    private final Supplier<DynamoDbAsyncClient> asyncClientSupplier;
+    private DynamoDBService service;
+
+    public DynamoDBServiceFactory() {
+        this(System.getenv("API_VERSION"), DynamoDBServiceFactory::createClient);
+    }
+
+    public DynamoDBServiceFactory(final String apiVersion, final Supplier<DynamoDbClient> clientSupplier) {
+        this(apiVersion, clientSupplier, DynamoDBServiceFactory::createAsyncClient);
+    }
+
+    public DynamoDBServiceFactory(final String apiVersion, final Supplier<DynamoDbClient> clientSupplier,
+            final Supplier<DynamoDbAsyncClient> asyncClientSupplier) {
+        this.apiVersion = apiVersion;
+        this.clientSupplier = clientSupplier;
+        this.asyncClientSupplier = asyncClientSupplier;
+    }
+
+    /**
+     * Get the service, creating the client and service on first call only.
+     * @return DynamoDBService shared by all invocations of this container.
+     */
+    public synchronized DynamoDBService getService() {
+        if (this.service == null) {
+            if ("V3".equals(this.apiVersion)) {
+                this.service = new DynamoDBServiceImpl3(this.asyncClientSupplier.get());
+            } else if ("V2".equals(this.apiVersion)) {
+                this.service = new DynamoDBServiceImpl2(this.clientSupplier.get());
+            } else {
+                this.service = new DynamoDBServiceImpl1(this.clientSupplier.get());
+            }
+        }
+        return this.service;
+    }
+
+    /**
+     * Build a DynamoDbClient tuned for Lambda: a small keep-alive connection pool
+     * and bounded timeouts so that a slow call fails well within the function timeout.
+     * @return DynamoDbClient.
+     */
+    public static DynamoDbClient createClient() {
+        final DynamoDbClientBuilder builder = DynamoDbClient.builder()
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(MAX_CONNECTIONS)
+                        .connectionTimeout(CONNECTION_TIMEOUT)
+                        .socketTimeout(SOCKET_TIMEOUT)
+                        .tcpKeepAlive(true))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .apiCallAttemptTimeout(API_CALL_ATTEMPT_TIMEOUT)
+                        .apiCallTimeout(API_CALL_TIMEOUT)
+                        .build());
+
+        final String region = System.getenv("AWS_REGION");
+        if (region != null && !region.isEmpty()) {
+            builder.region(Region.of(region));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Build a DynamoDbAsyncClient on the Netty non-blocking HTTP client, with the same
+     * connection and timeout limits as {@link #createClient()}.
+     * @return DynamoDbAsyncClient.
+     */
+    public static DynamoDbAsyncClient createAsyncClient() {
+        final DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(MAX_CONNECTIONS)
+                        .connectionTimeout(CONNECTION_TIMEOUT)
+                        .readTimeout(SOCKET_TIMEOUT)
+                        .tcpKeepAlive(true))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .apiCallAttemptTimeout(API_CALL_ATTEMPT_TIMEOUT)
+                        .apiCallTimeout(API_CALL_TIMEOUT)
+                        .build());
+
+        final String region = System.getenv("AWS_REGION");
+        if (region != null && !region.isEmpty()) {
+            builder.region(Region.of(region));
+        }
+        return builder.build();
+    }
+}
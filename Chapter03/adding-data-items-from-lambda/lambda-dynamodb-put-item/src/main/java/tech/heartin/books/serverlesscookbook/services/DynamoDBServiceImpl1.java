@@ -21,9 +21,15 @@ import java.util.concurrent.TimeUnit;
 public class DynamoDBServiceImpl1 implements DynamoDBService {
 
     private final DynamoDbClient dynamoDbClient;
+    private final BatchWriter batchWriter;
 
     public DynamoDBServiceImpl1() {
-        this.dynamoDbClient = DynamoDbClient.create();
+        this(DynamoDbClient.create());
+    }
+
+    public DynamoDBServiceImpl1(final DynamoDbClient dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.batchWriter = new BatchWriter(dynamoDbClient);
     }
 
     @Override
@@ -77,6 +83,20 @@ public class DynamoDBServiceImpl1 implements DynamoDBService {
         }
     }
 
+    @Override
+    public final Response batchPutItems(final Request request) {
+        try {
+            if (request.isWaitForActive()) {
+                waitForTableToBeActive(request.getTableName());
+            }
+        } catch (Exception e) {
+            return new Response(null,
+                "Error while adding items with API version V1: " + e.getMessage());
+        }
+
+        return batchWriter.write(request, "V1");
+    }
+
     /**
      * Custom method to wait for table to become active.
      * @param tableName Name of the DynamoDB table
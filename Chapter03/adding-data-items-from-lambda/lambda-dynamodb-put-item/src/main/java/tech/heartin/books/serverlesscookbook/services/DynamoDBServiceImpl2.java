@@ -18,23 +18,23 @@ import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbWaiter;
 public class DynamoDBServiceImpl2 implements DynamoDBService {
 
     private final DynamoDbClient dynamoDBClient;
+    private final BatchWriter batchWriter;
 
     public DynamoDBServiceImpl2() {
-        this.dynamoDBClient = DynamoDbClient.builder().build();
+        this(DynamoDbClient.builder().build());
+    }
+
+    public DynamoDBServiceImpl2(final DynamoDbClient dynamoDBClient) {
+        this.dynamoDBClient = dynamoDBClient;
+        this.batchWriter = new BatchWriter(dynamoDBClient);
     }
 
     @Override
     public final Response putItem(final Request request) {
         // Wait for table to become active if requested
-        if (request.isWaitForActive()) {
-            try (DynamoDbWaiter waiter = DynamoDbWaiter.builder()
-                    .client(this.dynamoDBClient)
-                    .build()) {
-                waiter.waitUntilTableExists(r -> r.tableName(request.getTableName()));
-            } catch (Exception e) {
-                return new Response(null,
-                    "Error while waiting for table to become active with API version V2: " + e.getMessage());
-            }
+        final Response waitError = waitForActive(request);
+        if (waitError != null) {
+            return waitError;
         }
 
         // Prepare attribute values map
@@ -71,4 +71,27 @@ public class DynamoDBServiceImpl2 implements DynamoDBService {
         return new Response("Item added into " + request.getTableName() + " with API version V2.", null);
     }
 
+    @Override
+    public final Response batchPutItems(final Request request) {
+        final Response waitError = waitForActive(request);
+        if (waitError != null) {
+            return waitError;
+        }
+
+        return batchWriter.write(request, "V2");
+    }
+
+    private Response waitForActive(final Request request) {
+        if (request.isWaitForActive()) {
+            try (DynamoDbWaiter waiter = DynamoDbWaiter.builder()
+                    .client(this.dynamoDBClient)
+                    .build()) {
+                waiter.waitUntilTableExists(r -> r.tableName(request.getTableName()));
+            } catch (Exception e) {
+                return new Response(null,
+                    "Error while waiting for table to become active with API version V2: " + e.getMessage());
+            }
+        }
+        return null;
+    }
 }
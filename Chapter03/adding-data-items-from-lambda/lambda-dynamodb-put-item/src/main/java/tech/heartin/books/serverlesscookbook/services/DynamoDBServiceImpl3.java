@@ -0,0 +1,226 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+/**
+ * Implementation of DynamoDBService that uses the non-blocking DynamoDbAsyncClient (SDK v2).<br/>
+ * Bulk ingest runs up to maxInFlight batches as chained CompletableFutures instead of one
+ * blocked thread per batch.<br/>
+ * https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/asynchronous.html
+ */
+public class DynamoDBServiceImpl3 implements DynamoDBService {
+
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    public DynamoDBServiceImpl3() {
+        this(DynamoDbAsyncClient.create());
+    }
+
+    public DynamoDBServiceImpl3(final DynamoDbAsyncClient dynamoDbAsyncClient) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+    }
+
+    @Override
+    public final Response putItem(final Request request) {
+        Map<String, AttributeValue> attributeValueMap = new HashMap<>();
+        attributeValueMap.put(request.getPartitionKey(),
+            AttributeValue.builder().s(request.getPartitionKeyValue()).build());
+
+        if (request.getSortKey() != null) {
+            attributeValueMap.put(request.getSortKey(),
+                AttributeValue.builder().n(String.valueOf(request.getSortKeyValue())).build());
+        }
+
+        if (request.getStringData() != null) {
+            request.getStringData().forEach((k, v) ->
+                attributeValueMap.put(k, AttributeValue.builder().s(v).build()));
+        }
+
+        if (request.getIntegerData() != null) {
+            request.getIntegerData().forEach((k, v) ->
+                attributeValueMap.put(k, AttributeValue.builder().n(String.valueOf(v)).build()));
+        }
+
+        final PutItemRequest putItemRequest = PutItemRequest.builder()
+                .tableName(request.getTableName())
+                .item(attributeValueMap)
+                .build();
+
+        try {
+            await(waitForActive(request)
+                    .thenCompose(ignored -> dynamoDbAsyncClient.putItem(putItemRequest)));
+        } catch (RuntimeException e) {
+            return new Response(null, "Error while adding item with API version V3: " + e.getMessage());
+        }
+
+        return new Response("Item added into " + request.getTableName() + " with API version V3.", null);
+    }
+
+    @Override
+    public final Response batchPutItems(final Request request) {
+        final String tableName = request.getTableName();
+        final Map<WriteRequest, Integer> itemCounts = BatchWriter.toWriteRequests(request);
+        final List<WriteRequest> pending = new ArrayList<>(itemCounts.keySet());
+
+        final List<List<WriteRequest>> batches = new ArrayList<>();
+        for (int from = 0; from < pending.size(); from += BatchWriter.MAX_ITEMS_PER_BATCH) {
+            batches.add(pending.subList(from, Math.min(from + BatchWriter.MAX_ITEMS_PER_BATCH, pending.size())));
+        }
+
+        // Each lane takes the next unclaimed batch when its previous one completes,
+        // so at most maxInFlight batches are outstanding at any time.
+        final BulkIngest ingest = new BulkIngest(tableName, batches, itemCounts);
+        final int lanes = Math.min(BatchWriter.maxInFlight(request), Math.max(1, batches.size()));
+
+        try {
+            await(waitForActive(request));
+        } catch (RuntimeException e) {
+            return new Response(null, "Error while adding items with API version V3: " + e.getMessage());
+        }
+
+        final List<CompletableFuture<Void>> running = new ArrayList<>(lanes);
+        for (int lane = 0; lane < lanes; lane++) {
+            running.add(ingest.nextBatch());
+        }
+        await(CompletableFuture.allOf(running.toArray(new CompletableFuture[0])));
+
+        final int success = ingest.success.get();
+        final int failure = ingest.failure.get();
+        final String message = "Bulk ingest into " + tableName + " with API version V3"
+                + ": " + success + " items written, " + failure + " items failed.";
+        final String lastError = ingest.lastError.get();
+        return new Response(failure == 0 ? message : null,
+                failure == 0 ? null : message + (lastError != null ? " Last error: " + lastError : ""),
+                success, failure);
+    }
+
+    private CompletableFuture<?> waitForActive(final Request request) {
+        if (!request.isWaitForActive()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return dynamoDbAsyncClient.waiter().waitUntilTableExists(DescribeTableRequest.builder()
+                .tableName(request.getTableName())
+                .build());
+    }
+
+    /**
+     * Run the next step after a jittered backoff, without blocking a thread while waiting.
+     */
+    private static <T> CompletableFuture<T> delay(final int attempt, final Supplier<CompletableFuture<T>> step) {
+        return CompletableFuture.runAsync(() -> { },
+                        CompletableFuture.delayedExecutor(Backoff.fullJitterMillis(attempt), TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> step.get());
+    }
+
+    /**
+     * Wait for the result and rethrow the original runtime exception, if any.
+     */
+    private static <T> T await(final CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Interrupted while waiting for DynamoDB", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static Throwable unwrap(final Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Batches of one bulk ingest and the counts collected from them. A failed batch is
+     * counted and recorded, and does not stop the remaining batches.
+     */
+    private final class BulkIngest {
+        private final String tableName;
+        private final List<List<WriteRequest>> batches;
+        private final Map<WriteRequest, Integer> itemCounts;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger success = new AtomicInteger();
+        private final AtomicInteger failure = new AtomicInteger();
+        private final AtomicReference<String> lastError = new AtomicReference<>();
+
+        BulkIngest(final String tableName, final List<List<WriteRequest>> batches,
+                final Map<WriteRequest, Integer> itemCounts) {
+            this.tableName = tableName;
+            this.batches = batches;
+            this.itemCounts = itemCounts;
+        }
+
+        CompletableFuture<Void> nextBatch() {
+            final int index = nextIndex.getAndIncrement();
+            if (index >= batches.size()) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            final List<WriteRequest> batch = batches.get(index);
+            final int batchItems = BatchWriter.itemCount(itemCounts, batch);
+            return writeBatch(Collections.singletonMap(tableName, batch), batchItems, 0)
+                    .handle((result, error) -> {
+                        if (error != null) {
+                            failure.addAndGet(batchItems);
+                            lastError.set(unwrap(error).getMessage());
+                        } else {
+                            success.addAndGet(result.getSuccess());
+                            failure.addAndGet(result.getFailure());
+                        }
+                        return nextBatch();
+                    })
+                    .thenCompose(next -> next);
+        }
+
+        private CompletableFuture<BatchWriter.BatchResult> writeBatch(
+                final Map<String, List<WriteRequest>> requestItems, final int batchItems, final int attempt) {
+
+            return dynamoDbAsyncClient.batchWriteItem(BatchWriteItemRequest.builder()
+                            .requestItems(requestItems)
+                            .build())
+                    .thenCompose(response -> {
+                        final Map<String, List<WriteRequest>> unprocessed = response.unprocessedItems();
+                        if (unprocessed == null || unprocessed.isEmpty()) {
+                            return CompletableFuture.completedFuture(new BatchWriter.BatchResult(batchItems, 0));
+                        }
+                        if (attempt + 1 > BatchWriter.MAX_RETRIES) {
+                            final int failed = BatchWriter.itemCount(itemCounts, unprocessed.get(tableName));
+                            return CompletableFuture.completedFuture(
+                                    new BatchWriter.BatchResult(batchItems - failed, failed));
+                        }
+                        return delay(attempt + 1, () -> writeBatch(unprocessed, batchItems, attempt + 1));
+                    });
+        }
+    }
+}
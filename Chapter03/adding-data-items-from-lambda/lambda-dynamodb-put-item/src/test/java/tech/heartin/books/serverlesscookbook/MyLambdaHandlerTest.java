@@ -0,0 +1,74 @@
+package tech.heartin.books.serverlesscookbook;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class MyLambdaHandlerTest {
+
+    private static final int INVOCATIONS = 25;
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    private Request request;
+
+    @BeforeEach
+    public void setUp() {
+        request = new Request();
+        request.setTableName("my_table");
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        request.setPartitionKeyValue("p1");
+        request.setSortKeyValue(1537963031);
+
+        when(context.getLogger()).thenReturn(logger);
+        when(dynamoDbClient.putItem(any(PutItemRequest.class)))
+                .thenReturn(PutItemResponse.builder().build());
+    }
+
+    @Test
+    public void testClientCreatedOnceAcrossInvocations() {
+        for (String version : new String[] {"V1", "V2"}) {
+            AtomicInteger clientsCreated = new AtomicInteger();
+            DynamoDBServiceFactory factory = new DynamoDBServiceFactory(version, () -> {
+                clientsCreated.incrementAndGet();
+                return dynamoDbClient;
+            });
+
+            MyLambdaHandler handler = new MyLambdaHandler(factory);
+            for (int i = 0; i < INVOCATIONS; i++) {
+                handler.handleRequest(request, context);
+            }
+
+            assertEquals(1, clientsCreated.get());
+        }
+
+        verify(dynamoDbClient, times(2 * INVOCATIONS)).putItem(any(PutItemRequest.class));
+    }
+}
@@ -0,0 +1,146 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.heartin.books.serverlesscookbook.domain.ItemData;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchWriterTest {
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Mock
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    @Test
+    public void testWritesDistinctKeysInBatches() {
+        when(dynamoDbClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(BatchWriteItemResponse.builder().build());
+        // 60 items with 50 distinct keys: two full batches of 25.
+        final Request request = request(60, 50);
+
+        final Response response = new DynamoDBServiceImpl1(dynamoDbClient).batchPutItems(request);
+
+        assertNull(response.getErrorMessage());
+        assertEquals(60, response.getSuccessCount());
+        assertEquals(0, response.getFailureCount());
+        final ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(dynamoDbClient, times(2)).batchWriteItem(captor.capture());
+        captor.getAllValues().forEach(batch ->
+                assertEquals(BatchWriter.MAX_ITEMS_PER_BATCH, batch.requestItems().get("my_table").size()));
+    }
+
+    @Test
+    public void testRetriesUnprocessedItems() {
+        final Request request = request(3, 3);
+        final WriteRequest last = new ArrayList<>(BatchWriter.toWriteRequests(request).keySet()).get(2);
+        when(dynamoDbClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(BatchWriteItemResponse.builder()
+                        .unprocessedItems(Collections.singletonMap("my_table", Collections.singletonList(last)))
+                        .build())
+                .thenReturn(BatchWriteItemResponse.builder().build());
+
+        final Response response = new DynamoDBServiceImpl1(dynamoDbClient).batchPutItems(request);
+
+        assertEquals(3, response.getSuccessCount());
+        assertEquals(0, response.getFailureCount());
+        final ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(dynamoDbClient, times(2)).batchWriteItem(captor.capture());
+        assertEquals(Collections.singletonList(last), captor.getAllValues().get(1).requestItems().get("my_table"));
+    }
+
+    @Test
+    public void testDuplicatesOfAFailedItemAreNotCountedAsWritten() {
+        when(dynamoDbClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(BatchWriteItemResponse.builder().build())
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("Slow down").build());
+        // Keys 0 to 29 twice each: the second batch, holding keys 25 to 29, fails.
+        final Request request = request(60, 30);
+        request.setMaxInFlight(1);
+
+        final Response response = new DynamoDBServiceImpl2(dynamoDbClient).batchPutItems(request);
+
+        assertEquals(50, response.getSuccessCount());
+        assertEquals(10, response.getFailureCount());
+        assertEquals("Bulk ingest into my_table with API version V2: 50 items written, 10 items failed."
+                + " Last error: Slow down", response.getErrorMessage());
+    }
+
+    @Test
+    public void testAsyncCountsDuplicatesOfAFailedItemAsFailed() {
+        when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder().build()))
+                .thenReturn(failed(ProvisionedThroughputExceededException.builder().message("Slow down").build()));
+        final Request request = request(60, 30);
+        request.setMaxInFlight(1);
+
+        final Response response = new DynamoDBServiceImpl3(dynamoDbAsyncClient).batchPutItems(request);
+
+        assertEquals(50, response.getSuccessCount());
+        assertEquals(10, response.getFailureCount());
+    }
+
+    @Test
+    public void testKeepsTheLastItemPerKey() {
+        final Request request = request(3, 2);
+        request.getItems().get(2).setStringData(Collections.singletonMap("name", "last"));
+
+        final Map<WriteRequest, Integer> itemCounts = BatchWriter.toWriteRequests(request);
+
+        final List<WriteRequest> writeRequests = new ArrayList<>(itemCounts.keySet());
+        assertEquals(2, writeRequests.size());
+        assertEquals("last", writeRequests.get(0).putRequest().item().get("name").s());
+        assertEquals(2, itemCounts.get(writeRequests.get(0)));
+        assertEquals(1, itemCounts.get(writeRequests.get(1)));
+    }
+
+    private static <T> CompletableFuture<T> failed(final Throwable error) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Request with the given number of items, whose keys repeat after the given number of distinct keys.
+     */
+    private static Request request(final int items, final int distinctKeys) {
+        final Request request = new Request();
+        request.setTableName("my_table");
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        request.setItems(new ArrayList<>());
+        for (int i = 0; i < items; i++) {
+            final ItemData itemData = new ItemData();
+            itemData.setPartitionKeyValue("p" + i % distinctKeys);
+            itemData.setSortKeyValue(1537963031);
+            request.getItems().add(itemData);
+        }
+        return request;
+    }
+}
@@ -7,13 +7,26 @@ import tech.heartin.books.serverlesscookbook.domain.Response;
 import tech.heartin.books.serverlesscookbook.services.DynamoDBService;
 import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceImpl1;
 import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceImpl2;
+import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceImpl3;
 
 /**
  * RequestHandler implementation.
  */
 public final class MyLambdaHandler implements RequestHandler<Request, Response> {
 
-    private DynamoDBService service;
+    private final DynamoDBService service;
+
+    public MyLambdaHandler() {
+        // Resolved once per container, so warm invocations reuse the same client
+        final String version = System.getenv("API_VERSION");
+        if ("V3".equals(version)) {
+            service = new DynamoDBServiceImpl3();
+        } else if ("V2".equals(version)) {
+            service = new DynamoDBServiceImpl2();
+        } else {
+            service = new DynamoDBServiceImpl1();
+        }
+    }
 
     /**
      * Handle request.
@@ -24,13 +37,6 @@ public final class MyLambdaHandler implements RequestHandler<Request, Response>
      */
     public Response handleRequest(final Request request, final Context context) {
         context.getLogger().log("Creating table " + request.getTableName());
-
-        final String version = System.getenv("API_VERSION");
-        if (version != null && version.equals("V2")) {
-            service = new DynamoDBServiceImpl2();
-        } else {
-            service = new DynamoDBServiceImpl1();
-        }
         return service.createTable(request);
     }
 }
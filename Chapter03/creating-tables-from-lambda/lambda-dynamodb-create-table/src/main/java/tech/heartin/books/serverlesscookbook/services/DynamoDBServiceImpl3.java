@@ -0,0 +1,99 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughput;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+
+/**
+ * Implementation of DynamoDBService that uses the non-blocking DynamoDbAsyncClient from AWS SDK v2.<br/>
+ * https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/asynchronous.html
+ */
+public class DynamoDBServiceImpl3 implements DynamoDBService {
+
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    public DynamoDBServiceImpl3() {
+        this(DynamoDbAsyncClient.create());
+    }
+
+    public DynamoDBServiceImpl3(final DynamoDbAsyncClient dynamoDbAsyncClient) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+    }
+
+    @Override
+    public final Response createTable(final Request request) {
+        final CreateTableRequest createTableRequest = CreateTableRequest.builder()
+            .attributeDefinitions(
+                AttributeDefinition.builder()
+                    .attributeName(request.getPartitionKey())
+                    .attributeType(ScalarAttributeType.S)
+                    .build(),
+                AttributeDefinition.builder()
+                    .attributeName(request.getSortKey())
+                    .attributeType(ScalarAttributeType.N)
+                    .build()
+            )
+            .tableName(request.getTableName())
+            .keySchema(
+                KeySchemaElement.builder()
+                    .attributeName(request.getPartitionKey())
+                    .keyType(KeyType.HASH)
+                    .build(),
+                KeySchemaElement.builder()
+                    .attributeName(request.getSortKey())
+                    .keyType(KeyType.RANGE)
+                    .build()
+            )
+            .provisionedThroughput(ProvisionedThroughput.builder()
+                .readCapacityUnits(request.getReadCapacityUnits())
+                .writeCapacityUnits(request.getWriteCapacityUnits())
+                .build())
+            .build();
+
+        final DescribeTableRequest describeTableRequest = DescribeTableRequest.builder()
+            .tableName(request.getTableName())
+            .build();
+
+        // Describe first; create and wait only if the table does not exist yet
+        final CompletableFuture<Response> result = dynamoDbAsyncClient.describeTable(describeTableRequest)
+            .thenApply(existing -> new Response(request.getTableName() + " already exists.", null))
+            .exceptionally(error -> {
+                if (unwrap(error) instanceof ResourceNotFoundException) {
+                    return null;
+                }
+                throw new CompletionException(unwrap(error));
+            })
+            .thenCompose(existing -> existing != null
+                ? CompletableFuture.completedFuture(existing)
+                : dynamoDbAsyncClient.createTable(createTableRequest)
+                    .thenCompose(created -> dynamoDbAsyncClient.waiter().waitUntilTableExists(describeTableRequest))
+                    .thenApply(waited -> new Response(
+                        request.getTableName() + " created with API version V3.", null)));
+
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            return new Response(null, "Failed to create table in API version V3: " + unwrap(e).getMessage());
+        }
+    }
+
+    private static Throwable unwrap(final Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,98 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.concurrent.CompletableFuture;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableResponse;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableResponse;
+import software.amazon.awssdk.services.dynamodb.model.LimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbAsyncWaiter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DynamoDBServiceImpl3Test {
+
+    @Mock
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    @Mock
+    private DynamoDbAsyncWaiter waiter;
+
+    @Test
+    public void testExistingTableIsNotCreatedAgain() {
+        when(dynamoDbAsyncClient.describeTable(any(DescribeTableRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(DescribeTableResponse.builder().build()));
+
+        final Response response = new DynamoDBServiceImpl3(dynamoDbAsyncClient).createTable(request());
+
+        assertEquals("my_table already exists.", response.getMessage());
+        verify(dynamoDbAsyncClient, never()).createTable(any(CreateTableRequest.class));
+    }
+
+    @Test
+    public void testCreatesMissingTableAndWaitsForIt() {
+        when(dynamoDbAsyncClient.describeTable(any(DescribeTableRequest.class)))
+                .thenReturn(failed(ResourceNotFoundException.builder().message("Not found").build()));
+        when(dynamoDbAsyncClient.createTable(any(CreateTableRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CreateTableResponse.builder().build()));
+        when(dynamoDbAsyncClient.waiter()).thenReturn(waiter);
+        when(waiter.waitUntilTableExists(any(DescribeTableRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        final Response response = new DynamoDBServiceImpl3(dynamoDbAsyncClient).createTable(request());
+
+        assertEquals("my_table created with API version V3.", response.getMessage());
+        final ArgumentCaptor<CreateTableRequest> captor = ArgumentCaptor.forClass(CreateTableRequest.class);
+        verify(dynamoDbAsyncClient).createTable(captor.capture());
+        assertEquals("id", captor.getValue().keySchema().get(0).attributeName());
+        assertEquals("dateandtime", captor.getValue().keySchema().get(1).attributeName());
+        assertEquals(5L, captor.getValue().provisionedThroughput().readCapacityUnits());
+        verify(waiter).waitUntilTableExists(any(DescribeTableRequest.class));
+    }
+
+    @Test
+    public void testFailedCreateIsReportedAsError() {
+        when(dynamoDbAsyncClient.describeTable(any(DescribeTableRequest.class)))
+                .thenReturn(failed(ResourceNotFoundException.builder().message("Not found").build()));
+        when(dynamoDbAsyncClient.createTable(any(CreateTableRequest.class)))
+                .thenReturn(failed(LimitExceededException.builder().message("Too many tables").build()));
+
+        final Response response = new DynamoDBServiceImpl3(dynamoDbAsyncClient).createTable(request());
+
+        assertNull(response.getMessage());
+        assertEquals("Failed to create table in API version V3: Too many tables", response.getErrorMessage());
+    }
+
+    private static <T> CompletableFuture<T> failed(final Throwable error) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    private static Request request() {
+        final Request request = new Request();
+        request.setTableName("my_table");
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        request.setReadCapacityUnits(5);
+        request.setWriteCapacityUnits(5);
+        return request;
+    }
+}
@@ -4,16 +4,28 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import tech.heartin.books.serverlesscookbook.domain.Request;
 import tech.heartin.books.serverlesscookbook.domain.Response;
+import tech.heartin.books.serverlesscookbook.services.CachingDynamoDBService;
 import tech.heartin.books.serverlesscookbook.services.DynamoDBService;
-import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceImpl1;
-import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceImpl2;
+import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceFactory;
 
 /**
  * RequestHandler implementation.
  */
 public final class MyLambdaHandler implements RequestHandler<Request, Response> {
 
-    private DynamoDBService service;
+    // Created once per container, during init, and reused by all warm invocations.
+    private static final DynamoDBServiceFactory SERVICE_FACTORY = new DynamoDBServiceFactory();
+
+    private final DynamoDBServiceFactory serviceFactory;
+
+    public MyLambdaHandler() {
+        this(SERVICE_FACTORY);
+    }
+
+    public MyLambdaHandler(final DynamoDBServiceFactory serviceFactory) {
+        this.serviceFactory = serviceFactory;
+        this.serviceFactory.getService();
+    }
 
     /**
      * Handle request.
@@ -25,22 +37,39 @@ public final class MyLambdaHandler implements RequestHandler<Request, Response>
     public Response handleRequest(final Request request, final Context context) {
         context.getLogger().log("Put item on table " + request.getTableName());
 
-        final String version = System.getenv("API_VERSION");
-        if (version != null && version.equals("V2")) {
-            service = new DynamoDBServiceImpl2();
-        } else {
-            service = new DynamoDBServiceImpl1();
+        try {
+            return route(this.serviceFactory.getService(), request, context);
+        } catch (IllegalArgumentException e) {
+            // Invalid filters and continuation tokens are reported to the caller instead of failing the invocation
+            return new Response(null, "Invalid request: " + e.getMessage());
         }
+    }
 
-        if (isNotEmpty(request.getPartitionKeyValue()) && isNotEmpty(request.getSortKeyValue())) {
-            return service.getItem(request);
+    private Response route(final DynamoDBService service, final Request request, final Context context) {
+        if (request.getKeys() != null && !request.getKeys().isEmpty()) {
+            return service.batchGetItems(request);
+        } else if (isNotEmpty(request.getPartitionKeyValue()) && isNotEmpty(request.getSortKeyValue())) {
+            final Response response = service.getItem(request);
+            if (service instanceof CachingDynamoDBService) {
+                final CachingDynamoDBService cache = (CachingDynamoDBService) service;
+                context.getLogger().log("Item cache hits: " + cache.getHitCount() + ", misses: "
+                        + cache.getMissCount() + ", evictions: " + cache.getEvictionCount());
+            }
+            return response;
         } else if (isNotEmpty(request.getPartitionKeyValue())) {
-            return service.query(request);
+            return isPaginated(request) ? service.queryPaginated(request) : service.query(request);
+        } else if (request.getTotalSegments() != null && request.getTotalSegments() > 1) {
+            return service.parallelScan(request);
         } else {
-            return service.scan(request);
+            return isPaginated(request) ? service.scanPaginated(request) : service.scan(request);
         }
     }
 
+    private boolean isPaginated(final Request request) {
+        return request.getPageSize() != null || request.getItemLimit() != null
+                || isNotEmpty(request.getContinuationToken());
+    }
+
     private boolean isNotEmpty(final String str) {
         return str != null && !str.isEmpty();
     }
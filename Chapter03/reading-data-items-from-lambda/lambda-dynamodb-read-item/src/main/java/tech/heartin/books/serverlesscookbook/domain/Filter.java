@@ -0,0 +1,34 @@
+package tech.heartin.books.serverlesscookbook.domain;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Typed condition on one attribute, used by query and scan.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Filter {
+    private String attribute;
+    private Operator operator;
+    private Type type; // Defaults to S.
+    private List<String> values; // One value, two for BETWEEN, one or more for IN.
+
+    /**
+     * Comparison applied to the attribute.
+     */
+    public enum Operator {
+        EQ, NE, LT, LE, GT, GE, BETWEEN, BEGINS_WITH, IN
+    }
+
+    /**
+     * DynamoDB type of the filter values.
+     */
+    public enum Type {
+        S, N, BOOL
+    }
+}
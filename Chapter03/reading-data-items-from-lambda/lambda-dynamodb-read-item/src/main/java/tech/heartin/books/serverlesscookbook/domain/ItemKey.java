@@ -0,0 +1,16 @@
+package tech.heartin.books.serverlesscookbook.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Primary key values of one item, used for multi-key reads.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemKey {
+    private String partitionKeyValue;
+    private String sortKeyValue; // Will be stored integer.
+}
@@ -1,5 +1,6 @@
 package tech.heartin.books.serverlesscookbook.domain;
 
+import java.util.List;
 import java.util.Map;
 
 import lombok.Data;
@@ -15,5 +16,17 @@ public class Request {
     private String partitionKeyValue;
     private String sortKeyValue; // Will be stored integer.
     private boolean waitForActive;
-    private Map<String, String> filterData;
+    private Map<String, String> filterData; // String equality filters.
+    private List<Filter> filters; // Typed filters; a sort key range is applied as a key condition on query.
+    // Attributes to read in addition to the key attributes; ["*"] reads whole items.
+    private List<String> projection;
+    // Paginated reads: items per DynamoDB page, max items to return and token from a previous response.
+    private Integer pageSize;
+    private Integer itemLimit;
+    private String continuationToken;
+    // Parallel scan: number of segments scanned concurrently and whether to back off when throttled.
+    private Integer totalSegments;
+    private boolean adaptiveBackoff;
+    // Multi-key read: items to get with BatchGetItem.
+    private List<ItemKey> keys;
 }
@@ -1,5 +1,8 @@
 package tech.heartin.books.serverlesscookbook.domain;
 
+import java.util.List;
+import java.util.Map;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
@@ -11,4 +14,10 @@ import lombok.Data;
 public class Response {
     private String message;
     private String errorMessage;
+    private String continuationToken; // Set only when a paginated read or parallel scan has more items.
+    private List<Map<String, Object>> items; // Attributes of the items read.
+
+    public Response(final String message, final String errorMessage) {
+        this(message, errorMessage, null, null);
+    }
 }
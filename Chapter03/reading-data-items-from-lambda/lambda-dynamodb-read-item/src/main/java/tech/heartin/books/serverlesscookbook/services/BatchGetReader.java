@@ -0,0 +1,150 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+
+import tech.heartin.books.serverlesscookbook.domain.ItemKey;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+/**
+ * Reads many items by key with BatchGetItem.<br/>
+ * Keys are split into chunks of 100, the chunks are read concurrently on the {@link ServiceExecutor}
+ * and unprocessed keys are retried with jittered exponential backoff.
+ */
+final class BatchGetReader {
+
+    static final int MAX_KEYS_PER_BATCH = 100;
+
+    static final int MAX_RETRIES = 8;
+
+    private final DynamoDbClient dynamoDbClient;
+
+    BatchGetReader(final DynamoDbClient dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+    }
+
+    Response batchGet(final Request request, final String description) {
+        final List<Future<ChunkResult>> chunks = new ArrayList<>();
+        for (List<Map<String, AttributeValue>> keys : toKeyChunks(request)) {
+            chunks.add(ServiceExecutor.get().submit(() ->
+                    getChunk(request.getTableName(), toKeysAndAttributes(keys, request))));
+        }
+
+        final List<Map<String, Object>> items = new ArrayList<>();
+        int unprocessed = 0;
+        try {
+            for (Future<ChunkResult> chunk : chunks) {
+                final ChunkResult result = chunk.get();
+                result.items.forEach(item -> items.add(ItemMapper.toMap(item)));
+                unprocessed += result.unprocessed;
+            }
+        } catch (ExecutionException e) {
+            chunks.forEach(chunk -> chunk.cancel(true));
+            return new Response(null, "Error during batch get: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            chunks.forEach(chunk -> chunk.cancel(true));
+            return new Response(null, "Batch get interrupted.");
+        }
+
+        return new Response(description + items.size()
+                + (unprocessed > 0 ? ". Unprocessed keys after retries: " + unprocessed : ""), null, null, items);
+    }
+
+    private ChunkResult getChunk(final String tableName, final KeysAndAttributes keysAndAttributes)
+            throws InterruptedException {
+
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        Map<String, KeysAndAttributes> requestItems = Collections.singletonMap(tableName, keysAndAttributes);
+        int attempt = 0;
+
+        while (true) {
+            final BatchGetItemResponse response = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                    .requestItems(requestItems)
+                    .build());
+
+            final List<Map<String, AttributeValue>> read = response.responses().get(tableName);
+            if (read != null) {
+                items.addAll(read);
+            }
+
+            requestItems = response.unprocessedKeys();
+            if (requestItems == null || requestItems.isEmpty()) {
+                return new ChunkResult(items, 0);
+            }
+            if (++attempt > MAX_RETRIES) {
+                return new ChunkResult(items, requestItems.get(tableName).keys().size());
+            }
+            Thread.sleep(Backoff.fullJitterMillis(attempt));
+        }
+    }
+
+    /**
+     * Split the distinct keys of the request into chunks of at most 100 keys.
+     */
+    static List<List<Map<String, AttributeValue>>> toKeyChunks(final Request request) {
+        // BatchGetItem rejects duplicate keys within a request.
+        final List<ItemKey> itemKeys = new ArrayList<>(new LinkedHashSet<>(request.getKeys()));
+
+        final List<List<Map<String, AttributeValue>>> chunks = new ArrayList<>();
+        for (int from = 0; from < itemKeys.size(); from += MAX_KEYS_PER_BATCH) {
+            final List<Map<String, AttributeValue>> keys = new ArrayList<>();
+            for (ItemKey itemKey : itemKeys.subList(from, Math.min(from + MAX_KEYS_PER_BATCH, itemKeys.size()))) {
+                keys.add(toKey(itemKey, request));
+            }
+            chunks.add(keys);
+        }
+        return chunks;
+    }
+
+    /**
+     * Keys of one chunk with the projection of the request.
+     */
+    static KeysAndAttributes toKeysAndAttributes(final List<Map<String, AttributeValue>> keys,
+            final Request request) {
+        return ExpressionCompiler.applyTo(KeysAndAttributes.builder().keys(keys), request).build();
+    }
+
+    static Map<String, AttributeValue> toKey(final ItemKey itemKey, final Request request) {
+        final Map<String, AttributeValue> key = new HashMap<>();
+        key.put(request.getPartitionKey(), AttributeValue.builder().s(itemKey.getPartitionKeyValue()).build());
+        if (request.getSortKey() != null && itemKey.getSortKeyValue() != null) {
+            key.put(request.getSortKey(), AttributeValue.builder().n(itemKey.getSortKeyValue()).build());
+        }
+        return key;
+    }
+
+    /**
+     * Items read by one chunk and the number of keys still unprocessed after all retries.
+     */
+    static final class ChunkResult {
+        private final List<Map<String, AttributeValue>> items;
+        private final int unprocessed;
+
+        ChunkResult(final List<Map<String, AttributeValue>> items, final int unprocessed) {
+            this.items = items;
+            this.unprocessed = unprocessed;
+        }
+
+        List<Map<String, AttributeValue>> getItems() {
+            return items;
+        }
+
+        int getUnprocessed() {
+            return unprocessed;
+        }
+    }
+}
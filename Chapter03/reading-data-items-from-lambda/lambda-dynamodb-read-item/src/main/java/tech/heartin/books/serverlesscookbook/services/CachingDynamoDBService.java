@@ -0,0 +1,91 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+/**
+ * Read-through cache in front of getItem of another DynamoDBService.<br/>
+ * Responses are cached per table, key and projection for the container lifetime, bounded
+ * by TTL, entry count and weight in bytes. Failed reads are not cached, and all other operations
+ * go straight to the wrapped service.
+ */
+public final class CachingDynamoDBService implements DynamoDBService {
+
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final DynamoDBService delegate;
+    private final ItemCache cache;
+
+    public CachingDynamoDBService(final DynamoDBService delegate, final Duration ttl,
+            final int maxEntries, final long maxWeightBytes) {
+        this(delegate, ttl, maxEntries, maxWeightBytes, System::nanoTime);
+    }
+
+    CachingDynamoDBService(final DynamoDBService delegate, final Duration ttl,
+            final int maxEntries, final long maxWeightBytes, final LongSupplier ticker) {
+        this.delegate = delegate;
+        this.cache = new ItemCache(ttl.toNanos(), maxEntries, maxWeightBytes, ticker);
+    }
+
+    @Override
+    public Response getItem(final Request request) {
+        final String key = request.getTableName() + KEY_SEPARATOR + request.getPartitionKeyValue()
+                + KEY_SEPARATOR + request.getSortKeyValue() + KEY_SEPARATOR + request.getProjection();
+
+        final Response cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final Response response = delegate.getItem(request);
+        if (response.getErrorMessage() == null) {
+            cache.put(key, response);
+        }
+        return response;
+    }
+
+    @Override
+    public Response query(final Request request) {
+        return delegate.query(request);
+    }
+
+    @Override
+    public Response scan(final Request request) {
+        return delegate.scan(request);
+    }
+
+    @Override
+    public Response queryPaginated(final Request request) {
+        return delegate.queryPaginated(request);
+    }
+
+    @Override
+    public Response scanPaginated(final Request request) {
+        return delegate.scanPaginated(request);
+    }
+
+    @Override
+    public Response parallelScan(final Request request) {
+        return delegate.parallelScan(request);
+    }
+
+    @Override
+    public Response batchGetItems(final Request request) {
+        return delegate.batchGetItems(request);
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+}
@@ -0,0 +1,206 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Encodes a DynamoDB start key, or the start keys of the segments of a parallel scan, as an opaque,
+ * URL safe continuation token and back.<br/>
+ * Only scalar key attributes (S, N and B) are supported, as those are the only types allowed for keys.
+ */
+public final class ContinuationToken {
+
+    /**
+     * Start key of a parallel scan segment that has been read to its end.
+     */
+    public static final Map<String, AttributeValue> SEGMENT_DONE = Collections.emptyMap();
+
+    private static final byte VERSION = 1;
+    private static final byte SEGMENTS_VERSION = 2;
+    private static final byte TYPE_S = 'S';
+    private static final byte TYPE_N = 'N';
+    private static final byte TYPE_B = 'B';
+    private static final byte SEGMENT_FROM_START = 0;
+    private static final byte SEGMENT_FROM_KEY = 1;
+    private static final byte SEGMENT_FINISHED = 2;
+
+    private ContinuationToken() {
+    }
+
+    /**
+     * Encode a start key.
+     * @param key last evaluated key, or key of the last item returned.
+     * @return token, or null if there is no key.
+     */
+    public static String encode(final Map<String, AttributeValue> key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+
+        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+             DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeKey(out, key);
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode continuation token", e);
+        }
+    }
+
+    /**
+     * Encode the start keys of the segments of a parallel scan.
+     * @param startKeys start key per segment: null to read the segment from its start, or
+     *                  {@link #SEGMENT_DONE} if it has been read to its end.
+     * @return token, or null if every segment has been read to its end.
+     */
+    public static String encodeSegments(final List<Map<String, AttributeValue>> startKeys) {
+        if (startKeys.stream().allMatch(key -> key != null && key.isEmpty())) {
+            return null;
+        }
+
+        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+             DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(SEGMENTS_VERSION);
+            out.writeShort(startKeys.size());
+            for (Map<String, AttributeValue> key : startKeys) {
+                if (key == null) {
+                    out.writeByte(SEGMENT_FROM_START);
+                } else if (key.isEmpty()) {
+                    out.writeByte(SEGMENT_FINISHED);
+                } else {
+                    out.writeByte(SEGMENT_FROM_KEY);
+                    writeKey(out, key);
+                }
+            }
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode continuation token", e);
+        }
+    }
+
+    /**
+     * Decode a token created by {@link #encode(Map)}.
+     * @param token continuation token from a previous response.
+     * @return start key, or null if the token is empty.
+     * @throws IllegalArgumentException if the token is malformed.
+     */
+    public static Map<String, AttributeValue> decode(final String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        try (DataInputStream in = open(token)) {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported continuation token version");
+            }
+            return readKey(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed continuation token", e);
+        }
+    }
+
+    /**
+     * Decode a token created by {@link #encodeSegments(List)}.
+     * @param token continuation token from a previous parallel scan response.
+     * @return start key per segment as given to {@link #encodeSegments(List)}, or null if the token is empty.
+     * @throws IllegalArgumentException if the token is malformed.
+     */
+    public static List<Map<String, AttributeValue>> decodeSegments(final String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        try (DataInputStream in = open(token)) {
+            if (in.readByte() != SEGMENTS_VERSION) {
+                throw new IllegalArgumentException("Unsupported continuation token version");
+            }
+            final int segments = in.readUnsignedShort();
+            final List<Map<String, AttributeValue>> startKeys = new ArrayList<>(segments);
+            for (int i = 0; i < segments; i++) {
+                final byte state = in.readByte();
+                if (state == SEGMENT_FROM_START) {
+                    startKeys.add(null);
+                } else if (state == SEGMENT_FINISHED) {
+                    startKeys.add(SEGMENT_DONE);
+                } else if (state == SEGMENT_FROM_KEY) {
+                    startKeys.add(readKey(in));
+                } else {
+                    throw new IllegalArgumentException("Malformed continuation token");
+                }
+            }
+            return startKeys;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed continuation token", e);
+        }
+    }
+
+    private static DataInputStream open(final String token) {
+        try {
+            return new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed continuation token", e);
+        }
+    }
+
+    private static void writeKey(final DataOutputStream out, final Map<String, AttributeValue> key)
+            throws IOException {
+        out.writeShort(key.size());
+        for (Map.Entry<String, AttributeValue> entry : key.entrySet()) {
+            final AttributeValue value = entry.getValue();
+            out.writeUTF(entry.getKey());
+            if (value.s() != null) {
+                out.writeByte(TYPE_S);
+                out.writeUTF(value.s());
+            } else if (value.n() != null) {
+                out.writeByte(TYPE_N);
+                out.writeUTF(value.n());
+            } else if (value.b() != null) {
+                final byte[] data = value.b().asByteArray();
+                out.writeByte(TYPE_B);
+                out.writeInt(data.length);
+                out.write(data);
+            } else {
+                throw new IllegalArgumentException("Unsupported key attribute type for " + entry.getKey());
+            }
+        }
+    }
+
+    private static Map<String, AttributeValue> readKey(final DataInputStream in) throws IOException {
+        final int size = in.readUnsignedShort();
+        final Map<String, AttributeValue> key = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            final String name = in.readUTF();
+            final byte type = in.readByte();
+            if (type == TYPE_S) {
+                key.put(name, AttributeValue.builder().s(in.readUTF()).build());
+            } else if (type == TYPE_N) {
+                key.put(name, AttributeValue.builder().n(in.readUTF()).build());
+            } else if (type == TYPE_B) {
+                final int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    throw new IllegalArgumentException("Malformed continuation token");
+                }
+                final byte[] data = new byte[length];
+                in.readFully(data);
+                key.put(name, AttributeValue.builder().b(SdkBytes.fromByteArray(data)).build());
+            } else {
+                throw new IllegalArgumentException("Unsupported key attribute type in continuation token");
+            }
+        }
+        return key;
+    }
+}
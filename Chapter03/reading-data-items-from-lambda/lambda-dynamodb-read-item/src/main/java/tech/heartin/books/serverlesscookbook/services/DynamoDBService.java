@@ -28,4 +28,32 @@ public interface DynamoDBService {
      * @return Response object.
      */
     Response scan(Request request);
+
+    /**
+     * Query Items page by page, up to the item limit of the request.
+     * @param request table name, page size, item limit and optional continuation token.
+     * @return Response object with a continuation token if more items are available.
+     */
+    Response queryPaginated(Request request);
+
+    /**
+     * Scan Items page by page, up to the item limit of the request.
+     * @param request table name, page size, item limit and optional continuation token.
+     * @return Response object with a continuation token if more items are available.
+     */
+    Response scanPaginated(Request request);
+
+    /**
+     * Scan Items with totalSegments segments read concurrently.
+     * @param request table name, total segments, item limit and adaptive backoff flag.
+     * @return Response object.
+     */
+    Response parallelScan(Request request);
+
+    /**
+     * Get Items for a list of keys with BatchGetItem.
+     * @param request table name and keys.
+     * @return Response object.
+     */
+    Response batchGetItems(Request request);
 }
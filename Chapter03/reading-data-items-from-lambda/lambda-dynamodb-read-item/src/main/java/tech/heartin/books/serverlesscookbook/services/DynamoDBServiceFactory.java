@@ -0,0 +1,134 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+
+/**
+ * Creates the DynamoDBService for a Lambda container.<br/>
+ * API_VERSION is resolved once and a single DynamoDbClient (or DynamoDbAsyncClient for V3)
+ * is built on first use, so warm invocations reuse the same connection pool and credentials.
+ * The service is optionally wrapped in a {@link CachingDynamoDBService}.
+ */
+public final class DynamoDBServiceFactory {
+
+    static final int MAX_CONNECTIONS = 50;
+    private static final Duration CONNECTION_TIMEOUT = Duration.ofSeconds(2);
+    private static final Duration SOCKET_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration API_CALL_ATTEMPT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration API_CALL_TIMEOUT = Duration.ofSeconds(12);
+    private static final int DEFAULT_CACHE_MAX_ENTRIES = 10_000;
+    private static final long DEFAULT_CACHE_MAX_WEIGHT_BYTES = 16L * 1024 * 1024;
+
+    private final String apiVersion;
+    private final Supplier<DynamoDbClient> clientSupplier;
+    private final Supplier<DynamoDbAsyncClient> asyncClientSupplier;
+    private DynamoDBService service;
+
+    public DynamoDBServiceFactory() {
+        this(System.getenv("API_VERSION"), DynamoDBServiceFactory::createClient);
+    }
+
+    public DynamoDBServiceFactory(final String apiVersion, final Supplier<DynamoDbClient> clientSupplier) {
+        this(apiVersion, clientSupplier, DynamoDBServiceFactory::createAsyncClient);
+    }
+
+    public DynamoDBServiceFactory(final String apiVersion, final Supplier<DynamoDbClient> clientSupplier,
+            final Supplier<DynamoDbAsyncClient> asyncClientSupplier) {
+        this.apiVersion = apiVersion;
+        this.clientSupplier = clientSupplier;
+        this.asyncClientSupplier = asyncClientSupplier;
+    }
+
+    /**
+     * Get the service, creating the client and service on first call only.
+     * @return DynamoDBService shared by all invocations of this container.
+     */
+    public synchronized DynamoDBService getService() {
+        if (this.service == null) {
+            if ("V3".equals(this.apiVersion)) {
+                this.service = new DynamoDBServiceImpl3(this.asyncClientSupplier.get());
+            } else if ("V2".equals(this.apiVersion)) {
+                this.service = new DynamoDBServiceImpl2(this.clientSupplier.get());
+            } else {
+                this.service = new DynamoDBServiceImpl1(this.clientSupplier.get());
+            }
+            this.service = withItemCache(this.service);
+        }
+        return this.service;
+    }
+
+    /**
+     * Wrap the service in a read-through getItem cache when ITEM_CACHE_TTL_SECONDS is set,
+     * bounded by ITEM_CACHE_MAX_ENTRIES and ITEM_CACHE_MAX_WEIGHT_BYTES.
+     */
+    private static DynamoDBService withItemCache(final DynamoDBService service) {
+        final String ttlSeconds = System.getenv("ITEM_CACHE_TTL_SECONDS");
+        if (ttlSeconds == null || ttlSeconds.isEmpty() || Long.parseLong(ttlSeconds) <= 0) {
+            return service;
+        }
+
+        final String maxEntries = System.getenv("ITEM_CACHE_MAX_ENTRIES");
+        final String maxWeightBytes = System.getenv("ITEM_CACHE_MAX_WEIGHT_BYTES");
+        return new CachingDynamoDBService(service,
+                Duration.ofSeconds(Long.parseLong(ttlSeconds)),
+                maxEntries != null ? Integer.parseInt(maxEntries) : DEFAULT_CACHE_MAX_ENTRIES,
+                maxWeightBytes != null ? Long.parseLong(maxWeightBytes) : DEFAULT_CACHE_MAX_WEIGHT_BYTES);
+    }
+
+    /**
+     * Build a DynamoDbClient tuned for Lambda: a small keep-alive connection pool
+     * and bounded timeouts so that a slow call fails well within the function timeout.
+     * @return DynamoDbClient.
+     */
+    public static DynamoDbClient createClient() {
+        final DynamoDbClientBuilder builder = DynamoDbClient.builder()
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(MAX_CONNECTIONS)
+                        .connectionTimeout(CONNECTION_TIMEOUT)
+                        .socketTimeout(SOCKET_TIMEOUT)
+                        .tcpKeepAlive(true))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .apiCallAttemptTimeout(API_CALL_ATTEMPT_TIMEOUT)
+                        .apiCallTimeout(API_CALL_TIMEOUT)
+                        .build());
+
+        final String region = System.getenv("AWS_REGION");
+        if (region != null && !region.isEmpty()) {
+            builder.region(Region.of(region));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Build a DynamoDbAsyncClient on the Netty non-blocking HTTP client, with the same
+     * connection and timeout limits as {@link #createClient()}.
+     * @return DynamoDbAsyncClient.
+     */
+    public static DynamoDbAsyncClient createAsyncClient() {
+        final DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(MAX_CONNECTIONS)
+                        .connectionTimeout(CONNECTION_TIMEOUT)
+                        .readTimeout(SOCKET_TIMEOUT)
+                        .tcpKeepAlive(true))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .apiCallAttemptTimeout(API_CALL_ATTEMPT_TIMEOUT)
+                        .apiCallTimeout(API_CALL_TIMEOUT)
+                        .build());
+
+        final String region = System.getenv("AWS_REGION");
+        if (region != null && !region.isEmpty()) {
+            builder.region(Region.of(region));
+        }
+        return builder.build();
+    }
+}
@@ -12,7 +12,9 @@ import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
 import tech.heartin.books.serverlesscookbook.domain.Request;
 import tech.heartin.books.serverlesscookbook.domain.Response;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -22,9 +24,19 @@ import java.util.Map;
 public class DynamoDBServiceImpl1 implements DynamoDBService {
 
     private final DynamoDbClient dynamoDB;
+    private final PaginatedReader paginatedReader;
+    private final ParallelScanner parallelScanner;
+    private final BatchGetReader batchGetReader;
 
     public DynamoDBServiceImpl1() {
-        this.dynamoDB = DynamoDbClient.builder().build();
+        this(DynamoDbClient.builder().build());
+    }
+
+    public DynamoDBServiceImpl1(final DynamoDbClient dynamoDB) {
+        this.dynamoDB = dynamoDB;
+        this.paginatedReader = new PaginatedReader(dynamoDB);
+        this.parallelScanner = new ParallelScanner(dynamoDB);
+        this.batchGetReader = new BatchGetReader(dynamoDB);
     }
 
     @Override
@@ -33,93 +45,72 @@ public class DynamoDBServiceImpl1 implements DynamoDBService {
         key.put(request.getPartitionKey(), AttributeValue.builder().s(request.getPartitionKeyValue()).build());
         key.put(request.getSortKey(), AttributeValue.builder().n(request.getSortKeyValue()).build());
 
-        GetItemRequest getItemRequest = GetItemRequest.builder()
+        GetItemRequest getItemRequest = ExpressionCompiler.applyTo(GetItemRequest.builder()
                 .tableName(request.getTableName())
-                .key(key)
+                .key(key), request)
                 .build();
 
         GetItemResponse getItemResponse = dynamoDB.getItem(getItemRequest);
-        Map<String, AttributeValue> item = getItemResponse.item();
 
-        return new Response("PK of item read using get-item (V1): " + prepareKeyStr(item, request), null);
+        List<Map<String, Object>> items = new ArrayList<>();
+        if (getItemResponse.hasItem()) {
+            items.add(ItemMapper.toMap(getItemResponse.item()));
+        }
+
+        return new Response("Items read using get-item (V1): " + items.size(), null, null, items);
     }
 
     @Override
     public final Response query(final Request request) {
-        String keyConditionExpression = request.getPartitionKey() + "=:" + request.getPartitionKey();
-        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-        expressionAttributeValues.put(":" + request.getPartitionKey(),
-            AttributeValue.builder().s(request.getPartitionKeyValue()).build());
-
-        QueryRequest.Builder queryRequestBuilder = QueryRequest.builder()
-                .tableName(request.getTableName())
-                .keyConditionExpression(keyConditionExpression)
-                .expressionAttributeValues(expressionAttributeValues);
+        QueryResponse queryResponse = dynamoDB.query(buildQueryRequest(request).build());
 
-        if (request.getFilterData() != null) {
-            Map<String, String> filterExpressionMap = new HashMap<>();
-            processFilterData(request, filterExpressionMap, expressionAttributeValues);
-            queryRequestBuilder.filterExpression(String.join(" and ", filterExpressionMap.values()));
-        }
-
-        QueryResponse queryResponse = dynamoDB.query(queryRequestBuilder.build());
-
-        StringBuilder response = new StringBuilder();
-        response.append("PK of items read with query (V1): ");
+        List<Map<String, Object>> items = new ArrayList<>();
         for (Map<String, AttributeValue> item : queryResponse.items()) {
-            response.append(prepareKeyStr(item, request));
+            items.add(ItemMapper.toMap(item));
         }
 
-        return new Response(response.toString(), null);
+        return new Response("Items read with query (V1): " + items.size(), null, null, items);
     }
 
     @Override
     public final Response scan(final Request request) {
-        String projectionExpression = request.getPartitionKey() + ", " + request.getSortKey();
-
-        ScanRequest.Builder scanRequestBuilder = ScanRequest.builder()
-                .tableName(request.getTableName())
-                .projectionExpression(projectionExpression);
-
-        if (request.getFilterData() != null) {
-            Map<String, String> filterExpressionMap = new HashMap<>();
-            Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-            processFilterData(request, filterExpressionMap, expressionAttributeValues);
+        ScanResponse scanResponse = dynamoDB.scan(buildScanRequest(request).build());
 
-            scanRequestBuilder
-                .filterExpression(String.join(" and ", filterExpressionMap.values()))
-                .expressionAttributeValues(expressionAttributeValues);
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Map<String, AttributeValue> item : scanResponse.items()) {
+            items.add(ItemMapper.toMap(item));
         }
 
-        ScanResponse scanResponse = dynamoDB.scan(scanRequestBuilder.build());
+        return new Response("Items read with scan (V1): " + items.size(), null, null, items);
+    }
 
-        StringBuilder response = new StringBuilder();
-        response.append("PK of items read with scan (V2): ");
-        for (Map<String, AttributeValue> item : scanResponse.items()) {
-            response.append(prepareKeyStr(item, request));
-        }
+    @Override
+    public final Response queryPaginated(final Request request) {
+        return paginatedReader.query(buildQueryRequest(request), request, "Items read with paginated query (V1): ");
+    }
 
-        return new Response(response.toString(), null);
+    @Override
+    public final Response scanPaginated(final Request request) {
+        return paginatedReader.scan(buildScanRequest(request), request, "Items read with paginated scan (V1): ");
     }
 
-    private String prepareKeyStr(final Map<String, AttributeValue> item, final Request request) {
-        String partitionKeyValue = item.get(request.getPartitionKey()).s();
-        String sortKeyValue = item.get(request.getSortKey()).n();
-        return "(" + partitionKeyValue + ", " + sortKeyValue + ") ";
+    @Override
+    public final Response parallelScan(final Request request) {
+        return parallelScanner.scan(buildScanRequest(request), request, "Items read with parallel scan (V1): ");
     }
 
-    private void processFilterData(
-            final Request request,
-            final Map<String, String> filterExpressionMap,
-            final Map<String, AttributeValue> expressionAttributeValues) {
+    @Override
+    public final Response batchGetItems(final Request request) {
+        return batchGetReader.batchGet(request, "Items read using batch-get-item (V1): ");
+    }
 
-        request.getFilterData().forEach((key, value) -> {
-            String placeholder = ":" + key;
-            filterExpressionMap.put(key, key + "=" + placeholder);
+    private QueryRequest.Builder buildQueryRequest(final Request request) {
+        return ExpressionCompiler.applyTo(QueryRequest.builder()
+                .tableName(request.getTableName()), request);
+    }
 
-            // 假設所有過濾值都是字串類型，實際使用時可能需要根據值的類型進行調整
-            expressionAttributeValues.put(placeholder,
-                AttributeValue.builder().s(value.toString()).build());
-        });
+    private ScanRequest.Builder buildScanRequest(final Request request) {
+        return ExpressionCompiler.applyTo(ScanRequest.builder()
+                .tableName(request.getTableName()), request);
     }
 }
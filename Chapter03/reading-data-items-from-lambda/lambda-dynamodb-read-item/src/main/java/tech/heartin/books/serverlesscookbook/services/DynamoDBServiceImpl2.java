@@ -1,6 +1,9 @@
 package tech.heartin.books.serverlesscookbook.services;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -22,9 +25,19 @@ import tech.heartin.books.serverlesscookbook.domain.Response;
 public class DynamoDBServiceImpl2 implements DynamoDBService {
 
     private final DynamoDbClient dynamoDbClient;
+    private final PaginatedReader paginatedReader;
+    private final ParallelScanner parallelScanner;
+    private final BatchGetReader batchGetReader;
 
     public DynamoDBServiceImpl2() {
-        this.dynamoDbClient = DynamoDbClient.create();
+        this(DynamoDbClient.create());
+    }
+
+    public DynamoDBServiceImpl2(final DynamoDbClient dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.paginatedReader = new PaginatedReader(dynamoDbClient);
+        this.parallelScanner = new ParallelScanner(dynamoDbClient);
+        this.batchGetReader = new BatchGetReader(dynamoDbClient);
     }
 
     @Override
@@ -35,92 +48,65 @@ public class DynamoDBServiceImpl2 implements DynamoDBService {
         primaryKey.put(request.getSortKey(),
             AttributeValue.builder().n(request.getSortKeyValue()).build());
 
-        final GetItemResponse getItemResult = dynamoDbClient.getItem(GetItemRequest.builder()
-                .tableName(request.getTableName())
-                .key(primaryKey)
+        final GetItemResponse getItemResult = dynamoDbClient.getItem(ExpressionCompiler.applyTo(
+                GetItemRequest.builder()
+                        .tableName(request.getTableName())
+                        .key(primaryKey), request)
                 .build());
 
-        return new Response("PK of Item read using get-item (V2): "
-                + prepareKeyStr(getItemResult.item(), request), null);
+        final List<Map<String, Object>> items = getItemResult.hasItem()
+                ? Collections.singletonList(ItemMapper.toMap(getItemResult.item()))
+                : Collections.emptyList();
+        return new Response("Items read using get-item (V2): " + items.size(), null, null, items);
     }
 
     @Override
     public final Response query(final Request request) {
-        final Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-        expressionAttributeValues.put(":" + request.getPartitionKey(),
-                AttributeValue.builder().s(request.getPartitionKeyValue()).build());
+        final QueryResponse queryResult = dynamoDbClient.query(buildQueryRequest(request).build());
 
-        final String keyConditionExpression = request.getPartitionKey() + "=:" + request.getPartitionKey();
+        final List<Map<String, Object>> items = new ArrayList<>();
+        queryResult.items().forEach(item -> items.add(ItemMapper.toMap(item)));
+
+        return new Response("Items read with query (V2): " + items.size(), null, null, items);
+    }
+
+    @Override
+    public final Response scan(final Request request) {
+        final ScanResponse scanResult = dynamoDbClient.scan(buildScanRequest(request).build());
 
-        QueryRequest.Builder queryRequestBuilder = QueryRequest.builder()
-                .tableName(request.getTableName())
-                .keyConditionExpression(keyConditionExpression)
-                .expressionAttributeValues(expressionAttributeValues);
+        final List<Map<String, Object>> items = new ArrayList<>();
+        scanResult.items().forEach(item -> items.add(ItemMapper.toMap(item)));
 
-        if (request.getFilterData() != null) {
-            StringBuilder filterExpressionBuilder = new StringBuilder();
-            processFilterData(request, filterExpressionBuilder, expressionAttributeValues);
-            queryRequestBuilder.filterExpression(filterExpressionBuilder.toString());
-        }
+        return new Response("Items read with scan (V2): " + items.size(), null, null, items);
+    }
 
-        final QueryResponse queryResult = dynamoDbClient.query(queryRequestBuilder.build());
+    @Override
+    public final Response queryPaginated(final Request request) {
+        return paginatedReader.query(buildQueryRequest(request), request, "Items read with paginated query (V2): ");
+    }
 
-        final StringBuilder response = new StringBuilder();
-        response.append("PK of items read with query (V2): ");
-        for (Map<String, AttributeValue> item : queryResult.items()) {
-            response.append(prepareKeyStr(item, request));
-        }
+    @Override
+    public final Response scanPaginated(final Request request) {
+        return paginatedReader.scan(buildScanRequest(request), request, "Items read with paginated scan (V2): ");
+    }
 
-        return new Response(response.toString(), null);
+    @Override
+    public final Response parallelScan(final Request request) {
+        return parallelScanner.scan(buildScanRequest(request), request, "Items read with parallel scan (V2): ");
     }
 
     @Override
-    public final Response scan(final Request request) {
-        final String projectionExpression = request.getPartitionKey() + ", " + request.getSortKey();
-
-        ScanRequest.Builder scanRequestBuilder = ScanRequest.builder()
-                .tableName(request.getTableName())
-                .projectionExpression(projectionExpression);
-
-        if (request.getFilterData() != null) {
-            StringBuilder filterExpressionBuilder = new StringBuilder();
-            Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-            processFilterData(request, filterExpressionBuilder, expressionAttributeValues);
-            scanRequestBuilder
-                .filterExpression(filterExpressionBuilder.toString())
-                .expressionAttributeValues(expressionAttributeValues);
-        }
-
-        final ScanResponse scanResult = dynamoDbClient.scan(scanRequestBuilder.build());
-
-        final StringBuilder response = new StringBuilder();
-        response.append("PK of items read with scan (V2): ");
-        for (Map<String, AttributeValue> item : scanResult.items()) {
-            response.append(prepareKeyStr(item, request));
-        }
-
-        return new Response(response.toString(), null);
+    public final Response batchGetItems(final Request request) {
+        return batchGetReader.batchGet(request, "Items read using batch-get-item (V2): ");
     }
 
-    private String prepareKeyStr(final Map<String, AttributeValue> item, final Request request) {
-        return "(" + item.get(request.getPartitionKey()) + ", " + item.get(request.getSortKey()) + ") ";
+    private QueryRequest.Builder buildQueryRequest(final Request request) {
+        return ExpressionCompiler.applyTo(QueryRequest.builder()
+                .tableName(request.getTableName()), request);
     }
 
-    private void processFilterData(final Request request,
-            final StringBuilder filterExpressionBuilder,
-            final Map<String, AttributeValue> expressionAttributeValues) {
-
-        if (request.getFilterData() == null) {
-            return;
-        }
-
-        request.getFilterData().forEach((k, v) -> {
-            final String var = ":" + k;
-            if (!filterExpressionBuilder.toString().isEmpty()) {
-                filterExpressionBuilder.append(" and ");
-            }
-            filterExpressionBuilder.append(k + "=" + var);
-            expressionAttributeValues.put(var, AttributeValue.builder().s(v).build());
-        });
+    private ScanRequest.Builder buildScanRequest(final Request request) {
+        return ExpressionCompiler.applyTo(ScanRequest.builder()
+                .tableName(request.getTableName()), request);
     }
 }
@@ -0,0 +1,376 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+/**
+ * Implementation of DynamoDBService that uses the non-blocking DynamoDbAsyncClient (SDK v2).<br/>
+ * Calls are composed as CompletableFutures, so batch chunks, scan segments and the next page of a
+ * paginated read are in flight at the same time without holding a thread per request.<br/>
+ * https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/asynchronous.html
+ */
+public class DynamoDBServiceImpl3 implements DynamoDBService {
+
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    public DynamoDBServiceImpl3() {
+        this(DynamoDbAsyncClient.create());
+    }
+
+    public DynamoDBServiceImpl3(final DynamoDbAsyncClient dynamoDbAsyncClient) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+    }
+
+    @Override
+    public final Response getItem(final Request request) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put(request.getPartitionKey(), AttributeValue.builder().s(request.getPartitionKeyValue()).build());
+        key.put(request.getSortKey(), AttributeValue.builder().n(request.getSortKeyValue()).build());
+
+        return await(dynamoDbAsyncClient.getItem(ExpressionCompiler.applyTo(GetItemRequest.builder()
+                        .tableName(request.getTableName())
+                        .key(key), request)
+                        .build())
+                .thenApply(getItemResponse -> {
+                    final List<Map<String, Object>> items = new ArrayList<>();
+                    if (getItemResponse.hasItem()) {
+                        items.add(ItemMapper.toMap(getItemResponse.item()));
+                    }
+                    return new Response("Items read using get-item (V3): " + items.size(), null, null, items);
+                }));
+    }
+
+    @Override
+    public final Response query(final Request request) {
+        return await(dynamoDbAsyncClient.query(buildQueryRequest(request).build())
+                .thenApply(queryResponse -> {
+                    final List<Map<String, Object>> items = new ArrayList<>();
+                    queryResponse.items().forEach(item -> items.add(ItemMapper.toMap(item)));
+                    return new Response("Items read with query (V3): " + items.size(), null, null, items);
+                }));
+    }
+
+    @Override
+    public final Response scan(final Request request) {
+        return await(dynamoDbAsyncClient.scan(buildScanRequest(request).build())
+                .thenApply(scanResponse -> {
+                    final List<Map<String, Object>> items = new ArrayList<>();
+                    scanResponse.items().forEach(item -> items.add(ItemMapper.toMap(item)));
+                    return new Response("Items read with scan (V3): " + items.size(), null, null, items);
+                }));
+    }
+
+    @Override
+    public final Response queryPaginated(final Request request) {
+        final Map<String, AttributeValue> startKey = ContinuationToken.decode(request.getContinuationToken());
+        final QueryRequest queryRequest = buildQueryRequest(request).limit(PaginatedReader.pageSize(request)).build();
+
+        return readPages(key -> dynamoDbAsyncClient.query(queryRequest.toBuilder().exclusiveStartKey(key).build())
+                        .thenApply(r -> new Page(r.items(), r.hasLastEvaluatedKey() ? r.lastEvaluatedKey() : null)),
+                startKey, request, "Items read with paginated query (V3): ");
+    }
+
+    @Override
+    public final Response scanPaginated(final Request request) {
+        final Map<String, AttributeValue> startKey = ContinuationToken.decode(request.getContinuationToken());
+        final ScanRequest scanRequest = buildScanRequest(request).limit(PaginatedReader.pageSize(request)).build();
+
+        return readPages(key -> dynamoDbAsyncClient.scan(scanRequest.toBuilder().exclusiveStartKey(key).build())
+                        .thenApply(r -> new Page(r.items(), r.hasLastEvaluatedKey() ? r.lastEvaluatedKey() : null)),
+                startKey, request, "Items read with paginated scan (V3): ");
+    }
+
+    @Override
+    public final Response parallelScan(final Request request) {
+        final List<Map<String, AttributeValue>> startKeys = ParallelScanner.startKeys(request);
+        final int totalSegments = startKeys.size();
+        final ScanRequest.Builder scanRequestBuilder = buildScanRequest(request);
+        if (request.getPageSize() != null && request.getPageSize() > 0) {
+            scanRequestBuilder.limit(request.getPageSize());
+        }
+
+        final List<Integer> segmentsToRead = new ArrayList<>();
+        for (int segment = 0; segment < totalSegments; segment++) {
+            if (startKeys.get(segment) != ContinuationToken.SEGMENT_DONE) {
+                segmentsToRead.add(segment);
+            }
+        }
+
+        // Each lane takes the next unclaimed segment when its previous one completes, so no more scans
+        // are in flight than the client has connections, whatever the number of segments.
+        final SegmentScan scan = new SegmentScan(scanRequestBuilder.build(), startKeys, segmentsToRead,
+                PaginatedReader.itemLimit(request), request);
+        final int lanes = Math.min(DynamoDBServiceFactory.MAX_CONNECTIONS, Math.max(1, segmentsToRead.size()));
+        final List<CompletableFuture<Void>> segments = new ArrayList<>(lanes);
+        for (int lane = 0; lane < lanes; lane++) {
+            segments.add(scan.nextSegment());
+        }
+
+        try {
+            await(CompletableFuture.allOf(segments.toArray(new CompletableFuture[0])));
+        } catch (RuntimeException e) {
+            return new Response(null, "Error during parallel scan with " + totalSegments + " segments: "
+                    + e.getMessage());
+        }
+
+        final List<Map<String, Object>> items = new ArrayList<>();
+        scan.items.forEach(item -> items.add(ItemMapper.toMap(item)));
+        final List<Map<String, AttributeValue>> resumeKeys = new ArrayList<>(totalSegments);
+        for (int segment = 0; segment < totalSegments; segment++) {
+            resumeKeys.add(scan.resumeKeys.get(segment));
+        }
+        return new Response("Items read with parallel scan (V3): " + items.size() + ". Segments: " + totalSegments
+                + ", throttled requests retried: " + scan.throttled.get(), null,
+                ContinuationToken.encodeSegments(resumeKeys), items);
+    }
+
+    @Override
+    public final Response batchGetItems(final Request request) {
+        final List<CompletableFuture<BatchGetReader.ChunkResult>> chunks = new ArrayList<>();
+        for (List<Map<String, AttributeValue>> keys : BatchGetReader.toKeyChunks(request)) {
+            chunks.add(getChunk(request.getTableName(),
+                    Collections.singletonMap(request.getTableName(), BatchGetReader.toKeysAndAttributes(keys, request)),
+                    new ArrayList<>(), 0));
+        }
+
+        try {
+            await(CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])));
+        } catch (RuntimeException e) {
+            return new Response(null, "Error during batch get: " + e.getMessage());
+        }
+
+        final List<Map<String, Object>> items = new ArrayList<>();
+        int unprocessed = 0;
+        for (CompletableFuture<BatchGetReader.ChunkResult> chunk : chunks) {
+            final BatchGetReader.ChunkResult result = chunk.join();
+            result.getItems().forEach(item -> items.add(ItemMapper.toMap(item)));
+            unprocessed += result.getUnprocessed();
+        }
+        return new Response("Items read using batch-get-item (V3): " + items.size()
+                + (unprocessed > 0 ? ". Unprocessed keys after retries: " + unprocessed : ""), null, null, items);
+    }
+
+    private CompletableFuture<BatchGetReader.ChunkResult> getChunk(final String tableName,
+            final Map<String, KeysAndAttributes> requestItems,
+            final List<Map<String, AttributeValue>> items,
+            final int attempt) {
+
+        return dynamoDbAsyncClient.batchGetItem(BatchGetItemRequest.builder().requestItems(requestItems).build())
+                .thenCompose(response -> {
+                    final List<Map<String, AttributeValue>> read = response.responses().get(tableName);
+                    if (read != null) {
+                        items.addAll(read);
+                    }
+
+                    final Map<String, KeysAndAttributes> unprocessed = response.unprocessedKeys();
+                    if (unprocessed == null || unprocessed.isEmpty()) {
+                        return CompletableFuture.completedFuture(new BatchGetReader.ChunkResult(items, 0));
+                    }
+                    if (attempt + 1 > BatchGetReader.MAX_RETRIES) {
+                        return CompletableFuture.completedFuture(new BatchGetReader.ChunkResult(items,
+                                unprocessed.get(tableName).keys().size()));
+                    }
+                    return delay(attempt + 1, () -> getChunk(tableName, unprocessed, items, attempt + 1));
+                });
+    }
+
+    /**
+     * Read pages until the item limit, requesting the next page before converting the current one.
+     */
+    private Response readPages(final Function<Map<String, AttributeValue>, CompletableFuture<Page>> fetch,
+            final Map<String, AttributeValue> startKey, final Request request, final String description) {
+
+        final int itemLimit = PaginatedReader.itemLimit(request);
+        final List<Map<String, Object>> items = new ArrayList<>();
+        CompletableFuture<Page> next = fetch.apply(startKey);
+
+        while (next != null) {
+            final Page page = await(next);
+            next = page.lastEvaluatedKey != null && items.size() + page.items.size() < itemLimit
+                    ? fetch.apply(page.lastEvaluatedKey) : null;
+
+            for (int i = 0; i < page.items.size(); i++) {
+                items.add(ItemMapper.toMap(page.items.get(i)));
+
+                if (items.size() >= itemLimit) {
+                    final boolean hasMore = i < page.items.size() - 1 || page.lastEvaluatedKey != null;
+                    final String token = hasMore
+                            ? ContinuationToken.encode(PaginatedReader.keyOf(page.items.get(i), request)) : null;
+                    return new Response(description + items.size(), null, token, items);
+                }
+            }
+        }
+
+        return new Response(description + items.size(), null, null, items);
+    }
+
+    private QueryRequest.Builder buildQueryRequest(final Request request) {
+        return ExpressionCompiler.applyTo(QueryRequest.builder()
+                .tableName(request.getTableName()), request);
+    }
+
+    private ScanRequest.Builder buildScanRequest(final Request request) {
+        return ExpressionCompiler.applyTo(ScanRequest.builder()
+                .tableName(request.getTableName()), request);
+    }
+
+    /**
+     * Run the next step after a jittered backoff, without blocking a thread while waiting.
+     */
+    private static <T> CompletableFuture<T> delay(final int attempt, final Supplier<CompletableFuture<T>> step) {
+        return CompletableFuture.runAsync(() -> { },
+                        CompletableFuture.delayedExecutor(Backoff.fullJitterMillis(attempt), TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> step.get());
+    }
+
+    /**
+     * Wait for the result and rethrow the original runtime exception, if any.
+     */
+    private static <T> T await(final CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Interrupted while waiting for DynamoDB", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static Throwable unwrap(final Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * One page of a query or scan.
+     */
+    private static final class Page {
+        private final List<Map<String, AttributeValue>> items;
+        private final Map<String, AttributeValue> lastEvaluatedKey;
+
+        Page(final List<Map<String, AttributeValue>> items, final Map<String, AttributeValue> lastEvaluatedKey) {
+            this.items = items;
+            this.lastEvaluatedKey = lastEvaluatedKey;
+        }
+    }
+
+    /**
+     * State shared by the segments of one parallel scan. Each segment chains its next page onto the
+     * completion of the previous one, and all segments stop once the item limit has been collected,
+     * leaving the start key of each segment after its last collected item in resumeKeys.
+     */
+    private final class SegmentScan {
+        private final ScanRequest scanRequest;
+        private final int totalSegments;
+        private final List<Integer> segmentsToRead;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final int itemLimit;
+        private final Request request;
+        private final Queue<Map<String, AttributeValue>> items = new ConcurrentLinkedQueue<>();
+        private final AtomicReferenceArray<Map<String, AttributeValue>> resumeKeys;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger throttled = new AtomicInteger();
+
+        SegmentScan(final ScanRequest scanRequest, final List<Map<String, AttributeValue>> startKeys,
+                final List<Integer> segmentsToRead, final int itemLimit, final Request request) {
+            this.scanRequest = scanRequest;
+            this.totalSegments = startKeys.size();
+            this.segmentsToRead = segmentsToRead;
+            this.itemLimit = itemLimit;
+            this.request = request;
+            this.resumeKeys = new AtomicReferenceArray<>(totalSegments);
+            for (int segment = 0; segment < totalSegments; segment++) {
+                resumeKeys.set(segment, startKeys.get(segment));
+            }
+        }
+
+        /**
+         * Read the next unclaimed segment, then the one after, until none is left or the item limit is reached.
+         */
+        CompletableFuture<Void> nextSegment() {
+            final int index = nextIndex.getAndIncrement();
+            if (index >= segmentsToRead.size() || count.get() >= itemLimit) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            final int segment = segmentsToRead.get(index);
+            return next(segment, resumeKeys.get(segment), 0).thenCompose(ignored -> nextSegment());
+        }
+
+        CompletableFuture<Void> next(final int segment, final Map<String, AttributeValue> startKey,
+                final int attempt) {
+            if (count.get() >= itemLimit) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return dynamoDbAsyncClient.scan(scanRequest.toBuilder()
+                            .segment(segment)
+                            .totalSegments(totalSegments)
+                            .exclusiveStartKey(startKey)
+                            .build())
+                    .handle((page, error) -> {
+                        if (error != null) {
+                            final Throwable cause = unwrap(error);
+                            if (cause instanceof ProvisionedThroughputExceededException && request.isAdaptiveBackoff()
+                                    && attempt < ParallelScanner.MAX_THROTTLE_RETRIES) {
+                                throttled.incrementAndGet();
+                                return delay(attempt + 1, () -> next(segment, startKey, attempt + 1));
+                            }
+                            final CompletableFuture<Void> failed = new CompletableFuture<>();
+                            failed.completeExceptionally(cause);
+                            return failed;
+                        }
+
+                        for (Map<String, AttributeValue> item : page.items()) {
+                            if (count.getAndIncrement() >= itemLimit) {
+                                return CompletableFuture.<Void>completedFuture(null);
+                            }
+                            items.add(item);
+                            resumeKeys.set(segment, PaginatedReader.keyOf(item, request));
+                        }
+
+                        if (!page.hasLastEvaluatedKey()) {
+                            resumeKeys.set(segment, ContinuationToken.SEGMENT_DONE);
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+                        return next(segment, page.lastEvaluatedKey(), 0);
+                    })
+                    .thenCompose(Function.identity());
+        }
+    }
+}
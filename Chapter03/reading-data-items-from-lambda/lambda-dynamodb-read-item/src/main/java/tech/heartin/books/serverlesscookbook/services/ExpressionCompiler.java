@@ -0,0 +1,378 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import tech.heartin.books.serverlesscookbook.domain.Filter;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+
+/**
+ * Compiles the filters and projection of a request into key condition, filter and projection expressions.<br/>
+ * Attribute names always go through ExpressionAttributeNames, so reserved words work, and values
+ * keep their declared type. The expression text depends only on the shape of the request (attributes,
+ * operators, value counts and projection), so it is built once per shape and cached; later requests of
+ * the same shape only bind their values. On query, the condition on the sort key becomes part of the key
+ * condition, so DynamoDB reads only the matching items instead of filtering them afterwards; a GE and an LE
+ * bound are merged into one BETWEEN, and other conditions on key attributes are rejected.
+ * Without a projection only the key attributes are read; a projection of "*" reads whole items.
+ */
+final class ExpressionCompiler {
+
+    private static final int MAX_TEMPLATES = 256;
+    private static final int MAX_IN_VALUES = 100;
+    private static final char SHAPE_SEPARATOR = '\u0000';
+    private static final String ALL_ATTRIBUTES = "*";
+
+    private static final Set<Filter.Operator> KEY_CONDITION_OPERATORS = EnumSet.of(Filter.Operator.EQ,
+            Filter.Operator.LT, Filter.Operator.LE, Filter.Operator.GT, Filter.Operator.GE,
+            Filter.Operator.BETWEEN, Filter.Operator.BEGINS_WITH);
+
+    private static final Map<String, Template> TEMPLATES = new ConcurrentHashMap<>();
+
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * Key condition on the partition key (and sort key range, if any) plus the remaining filters.
+     */
+    static QueryRequest.Builder applyTo(final QueryRequest.Builder builder, final Request request) {
+        final Compiled compiled = compile(request, Mode.QUERY);
+        builder.keyConditionExpression(compiled.template.keyCondition)
+                .expressionAttributeNames(compiled.template.names)
+                .expressionAttributeValues(compiled.values)
+                .filterExpression(compiled.template.filter)
+                .projectionExpression(compiled.template.projection);
+        return builder;
+    }
+
+    /**
+     * All filters as a filter expression, plus the projection.
+     */
+    static ScanRequest.Builder applyTo(final ScanRequest.Builder builder, final Request request) {
+        final Compiled compiled = compile(request, Mode.SCAN);
+        builder.filterExpression(compiled.template.filter)
+                .projectionExpression(compiled.template.projection);
+        if (!compiled.template.names.isEmpty()) {
+            builder.expressionAttributeNames(compiled.template.names);
+        }
+        if (!compiled.values.isEmpty()) {
+            builder.expressionAttributeValues(compiled.values);
+        }
+        return builder;
+    }
+
+    /**
+     * Projection only; filters do not apply to reads by key.
+     */
+    static GetItemRequest.Builder applyTo(final GetItemRequest.Builder builder, final Request request) {
+        final Template template = compile(request, Mode.GET).template;
+        if (template.projection != null) {
+            builder.projectionExpression(template.projection)
+                    .expressionAttributeNames(template.names);
+        }
+        return builder;
+    }
+
+    /**
+     * Projection only; filters do not apply to reads by key.
+     */
+    static KeysAndAttributes.Builder applyTo(final KeysAndAttributes.Builder builder, final Request request) {
+        final Template template = compile(request, Mode.GET).template;
+        if (template.projection != null) {
+            builder.projectionExpression(template.projection)
+                    .expressionAttributeNames(template.names);
+        }
+        return builder;
+    }
+
+    static int templateCount() {
+        return TEMPLATES.size();
+    }
+
+    private static Compiled compile(final Request request, final Mode mode) {
+        final List<Filter> filters = mode == Mode.GET ? Collections.emptyList() : filtersOf(request);
+        final List<String> projection = projectionOf(request);
+
+        final StringBuilder shape = new StringBuilder()
+                .append(mode).append(SHAPE_SEPARATOR)
+                .append(request.getPartitionKey()).append(SHAPE_SEPARATOR)
+                .append(request.getSortKey()).append(SHAPE_SEPARATOR)
+                .append(projection);
+        for (Filter filter : filters) {
+            validate(filter);
+            shape.append(SHAPE_SEPARATOR).append(filter.getAttribute())
+                    .append(SHAPE_SEPARATOR).append(filter.getOperator())
+                    .append(SHAPE_SEPARATOR).append(filter.getValues().size());
+        }
+
+        Template template = TEMPLATES.get(shape.toString());
+        if (template == null) {
+            if (TEMPLATES.size() >= MAX_TEMPLATES) {
+                TEMPLATES.clear();
+            }
+            template = Template.build(request, filters, projection, mode == Mode.QUERY);
+            TEMPLATES.put(shape.toString(), template);
+        }
+
+        final Map<String, AttributeValue> values = new HashMap<>();
+        if (mode == Mode.QUERY) {
+            values.put(Template.PARTITION_KEY_VALUE,
+                    AttributeValue.builder().s(request.getPartitionKeyValue()).build());
+        }
+        int placeholder = 0;
+        for (Filter filter : filters) {
+            for (String value : filter.getValues()) {
+                values.put(":v" + placeholder++, toAttributeValue(filter, value));
+            }
+        }
+        return new Compiled(template, values);
+    }
+
+    /**
+     * Typed filters followed by the string equality filters of filterData.
+     */
+    private static List<Filter> filtersOf(final Request request) {
+        final List<Filter> filters = new ArrayList<>();
+        if (request.getFilters() != null) {
+            filters.addAll(request.getFilters());
+        }
+        if (request.getFilterData() != null) {
+            request.getFilterData().forEach((attribute, value) -> filters.add(new Filter(attribute,
+                    Filter.Operator.EQ, Filter.Type.S, Collections.singletonList(value))));
+        }
+        return filters;
+    }
+
+    /**
+     * Attributes to read, always including the key attributes, or null for whole items.
+     */
+    private static List<String> projectionOf(final Request request) {
+        final List<String> requested = request.getProjection();
+        if (requested != null && requested.contains(ALL_ATTRIBUTES)) {
+            return null;
+        }
+
+        final Set<String> attributes = new LinkedHashSet<>();
+        attributes.add(request.getPartitionKey());
+        if (request.getSortKey() != null) {
+            attributes.add(request.getSortKey());
+        }
+        if (requested != null) {
+            attributes.addAll(requested);
+        }
+        return new ArrayList<>(attributes);
+    }
+
+    private static void validate(final Filter filter) {
+        if (filter.getAttribute() == null || filter.getAttribute().isEmpty()) {
+            throw new IllegalArgumentException("Filter attribute is required");
+        }
+        if (filter.getOperator() == null) {
+            throw new IllegalArgumentException("Filter operator is required for " + filter.getAttribute());
+        }
+
+        final int count = filter.getValues() == null ? 0 : filter.getValues().size();
+        final boolean valid;
+        switch (filter.getOperator()) {
+            case BETWEEN:
+                valid = count == 2;
+                break;
+            case IN:
+                valid = count >= 1 && count <= MAX_IN_VALUES;
+                break;
+            default:
+                valid = count == 1;
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Wrong number of values for " + filter.getOperator()
+                    + " on " + filter.getAttribute() + ": " + count);
+        }
+        if (filter.getOperator() == Filter.Operator.BEGINS_WITH
+                && filter.getType() != null && filter.getType() != Filter.Type.S) {
+            throw new IllegalArgumentException("BEGINS_WITH needs a string value on " + filter.getAttribute());
+        }
+    }
+
+    private static AttributeValue toAttributeValue(final Filter filter, final String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null filter value on " + filter.getAttribute());
+        }
+
+        final Filter.Type type = filter.getType() == null ? Filter.Type.S : filter.getType();
+        switch (type) {
+            case N:
+                try {
+                    new BigDecimal(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number for " + filter.getAttribute() + ": " + value);
+                }
+                return AttributeValue.builder().n(value).build();
+            case BOOL:
+                if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                    throw new IllegalArgumentException("Not a boolean for " + filter.getAttribute() + ": " + value);
+                }
+                return AttributeValue.builder().bool(Boolean.parseBoolean(value)).build();
+            default:
+                return AttributeValue.builder().s(value).build();
+        }
+    }
+
+    /**
+     * Expression text and attribute names for one request shape. Value placeholders are numbered
+     * :v0, :v1, ... in the order of the filters and their values.
+     */
+    private static final class Template {
+        static final String PARTITION_KEY_VALUE = ":pk";
+
+        private final String keyCondition;
+        private final String filter;
+        private final String projection;
+        private final Map<String, String> names;
+
+        private Template(final String keyCondition, final String filter, final String projection,
+                final Map<String, String> names) {
+            this.keyCondition = keyCondition;
+            this.filter = filter;
+            this.projection = projection;
+            this.names = names;
+        }
+
+        static Template build(final Request request, final List<Filter> filters, final List<String> projection,
+                final boolean query) {
+            final Map<String, String> placeholders = new LinkedHashMap<>();
+            final List<String> keyConditions = new ArrayList<>();
+            final List<String> conditions = new ArrayList<>();
+
+            if (query) {
+                keyConditions.add(nameOf(request.getPartitionKey(), placeholders) + " = " + PARTITION_KEY_VALUE);
+            }
+
+            final List<Filter> sortKeyFilters = new ArrayList<>();
+            final List<List<String>> sortKeyValues = new ArrayList<>();
+            int placeholder = 0;
+            for (Filter filter : filters) {
+                final List<String> values = new ArrayList<>();
+                for (int i = 0; i < filter.getValues().size(); i++) {
+                    values.add(":v" + placeholder++);
+                }
+                final String name = nameOf(filter.getAttribute(), placeholders);
+
+                // A filter expression cannot reference key attributes, so on query they only go in the key condition.
+                if (query && filter.getAttribute().equals(request.getPartitionKey())) {
+                    throw new IllegalArgumentException("Query cannot filter on the partition key "
+                            + filter.getAttribute());
+                }
+                if (query && filter.getAttribute().equals(request.getSortKey())) {
+                    sortKeyFilters.add(filter);
+                    sortKeyValues.add(values);
+                } else {
+                    conditions.add(condition(name, filter.getOperator(), values));
+                }
+            }
+            if (!sortKeyFilters.isEmpty()) {
+                keyConditions.add(sortKeyCondition(request.getSortKey(), nameOf(request.getSortKey(), placeholders),
+                        sortKeyFilters, sortKeyValues));
+            }
+
+            final List<String> projectionNames = new ArrayList<>();
+            if (projection != null) {
+                projection.forEach(attribute -> projectionNames.add(nameOf(attribute, placeholders)));
+            }
+
+            final Map<String, String> names = new HashMap<>();
+            placeholders.forEach((attribute, name) -> names.put(name, attribute));
+            return new Template(
+                    keyConditions.isEmpty() ? null : String.join(" AND ", keyConditions),
+                    conditions.isEmpty() ? null : String.join(" AND ", conditions),
+                    projection == null ? null : String.join(", ", projectionNames),
+                    Collections.unmodifiableMap(names));
+        }
+
+        /**
+         * Single key condition for the sort key filters of a query: one EQ, BETWEEN, BEGINS_WITH or range
+         * condition, or a GE and an LE bound, which become one BETWEEN.
+         */
+        private static String sortKeyCondition(final String sortKey, final String name, final List<Filter> filters,
+                final List<List<String>> values) {
+            final Filter.Operator first = filters.get(0).getOperator();
+            if (filters.size() == 1 && KEY_CONDITION_OPERATORS.contains(first)) {
+                return condition(name, first, values.get(0));
+            }
+            if (filters.size() == 2) {
+                final int lower = first == Filter.Operator.GE ? 0 : 1;
+                if (filters.get(lower).getOperator() == Filter.Operator.GE
+                        && filters.get(1 - lower).getOperator() == Filter.Operator.LE) {
+                    return name + " BETWEEN " + values.get(lower).get(0) + " AND " + values.get(1 - lower).get(0);
+                }
+            }
+
+            final List<Filter.Operator> operators = new ArrayList<>();
+            filters.forEach(filter -> operators.add(filter.getOperator()));
+            throw new IllegalArgumentException("Query takes one EQ, LT, LE, GT, GE, BETWEEN or BEGINS_WITH "
+                    + "condition on the sort key " + sortKey + ", or GE and LE together: " + operators);
+        }
+
+        private static String nameOf(final String attribute, final Map<String, String> placeholders) {
+            return placeholders.computeIfAbsent(attribute, a -> "#a" + placeholders.size());
+        }
+
+        private static String condition(final String name, final Filter.Operator operator,
+                final List<String> values) {
+            switch (operator) {
+                case NE:
+                    return name + " <> " + values.get(0);
+                case LT:
+                    return name + " < " + values.get(0);
+                case LE:
+                    return name + " <= " + values.get(0);
+                case GT:
+                    return name + " > " + values.get(0);
+                case GE:
+                    return name + " >= " + values.get(0);
+                case BETWEEN:
+                    return name + " BETWEEN " + values.get(0) + " AND " + values.get(1);
+                case BEGINS_WITH:
+                    return "begins_with(" + name + ", " + values.get(0) + ")";
+                case IN:
+                    return name + " IN (" + String.join(", ", values) + ")";
+                default:
+                    return name + " = " + values.get(0);
+            }
+        }
+    }
+
+    /**
+     * Kind of read the expressions are compiled for.
+     */
+    private enum Mode {
+        QUERY, SCAN, GET
+    }
+
+    /**
+     * Cached template with the values bound for one request.
+     */
+    private static final class Compiled {
+        private final Template template;
+        private final Map<String, AttributeValue> values;
+
+        Compiled(final Template template, final Map<String, AttributeValue> values) {
+            this.template = template;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+/**
+ * Approximate access frequency of keys, used by {@link ItemCache} to decide admission.<br/>
+ * A count-min sketch of 4-bit counters, sixteen per long, that halves all counters once the
+ * number of increments reaches ten times the cache size, so old popularity fades over time.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final long COUNTER_MASK = 0xfL;
+    private static final int MIN_TABLE_SIZE = 16;
+    private static final int SAMPLE_FACTOR = 10;
+    private static final int SPREAD_MULTIPLIER = 0x45d9f3b;
+    private static final int HALF_INT_BITS = 16;
+    private static final int HALF_LONG_BITS = 32;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(final int maximumSize) {
+        final int capacity = Integer.highestOneBit(Math.max(maximumSize, MIN_TABLE_SIZE) - 1) << 1;
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = SAMPLE_FACTOR * Math.max(maximumSize, 1);
+    }
+
+    /**
+     * Estimated number of recent accesses of the key, at most 15.
+     */
+    int frequency(final Object key) {
+        final int hash = spread(key.hashCode());
+        final int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final int index = indexOf(hash, i);
+            final int count = (int) ((table[index] >>> ((start + i) << 2)) & COUNTER_MASK);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Record one access of the key.
+     */
+    void increment(final Object key) {
+        final int hash = spread(key.hashCode());
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(final int index, final int counter) {
+        final int offset = counter << 2;
+        final long mask = COUNTER_MASK << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(final int hash, final int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> HALF_LONG_BITS;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(final int hashCode) {
+        int x = ((hashCode >>> HALF_INT_BITS) ^ hashCode) * SPREAD_MULTIPLIER;
+        x = ((x >>> HALF_INT_BITS) ^ x) * SPREAD_MULTIPLIER;
+        return (x >>> HALF_INT_BITS) ^ x;
+    }
+}
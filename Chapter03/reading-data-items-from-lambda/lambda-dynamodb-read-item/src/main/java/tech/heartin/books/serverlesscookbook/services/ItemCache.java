@@ -0,0 +1,236 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+/**
+ * Size, weight and TTL bounded cache of getItem responses with W-TinyLFU style eviction.<br/>
+ * New entries land in a small LRU window. When the window overflows, its oldest entry is admitted
+ * to the main segmented LRU only if the {@link FrequencySketch} has seen it more often than the
+ * entry it would evict, so a burst of one-off reads cannot flush the hot keys.
+ */
+final class ItemCache {
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+    private static final int PERCENT = 100;
+    // Rough per-entry cost of the map node, entry and Response objects.
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+    private static final long VALUE_OVERHEAD_BYTES = 32;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final int maxWindow;
+    private final int maxProtected;
+    private final LongSupplier ticker;
+    private final FrequencySketch sketch;
+
+    private final LinkedHashMap<String, Entry> window = newSegment();
+    private final LinkedHashMap<String, Entry> probation = newSegment();
+    private final LinkedHashMap<String, Entry> protectedSegment = newSegment();
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    ItemCache(final long ttlNanos, final int maxEntries, final long maxWeight, final LongSupplier ticker) {
+        this.ttlNanos = ttlNanos;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxWeight = maxWeight;
+        this.maxWindow = Math.max(1, this.maxEntries * WINDOW_PERCENT / PERCENT);
+        this.maxProtected = (this.maxEntries - this.maxWindow) * PROTECTED_PERCENT / PERCENT;
+        this.ticker = ticker;
+        this.sketch = new FrequencySketch(this.maxEntries);
+    }
+
+    /**
+     * Cached response for the key, or null if absent or expired.
+     */
+    synchronized Response get(final String key) {
+        sketch.increment(key);
+
+        boolean promote = false;
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = protectedSegment.get(key);
+        }
+        if (entry == null) {
+            entry = probation.get(key);
+            promote = entry != null;
+        }
+
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (entry.expiresAt - ticker.getAsLong() <= 0) {
+            remove(key);
+            missCount++;
+            return null;
+        }
+
+        // A second hit while on probation moves the entry to the protected segment
+        if (promote) {
+            probation.remove(key);
+            protectedSegment.put(key, entry);
+            demoteProtected();
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    synchronized void put(final String key, final Response value) {
+        final long entryWeight = weigh(key, value);
+        if (entryWeight > maxWeight) {
+            return;
+        }
+
+        remove(key);
+        window.put(key, new Entry(value, entryWeight, ticker.getAsLong() + ttlNanos));
+        weight += entryWeight;
+
+        final List<String> candidates = new ArrayList<>();
+        while (window.size() > maxWindow) {
+            final Map.Entry<String, Entry> eldest = window.entrySet().iterator().next();
+            window.remove(eldest.getKey());
+            probation.put(eldest.getKey(), eldest.getValue());
+            candidates.add(eldest.getKey());
+        }
+        candidates.forEach(this::admit);
+
+        // Weight can still be exceeded by the window alone; trim from the coldest end
+        while (isOverBudget()) {
+            if (!evictEldest(probation) && !evictEldest(protectedSegment) && !evictEldest(window)) {
+                break;
+            }
+        }
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+
+    synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    /**
+     * Keep a candidate from the window only while it is used more often than the probation victim.
+     */
+    private void admit(final String candidate) {
+        while (isOverBudget() && probation.containsKey(candidate)) {
+            final String victim = probation.keySet().iterator().next();
+            if (victim.equals(candidate) || sketch.frequency(candidate) <= sketch.frequency(victim)) {
+                evict(probation, candidate);
+            } else {
+                evict(probation, victim);
+            }
+        }
+    }
+
+    private void demoteProtected() {
+        while (protectedSegment.size() > maxProtected) {
+            final Map.Entry<String, Entry> eldest = protectedSegment.entrySet().iterator().next();
+            protectedSegment.remove(eldest.getKey());
+            probation.put(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private boolean isOverBudget() {
+        return size() > maxEntries || weight > maxWeight;
+    }
+
+    private boolean evictEldest(final LinkedHashMap<String, Entry> segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        evict(segment, segment.keySet().iterator().next());
+        return true;
+    }
+
+    private void evict(final LinkedHashMap<String, Entry> segment, final String key) {
+        weight -= segment.remove(key).weight;
+        evictionCount++;
+    }
+
+    private void remove(final String key) {
+        Entry removed = window.remove(key);
+        if (removed == null) {
+            removed = probation.remove(key);
+        }
+        if (removed == null) {
+            removed = protectedSegment.remove(key);
+        }
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    private static long weigh(final String key, final Response value) {
+        return ENTRY_OVERHEAD_BYTES + 2L * (key.length() + length(value.getMessage())
+                + length(value.getContinuationToken())) + weighValue(value.getItems());
+    }
+
+    /**
+     * Approximate heap size of an item list or attribute value.
+     */
+    private static long weighValue(final Object value) {
+        if (value instanceof String) {
+            return VALUE_OVERHEAD_BYTES + 2L * ((String) value).length();
+        } else if (value instanceof Map) {
+            long weight = VALUE_OVERHEAD_BYTES;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                weight += VALUE_OVERHEAD_BYTES + weighValue(entry.getKey()) + weighValue(entry.getValue());
+            }
+            return weight;
+        } else if (value instanceof Collection) {
+            long weight = VALUE_OVERHEAD_BYTES;
+            for (Object element : (Collection<?>) value) {
+                weight += weighValue(element);
+            }
+            return weight;
+        }
+        return value == null ? 0 : VALUE_OVERHEAD_BYTES;
+    }
+
+    private static int length(final String str) {
+        return str == null ? 0 : str.length();
+    }
+
+    private static LinkedHashMap<String, Entry> newSegment() {
+        return new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    }
+
+    /**
+     * Cached value with its weight in bytes and expiry time in ticker nanos.
+     */
+    private static final class Entry {
+        private final Response value;
+        private final long weight;
+        private final long expiresAt;
+
+        Entry(final Response value, final long weight, final long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Converts DynamoDB items to plain maps for the response.<br/>
+ * Strings, numbers (as BigDecimal), booleans, lists and maps keep their structure; binary
+ * values become Base64 strings.
+ */
+final class ItemMapper {
+
+    private ItemMapper() {
+    }
+
+    static Map<String, Object> toMap(final Map<String, AttributeValue> item) {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        item.forEach((name, value) -> map.put(name, toValue(value)));
+        return map;
+    }
+
+    private static Object toValue(final AttributeValue value) {
+        switch (value.type()) {
+            case S:
+                return value.s();
+            case N:
+                return new BigDecimal(value.n());
+            case BOOL:
+                return value.bool();
+            case B:
+                return toBase64(value.b());
+            case SS:
+                return new ArrayList<>(value.ss());
+            case NS:
+                final List<BigDecimal> numbers = new ArrayList<>();
+                value.ns().forEach(n -> numbers.add(new BigDecimal(n)));
+                return numbers;
+            case BS:
+                final List<String> binaries = new ArrayList<>();
+                value.bs().forEach(b -> binaries.add(toBase64(b)));
+                return binaries;
+            case L:
+                final List<Object> list = new ArrayList<>();
+                value.l().forEach(element -> list.add(toValue(element)));
+                return list;
+            case M:
+                return toMap(value.m());
+            default:
+                return null;
+        }
+    }
+
+    private static String toBase64(final SdkBytes bytes) {
+        return Base64.getEncoder().encodeToString(bytes.asByteArray());
+    }
+}
@@ -0,0 +1,98 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+/**
+ * Reads query and scan results page by page using the SDK paginators.<br/>
+ * Pages are fetched lazily and released once consumed, and reading stops at the item limit
+ * with a continuation token that lets the caller resume from the last returned item.<br/>
+ * An invalid continuation token is rejected with an IllegalArgumentException, like an invalid filter.
+ */
+final class PaginatedReader {
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int DEFAULT_ITEM_LIMIT = 1000;
+
+    private final DynamoDbClient dynamoDbClient;
+
+    PaginatedReader(final DynamoDbClient dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+    }
+
+    Response query(final QueryRequest.Builder queryRequestBuilder, final Request request, final String description) {
+        queryRequestBuilder
+                .limit(pageSize(request))
+                .exclusiveStartKey(ContinuationToken.decode(request.getContinuationToken()));
+
+        return read(dynamoDbClient.queryPaginator(queryRequestBuilder.build()),
+                QueryResponse::items, QueryResponse::hasLastEvaluatedKey, request, description);
+    }
+
+    Response scan(final ScanRequest.Builder scanRequestBuilder, final Request request, final String description) {
+        scanRequestBuilder
+                .limit(pageSize(request))
+                .exclusiveStartKey(ContinuationToken.decode(request.getContinuationToken()));
+
+        return read(dynamoDbClient.scanPaginator(scanRequestBuilder.build()),
+                ScanResponse::items, ScanResponse::hasLastEvaluatedKey, request, description);
+    }
+
+    private <T> Response read(final Iterable<T> pages,
+            final Function<T, List<Map<String, AttributeValue>>> pageItems,
+            final Predicate<T> hasMorePages,
+            final Request request,
+            final String description) {
+
+        final int itemLimit = itemLimit(request);
+        final List<Map<String, Object>> result = new ArrayList<>();
+
+        for (T page : pages) {
+            final List<Map<String, AttributeValue>> items = pageItems.apply(page);
+            for (int i = 0; i < items.size(); i++) {
+                result.add(ItemMapper.toMap(items.get(i)));
+
+                if (result.size() >= itemLimit) {
+                    final boolean hasMore = i < items.size() - 1 || hasMorePages.test(page);
+                    final String token = hasMore ? ContinuationToken.encode(keyOf(items.get(i), request)) : null;
+                    return new Response(description + result.size(), null, token, result);
+                }
+            }
+        }
+
+        return new Response(description + result.size(), null, null, result);
+    }
+
+    static Map<String, AttributeValue> keyOf(final Map<String, AttributeValue> item, final Request request) {
+        final Map<String, AttributeValue> key = new HashMap<>();
+        key.put(request.getPartitionKey(), item.get(request.getPartitionKey()));
+        if (request.getSortKey() != null && item.containsKey(request.getSortKey())) {
+            key.put(request.getSortKey(), item.get(request.getSortKey()));
+        }
+        return key;
+    }
+
+    static int pageSize(final Request request) {
+        final Integer pageSize = request.getPageSize();
+        return pageSize != null && pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+    }
+
+    static int itemLimit(final Request request) {
+        final Integer itemLimit = request.getItemLimit();
+        return itemLimit != null && itemLimit > 0 ? itemLimit : DEFAULT_ITEM_LIMIT;
+    }
+}
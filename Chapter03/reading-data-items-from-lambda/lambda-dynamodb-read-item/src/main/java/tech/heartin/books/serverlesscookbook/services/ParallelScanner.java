@@ -0,0 +1,193 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+/**
+ * Scans a table with totalSegments workers running concurrently on the {@link ServiceExecutor}.<br/>
+ * Workers hand items over through a bounded queue, so a slow consumer blocks the workers
+ * instead of letting results pile up in memory. A scan that stops at the item limit returns a
+ * continuation token with the start key of every segment, so that the caller can resume it.
+ */
+final class ParallelScanner {
+
+    static final int MAX_TOTAL_SEGMENTS = 1000;
+
+    static final int QUEUE_CAPACITY = 1000;
+    private static final long POLL_INTERVAL_MILLIS = 10;
+    static final int MAX_THROTTLE_RETRIES = 10;
+
+    private final DynamoDbClient dynamoDbClient;
+
+    ParallelScanner(final DynamoDbClient dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+    }
+
+    Response scan(final ScanRequest.Builder scanRequestBuilder, final Request request, final String description) {
+
+        final List<Map<String, AttributeValue>> startKeys = startKeys(request);
+        final int totalSegments = startKeys.size();
+        final int itemLimit = PaginatedReader.itemLimit(request);
+        if (request.getPageSize() != null && request.getPageSize() > 0) {
+            scanRequestBuilder.limit(request.getPageSize());
+        }
+        final ScanRequest scanRequest = scanRequestBuilder.build();
+
+        final BlockingQueue<SegmentItem> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final List<Integer> segmentsToRead = new ArrayList<>();
+        for (int segment = 0; segment < totalSegments; segment++) {
+            if (startKeys.get(segment) != ContinuationToken.SEGMENT_DONE) {
+                segmentsToRead.add(segment);
+            }
+        }
+        final CountDownLatch done = new CountDownLatch(segmentsToRead.size());
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final AtomicInteger throttled = new AtomicInteger();
+        final List<Future<?>> workers = new ArrayList<>(segmentsToRead.size());
+
+        for (int segment : segmentsToRead) {
+            workers.add(ServiceExecutor.get().submit(() -> {
+                try {
+                    scanSegment(scanRequest, segment, totalSegments, startKeys.get(segment),
+                            request.isAdaptiveBackoff(), queue, throttled);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }));
+        }
+
+        // Start key of each segment after the items consumed so far.
+        final List<Map<String, AttributeValue>> resumeKeys = new ArrayList<>(startKeys);
+        final List<Map<String, Object>> items = new ArrayList<>();
+        Exception failure;
+        try {
+            while (items.size() < itemLimit && error.get() == null) {
+                final SegmentItem next = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    if (done.getCount() == 0 && queue.isEmpty()) {
+                        break;
+                    }
+                } else if (next.item == null) {
+                    resumeKeys.set(next.segment, ContinuationToken.SEGMENT_DONE);
+                } else {
+                    items.add(ItemMapper.toMap(next.item));
+                    resumeKeys.set(next.segment, PaginatedReader.keyOf(next.item, request));
+                }
+            }
+            // Read before cancelling, so that errors caused by the cancellation itself are ignored.
+            failure = error.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } finally {
+            workers.forEach(worker -> worker.cancel(true));
+        }
+
+        if (failure != null) {
+            return new Response(null, "Error during parallel scan with " + totalSegments + " segments: "
+                    + failure.getMessage());
+        }
+
+        return new Response(description + items.size() + ". Segments: " + totalSegments
+                + ", throttled requests retried: " + throttled.get(), null,
+                ContinuationToken.encodeSegments(resumeKeys), items);
+    }
+
+    /**
+     * Number of segments of the request, capped at MAX_TOTAL_SEGMENTS.
+     */
+    static int totalSegments(final Request request) {
+        return Math.max(1, Math.min(request.getTotalSegments(), MAX_TOTAL_SEGMENTS));
+    }
+
+    /**
+     * Start key of every segment: from the continuation token of the request, or null for all segments
+     * if there is none.
+     * @throws IllegalArgumentException if the token is malformed or is for another number of segments.
+     */
+    static List<Map<String, AttributeValue>> startKeys(final Request request) {
+        final int totalSegments = totalSegments(request);
+        final List<Map<String, AttributeValue>> startKeys =
+                ContinuationToken.decodeSegments(request.getContinuationToken());
+        if (startKeys == null) {
+            return new ArrayList<>(Collections.nCopies(totalSegments, null));
+        }
+        if (startKeys.size() != totalSegments) {
+            throw new IllegalArgumentException("Continuation token is for " + startKeys.size() + " segments, not "
+                    + totalSegments);
+        }
+        return startKeys;
+    }
+
+    private void scanSegment(final ScanRequest scanRequest, final int segment, final int totalSegments,
+            final Map<String, AttributeValue> segmentStartKey, final boolean adaptiveBackoff,
+            final BlockingQueue<SegmentItem> queue, final AtomicInteger throttled) throws InterruptedException {
+
+        Map<String, AttributeValue> startKey = segmentStartKey;
+        int attempt = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            final ScanResponse page;
+            try {
+                page = dynamoDbClient.scan(scanRequest.toBuilder()
+                        .segment(segment)
+                        .totalSegments(totalSegments)
+                        .exclusiveStartKey(startKey)
+                        .build());
+                attempt = 0;
+            } catch (ProvisionedThroughputExceededException e) {
+                if (!adaptiveBackoff || ++attempt > MAX_THROTTLE_RETRIES) {
+                    throw e;
+                }
+                throttled.incrementAndGet();
+                Thread.sleep(Backoff.fullJitterMillis(attempt));
+                continue;
+            }
+
+            for (Map<String, AttributeValue> item : page.items()) {
+                queue.put(new SegmentItem(segment, item));
+            }
+
+            if (!page.hasLastEvaluatedKey()) {
+                queue.put(new SegmentItem(segment, null));
+                return;
+            }
+            startKey = page.lastEvaluatedKey();
+        }
+    }
+
+    /**
+     * Item read by a segment; no item marks the end of the segment.
+     */
+    private static final class SegmentItem {
+        private final int segment;
+        private final Map<String, AttributeValue> item;
+
+        SegmentItem(final int segment, final Map<String, AttributeValue> item) {
+            this.segment = segment;
+            this.item = item;
+        }
+    }
+}
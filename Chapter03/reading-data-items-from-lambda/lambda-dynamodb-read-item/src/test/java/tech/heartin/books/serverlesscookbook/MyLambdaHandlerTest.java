@@ -0,0 +1,137 @@
+package tech.heartin.books.serverlesscookbook;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+import tech.heartin.books.serverlesscookbook.services.ContinuationToken;
+import tech.heartin.books.serverlesscookbook.services.DynamoDBServiceFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class MyLambdaHandlerTest {
+
+    private static final int INVOCATIONS = 25;
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Mock
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    private Request request;
+
+    @BeforeEach
+    public void setUp() {
+        request = new Request();
+        request.setTableName("my_table");
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        request.setPartitionKeyValue("p1");
+        request.setSortKeyValue("1537963031");
+
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("id", AttributeValue.builder().s("p1").build());
+        item.put("dateandtime", AttributeValue.builder().n("1537963031").build());
+
+        when(context.getLogger()).thenReturn(logger);
+        lenient().when(dynamoDbClient.getItem(any(GetItemRequest.class)))
+                .thenReturn(GetItemResponse.builder().item(item).build());
+    }
+
+    @Test
+    public void testClientCreatedOnceAcrossInvocations() {
+        for (String version : new String[] {"V1", "V2"}) {
+            AtomicInteger clientsCreated = new AtomicInteger();
+            DynamoDBServiceFactory factory = new DynamoDBServiceFactory(version, () -> {
+                clientsCreated.incrementAndGet();
+                return dynamoDbClient;
+            });
+
+            MyLambdaHandler handler = new MyLambdaHandler(factory);
+            for (int i = 0; i < INVOCATIONS; i++) {
+                handler.handleRequest(request, context);
+            }
+
+            assertEquals(1, clientsCreated.get());
+        }
+
+        verify(dynamoDbClient, times(2 * INVOCATIONS)).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    public void testInvalidContinuationTokensAreReportedAsInvalidRequests() {
+        final Map<String, AttributeValue> key = new HashMap<>();
+        key.put("id", AttributeValue.builder().s("p1").build());
+        final String pageToken = ContinuationToken.encode(key);
+        final String segmentsToken = ContinuationToken.encodeSegments(Arrays.asList(key, null));
+
+        for (String version : new String[] {"V1", "V2", "V3"}) {
+            final MyLambdaHandler handler = new MyLambdaHandler(
+                    new DynamoDBServiceFactory(version, () -> dynamoDbClient, () -> dynamoDbAsyncClient));
+
+            assertInvalid("Malformed continuation token", handler, paginatedQuery("not a token!"));
+            assertInvalid("Malformed continuation token", handler, paginatedQuery(pageToken.substring(0, 4)));
+            assertInvalid("Unsupported continuation token version", handler, paginatedQuery(segmentsToken));
+            assertInvalid("Unsupported continuation token version", handler, parallelScan(pageToken, 2));
+            assertInvalid("Continuation token is for 2 segments, not 3", handler, parallelScan(segmentsToken, 3));
+        }
+
+        verifyNoInteractions(dynamoDbClient, dynamoDbAsyncClient);
+    }
+
+    private void assertInvalid(final String reason, final MyLambdaHandler handler, final Request invalid) {
+        final Response response = handler.handleRequest(invalid, context);
+        assertNull(response.getMessage());
+        assertEquals("Invalid request: " + reason, response.getErrorMessage());
+    }
+
+    private static Request paginatedQuery(final String continuationToken) {
+        final Request query = new Request();
+        query.setTableName("my_table");
+        query.setPartitionKey("id");
+        query.setSortKey("dateandtime");
+        query.setPartitionKeyValue("p1");
+        query.setContinuationToken(continuationToken);
+        return query;
+    }
+
+    private static Request parallelScan(final String continuationToken, final int totalSegments) {
+        final Request scan = new Request();
+        scan.setTableName("my_table");
+        scan.setPartitionKey("id");
+        scan.setTotalSegments(totalSegments);
+        scan.setContinuationToken(continuationToken);
+        return scan;
+    }
+}
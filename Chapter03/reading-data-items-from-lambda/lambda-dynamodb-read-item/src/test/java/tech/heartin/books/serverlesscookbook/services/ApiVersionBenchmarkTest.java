@@ -0,0 +1,201 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import tech.heartin.books.serverlesscookbook.domain.ItemKey;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Latency and throughput of the V1, V2 and V3 (async) services against DynamoDB Local. The figures are
+ * written as one JSON line per operation and version to target/api-version-benchmark.json.<br/>
+ * Run with: mvn test -Ddynamodb.local.endpoint=http://localhost:8000
+ */
+@EnabledIfSystemProperty(named = "dynamodb.local.endpoint", matches = ".+")
+public class ApiVersionBenchmarkTest {
+
+    private static final String TABLE_NAME = "api_version_benchmark";
+    private static final int ITEM_COUNT = 5000;
+    private static final int BATCH_SIZE = 25;
+    private static final int KEYS_PER_BATCH_GET = 500;
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 20;
+    private static final Path REPORT = Paths.get("target", "api-version-benchmark.json");
+
+    private static final List<String> REPORT_LINES = new ArrayList<>();
+
+    private static DynamoDbClient dynamoDbClient;
+    private static DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    @BeforeAll
+    public static void setUp() {
+        final URI endpoint = URI.create(System.getProperty("dynamodb.local.endpoint"));
+        final StaticCredentialsProvider credentials =
+                StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local"));
+        dynamoDbClient = DynamoDbClient.builder()
+                .endpointOverride(endpoint)
+                .region(Region.US_EAST_1)
+                .credentialsProvider(credentials)
+                .build();
+        dynamoDbAsyncClient = DynamoDbAsyncClient.builder()
+                .endpointOverride(endpoint)
+                .region(Region.US_EAST_1)
+                .credentialsProvider(credentials)
+                .build();
+
+        dynamoDbClient.createTable(CreateTableRequest.builder()
+                .tableName(TABLE_NAME)
+                .attributeDefinitions(
+                        AttributeDefinition.builder().attributeName("id").attributeType(ScalarAttributeType.S).build(),
+                        AttributeDefinition.builder().attributeName("dateandtime")
+                                .attributeType(ScalarAttributeType.N).build())
+                .keySchema(
+                        KeySchemaElement.builder().attributeName("id").keyType(KeyType.HASH).build(),
+                        KeySchemaElement.builder().attributeName("dateandtime").keyType(KeyType.RANGE).build())
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .build());
+
+        List<WriteRequest> batch = new ArrayList<>();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("id", AttributeValue.builder().s("p" + i).build());
+            item.put("dateandtime", AttributeValue.builder().n(String.valueOf(i)).build());
+            batch.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build());
+            if (batch.size() == BATCH_SIZE) {
+                writeBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    private static void writeBatch(final List<WriteRequest> batch) {
+        Map<String, List<WriteRequest>> requestItems = new HashMap<>();
+        requestItems.put(TABLE_NAME, batch);
+        while (!requestItems.isEmpty()) {
+            requestItems = dynamoDbClient.batchWriteItem(BatchWriteItemRequest.builder()
+                    .requestItems(requestItems)
+                    .build()).unprocessedItems();
+        }
+    }
+
+    @AfterEach
+    public void writeReport() throws IOException {
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, REPORT_LINES);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        dynamoDbClient.deleteTable(DeleteTableRequest.builder().tableName(TABLE_NAME).build());
+        dynamoDbClient.close();
+        dynamoDbAsyncClient.close();
+    }
+
+    @Test
+    public void benchmarkBatchGet() {
+        final Request request = newRequest();
+        final List<ItemKey> keys = new ArrayList<>();
+        for (int i = 0; i < KEYS_PER_BATCH_GET; i++) {
+            keys.add(new ItemKey("p" + i, String.valueOf(i)));
+        }
+        request.setKeys(keys);
+
+        run("batch-get of " + KEYS_PER_BATCH_GET + " keys", request, DynamoDBService::batchGetItems);
+    }
+
+    @Test
+    public void benchmarkPaginatedScan() {
+        final Request request = newRequest();
+        request.setPageSize(BATCH_SIZE * 4);
+        request.setItemLimit(ITEM_COUNT);
+
+        run("paginated scan of " + ITEM_COUNT + " items", request, DynamoDBService::scanPaginated);
+    }
+
+    private static Request newRequest() {
+        final Request request = new Request();
+        request.setTableName(TABLE_NAME);
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        return request;
+    }
+
+    private static void run(final String operation, final Request request,
+            final BiFunction<DynamoDBService, Request, Response> call) {
+        final Map<String, DynamoDBService> services = new LinkedHashMap<>();
+        services.put("V1", new DynamoDBServiceImpl1(dynamoDbClient));
+        services.put("V2", new DynamoDBServiceImpl2(dynamoDbClient));
+        services.put("V3", new DynamoDBServiceImpl3(dynamoDbAsyncClient));
+
+        final Map<String, Integer> itemCounts = new LinkedHashMap<>();
+        services.forEach((version, service) -> {
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                call.apply(service, request);
+            }
+
+            final long[] latencies = new long[ROUNDS];
+            final long start = System.nanoTime();
+            int items = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                final long callStart = System.nanoTime();
+                final Response response = call.apply(service, request);
+                latencies[i] = System.nanoTime() - callStart;
+                assertNull(response.getErrorMessage());
+                items = response.getItems().size();
+            }
+            final long elapsed = System.nanoTime() - start;
+            itemCounts.put(version, items);
+
+            Arrays.sort(latencies);
+            REPORT_LINES.add("{\"benchmark\":\"" + operation + "\",\"version\":\"" + version
+                    + "\",\"rounds\":" + ROUNDS + ",\"items\":" + items
+                    + ",\"p50Micros\":" + latencies[ROUNDS / 2] / 1000
+                    + ",\"maxMicros\":" + latencies[ROUNDS - 1] / 1000
+                    + ",\"callsPerSecond\":" + ROUNDS * 1_000_000_000L / elapsed + "}");
+        });
+
+        // The versions must be compared on the same work.
+        assertEquals(1, itemCounts.values().stream().distinct().count(), itemCounts.entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue()).collect(Collectors.joining(", ")));
+    }
+}
@@ -0,0 +1,116 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.heartin.books.serverlesscookbook.domain.ItemKey;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchGetReaderTest {
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Test
+    public void testReadsDistinctKeysInChunks() {
+        when(dynamoDbClient.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation ->
+                found(invocation.<BatchGetItemRequest>getArgument(0).requestItems().get("my_table").keys()));
+        // 230 keys with 210 distinct: chunks of 100, 100 and 10 keys.
+        final Request request = request(230, 210);
+
+        final Response response = new BatchGetReader(dynamoDbClient).batchGet(request, "Items read: ");
+
+        assertEquals("Items read: 210", response.getMessage());
+        assertEquals(210, response.getItems().size());
+        final ArgumentCaptor<BatchGetItemRequest> captor = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        verify(dynamoDbClient, times(3)).batchGetItem(captor.capture());
+        final List<Integer> chunkSizes = new ArrayList<>();
+        captor.getAllValues().forEach(chunk -> chunkSizes.add(chunk.requestItems().get("my_table").keys().size()));
+        Collections.sort(chunkSizes);
+        assertEquals(List.of(10, 100, 100), chunkSizes);
+    }
+
+    @Test
+    public void testRetriesUnprocessedKeys() {
+        final Request request = request(3, 3);
+        final Map<String, AttributeValue> last = BatchGetReader.toKey(request.getKeys().get(2), request);
+        when(dynamoDbClient.batchGetItem(any(BatchGetItemRequest.class)))
+                .thenAnswer(invocation -> {
+                    final List<Map<String, AttributeValue>> keys = new ArrayList<>(
+                            invocation.<BatchGetItemRequest>getArgument(0).requestItems().get("my_table").keys());
+                    keys.remove(last);
+                    return found(keys).toBuilder()
+                            .unprocessedKeys(Collections.singletonMap("my_table",
+                                    KeysAndAttributes.builder().keys(last).build()))
+                            .build();
+                })
+                .thenAnswer(invocation -> found(Collections.singletonList(last)));
+
+        final Response response = new BatchGetReader(dynamoDbClient).batchGet(request, "Items read: ");
+
+        assertEquals("Items read: 3", response.getMessage());
+        final Set<Object> partitionKeys = new HashSet<>();
+        response.getItems().forEach(item -> partitionKeys.add(item.get("id")));
+        assertEquals(Set.of("p0", "p1", "p2"), partitionKeys);
+        verify(dynamoDbClient, times(2)).batchGetItem(any(BatchGetItemRequest.class));
+    }
+
+    @Test
+    public void testFailedChunkIsReportedAsError() {
+        when(dynamoDbClient.batchGetItem(any(BatchGetItemRequest.class)))
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("Slow down").build());
+
+        final Response response = new BatchGetReader(dynamoDbClient).batchGet(request(3, 3), "Items read: ");
+
+        assertNull(response.getMessage());
+        assertTrue(response.getErrorMessage().startsWith("Error during batch get: Slow down"),
+                response.getErrorMessage());
+    }
+
+    private static BatchGetItemResponse found(final List<Map<String, AttributeValue>> keys) {
+        return BatchGetItemResponse.builder()
+                .responses(Collections.singletonMap("my_table", keys))
+                .build();
+    }
+
+    /**
+     * Request with the given number of keys, which repeat after the given number of distinct keys.
+     */
+    private static Request request(final int keys, final int distinctKeys) {
+        final Request request = new Request();
+        request.setTableName("my_table");
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        request.setKeys(new ArrayList<>());
+        for (int i = 0; i < keys; i++) {
+            request.getKeys().add(new ItemKey("p" + i % distinctKeys, "1537963031"));
+        }
+        return request;
+    }
+}
@@ -0,0 +1,111 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class CachingDynamoDBServiceTest {
+
+    private static final Duration TTL = Duration.ofSeconds(60);
+    private static final long MAX_WEIGHT_BYTES = 1024 * 1024;
+
+    @Mock
+    private DynamoDBService delegate;
+
+    private final AtomicLong ticker = new AtomicLong();
+
+    @Test
+    public void testRepeatReadsServedFromCache() {
+        when(delegate.getItem(any(Request.class))).thenReturn(new Response("PK of item: (p1, 1) ", null));
+        CachingDynamoDBService service = new CachingDynamoDBService(delegate, TTL, 100, MAX_WEIGHT_BYTES, ticker::get);
+
+        Response first = service.getItem(request("p1"));
+        for (int i = 0; i < 4; i++) {
+            assertSame(first, service.getItem(request("p1")));
+        }
+
+        verify(delegate, times(1)).getItem(any(Request.class));
+        assertEquals(4, service.getHitCount());
+        assertEquals(1, service.getMissCount());
+    }
+
+    @Test
+    public void testEntryExpiresAfterTtl() {
+        when(delegate.getItem(any(Request.class))).thenReturn(new Response("PK of item: (p1, 1) ", null));
+        CachingDynamoDBService service = new CachingDynamoDBService(delegate, TTL, 100, MAX_WEIGHT_BYTES, ticker::get);
+
+        service.getItem(request("p1"));
+        ticker.addAndGet(TTL.toNanos() + 1);
+        service.getItem(request("p1"));
+
+        verify(delegate, times(2)).getItem(any(Request.class));
+        assertEquals(0, service.getHitCount());
+    }
+
+    @Test
+    public void testErrorsAreNotCached() {
+        when(delegate.getItem(any(Request.class))).thenReturn(new Response(null, "Throttled"));
+        CachingDynamoDBService service = new CachingDynamoDBService(delegate, TTL, 100, MAX_WEIGHT_BYTES, ticker::get);
+
+        service.getItem(request("p1"));
+        service.getItem(request("p1"));
+
+        verify(delegate, times(2)).getItem(any(Request.class));
+    }
+
+    @Test
+    public void testHotKeySurvivesScanOfColdKeys() {
+        when(delegate.getItem(any(Request.class))).thenReturn(new Response("PK of item ", null));
+        CachingDynamoDBService service = new CachingDynamoDBService(delegate, TTL, 10, MAX_WEIGHT_BYTES, ticker::get);
+
+        for (int i = 0; i < 1000; i++) {
+            service.getItem(request("cold" + i));
+            if (i % 10 == 0) {
+                service.getItem(request("hot"));
+            }
+        }
+        long hitsBefore = service.getHitCount();
+        service.getItem(request("hot"));
+
+        assertEquals(hitsBefore + 1, service.getHitCount());
+        assertTrue(service.getEvictionCount() >= 1000 - 10);
+    }
+
+    @Test
+    public void testWeightBoundEvicts() {
+        Response large = new Response(new String(new char[1000]), null);
+        ItemCache cache = new ItemCache(TTL.toNanos(), 100, 10_000, ticker::get);
+
+        for (int i = 0; i < 20; i++) {
+            cache.put("k" + i, large);
+        }
+
+        assertTrue(cache.size() < 20);
+        assertEquals(20 - cache.size(), cache.getEvictionCount());
+    }
+
+    private static Request request(final String partitionKeyValue) {
+        Request request = new Request();
+        request.setTableName("my_table");
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        request.setPartitionKeyValue(partitionKeyValue);
+        request.setSortKeyValue("1");
+        return request;
+    }
+}
@@ -0,0 +1,89 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContinuationTokenTest {
+
+    @Test
+    public void testRoundTripsStringNumberAndBinaryKeys() {
+        final Map<String, AttributeValue> key = new HashMap<>();
+        key.put("id", AttributeValue.builder().s("p1/ü").build());
+        key.put("dateandtime", AttributeValue.builder().n("-1537963031.25").build());
+        key.put("hash", AttributeValue.builder().b(SdkBytes.fromByteArray(new byte[] {0, -1, 127, -128})).build());
+
+        final String token = ContinuationToken.encode(key);
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+        assertEquals(key, ContinuationToken.decode(token));
+    }
+
+    @Test
+    public void testNoKeyMeansNoToken() {
+        assertNull(ContinuationToken.encode(null));
+        assertNull(ContinuationToken.encode(new HashMap<>()));
+        assertNull(ContinuationToken.decode(null));
+        assertNull(ContinuationToken.decode(""));
+        assertNull(ContinuationToken.decodeSegments(null));
+    }
+
+    @Test
+    public void testRoundTripsSegmentStartKeys() {
+        final Map<String, AttributeValue> key = new HashMap<>();
+        key.put("id", AttributeValue.builder().s("s1").build());
+        key.put("dateandtime", AttributeValue.builder().n("42").build());
+
+        final List<Map<String, AttributeValue>> startKeys = ContinuationToken.decodeSegments(
+                ContinuationToken.encodeSegments(Arrays.asList(null, key, ContinuationToken.SEGMENT_DONE)));
+
+        assertEquals(3, startKeys.size());
+        assertNull(startKeys.get(0));
+        assertEquals(key, startKeys.get(1));
+        assertSame(ContinuationToken.SEGMENT_DONE, startKeys.get(2));
+        assertNull(ContinuationToken.encodeSegments(
+                Arrays.asList(ContinuationToken.SEGMENT_DONE, ContinuationToken.SEGMENT_DONE)));
+    }
+
+    @Test
+    public void testRejectsMalformedTokens() {
+        final Map<String, AttributeValue> key = new HashMap<>();
+        key.put("id", AttributeValue.builder().s("p1").build());
+        final String token = ContinuationToken.encode(key);
+
+        for (String malformed : new String[] {"not a token!", token.substring(0, token.length() - 2), "AQ"}) {
+            final IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> ContinuationToken.decode(malformed));
+            assertEquals("Malformed continuation token", e.getMessage(), malformed);
+        }
+        assertEquals("Malformed continuation token", assertThrows(IllegalArgumentException.class,
+                () -> ContinuationToken.decodeSegments("%%%")).getMessage());
+    }
+
+    @Test
+    public void testRejectsTokensOfAnotherVersion() {
+        final Map<String, AttributeValue> key = new HashMap<>();
+        key.put("id", AttributeValue.builder().s("p1").build());
+        final String futureVersion = Base64.getUrlEncoder().withoutPadding().encodeToString(new byte[] {9, 0, 0});
+
+        for (String token : new String[] {futureVersion, ContinuationToken.encodeSegments(Arrays.asList(key, null))}) {
+            assertEquals("Unsupported continuation token version", assertThrows(IllegalArgumentException.class,
+                    () -> ContinuationToken.decode(token)).getMessage());
+        }
+        assertEquals("Unsupported continuation token version", assertThrows(IllegalArgumentException.class,
+                () -> ContinuationToken.decodeSegments(ContinuationToken.encode(key))).getMessage());
+    }
+}
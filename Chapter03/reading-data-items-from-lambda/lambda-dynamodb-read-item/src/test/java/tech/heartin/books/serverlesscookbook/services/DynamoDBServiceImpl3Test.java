@@ -0,0 +1,230 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.heartin.books.serverlesscookbook.domain.ItemKey;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DynamoDBServiceImpl3Test {
+
+    @Mock
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    @Test
+    public void testQueryPaginatedResumesAfterTheLastItem() {
+        when(dynamoDbAsyncClient.query(any(QueryRequest.class))).thenAnswer(invocation -> {
+            final QueryRequest queryRequest = invocation.getArgument(0);
+            final Page page = page(0, queryRequest.exclusiveStartKey(), queryRequest.limit(), 10);
+            return CompletableFuture.completedFuture(QueryResponse.builder()
+                    .items(page.items).lastEvaluatedKey(page.lastEvaluatedKey).build());
+        });
+        final Request request = request();
+        request.setPartitionKeyValue("s0");
+        request.setPageSize(3);
+        request.setItemLimit(4);
+
+        final List<Object> read = readAll(request, () -> service().queryPaginated(request));
+
+        assertEquals(List.of("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), read);
+        final ArgumentCaptor<QueryRequest> captor = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(dynamoDbAsyncClient, atLeastOnce()).query(captor.capture());
+        captor.getAllValues().forEach(queryRequest -> assertEquals(3, queryRequest.limit()));
+    }
+
+    @Test
+    public void testScanPaginatedStopsAtTheItemLimit() {
+        when(dynamoDbAsyncClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> scan(invocation.getArgument(0),
+                10));
+        final Request request = request();
+        request.setPageSize(4);
+        request.setItemLimit(6);
+
+        final Response response = service().scanPaginated(request);
+
+        assertEquals("Items read with paginated scan (V3): 6", response.getMessage());
+        assertNotNull(response.getContinuationToken());
+        assertEquals(List.of("0", "1", "2", "3", "4", "5"), sortKeys(response));
+        verify(dynamoDbAsyncClient, times(2)).scan(any(ScanRequest.class));
+    }
+
+    @Test
+    public void testBatchGetRetriesUnprocessedKeys() {
+        when(dynamoDbAsyncClient.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> {
+            final List<Map<String, AttributeValue>> keys = new ArrayList<>(
+                    invocation.<BatchGetItemRequest>getArgument(0).requestItems().get("my_table").keys());
+            // The first key of every request is left unprocessed once.
+            final Map<String, AttributeValue> first = keys.get(0);
+            final BatchGetItemResponse.Builder response = BatchGetItemResponse.builder();
+            if (keys.size() > 1) {
+                keys.remove(0);
+                response.unprocessedKeys(Collections.singletonMap("my_table",
+                        KeysAndAttributes.builder().keys(first).build()));
+            }
+            return CompletableFuture.completedFuture(response
+                    .responses(Collections.singletonMap("my_table", keys))
+                    .build());
+        });
+        final Request request = request();
+        request.setKeys(new ArrayList<>());
+        for (int i = 0; i < 150; i++) {
+            request.getKeys().add(new ItemKey("p" + i, "1537963031"));
+        }
+
+        final Response response = service().batchGetItems(request);
+
+        assertEquals("Items read using batch-get-item (V3): 150", response.getMessage());
+        // Two chunks of 100 and 50 keys, each retried once for its unprocessed key.
+        verify(dynamoDbAsyncClient, times(4)).batchGetItem(any(BatchGetItemRequest.class));
+    }
+
+    @Test
+    public void testParallelScanCapsTheSegmentsInFlight() {
+        final int totalSegments = 200;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        when(dynamoDbAsyncClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            final ScanRequest scanRequest = invocation.getArgument(0);
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.decrementAndGet();
+                return scan(scanRequest, 2).join();
+            }, CompletableFuture.delayedExecutor(2, TimeUnit.MILLISECONDS));
+        });
+        final Request request = request();
+        request.setTotalSegments(totalSegments);
+        request.setItemLimit(totalSegments * 2);
+
+        final Response response = service().parallelScan(request);
+
+        assertNull(response.getErrorMessage());
+        assertEquals(totalSegments * 2, response.getItems().size());
+        assertNull(response.getContinuationToken());
+        assertTrue(maxInFlight.get() <= DynamoDBServiceFactory.MAX_CONNECTIONS, "In flight: " + maxInFlight);
+    }
+
+    @Test
+    public void testParallelScanResumesEverySegmentFromTheToken() {
+        when(dynamoDbAsyncClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> scan(invocation.getArgument(0),
+                7));
+        final Request request = request();
+        request.setTotalSegments(3);
+        request.setPageSize(2);
+        request.setItemLimit(5);
+
+        final List<Object> read = readAll(request, () -> service().parallelScan(request));
+
+        assertEquals(21, read.size());
+        assertEquals(21, new HashSet<>(read).size());
+    }
+
+    private DynamoDBService service() {
+        return new DynamoDBServiceImpl3(dynamoDbAsyncClient);
+    }
+
+    /**
+     * Read until there is no continuation token, returning partition and sort key of every item for scans,
+     * or the sort key for queries.
+     */
+    private static List<Object> readAll(final Request request, final Supplier<Response> read) {
+        final List<Object> items = new ArrayList<>();
+        Response response;
+        do {
+            response = read.get();
+            assertNull(response.getErrorMessage());
+            assertTrue(response.getItems().size() <= request.getItemLimit());
+            response.getItems().forEach(item -> items.add(request.getPartitionKeyValue() != null
+                    ? String.valueOf(item.get("dateandtime")) : item.get("id") + "/" + item.get("dateandtime")));
+            request.setContinuationToken(response.getContinuationToken());
+        } while (response.getContinuationToken() != null);
+        return items;
+    }
+
+    private static List<Object> sortKeys(final Response response) {
+        final List<Object> sortKeys = new ArrayList<>();
+        response.getItems().forEach(item -> sortKeys.add(String.valueOf(item.get("dateandtime"))));
+        return sortKeys;
+    }
+
+    private static CompletableFuture<ScanResponse> scan(final ScanRequest scanRequest, final int segmentItems) {
+        final Page page = page(scanRequest.segment() == null ? 0 : scanRequest.segment(),
+                scanRequest.exclusiveStartKey(), scanRequest.limit(), segmentItems);
+        return CompletableFuture.completedFuture(ScanResponse.builder()
+                .items(page.items).lastEvaluatedKey(page.lastEvaluatedKey).build());
+    }
+
+    /**
+     * Page of the items of a partition (or segment), starting after the exclusive start key.
+     */
+    private static Page page(final int partition, final Map<String, AttributeValue> exclusiveStartKey,
+                             final Integer limit, final int partitionItems) {
+        final int start = exclusiveStartKey != null && !exclusiveStartKey.isEmpty()
+                ? Integer.parseInt(exclusiveStartKey.get("dateandtime").n()) + 1 : 0;
+        final int end = limit == null ? partitionItems : Math.min(partitionItems, start + limit);
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            items.add(key(partition, i));
+        }
+        return new Page(items, end < partitionItems ? key(partition, end - 1) : null);
+    }
+
+    private static Map<String, AttributeValue> key(final int partition, final int index) {
+        final Map<String, AttributeValue> key = new HashMap<>();
+        key.put("id", AttributeValue.builder().s("s" + partition).build());
+        key.put("dateandtime", AttributeValue.builder().n(String.valueOf(index)).build());
+        return key;
+    }
+
+    private static Request request() {
+        final Request request = new Request();
+        request.setTableName("my_table");
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        return request;
+    }
+
+    private static final class Page {
+        private final List<Map<String, AttributeValue>> items;
+        private final Map<String, AttributeValue> lastEvaluatedKey;
+
+        Page(final List<Map<String, AttributeValue>> items, final Map<String, AttributeValue> lastEvaluatedKey) {
+            this.items = items;
+            this.lastEvaluatedKey = lastEvaluatedKey;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import org.junit.jupiter.api.Test;
+import tech.heartin.books.serverlesscookbook.domain.Filter;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ExpressionCompilerTest {
+
+    @Test
+    public void testSortKeyRangeBecomesKeyCondition() {
+        Request request = request();
+        request.setFilters(Arrays.asList(
+                new Filter("dateandtime", Filter.Operator.BETWEEN, Filter.Type.N, Arrays.asList("10", "20")),
+                new Filter("name", Filter.Operator.BEGINS_WITH, Filter.Type.S, Collections.singletonList("he"))));
+
+        QueryRequest query = ExpressionCompiler.applyTo(QueryRequest.builder(), request).build();
+
+        assertEquals("#a0 = :pk AND #a1 BETWEEN :v0 AND :v1", query.keyConditionExpression());
+        assertEquals("begins_with(#a2, :v2)", query.filterExpression());
+        assertEquals("#a0, #a1", query.projectionExpression());
+        assertEquals("name", query.expressionAttributeNames().get("#a2"));
+        assertEquals(AttributeValue.builder().n("10").build(), query.expressionAttributeValues().get(":v0"));
+        assertEquals(AttributeValue.builder().s("p1").build(), query.expressionAttributeValues().get(":pk"));
+    }
+
+    @Test
+    public void testSortKeyBoundsBecomeOneBetween() {
+        Request request = request();
+        request.setFilters(Arrays.asList(
+                new Filter("dateandtime", Filter.Operator.LE, Filter.Type.N, Collections.singletonList("20")),
+                new Filter("name", Filter.Operator.EQ, Filter.Type.S, Collections.singletonList("hello")),
+                new Filter("dateandtime", Filter.Operator.GE, Filter.Type.N, Collections.singletonList("10"))));
+
+        QueryRequest query = ExpressionCompiler.applyTo(QueryRequest.builder(), request).build();
+
+        assertEquals("#a0 = :pk AND #a1 BETWEEN :v2 AND :v0", query.keyConditionExpression());
+        assertEquals("#a2 = :v1", query.filterExpression());
+        assertEquals(AttributeValue.builder().n("10").build(), query.expressionAttributeValues().get(":v2"));
+    }
+
+    @Test
+    public void testOtherKeyConditionsAreRejectedOnQuery() {
+        for (Filter[] filters : new Filter[][] {
+                {new Filter("id", Filter.Operator.EQ, Filter.Type.S, Collections.singletonList("p2"))},
+                {new Filter("dateandtime", Filter.Operator.NE, Filter.Type.N, Collections.singletonList("10"))},
+                {new Filter("dateandtime", Filter.Operator.IN, Filter.Type.N, Arrays.asList("10", "20"))},
+                {new Filter("dateandtime", Filter.Operator.GT, Filter.Type.N, Collections.singletonList("10")),
+                        new Filter("dateandtime", Filter.Operator.LT, Filter.Type.N, Collections.singletonList("20"))},
+                {new Filter("dateandtime", Filter.Operator.GE, Filter.Type.N, Collections.singletonList("10")),
+                        new Filter("dateandtime", Filter.Operator.GE, Filter.Type.N, Collections.singletonList("20"))},
+        }) {
+            Request request = request();
+            request.setFilters(Arrays.asList(filters));
+            assertThrows(IllegalArgumentException.class,
+                    () -> ExpressionCompiler.applyTo(QueryRequest.builder(), request), Arrays.toString(filters));
+
+            // A scan filters on key attributes like on any other attribute.
+            ExpressionCompiler.applyTo(ScanRequest.builder(), request);
+        }
+    }
+
+    @Test
+    public void testScanKeepsAllConditionsInFilter() {
+        Request request = request();
+        request.setFilters(Arrays.asList(
+                new Filter("dateandtime", Filter.Operator.GE, Filter.Type.N, Collections.singletonList("10")),
+                new Filter("status", Filter.Operator.IN, Filter.Type.S, Arrays.asList("NEW", "OPEN")),
+                new Filter("active", Filter.Operator.EQ, Filter.Type.BOOL, Collections.singletonList("true"))));
+
+        ScanRequest scan = ExpressionCompiler.applyTo(ScanRequest.builder(), request).build();
+
+        assertEquals("#a0 >= :v0 AND #a1 IN (:v1, :v2) AND #a2 = :v3", scan.filterExpression());
+        assertEquals(AttributeValue.builder().bool(true).build(), scan.expressionAttributeValues().get(":v3"));
+    }
+
+    @Test
+    public void testScanWithoutFiltersReadsKeysOnly() {
+        ScanRequest scan = ExpressionCompiler.applyTo(ScanRequest.builder(), request()).build();
+
+        assertNull(scan.filterExpression());
+        assertFalse(scan.hasExpressionAttributeValues());
+        assertEquals("#a0, #a1", scan.projectionExpression());
+        assertEquals("dateandtime", scan.expressionAttributeNames().get("#a1"));
+    }
+
+    @Test
+    public void testProjectionKeepsKeysAndSupportsAllAttributes() {
+        Request request = request();
+        request.setProjection(Arrays.asList("name", "id"));
+        GetItemRequest getItem = ExpressionCompiler.applyTo(GetItemRequest.builder(), request).build();
+
+        assertEquals("#a0, #a1, #a2", getItem.projectionExpression());
+        assertEquals("name", getItem.expressionAttributeNames().get("#a2"));
+
+        request.setProjection(Collections.singletonList("*"));
+        getItem = ExpressionCompiler.applyTo(GetItemRequest.builder(), request).build();
+
+        assertNull(getItem.projectionExpression());
+        assertFalse(getItem.hasExpressionAttributeNames());
+    }
+
+    @Test
+    public void testSameShapeReusesTemplate() {
+        Request first = request();
+        first.setFilters(Collections.singletonList(
+                new Filter("price", Filter.Operator.LT, Filter.Type.N, Collections.singletonList("5"))));
+        ExpressionCompiler.applyTo(QueryRequest.builder(), first);
+        int templates = ExpressionCompiler.templateCount();
+
+        Request second = request();
+        second.setFilters(Collections.singletonList(
+                new Filter("price", Filter.Operator.LT, Filter.Type.N, Collections.singletonList("7"))));
+        QueryRequest query = ExpressionCompiler.applyTo(QueryRequest.builder(), second).build();
+
+        assertEquals(templates, ExpressionCompiler.templateCount());
+        assertEquals(AttributeValue.builder().n("7").build(), query.expressionAttributeValues().get(":v0"));
+    }
+
+    @Test
+    public void testInvalidValuesAreRejected() {
+        Request request = request();
+        request.setFilters(Collections.singletonList(
+                new Filter("price", Filter.Operator.EQ, Filter.Type.N, Collections.singletonList("cheap"))));
+        assertThrows(IllegalArgumentException.class,
+                () -> ExpressionCompiler.applyTo(ScanRequest.builder(), request));
+
+        request.setFilters(Collections.singletonList(
+                new Filter("price", Filter.Operator.BETWEEN, Filter.Type.N, Collections.singletonList("1"))));
+        assertThrows(IllegalArgumentException.class,
+                () -> ExpressionCompiler.applyTo(ScanRequest.builder(), request));
+    }
+
+    private static Request request() {
+        Request request = new Request();
+        request.setTableName("my_table");
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        request.setPartitionKeyValue("p1");
+        return request;
+    }
+}
@@ -0,0 +1,222 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.paginators.QueryIterable;
+import software.amazon.awssdk.services.dynamodb.paginators.ScanIterable;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class PaginatedReaderTest {
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Test
+    public void testQueryResumesExactlyAfterTheLastReturnedItem() {
+        stubQuery(10);
+        // The item limit falls in the middle of a page, so the token is the key of an item, not of a page.
+        final Request request = request(3, 4);
+
+        final List<String> read = readAll(request, () -> reader().query(queryRequest(), request, "Items read: "));
+
+        assertEquals(List.of("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), read);
+        final ArgumentCaptor<QueryRequest> captor = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(dynamoDbClient, atLeastOnce()).query(captor.capture());
+        captor.getAllValues().forEach(queryRequest -> assertEquals(3, queryRequest.limit()));
+    }
+
+    @Test
+    public void testScanResumesExactlyAfterTheLastReturnedItem() {
+        stubScan(10);
+        final Request request = request(4, 4);
+
+        final List<String> read = readAll(request, () -> reader().scan(scanRequest(), request, "Items read: "));
+
+        assertEquals(List.of("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), read);
+    }
+
+    @Test
+    public void testHonoursPageSizeAndItemLimit() {
+        stubScan(20);
+        final Request request = request(5, 7);
+
+        final Response response = reader().scan(scanRequest(), request, "Items read: ");
+
+        assertEquals("Items read: 7", response.getMessage());
+        assertEquals(7, response.getItems().size());
+        assertNotNull(response.getContinuationToken());
+        // Pages are fetched lazily: the third page is never read.
+        final ArgumentCaptor<ScanRequest> captor = ArgumentCaptor.forClass(ScanRequest.class);
+        verify(dynamoDbClient, times(2)).scan(captor.capture());
+        captor.getAllValues().forEach(scanRequest -> assertEquals(5, scanRequest.limit()));
+    }
+
+    @Test
+    public void testDefaultsPageSizeAndItemLimit() {
+        stubScan(PaginatedReader.DEFAULT_ITEM_LIMIT + 500);
+
+        final Response response = reader().scan(scanRequest(), request(null, null), "Items read: ");
+
+        assertEquals(PaginatedReader.DEFAULT_ITEM_LIMIT, response.getItems().size());
+        assertNotNull(response.getContinuationToken());
+        verify(dynamoDbClient, times(PaginatedReader.DEFAULT_ITEM_LIMIT / PaginatedReader.DEFAULT_PAGE_SIZE))
+                .scan(any(ScanRequest.class));
+    }
+
+    @Test
+    public void testNoTokenWhenTheLastItemEndsTheResult() {
+        stubQuery(10);
+
+        final Response response = reader().query(queryRequest(), request(5, 10), "Items read: ");
+
+        assertEquals(10, response.getItems().size());
+        assertNull(response.getContinuationToken());
+    }
+
+    @Test
+    public void testRejectsInvalidTokensBeforeReading() {
+        final Map<String, AttributeValue> key = new HashMap<>();
+        key.put("id", AttributeValue.builder().s("p1").build());
+        final Request malformed = request(3, 4);
+        malformed.setContinuationToken("not a token!");
+        final Request segments = request(3, 4);
+        segments.setContinuationToken(ContinuationToken.encodeSegments(List.of(key)));
+
+        assertEquals("Malformed continuation token", assertThrows(IllegalArgumentException.class,
+                () -> reader().query(queryRequest(), malformed, "Items read: ")).getMessage());
+        assertEquals("Unsupported continuation token version", assertThrows(IllegalArgumentException.class,
+                () -> reader().scan(scanRequest(), segments, "Items read: ")).getMessage());
+        verifyNoInteractions(dynamoDbClient);
+    }
+
+    private PaginatedReader reader() {
+        return new PaginatedReader(dynamoDbClient);
+    }
+
+    /**
+     * Serves a partition of the given number of items through the real paginator.
+     */
+    private void stubQuery(final int tableItems) {
+        when(dynamoDbClient.queryPaginator(any(QueryRequest.class)))
+                .thenAnswer(invocation -> new QueryIterable(dynamoDbClient, invocation.getArgument(0)));
+        when(dynamoDbClient.query(any(QueryRequest.class))).thenAnswer(invocation -> {
+            final QueryRequest queryRequest = invocation.getArgument(0);
+            final List<Map<String, AttributeValue>> items =
+                    page(queryRequest.exclusiveStartKey(), queryRequest.limit(), tableItems);
+            return QueryResponse.builder().items(items).lastEvaluatedKey(lastEvaluatedKey(items, tableItems))
+                    .build();
+        });
+    }
+
+    /**
+     * Serves a table of the given number of items through the real paginator.
+     */
+    private void stubScan(final int tableItems) {
+        when(dynamoDbClient.scanPaginator(any(ScanRequest.class)))
+                .thenAnswer(invocation -> new ScanIterable(dynamoDbClient, invocation.getArgument(0)));
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            final ScanRequest scanRequest = invocation.getArgument(0);
+            final List<Map<String, AttributeValue>> items =
+                    page(scanRequest.exclusiveStartKey(), scanRequest.limit(), tableItems);
+            return ScanResponse.builder().items(items).lastEvaluatedKey(lastEvaluatedKey(items, tableItems))
+                    .build();
+        });
+    }
+
+    /**
+     * Items after the exclusive start key, in sort key order, up to the limit.
+     */
+    private static List<Map<String, AttributeValue>> page(final Map<String, AttributeValue> exclusiveStartKey,
+            final int limit, final int tableItems) {
+        final int start = exclusiveStartKey == null || exclusiveStartKey.isEmpty()
+                ? 0 : Integer.parseInt(exclusiveStartKey.get("dateandtime").n()) + 1;
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int i = start; i < Math.min(tableItems, start + limit); i++) {
+            final Map<String, AttributeValue> item = new HashMap<>();
+            item.put("id", AttributeValue.builder().s("p1").build());
+            item.put("dateandtime", AttributeValue.builder().n(String.valueOf(i)).build());
+            item.put("data", AttributeValue.builder().s("item " + i).build());
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * Key of the last item of a page, unless the page ends the table.
+     */
+    private static Map<String, AttributeValue> lastEvaluatedKey(final List<Map<String, AttributeValue>> items,
+            final int tableItems) {
+        if (items.isEmpty()) {
+            return null;
+        }
+        final Map<String, AttributeValue> last = items.get(items.size() - 1);
+        if (Integer.parseInt(last.get("dateandtime").n()) == tableItems - 1) {
+            return null;
+        }
+        final Map<String, AttributeValue> key = new HashMap<>(last);
+        key.remove("data");
+        return key;
+    }
+
+    private static List<String> readAll(final Request request, final Supplier<Response> read) {
+        final List<String> result = new ArrayList<>();
+        Response response;
+        do {
+            response = read.get();
+            assertNull(response.getErrorMessage());
+            assertTrue(response.getItems().size() <= request.getItemLimit());
+            response.getItems().forEach(item -> result.add(String.valueOf(item.get("dateandtime"))));
+            request.setContinuationToken(response.getContinuationToken());
+        } while (response.getContinuationToken() != null);
+        return result;
+    }
+
+    private static QueryRequest.Builder queryRequest() {
+        return QueryRequest.builder().tableName("my_table").keyConditionExpression("id = :id");
+    }
+
+    private static ScanRequest.Builder scanRequest() {
+        return ScanRequest.builder().tableName("my_table");
+    }
+
+    private static Request request(final Integer pageSize, final Integer itemLimit) {
+        final Request request = new Request();
+        request.setTableName("my_table");
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        request.setPartitionKeyValue("p1");
+        request.setPageSize(pageSize);
+        request.setItemLimit(itemLimit);
+        return request;
+    }
+}
@@ -0,0 +1,149 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Parallel scan scaling from 1 to 16 segments against DynamoDB Local. The median time of a full scan per
+ * segment count is written as one JSON line per segment count to target/parallel-scan-benchmark.json.<br/>
+ * Run with: mvn test -Ddynamodb.local.endpoint=http://localhost:8000
+ */
+@EnabledIfSystemProperty(named = "dynamodb.local.endpoint", matches = ".+")
+public class ParallelScanBenchmarkTest {
+
+    private static final String TABLE_NAME = "parallel_scan_benchmark";
+    private static final int ITEM_COUNT = 20000;
+    private static final int BATCH_SIZE = 25;
+    private static final int[] SEGMENTS = {1, 2, 4, 8, 16};
+    private static final int WARM_UP_ROUNDS = 1;
+    private static final int ROUNDS = 5;
+    private static final Path REPORT = Paths.get("target", "parallel-scan-benchmark.json");
+
+    private static DynamoDbClient dynamoDbClient;
+
+    @BeforeAll
+    public static void setUp() {
+        dynamoDbClient = DynamoDbClient.builder()
+                .endpointOverride(URI.create(System.getProperty("dynamodb.local.endpoint")))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")))
+                .build();
+
+        dynamoDbClient.createTable(CreateTableRequest.builder()
+                .tableName(TABLE_NAME)
+                .attributeDefinitions(
+                        AttributeDefinition.builder().attributeName("id").attributeType(ScalarAttributeType.S).build(),
+                        AttributeDefinition.builder().attributeName("dateandtime")
+                                .attributeType(ScalarAttributeType.N).build())
+                .keySchema(
+                        KeySchemaElement.builder().attributeName("id").keyType(KeyType.HASH).build(),
+                        KeySchemaElement.builder().attributeName("dateandtime").keyType(KeyType.RANGE).build())
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .build());
+
+        List<WriteRequest> batch = new ArrayList<>();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("id", AttributeValue.builder().s("p" + i).build());
+            item.put("dateandtime", AttributeValue.builder().n(String.valueOf(i)).build());
+            batch.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build());
+            if (batch.size() == BATCH_SIZE) {
+                writeBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    private static void writeBatch(final List<WriteRequest> batch) {
+        Map<String, List<WriteRequest>> requestItems = new HashMap<>();
+        requestItems.put(TABLE_NAME, batch);
+        while (!requestItems.isEmpty()) {
+            requestItems = dynamoDbClient.batchWriteItem(BatchWriteItemRequest.builder()
+                    .requestItems(requestItems)
+                    .build()).unprocessedItems();
+        }
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        dynamoDbClient.deleteTable(DeleteTableRequest.builder().tableName(TABLE_NAME).build());
+        dynamoDbClient.close();
+    }
+
+    @Test
+    public void benchmarkParallelScan() throws IOException {
+        final DynamoDBService service = new DynamoDBServiceImpl1(dynamoDbClient);
+        final List<String> report = new ArrayList<>();
+        final long[] medianMillis = new long[SEGMENTS.length];
+
+        for (int s = 0; s < SEGMENTS.length; s++) {
+            final Request request = new Request();
+            request.setTableName(TABLE_NAME);
+            request.setPartitionKey("id");
+            request.setSortKey("dateandtime");
+            request.setTotalSegments(SEGMENTS[s]);
+            request.setItemLimit(ITEM_COUNT);
+
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                service.parallelScan(request);
+            }
+            final long[] millis = new long[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                final long start = System.nanoTime();
+                final Response response = service.parallelScan(request);
+                millis[i] = (System.nanoTime() - start) / 1_000_000;
+
+                assertNull(response.getErrorMessage());
+                assertNull(response.getContinuationToken());
+                assertEquals(ITEM_COUNT, response.getItems().size());
+            }
+            Arrays.sort(millis);
+            medianMillis[s] = millis[ROUNDS / 2];
+            report.add("{\"benchmark\":\"parallel scan\",\"items\":" + ITEM_COUNT + ",\"segments\":" + SEGMENTS[s]
+                    + ",\"rounds\":" + ROUNDS + ",\"medianMillis\":" + medianMillis[s]
+                    + ",\"maxMillis\":" + millis[ROUNDS - 1] + "}");
+        }
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, report);
+
+        assertTrue(medianMillis[SEGMENTS.length - 1] < medianMillis[0], String.join("\n", report));
+    }
+}
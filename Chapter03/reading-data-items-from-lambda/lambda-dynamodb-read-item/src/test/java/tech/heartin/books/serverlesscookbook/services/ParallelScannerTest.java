@@ -0,0 +1,180 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ParallelScannerTest {
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Test
+    public void testScansEverySegment() {
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> page(invocation.getArgument(0), 6));
+
+        final Response response = scan(request(4, 3, null));
+
+        assertNull(response.getErrorMessage());
+        assertEquals("Items read: 24. Segments: 4, throttled requests retried: 0", response.getMessage());
+        assertNull(response.getContinuationToken());
+        final ArgumentCaptor<ScanRequest> captor = ArgumentCaptor.forClass(ScanRequest.class);
+        verify(dynamoDbClient, times(8)).scan(captor.capture());
+        final Set<Integer> segments = new HashSet<>();
+        captor.getAllValues().forEach(scanRequest -> {
+            assertEquals(4, scanRequest.totalSegments());
+            assertEquals(3, scanRequest.limit());
+            segments.add(scanRequest.segment());
+        });
+        assertEquals(Set.of(0, 1, 2, 3), segments);
+    }
+
+    @Test
+    public void testResumesEverySegmentFromTheToken() {
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> page(invocation.getArgument(0), 7));
+        final Request request = request(3, 2, 5);
+
+        final List<Object> read = new ArrayList<>();
+        Response response;
+        do {
+            response = scan(request);
+            assertNull(response.getErrorMessage());
+            assertTrue(response.getItems().size() <= 5);
+            response.getItems().forEach(item -> read.add(item.get("id") + "/" + item.get("dateandtime")));
+            request.setContinuationToken(response.getContinuationToken());
+        } while (response.getContinuationToken() != null);
+
+        assertEquals(21, read.size());
+        assertEquals(21, new HashSet<>(read).size());
+    }
+
+    @Test
+    public void testStopsAtItemLimitWhileWorkersWaitOnTheQueue() {
+        // Every segment is endless, so only the bounded queue stops the workers before they are cancelled.
+        final int pageItems = 100;
+        when(dynamoDbClient.scan(any(ScanRequest.class)))
+                .thenAnswer(invocation -> page(invocation.getArgument(0), Integer.MAX_VALUE));
+
+        final Response response = scan(request(1, pageItems, 10));
+
+        assertEquals(10, response.getItems().size());
+        assertNotNull(response.getContinuationToken());
+        final int maxPages = (ParallelScanner.QUEUE_CAPACITY + 10) / pageItems + 2;
+        assertTrue(mockingDetails(dynamoDbClient).getInvocations().size() <= maxPages);
+    }
+
+    @Test
+    public void testRetriesThrottledPagesWithAdaptiveBackoff() {
+        final AtomicInteger calls = new AtomicInteger();
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() <= 2) {
+                throw ProvisionedThroughputExceededException.builder().message("Slow down").build();
+            }
+            return page(invocation.getArgument(0), 3);
+        });
+        final Request request = request(1, 3, null);
+        request.setAdaptiveBackoff(true);
+
+        final Response response = scan(request);
+
+        assertEquals("Items read: 3. Segments: 1, throttled requests retried: 2", response.getMessage());
+        verify(dynamoDbClient, times(3)).scan(any(ScanRequest.class));
+    }
+
+    @Test
+    public void testThrottlingFailsTheScanWithoutAdaptiveBackoff() {
+        when(dynamoDbClient.scan(any(ScanRequest.class)))
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("Slow down").build());
+
+        final Response response = scan(request(2, 3, null));
+
+        assertNull(response.getMessage());
+        assertEquals("Error during parallel scan with 2 segments: Slow down", response.getErrorMessage());
+        verify(dynamoDbClient, atLeast(1)).scan(any(ScanRequest.class));
+    }
+
+    @Test
+    public void testRejectsTokenOfAnotherSegmentCount() {
+        final Request request = request(3, 2, 5);
+        request.setContinuationToken(ContinuationToken.encodeSegments(new ArrayList<>(List.of(
+                ContinuationToken.SEGMENT_DONE, ContinuationToken.SEGMENT_DONE, key(2, 1), key(3, 1)))));
+
+        final IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> scan(request));
+
+        assertEquals("Continuation token is for 4 segments, not 3", e.getMessage());
+        verifyNoInteractions(dynamoDbClient);
+    }
+
+    private Response scan(final Request request) {
+        return new ParallelScanner(dynamoDbClient).scan(ScanRequest.builder().tableName("my_table"), request,
+                "Items read: ");
+    }
+
+    /**
+     * Page of a segment holding the given number of items, starting after the exclusive start key.
+     */
+    private static ScanResponse page(final ScanRequest scanRequest, final int segmentItems) {
+        final int start = scanRequest.hasExclusiveStartKey()
+                ? Integer.parseInt(scanRequest.exclusiveStartKey().get("dateandtime").n()) + 1 : 0;
+        final int end = (int) Math.min(segmentItems, (long) start + scanRequest.limit());
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            items.add(key(scanRequest.segment(), i));
+        }
+        final ScanResponse.Builder page = ScanResponse.builder().items(items);
+        if (end < segmentItems) {
+            page.lastEvaluatedKey(key(scanRequest.segment(), end - 1));
+        }
+        return page.build();
+    }
+
+    private static Map<String, AttributeValue> key(final int segment, final int index) {
+        final Map<String, AttributeValue> key = new HashMap<>();
+        key.put("id", AttributeValue.builder().s("s" + segment).build());
+        key.put("dateandtime", AttributeValue.builder().n(String.valueOf(index)).build());
+        return key;
+    }
+
+    private static Request request(final int totalSegments, final int pageSize, final Integer itemLimit) {
+        final Request request = new Request();
+        request.setTableName("my_table");
+        request.setPartitionKey("id");
+        request.setSortKey("dateandtime");
+        request.setTotalSegments(totalSegments);
+        request.setPageSize(pageSize);
+        request.setItemLimit(itemLimit);
+        return request;
+    }
+}
@@ -1,5 +1,7 @@
 package tech.heartin.books.serverlesscookbook.domain;
 
+import java.util.List;
+
 import lombok.Data;
 
 /**
@@ -9,4 +11,8 @@ import lombok.Data;
 public class Request {
     private String queueName;
     private String message;
+    // Batch mode: send all of these with SendMessageBatch instead of the single message.
+    private List<String> messages;
+    // False to only send to an existing queue; defaults to creating the queue if needed.
+    private Boolean createQueue;
 }
@@ -0,0 +1,83 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Queue URLs by queue name, kept for the life of the container.<br/>
+ * A queue URL does not change while the queue exists, so found URLs are kept until a call reports
+ * the queue missing and the caller invalidates it. Missing queues are remembered for a short time so
+ * repeated requests for them fail without a GetQueueUrl call each.
+ */
+final class QueueUrlCache {
+
+    static final long NEGATIVE_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Plenty for the queues one function sends to; guards against unbounded growth from bad input.
+    static final int MAX_ENTRIES = 1000;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongSupplier ticker;
+
+    QueueUrlCache() {
+        this(System::nanoTime);
+    }
+
+    QueueUrlCache(final LongSupplier ticker) {
+        this.ticker = ticker;
+    }
+
+    /**
+     * Cached lookup result for the queue name.
+     * @return the entry, or null if the queue is unknown or a negative entry has expired.
+     */
+    Entry get(final String queueName) {
+        final Entry entry = entries.get(queueName);
+        if (entry != null && entry.isMissing() && entry.expiresAt - ticker.getAsLong() <= 0) {
+            entries.remove(queueName, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    void putUrl(final String queueName, final String queueUrl) {
+        put(queueName, new Entry(queueUrl, 0));
+    }
+
+    void putMissing(final String queueName) {
+        put(queueName, new Entry(null, ticker.getAsLong() + NEGATIVE_TTL_NANOS));
+    }
+
+    void invalidate(final String queueName) {
+        entries.remove(queueName);
+    }
+
+    private void put(final String queueName, final Entry entry) {
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(queueName)) {
+            entries.clear();
+        }
+        entries.put(queueName, entry);
+    }
+
+    /**
+     * A queue URL, or a remembered miss when the URL is null.
+     */
+    static final class Entry {
+        private final String queueUrl;
+        private final long expiresAt;
+
+        Entry(final String queueUrl, final long expiresAt) {
+            this.queueUrl = queueUrl;
+            this.expiresAt = expiresAt;
+        }
+
+        String getQueueUrl() {
+            return queueUrl;
+        }
+
+        boolean isMissing() {
+            return queueUrl == null;
+        }
+    }
+}
@@ -1,79 +1,196 @@
 package tech.heartin.books.serverlesscookbook.services;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
 import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
 import software.amazon.awssdk.services.sqs.model.CreateQueueResponse;
 import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 
 import tech.heartin.books.serverlesscookbook.domain.Request;
 import tech.heartin.books.serverlesscookbook.domain.Response;
 
 /**
- * Implementation class for SqsService.
+ * Implementation class for SqsService.<br/>
+ * Queue URLs are resolved once per container through the {@link QueueUrlCache}, so steady-state
+ * invocations go straight to SendMessage or SendMessageBatch. A send that finds the queue gone
+ * invalidates the cached URL and, when queue creation is allowed, recreates the queue and sends once more.
  */
 public class SqsServiceImpl implements SqsService {
 
+    static final int MAX_ENTRIES_PER_BATCH = 10;
+    static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    private static final int DELAY_SECONDS = 5;
+    private static final int MAX_ATTEMPTS = 2;
+
+    // One cache per container, shared by the service instances created for each invocation.
+    private static final QueueUrlCache QUEUE_URLS = new QueueUrlCache();
+
     private final SqsClient  sqsClient;
+    private final QueueUrlCache queueUrlCache;
 
     public SqsServiceImpl(final SqsClient  sqsClient) {
+        this(sqsClient, QUEUE_URLS);
+    }
+
+    SqsServiceImpl(final SqsClient sqsClient, final QueueUrlCache queueUrlCache) {
         this.sqsClient = sqsClient;
+        this.queueUrlCache = queueUrlCache;
     }
 
     @Override
     public final Response createQueueAndSendMessage(final Request request, final LambdaLogger logger) {
 
+        final String queueName = request.getQueueName();
+        final boolean createQueue = !Boolean.FALSE.equals(request.getCreateQueue());
         String errorMessage;
 
-        try {
-            CreateQueueRequest createQueueRequest = CreateQueueRequest.builder()
-                    .queueName(request.getQueueName())
-                    .build();
-
-            CreateQueueResponse createQueueResponse = this.sqsClient.createQueue(createQueueRequest);
-            logger.log("Created queue: " +  createQueueResponse.queueUrl());
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
 
-        } catch (SdkException e) {
+            final QueueUrlCache.Entry cached = queueUrlCache.get(queueName);
+            if (cached != null && cached.isMissing() && !createQueue) {
+                errorMessage = "Queue does not exist: " + queueName;
+                logger.log(errorMessage);
+                return new Response(errorMessage);
+            }
 
-            if (e.getMessage().contains("QueueAlreadyExists")) {
-                errorMessage = "QueueAlreadyExists: " + request.getQueueName();
-            } else {
-                errorMessage = "Error during queue creation: " + e.getMessage();
+            String queueUrl = cached != null ? cached.getQueueUrl() : null;
+            if (queueUrl == null) {
+                try {
+                    queueUrl = resolveQueueUrl(queueName, createQueue, logger);
+                } catch (QueueDoesNotExistException e) {
+                    queueUrlCache.putMissing(queueName);
+                    errorMessage = "Queue does not exist: " + queueName;
+                    logger.log(errorMessage);
+                    return new Response(errorMessage);
+                } catch (SdkException e) {
+
+                    if (!createQueue) {
+                        errorMessage = "Error fetching queue URL: " + e.getMessage();
+                    } else if (e.getMessage().contains("QueueAlreadyExists")) {
+                        errorMessage = "QueueAlreadyExists: " + queueName;
+                    } else {
+                        errorMessage = "Error during queue creation: " + e.getMessage();
+                    }
+
+                    logger.log(errorMessage);
+                    return new Response(errorMessage);
+                }
             }
 
-            logger.log(errorMessage);
-            return new Response(errorMessage);
+            try {
+                return send(queueUrl, request, logger);
+            } catch (QueueDoesNotExistException e) {
+                // Deleted since the URL was cached; look it up (or create it) again.
+                queueUrlCache.invalidate(queueName);
+                logger.log("Queue no longer exists: " + queueName);
+                if (!createQueue) {
+                    queueUrlCache.putMissing(queueName);
+                    break;
+                }
+            } catch (Exception e) {
+                errorMessage = "Exception while sending message: " + e.getMessage();
+                logger.log(errorMessage);
+                return new Response(errorMessage);
+            }
         }
 
-        String queueUrl;
-        try {
+        errorMessage = "Queue does not exist: " + queueName;
+        logger.log(errorMessage);
+        return new Response(errorMessage);
+
+    }
+
+    /**
+     * Create the queue, which returns the URL of the queue whether it is new or not, or only look it up.
+     */
+    private String resolveQueueUrl(final String queueName, final boolean createQueue, final LambdaLogger logger) {
+        final String queueUrl;
+        if (createQueue) {
+            CreateQueueResponse createQueueResponse = this.sqsClient.createQueue(CreateQueueRequest.builder()
+                    .queueName(queueName)
+                    .build());
+            queueUrl = createQueueResponse.queueUrl();
+            logger.log("Created queue: " +  queueUrl);
+        } else {
             queueUrl = this.sqsClient.getQueueUrl(GetQueueUrlRequest.builder()
-                    .queueName(request.getQueueName())
+                    .queueName(queueName)
                     .build()).queueUrl();
-        } catch (SdkException e) {
-            errorMessage = "Error fetching queue URL: " + e.getMessage();
-            logger.log(errorMessage);
-            return new Response(errorMessage);
         }
+        queueUrlCache.putUrl(queueName, queueUrl);
+        return queueUrl;
+    }
 
-        SendMessageRequest sendMessageRequest = SendMessageRequest.builder()
-                .queueUrl(queueUrl)
-                .messageBody(request.getMessage())
-                .delaySeconds(5)
-                .build();
-        try {
-            this.sqsClient.sendMessage(sendMessageRequest);
-        } catch (Exception e) {
-            errorMessage = "Exception while sending message: " + e.getMessage();
+    private Response send(final String queueUrl, final Request request, final LambdaLogger logger) {
+        if (request.getMessages() == null || request.getMessages().isEmpty()) {
+            this.sqsClient.sendMessage(SendMessageRequest.builder()
+                    .queueUrl(queueUrl)
+                    .messageBody(request.getMessage())
+                    .delaySeconds(DELAY_SECONDS)
+                    .build());
+            return new Response("Successfully sent message to queue: " + request.getQueueName());
+        }
+
+        final List<String> messages = request.getMessages();
+        int failed = 0;
+        for (List<SendMessageBatchRequestEntry> entries : toBatches(messages)) {
+            final SendMessageBatchResponse response = this.sqsClient.sendMessageBatch(SendMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(entries)
+                    .build());
+            for (BatchResultErrorEntry failure : response.failed()) {
+                logger.log("Failed message ID: " + failure.id() + ", Reason: " + failure.message());
+            }
+            failed += response.failed().size();
+        }
+
+        if (failed > 0) {
+            final String errorMessage = "Sent " + (messages.size() - failed) + " of " + messages.size()
+                    + " messages to queue: " + request.getQueueName();
             logger.log(errorMessage);
             return new Response(errorMessage);
         }
+        return new Response("Successfully sent " + messages.size() + " messages to queue: " + request.getQueueName());
+    }
 
-        return new Response("Successfully sent message to queue: " + request.getQueueName());
-
+    /**
+     * Group messages by the batch limits of 10 entries and 256 KB of payload. The entry id is the
+     * position of the message in the request.
+     */
+    static List<List<SendMessageBatchRequestEntry>> toBatches(final List<String> messages) {
+        final List<List<SendMessageBatchRequestEntry>> batches = new ArrayList<>();
+        List<SendMessageBatchRequestEntry> batch = new ArrayList<>();
+        int batchBytes = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            final int bytes = messages.get(i).getBytes(StandardCharsets.UTF_8).length;
+            if (!batch.isEmpty() && (batch.size() == MAX_ENTRIES_PER_BATCH || batchBytes + bytes > MAX_BATCH_BYTES)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(SendMessageBatchRequestEntry.builder()
+                    .id(String.valueOf(i))
+                    .messageBody(messages.get(i))
+                    .delaySeconds(DELAY_SECONDS)
+                    .build());
+            batchBytes += bytes;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
     }
 
 }
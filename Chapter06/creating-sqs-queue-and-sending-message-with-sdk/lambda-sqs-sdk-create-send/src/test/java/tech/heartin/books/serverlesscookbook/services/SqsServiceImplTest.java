@@ -0,0 +1,154 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
+import software.amazon.awssdk.services.sqs.model.CreateQueueResponse;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+import software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class SqsServiceImplTest {
+
+    private static final String QUEUE_NAME = "create-send-demo-queue";
+    private static final String QUEUE_URL = "https://queue.amazonaws.com/123456789012/" + QUEUE_NAME;
+
+    @Mock
+    private SqsClient sqsClient;
+
+    @Mock
+    private LambdaLogger logger;
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testQueueUrlIsResolvedOncePerContainer() {
+        when(sqsClient.createQueue(any(CreateQueueRequest.class)))
+                .thenReturn(CreateQueueResponse.builder().queueUrl(QUEUE_URL).build());
+        when(sqsClient.sendMessage(any(SendMessageRequest.class))).thenReturn(SendMessageResponse.builder().build());
+
+        final SqsServiceImpl service = new SqsServiceImpl(sqsClient, new QueueUrlCache(now::get));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Successfully sent message to queue: " + QUEUE_NAME,
+                    service.createQueueAndSendMessage(request("test payload " + i), logger).getMessage());
+        }
+
+        verify(sqsClient, times(1)).createQueue(any(CreateQueueRequest.class));
+        verify(sqsClient, never()).getQueueUrl(any(GetQueueUrlRequest.class));
+        verify(sqsClient, times(3)).sendMessage(any(SendMessageRequest.class));
+    }
+
+    @Test
+    public void testMissingQueueIsCachedUntilTtlExpires() {
+        when(sqsClient.getQueueUrl(any(GetQueueUrlRequest.class)))
+                .thenThrow(QueueDoesNotExistException.builder().message("Queue does not exist").build());
+
+        final SqsServiceImpl service = new SqsServiceImpl(sqsClient, new QueueUrlCache(now::get));
+        final Request request = request("test payload");
+        request.setCreateQueue(false);
+
+        assertEquals("Queue does not exist: " + QUEUE_NAME,
+                service.createQueueAndSendMessage(request, logger).getMessage());
+        service.createQueueAndSendMessage(request, logger);
+        verify(sqsClient, times(1)).getQueueUrl(any(GetQueueUrlRequest.class));
+
+        now.addAndGet(QueueUrlCache.NEGATIVE_TTL_NANOS + 1);
+        service.createQueueAndSendMessage(request, logger);
+        verify(sqsClient, times(2)).getQueueUrl(any(GetQueueUrlRequest.class));
+        verify(sqsClient, never()).sendMessage(any(SendMessageRequest.class));
+    }
+
+    @Test
+    public void testDeletedQueueInvalidatesCachedUrl() {
+        when(sqsClient.getQueueUrl(any(GetQueueUrlRequest.class)))
+                .thenReturn(GetQueueUrlResponse.builder().queueUrl(QUEUE_URL).build());
+        when(sqsClient.sendMessage(any(SendMessageRequest.class)))
+                .thenReturn(SendMessageResponse.builder().build())
+                .thenThrow(QueueDoesNotExistException.builder().message("Queue does not exist").build());
+
+        final SqsServiceImpl service = new SqsServiceImpl(sqsClient, new QueueUrlCache(now::get));
+        final Request request = request("test payload");
+        request.setCreateQueue(false);
+
+        service.createQueueAndSendMessage(request, logger);
+        assertEquals("Queue does not exist: " + QUEUE_NAME,
+                service.createQueueAndSendMessage(request, logger).getMessage());
+        service.createQueueAndSendMessage(request, logger);
+
+        verify(sqsClient, times(1)).getQueueUrl(any(GetQueueUrlRequest.class));
+        verify(sqsClient, times(2)).sendMessage(any(SendMessageRequest.class));
+    }
+
+    @Test
+    public void testRecreatesDeletedQueue() {
+        when(sqsClient.createQueue(any(CreateQueueRequest.class)))
+                .thenReturn(CreateQueueResponse.builder().queueUrl(QUEUE_URL).build());
+        when(sqsClient.sendMessage(any(SendMessageRequest.class)))
+                .thenThrow(QueueDoesNotExistException.builder().message("Queue does not exist").build())
+                .thenReturn(SendMessageResponse.builder().build());
+
+        final Response response = new SqsServiceImpl(sqsClient, new QueueUrlCache(now::get))
+                .createQueueAndSendMessage(request("test payload"), logger);
+
+        assertEquals("Successfully sent message to queue: " + QUEUE_NAME, response.getMessage());
+        verify(sqsClient, times(2)).createQueue(any(CreateQueueRequest.class));
+    }
+
+    @Test
+    public void testBatchModeSendsInBatchesOfTen() {
+        when(sqsClient.createQueue(any(CreateQueueRequest.class)))
+                .thenReturn(CreateQueueResponse.builder().queueUrl(QUEUE_URL).build());
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        final List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            messages.add("test payload " + i);
+        }
+        final Request request = request(null);
+        request.setMessages(messages);
+
+        final Response response = new SqsServiceImpl(sqsClient, new QueueUrlCache(now::get))
+                .createQueueAndSendMessage(request, logger);
+
+        assertEquals("Successfully sent 25 messages to queue: " + QUEUE_NAME, response.getMessage());
+        final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, times(3)).sendMessageBatch(captor.capture());
+        assertEquals(Arrays.asList(10, 10, 5), Arrays.asList(captor.getAllValues().get(0).entries().size(),
+                captor.getAllValues().get(1).entries().size(), captor.getAllValues().get(2).entries().size()));
+        verify(sqsClient, never()).sendMessage(any(SendMessageRequest.class));
+    }
+
+    private static Request request(final String message) {
+        final Request request = new Request();
+        request.setQueueName(QUEUE_NAME);
+        request.setMessage(message);
+        return request;
+    }
+}
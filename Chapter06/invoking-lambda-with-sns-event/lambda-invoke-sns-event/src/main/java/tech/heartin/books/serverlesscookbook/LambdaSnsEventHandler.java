@@ -1,11 +1,15 @@
 package tech.heartin.books.serverlesscookbook;
 
+import java.nio.file.Paths;
+
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.SNSEvent;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.regions.Region;
 
+import tech.heartin.books.serverlesscookbook.services.ClaimCheckStore;
+import tech.heartin.books.serverlesscookbook.services.LocalClaimCheckStore;
 import tech.heartin.books.serverlesscookbook.services.SnsService;
 import tech.heartin.books.serverlesscookbook.services.SnsServiceImpl;
 
@@ -15,11 +19,17 @@ import tech.heartin.books.serverlesscookbook.services.SnsServiceImpl;
 public final class LambdaSnsEventHandler implements RequestHandler<SNSEvent, Boolean> {
 
     private final SqsClient sqsClient;
+    private final ClaimCheckStore claimCheckStore;
 
     public LambdaSnsEventHandler() {
          this.sqsClient = SqsClient.builder()
                 .region(Region.of(System.getenv("AWS_REGION")))
                 .build();
+         // The claim-check directory must be shared with the consumers, e.g. an EFS mount; without one,
+         // messages too large for the queue are reported as failed rather than lost.
+         final String claimCheckDir = System.getenv("SPC_CLAIM_CHECK_DIR");
+         this.claimCheckStore = claimCheckDir == null || claimCheckDir.isEmpty()
+                 ? null : new LocalClaimCheckStore(Paths.get(claimCheckDir));
     }
 
     /**
@@ -32,10 +42,18 @@ public final class LambdaSnsEventHandler implements RequestHandler<SNSEvent, Boo
     public Boolean handleRequest(final SNSEvent snsEvent, final Context context) {
         context.getLogger().log("Received SQS event: " + snsEvent);
 
-        final SnsService snsService =  new SnsServiceImpl(this.sqsClient);
+        final SnsService snsService =  new SnsServiceImpl(this.sqsClient, this.claimCheckStore, maxInFlight());
         // It is a good practice to prefix environment variables with a project specific prefix.
         // E.g. SPC is a prefix that denote Serverless Programming Cookbook.
         return snsService.processEvent(snsEvent, System.getenv("SPC_OUTPUT_QUEUE_URL"), context.getLogger());
 
     }
+
+    /**
+     * Maximum number of SendMessageBatch requests in flight, from SPC_MAX_IN_FLIGHT; 0 uses the default.
+     */
+    private static int maxInFlight() {
+        final String maxInFlight = System.getenv("SPC_MAX_IN_FLIGHT");
+        return maxInFlight == null || maxInFlight.isEmpty() ? 0 : Integer.parseInt(maxInFlight);
+    }
 }
@@ -0,0 +1,176 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SNSEvent.SNSRecord;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+/**
+ * Forwards SNS records to a queue with SendMessageBatch.<br/>
+ * Records are encoded by the {@link PayloadEncoder}, packed into batches of at most 10 entries and 256 KB
+ * of payload including attributes, up to maxInFlight batches are sent concurrently on the
+ * {@link ServiceExecutor}, and only the entries SQS reports as failed are sent again, with jittered
+ * exponential backoff. Sender faults are not retried.
+ */
+final class BatchForwarder {
+
+    static final int MAX_ENTRIES_PER_BATCH = 10;
+    static final int MAX_BATCH_BYTES = 256 * 1024;
+    static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    static final int MAX_RETRIES = 5;
+
+    private final SqsClient sqsClient;
+    private final PayloadEncoder encoder;
+    private final int maxInFlight;
+
+    BatchForwarder(final SqsClient sqsClient, final PayloadEncoder encoder, final int maxInFlight) {
+        this.sqsClient = sqsClient;
+        this.encoder = encoder;
+        this.maxInFlight = maxInFlight > 0
+                ? Math.min(maxInFlight, ServiceExecutor.MAX_THREADS) : DEFAULT_MAX_IN_FLIGHT;
+    }
+
+    /**
+     * Send the records to the queue.
+     * @param queueUrl Output queue URL.
+     * @param records SNS records, in event order.
+     * @param logger Lambda Logger from context.
+     * @return positions of the records that could not be sent, in ascending order.
+     * @throws InterruptedException if interrupted while waiting for batches to complete.
+     */
+    List<Integer> forward(final String queueUrl, final List<SNSRecord> records, final LambdaLogger logger)
+            throws InterruptedException {
+
+        final Set<Integer> failed = new TreeSet<>();
+        final List<List<SendMessageBatchRequestEntry>> batches = pack(records, failed, logger);
+
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final List<Future<List<String>>> results = new ArrayList<>();
+        try {
+            for (List<SendMessageBatchRequestEntry> batch : batches) {
+                inFlight.acquire();
+                results.add(ServiceExecutor.get().submit(() -> {
+                    try {
+                        return sendBatch(queueUrl, batch, logger);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get().forEach(id -> failed.add(Integer.valueOf(id)));
+                } catch (ExecutionException e) {
+                    logger.log("Batch failed: " + e.getCause().getMessage());
+                    batches.get(i).forEach(entry -> failed.add(Integer.valueOf(entry.id())));
+                }
+            }
+        } catch (InterruptedException e) {
+            results.forEach(result -> result.cancel(true));
+            throw e;
+        }
+
+        logger.log("Forwarded " + (records.size() - failed.size()) + " of " + records.size()
+                + " messages in " + batches.size() + " batches.");
+        return new ArrayList<>(failed);
+    }
+
+    /**
+     * Encode the records and group them into batches by entry count and payload size. The entry id is
+     * the position of the record in the event. Records that cannot be encoded are added to failed.
+     */
+    List<List<SendMessageBatchRequestEntry>> pack(final List<SNSRecord> records,
+                                                  final Set<Integer> failed,
+                                                  final LambdaLogger logger) {
+        final List<List<SendMessageBatchRequestEntry>> batches = new ArrayList<>();
+        List<SendMessageBatchRequestEntry> batch = new ArrayList<>();
+        int batchBytes = 0;
+
+        for (int i = 0; i < records.size(); i++) {
+            final SendMessageBatchRequestEntry entry;
+            try {
+                entry = encoder.encode(String.valueOf(i), records.get(i).getSNS());
+            } catch (IOException e) {
+                logger.log("Message at position " + i + " could not be encoded: " + e.getMessage());
+                failed.add(i);
+                continue;
+            }
+            final int bytes = PayloadEncoder.size(entry.messageBody(), entry.messageAttributes());
+
+            if (batch.size() == MAX_ENTRIES_PER_BATCH || batchBytes + bytes > MAX_BATCH_BYTES) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(entry);
+            batchBytes += bytes;
+        }
+
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Send one batch, re-sending only the retryable failed entries.
+     * @return ids of the entries not sent.
+     */
+    private List<String> sendBatch(final String queueUrl,
+                                   final List<SendMessageBatchRequestEntry> batch,
+                                   final LambdaLogger logger) throws InterruptedException {
+
+        final List<String> notSent = new ArrayList<>();
+        List<SendMessageBatchRequestEntry> pending = batch;
+        int attempt = 0;
+
+        while (true) {
+            final SendMessageBatchResponse response = sqsClient.sendMessageBatch(SendMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(pending)
+                    .build());
+            if (response.failed().isEmpty()) {
+                return notSent;
+            }
+
+            final Set<String> retryable = new TreeSet<>();
+            for (BatchResultErrorEntry failure : response.failed()) {
+                if (Boolean.TRUE.equals(failure.senderFault())) {
+                    logger.log("Failed message ID: " + failure.id() + ", Reason: " + failure.message());
+                    notSent.add(failure.id());
+                } else {
+                    retryable.add(failure.id());
+                }
+            }
+
+            if (retryable.isEmpty()) {
+                return notSent;
+            }
+            if (++attempt > MAX_RETRIES) {
+                logger.log("Giving up on message IDs " + retryable + " after " + MAX_RETRIES + " retries.");
+                notSent.addAll(retryable);
+                return notSent;
+            }
+
+            pending = pending.stream()
+                    .filter(entry -> retryable.contains(entry.id()))
+                    .collect(Collectors.toList());
+            Thread.sleep(Backoff.fullJitterMillis(attempt));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.IOException;
+
+/**
+ * Storage for message bodies too large to send through the queue (claim-check pattern).<br/>
+ * The forwarder stores the body and sends the returned key instead; consumers load it back with the key.
+ */
+public interface ClaimCheckStore {
+
+    /**
+     * Store a message body.
+     * @param body Message body.
+     * @return key to load the body with.
+     * @throws IOException if the body could not be stored.
+     */
+    String store(String body) throws IOException;
+
+    /**
+     * Load a stored message body.
+     * @param key Key returned by {@link #store(String)}.
+     * @return the message body.
+     * @throws IOException if the body could not be loaded.
+     */
+    String load(String key) throws IOException;
+}
@@ -0,0 +1,36 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Claim-check store backed by a local directory, one file per body.<br/>
+ * Consumers in other functions can only load the bodies when the directory is shared with them,
+ * e.g. an EFS mount; /tmp is private to one execution environment.
+ */
+public class LocalClaimCheckStore implements ClaimCheckStore {
+
+    private final Path directory;
+
+    public LocalClaimCheckStore(final Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public final String store(final String body) throws IOException {
+        Files.createDirectories(directory);
+        final String key = UUID.randomUUID().toString();
+        Files.write(directory.resolve(key), body.getBytes(StandardCharsets.UTF_8));
+        return key;
+    }
+
+    @Override
+    public final String load(final String key) throws IOException {
+        // Keys are UUIDs; anything else could point outside the directory.
+        return new String(Files.readAllBytes(directory.resolve(UUID.fromString(key).toString())),
+                StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,167 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.services.lambda.runtime.events.SNSEvent;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+
+/**
+ * Turns SNS records into SQS batch entries.<br/>
+ * SNS message attributes are carried over as SQS message attributes. A message whose body and attributes
+ * come near the SQS size limit is sent gzipped and Base64 encoded, and if that is still too large the body
+ * goes to the {@link ClaimCheckStore} and only its key is sent. Either case is marked with an attribute.
+ * Without a claim-check store, or when the message already has the 10 attributes SQS allows and there is no
+ * room for the marker, such a message cannot be encoded.
+ */
+final class PayloadEncoder {
+
+    static final String ENCODING_ATTRIBUTE = "spc-content-encoding";
+    static final String GZIP_BASE64 = "gzip;base64";
+    static final String CLAIM_CHECK_ATTRIBUTE = "spc-claim-check";
+
+    // SQS allows at most 10 attributes per message.
+    static final int MAX_ATTRIBUTES = 10;
+    // Leave room for the marker attribute and the rest of the batch.
+    static final int COMPRESS_THRESHOLD_BYTES = 192 * 1024;
+
+    private static final String STRING = "String";
+    private static final String BINARY = "Binary";
+
+    private final ClaimCheckStore claimCheckStore;
+
+    /**
+     * @param claimCheckStore Store for bodies too large even when compressed, or null.
+     */
+    PayloadEncoder(final ClaimCheckStore claimCheckStore) {
+        this.claimCheckStore = claimCheckStore;
+    }
+
+    /**
+     * Batch entry for one SNS message.
+     * @param id Entry id.
+     * @param sns SNS message of the record.
+     * @return the entry, with the body compressed or replaced by a claim-check key when needed.
+     * @throws IOException if the body could not be compressed or stored, or is too large without a
+     *                     claim-check store or without room for the marker attribute.
+     */
+    SendMessageBatchRequestEntry encode(final String id, final SNSEvent.SNS sns) throws IOException {
+        Map<String, MessageAttributeValue> attributes = toSqsAttributes(sns.getMessageAttributes());
+        String body = sns.getMessage();
+
+        if (size(body, attributes) > COMPRESS_THRESHOLD_BYTES) {
+            if (attributes.size() >= MAX_ATTRIBUTES) {
+                // Dropping an attribute of the sender to make room would lose data without a trace.
+                throw new IOException("Body of " + utf8Length(body) + " bytes needs the " + ENCODING_ATTRIBUTE
+                        + " or " + CLAIM_CHECK_ATTRIBUTE + " attribute, but the message already has "
+                        + attributes.size() + " attributes");
+            }
+            final String compressed = gzipBase64(body);
+            final Map<String, MessageAttributeValue> marked = withMarker(attributes, ENCODING_ATTRIBUTE, GZIP_BASE64);
+            if (size(compressed, marked) <= COMPRESS_THRESHOLD_BYTES) {
+                body = compressed;
+                attributes = marked;
+            } else if (claimCheckStore == null) {
+                throw new IOException("Body of " + utf8Length(body) + " bytes is too large even when compressed"
+                        + " and no claim-check store is configured");
+            } else {
+                final String key = claimCheckStore.store(body);
+                body = key;
+                attributes = withMarker(attributes, CLAIM_CHECK_ATTRIBUTE, key);
+            }
+        }
+
+        return SendMessageBatchRequestEntry.builder()
+                .id(id)
+                .messageBody(body)
+                .messageAttributes(attributes)
+                .build();
+    }
+
+    /**
+     * Original body of a received message, for consumers of the output queue.
+     */
+    static String decode(final String body, final Map<String, MessageAttributeValue> attributes,
+                         final ClaimCheckStore claimCheckStore) throws IOException {
+        final MessageAttributeValue claimCheck = attributes.get(CLAIM_CHECK_ATTRIBUTE);
+        if (claimCheck != null) {
+            return claimCheckStore.load(claimCheck.stringValue());
+        }
+        final MessageAttributeValue encoding = attributes.get(ENCODING_ATTRIBUTE);
+        if (encoding != null && GZIP_BASE64.equals(encoding.stringValue())) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(body)))) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * SNS attributes as SQS attributes. SNS types (String, Number, Binary, String.Array) are valid SQS
+     * types as they are; Binary values arrive Base64 encoded. SQS takes at most 10 attributes.
+     */
+    static Map<String, MessageAttributeValue> toSqsAttributes(
+            final Map<String, SNSEvent.MessageAttribute> snsAttributes) {
+        final Map<String, MessageAttributeValue> attributes = new LinkedHashMap<>();
+        if (snsAttributes == null) {
+            return attributes;
+        }
+        for (Map.Entry<String, SNSEvent.MessageAttribute> attribute : snsAttributes.entrySet()) {
+            if (attributes.size() == MAX_ATTRIBUTES) {
+                break;
+            }
+            final String type = attribute.getValue().getType();
+            final String value = attribute.getValue().getValue();
+            attributes.put(attribute.getKey(), BINARY.equals(type)
+                    ? MessageAttributeValue.builder().dataType(type)
+                            .binaryValue(SdkBytes.fromByteArray(Base64.getDecoder().decode(value))).build()
+                    : MessageAttributeValue.builder().dataType(type).stringValue(value).build());
+        }
+        return attributes;
+    }
+
+    /**
+     * Payload size as SQS counts it: the body plus name, type and value of every attribute.
+     */
+    static int size(final String body, final Map<String, MessageAttributeValue> attributes) {
+        int bytes = utf8Length(body);
+        for (Map.Entry<String, MessageAttributeValue> attribute : attributes.entrySet()) {
+            final MessageAttributeValue value = attribute.getValue();
+            bytes += utf8Length(attribute.getKey()) + utf8Length(value.dataType()) + utf8Length(value.stringValue())
+                    + (value.binaryValue() != null ? value.binaryValue().asByteArray().length : 0);
+        }
+        return bytes;
+    }
+
+    /**
+     * Copy of the attributes with the marker added; there must be room for it.
+     */
+    private static Map<String, MessageAttributeValue> withMarker(final Map<String, MessageAttributeValue> attributes,
+                                                                 final String name, final String value) {
+        final Map<String, MessageAttributeValue> marked = new LinkedHashMap<>(attributes);
+        marked.put(name, MessageAttributeValue.builder().dataType(STRING).stringValue(value).build());
+        return marked;
+    }
+
+    private static String gzipBase64(final String body) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    private static int utf8Length(final String str) {
+        return str == null ? 0 : str.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -1,25 +1,33 @@
 package tech.heartin.books.serverlesscookbook.services;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
 
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.events.SNSEvent;
 import com.amazonaws.services.lambda.runtime.events.SNSEvent.SNSRecord;
 import software.amazon.awssdk.services.sqs.SqsClient;
-import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
-import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
-import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
 
 /**
- * Implementation class for SnsService.
+ * Implementation class for SnsService.<br/>
+ * Messages are forwarded with their message attributes in as many SendMessageBatch requests as the
+ * SQS limits need. Bodies near the size limit are compressed or left in the {@link ClaimCheckStore}.
  */
 public class SnsServiceImpl implements SnsService {
 
-    private final SqsClient sqsClient;
+    private final BatchForwarder batchForwarder;
 
     public SnsServiceImpl(final SqsClient sqsClient) {
-        this.sqsClient = sqsClient;
+        this(sqsClient, null, BatchForwarder.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param sqsClient SQS client.
+     * @param claimCheckStore Store for bodies too large to send even when compressed, or null to report
+     *                        those messages as failed.
+     * @param maxInFlight Maximum number of SendMessageBatch requests in flight.
+     */
+    public SnsServiceImpl(final SqsClient sqsClient, final ClaimCheckStore claimCheckStore, final int maxInFlight) {
+        this.batchForwarder = new BatchForwarder(sqsClient, new PayloadEncoder(claimCheckStore), maxInFlight);
     }
 
     @Override
@@ -27,33 +35,23 @@ public class SnsServiceImpl implements SnsService {
 
         try {
 
-            logger.log("Number of records in event: " + event.getRecords().size());
-
-            Collection<SendMessageBatchRequestEntry> entries = new ArrayList<>();
+            final List<SNSRecord> records = event.getRecords();
+            logger.log("Number of records in event: " + records.size());
 
-            int idVal = 1;
-            for (SNSRecord r : event.getRecords()) {
-                logger.log("Adding message: " + r.getSNS().getMessage());
-                entries.add(SendMessageBatchRequestEntry.builder()
-                        .id("id_" + idVal)
-                        .messageBody(r.getSNS().getMessage())
-                        .build());
-                idVal++;
-            }
-
-            SendMessageBatchRequest sendBatchRequest = SendMessageBatchRequest.builder()
-                        .queueUrl(outputQueueURL)
-                        .entries(entries)
-                        .build();
-            SendMessageBatchResponse response = sqsClient.sendMessageBatch(sendBatchRequest);
-            if (response.failed().isEmpty()) {
+            final List<Integer> failed = batchForwarder.forward(outputQueueURL, records, logger);
+            if (failed.isEmpty()) {
                 logger.log("All messages sent successfully.");
             } else {
                 logger.log("Some messages failed to send.");
-                response.failed().forEach(f -> logger.log("Failed message ID: " + f.id()));
+                failed.forEach(position -> logger.log("Failed message ID: "
+                        + records.get(position).getSNS().getMessageId()));
                 return false;
             }
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log("Interrupted while sending messages.");
+            return false;
         } catch (Exception e) {
             final String errorMessage = "Error occurred: " + e.getMessage();
             logger.log(errorMessage);
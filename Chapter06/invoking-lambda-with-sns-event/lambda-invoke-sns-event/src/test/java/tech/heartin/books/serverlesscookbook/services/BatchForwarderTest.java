@@ -0,0 +1,202 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SNSEvent;
+import com.amazonaws.services.lambda.runtime.events.SNSEvent.SNSRecord;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchForwarderTest {
+
+    private static final String QUEUE_URL = "https://queue.amazonaws.com/123456789012/my-output-queue";
+
+    @Mock
+    private SqsClient sqsClient;
+
+    @Mock
+    private LambdaLogger logger;
+
+    @TempDir
+    Path claimCheckDir;
+
+    @Test
+    public void testForwardsInBatchesOfTenWithAttributes() throws InterruptedException {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        final List<SNSRecord> records = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            records.add(record("test payload " + i));
+        }
+        records.get(0).getSNS().getMessageAttributes().put("eventType", attribute("String", "order-created"));
+        records.get(0).getSNS().getMessageAttributes().put("checksum",
+                attribute("Binary", Base64.getEncoder().encodeToString(new byte[] {1, 2, 3})));
+
+        assertTrue(forwarder().forward(QUEUE_URL, records, logger).isEmpty());
+
+        final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, times(3)).sendMessageBatch(captor.capture());
+        final Map<String, MessageAttributeValue> attributes = captor.getAllValues().stream()
+                .flatMap(request -> request.entries().stream())
+                .filter(entry -> "0".equals(entry.id()))
+                .findFirst().get().messageAttributes();
+        assertEquals("order-created", attributes.get("eventType").stringValue());
+        assertArrayEquals(new byte[] {1, 2, 3}, attributes.get("checksum").binaryValue().asByteArray());
+    }
+
+    @Test
+    public void testPacksByPayloadSize() {
+        final List<SNSRecord> records = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            records.add(record(String.join("", Collections.nCopies(100 * 1024, "x"))));
+        }
+
+        final Set<Integer> failed = new TreeSet<>();
+        final List<List<SendMessageBatchRequestEntry>> batches = forwarder().pack(records, failed, logger);
+
+        assertTrue(failed.isEmpty());
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).size());
+    }
+
+    @Test
+    public void testRetriesOnlyFailedEntries() throws InterruptedException {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder().id("1").senderFault(false).code("Throttled").build(),
+                                BatchResultErrorEntry.builder().id("2").senderFault(true).code("Invalid").build())
+                        .build())
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        final List<SNSRecord> records = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            records.add(record("test payload " + i));
+        }
+
+        assertEquals(Collections.singletonList(2), forwarder().forward(QUEUE_URL, records, logger));
+
+        final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, times(2)).sendMessageBatch(captor.capture());
+        assertEquals(1, captor.getAllValues().get(1).entries().size());
+        assertEquals("1", captor.getAllValues().get(1).entries().get(0).id());
+    }
+
+    @Test
+    public void testCompressesLargeBodies() throws IOException {
+        final String body = String.join("", Collections.nCopies(200 * 1024, "x"));
+        final SNSRecord record = record(body);
+
+        final SendMessageBatchRequestEntry entry = encoder().encode("0", record.getSNS());
+
+        assertEquals(PayloadEncoder.GZIP_BASE64,
+                entry.messageAttributes().get(PayloadEncoder.ENCODING_ATTRIBUTE).stringValue());
+        assertTrue(entry.messageBody().length() < body.length());
+        assertEquals(body, PayloadEncoder.decode(entry.messageBody(), entry.messageAttributes(), store()));
+    }
+
+    @Test
+    public void testUsesClaimCheckForIncompressibleBodies() throws IOException {
+        final byte[] random = new byte[200 * 1024];
+        new Random(42).nextBytes(random);
+        final String body = Base64.getEncoder().encodeToString(random);
+
+        final SendMessageBatchRequestEntry entry = encoder().encode("0", record(body).getSNS());
+
+        final String key = entry.messageAttributes().get(PayloadEncoder.CLAIM_CHECK_ATTRIBUTE).stringValue();
+        assertEquals(key, entry.messageBody());
+        assertEquals(body, PayloadEncoder.decode(entry.messageBody(), entry.messageAttributes(), store()));
+    }
+
+    @Test
+    public void testIncompressibleBodiesFailWithoutClaimCheckStore() throws InterruptedException {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+        final byte[] random = new byte[200 * 1024];
+        new Random(42).nextBytes(random);
+        final List<SNSRecord> records = new ArrayList<>();
+        records.add(record("test payload 0"));
+        records.add(record(Base64.getEncoder().encodeToString(random)));
+
+        final BatchForwarder forwarder = new BatchForwarder(sqsClient, new PayloadEncoder(null), 2);
+
+        assertEquals(Collections.singletonList(1), forwarder.forward(QUEUE_URL, records, logger));
+        final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsClient, times(1)).sendMessageBatch(captor.capture());
+        assertEquals(1, captor.getValue().entries().size());
+    }
+
+    @Test
+    public void testLargeBodiesWithTenAttributesFailRatherThanDropOne() throws IOException {
+        final SNSRecord small = record("test payload");
+        final SNSRecord large = record(String.join("", Collections.nCopies(200 * 1024, "x")));
+        for (int i = 0; i < PayloadEncoder.MAX_ATTRIBUTES; i++) {
+            small.getSNS().getMessageAttributes().put("attribute-" + i, attribute("String", "value-" + i));
+            large.getSNS().getMessageAttributes().put("attribute-" + i, attribute("String", "value-" + i));
+        }
+
+        assertEquals(PayloadEncoder.MAX_ATTRIBUTES, encoder().encode("0", small.getSNS()).messageAttributes().size());
+        final IOException e = assertThrows(IOException.class, () -> encoder().encode("1", large.getSNS()));
+        assertTrue(e.getMessage().endsWith("but the message already has 10 attributes"), e.getMessage());
+    }
+
+    private BatchForwarder forwarder() {
+        return new BatchForwarder(sqsClient, encoder(), 2);
+    }
+
+    private PayloadEncoder encoder() {
+        return new PayloadEncoder(store());
+    }
+
+    private ClaimCheckStore store() {
+        return new LocalClaimCheckStore(claimCheckDir);
+    }
+
+    private static SNSRecord record(final String message) {
+        final SNSEvent.SNS sns = new SNSEvent.SNS();
+        sns.setMessage(message);
+        sns.setMessageAttributes(new HashMap<>());
+        final SNSRecord record = new SNSRecord();
+        record.setSns(sns);
+        return record;
+    }
+
+    private static SNSEvent.MessageAttribute attribute(final String type, final String value) {
+        final SNSEvent.MessageAttribute attribute = new SNSEvent.MessageAttribute();
+        attribute.setType(type);
+        attribute.setValue(value);
+        return attribute;
+    }
+}
@@ -2,6 +2,7 @@ package tech.heartin.books.serverlesscookbook;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
 
 import software.amazon.awssdk.services.sqs.SqsClient;
@@ -13,7 +14,7 @@ import tech.heartin.books.serverlesscookbook.services.SqsServiceImpl;
 /**
  * RequestHandler implementation.
  */
-public final class LambdaSqsEventHandler implements RequestHandler<SQSEvent, Boolean> {
+public final class LambdaSqsEventHandler implements RequestHandler<SQSEvent, SQSBatchResponse> {
 
     private final SqsClient sqsClient;
 
@@ -28,15 +29,23 @@ public final class LambdaSqsEventHandler implements RequestHandler<SQSEvent, Boo
      *
      * @param sqsEvent  - SQS Event passed as input to lambda handler
      * @param context - context object
-     * @return true if success, else false.
+     * @return batch item failures for the messages that were not forwarded.
      */
-    public Boolean handleRequest(final SQSEvent sqsEvent, final Context context) {
+    public SQSBatchResponse handleRequest(final SQSEvent sqsEvent, final Context context) {
         context.getLogger().log("Received SQS event: " + sqsEvent);
 
-        final SqsService sqsService =  new SqsServiceImpl(this.sqsClient);
+        final SqsService sqsService =  new SqsServiceImpl(this.sqsClient, maxInFlight());
         // It is a good practice to prefix environment variables with a project specific prefix.
         // E.g. SPC is a prefix that denote Serverless Programming Cookbook.
         return sqsService.processEvent(sqsEvent, System.getenv("SPC_OUTPUT_QUEUE_URL"), context.getLogger());
 
     }
+
+    /**
+     * Maximum number of SendMessageBatch requests in flight, from SPC_MAX_IN_FLIGHT; 0 uses the default.
+     */
+    private static int maxInFlight() {
+        final String maxInFlight = System.getenv("SPC_MAX_IN_FLIGHT");
+        return maxInFlight == null || maxInFlight.isEmpty() ? 0 : Integer.parseInt(maxInFlight);
+    }
 }
@@ -0,0 +1,175 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+/**
+ * Forwards any number of messages to a queue with SendMessageBatch.<br/>
+ * Messages are packed into batches of at most 10 entries and 256 KB of payload, up to maxInFlight
+ * batches are sent concurrently on the {@link ServiceExecutor}, and only the entries SQS reports as
+ * failed are sent again, with jittered exponential backoff. Sender faults are not retried.
+ */
+final class BatchForwarder {
+
+    static final int MAX_ENTRIES_PER_BATCH = 10;
+    static final int MAX_BATCH_BYTES = 256 * 1024;
+    static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    static final int MAX_RETRIES = 5;
+
+    private final SqsClient sqsClient;
+    private final int maxInFlight;
+
+    BatchForwarder(final SqsClient sqsClient, final int maxInFlight) {
+        this.sqsClient = sqsClient;
+        this.maxInFlight = maxInFlight > 0
+                ? Math.min(maxInFlight, ServiceExecutor.MAX_THREADS) : DEFAULT_MAX_IN_FLIGHT;
+    }
+
+    /**
+     * Send the messages to the queue.
+     * @param queueUrl Output queue URL.
+     * @param messages Messages to forward, in event order.
+     * @param logger Lambda Logger from context.
+     * @return positions of the messages that could not be sent, in ascending order.
+     * @throws InterruptedException if interrupted while waiting for batches to complete.
+     */
+    List<Integer> forward(final String queueUrl, final List<SQSMessage> messages, final LambdaLogger logger)
+            throws InterruptedException {
+
+        final Set<Integer> failed = new TreeSet<>();
+        final List<List<SendMessageBatchRequestEntry>> batches = pack(messages, failed, logger);
+
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final List<Future<List<String>>> results = new ArrayList<>();
+        try {
+            for (List<SendMessageBatchRequestEntry> batch : batches) {
+                inFlight.acquire();
+                results.add(ServiceExecutor.get().submit(() -> {
+                    try {
+                        return sendBatch(queueUrl, batch, logger);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get().forEach(id -> failed.add(Integer.valueOf(id)));
+                } catch (ExecutionException e) {
+                    logger.log("Batch failed: " + e.getCause().getMessage());
+                    batches.get(i).forEach(entry -> failed.add(Integer.valueOf(entry.id())));
+                }
+            }
+        } catch (InterruptedException e) {
+            results.forEach(result -> result.cancel(true));
+            throw e;
+        }
+
+        logger.log("Forwarded " + (messages.size() - failed.size()) + " of " + messages.size()
+                + " messages in " + batches.size() + " batches.");
+        return new ArrayList<>(failed);
+    }
+
+    /**
+     * Group messages into batches by entry count and payload size. The entry id is the position of the
+     * message in the event. Messages that cannot fit into any batch are added to failed.
+     */
+    static List<List<SendMessageBatchRequestEntry>> pack(final List<SQSMessage> messages,
+                                                         final Set<Integer> failed,
+                                                         final LambdaLogger logger) {
+        final List<List<SendMessageBatchRequestEntry>> batches = new ArrayList<>();
+        List<SendMessageBatchRequestEntry> batch = new ArrayList<>();
+        int batchBytes = 0;
+
+        for (int i = 0; i < messages.size(); i++) {
+            final String body = messages.get(i).getBody();
+            final int bytes = body == null ? 0 : body.getBytes(StandardCharsets.UTF_8).length;
+            if (body == null || body.isEmpty() || bytes > MAX_BATCH_BYTES) {
+                logger.log("Message at position " + i + " has an empty body or is larger than "
+                        + MAX_BATCH_BYTES + " bytes; not forwarded.");
+                failed.add(i);
+                continue;
+            }
+
+            if (batch.size() == MAX_ENTRIES_PER_BATCH || batchBytes + bytes > MAX_BATCH_BYTES) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(SendMessageBatchRequestEntry.builder()
+                    .id(String.valueOf(i))
+                    .messageBody(body)
+                    .build());
+            batchBytes += bytes;
+        }
+
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Send one batch, re-sending only the retryable failed entries.
+     * @return ids of the entries not sent.
+     */
+    private List<String> sendBatch(final String queueUrl,
+                                   final List<SendMessageBatchRequestEntry> batch,
+                                   final LambdaLogger logger) throws InterruptedException {
+
+        final List<String> notSent = new ArrayList<>();
+        List<SendMessageBatchRequestEntry> pending = batch;
+        int attempt = 0;
+
+        while (true) {
+            final SendMessageBatchResponse response = sqsClient.sendMessageBatch(SendMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(pending)
+                    .build());
+            if (response.failed().isEmpty()) {
+                return notSent;
+            }
+
+            final Set<String> retryable = new TreeSet<>();
+            for (BatchResultErrorEntry failure : response.failed()) {
+                if (Boolean.TRUE.equals(failure.senderFault())) {
+                    logger.log("Failed message ID: " + failure.id() + ", Reason: " + failure.message());
+                    notSent.add(failure.id());
+                } else {
+                    retryable.add(failure.id());
+                }
+            }
+
+            if (retryable.isEmpty()) {
+                return notSent;
+            }
+            if (++attempt > MAX_RETRIES) {
+                logger.log("Giving up on message IDs " + retryable + " after " + MAX_RETRIES + " retries.");
+                notSent.addAll(retryable);
+                return notSent;
+            }
+
+            pending = pending.stream()
+                    .filter(entry -> retryable.contains(entry.id()))
+                    .collect(Collectors.toList());
+            Thread.sleep(Backoff.fullJitterMillis(attempt));
+        }
+    }
+}
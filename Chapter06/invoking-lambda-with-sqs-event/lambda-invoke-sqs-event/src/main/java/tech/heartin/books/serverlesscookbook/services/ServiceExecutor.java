@@ -0,0 +1,26 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded thread pool shared by the concurrent send operations of a container.<br/>
+ * Threads are daemons so they never keep the runtime from shutting down.
+ */
+final class ServiceExecutor {
+
+    static final int MAX_THREADS = 16;
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(MAX_THREADS, runnable -> {
+        final Thread thread = new Thread(runnable, "sqs-send-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ServiceExecutor() {
+    }
+
+    static ExecutorService get() {
+        return EXECUTOR;
+    }
+}
@@ -1,5 +1,6 @@
 package tech.heartin.books.serverlesscookbook.services;
 
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
 
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
@@ -14,7 +15,7 @@ public interface SqsService {
      * @param event SQS event received.
      * @param outputQueueURL Output queue URL.
      * @param logger Lambda Logger from context.
-     * @return Response domain object.
+     * @return batch item failures with the message IDs of the records that were not forwarded.
      */
-    Boolean processEvent(SQSEvent event, String outputQueueURL, LambdaLogger logger);
+    SQSBatchResponse processEvent(SQSEvent event, String outputQueueURL, LambdaLogger logger);
 }
@@ -1,71 +1,83 @@
 package tech.heartin.books.serverlesscookbook.services;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse.BatchItemFailure;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
 import software.amazon.awssdk.services.sqs.SqsClient;
-import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
-import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
-import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
 
 /**
- * Implementation class for SqsService.
+ * Implementation class for SqsService.<br/>
+ * Only the records that could not be forwarded are reported back as batch item failures, so the
+ * event source mapping (with ReportBatchItemFailures enabled) redelivers just those.
  */
 public class SqsServiceImpl implements SqsService {
 
-    private final SqsClient sqsClient;
+    private final BatchForwarder batchForwarder;
 
     public SqsServiceImpl(final SqsClient sqsClient) {
-        this.sqsClient = sqsClient;
+        this(sqsClient, BatchForwarder.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param sqsClient SQS client.
+     * @param maxInFlight Maximum number of SendMessageBatch requests in flight.
+     */
+    public SqsServiceImpl(final SqsClient sqsClient, final int maxInFlight) {
+        this.batchForwarder = new BatchForwarder(sqsClient, maxInFlight);
     }
 
     @Override
-    public final Boolean processEvent(final SQSEvent event, final String outputQueueURL, final LambdaLogger logger) {
+    public final SQSBatchResponse processEvent(final SQSEvent event, final String outputQueueURL,
+                                               final LambdaLogger logger) {
 
+        final List<SQSMessage> records = event.getRecords();
+        List<Integer> failed;
         try {
 
-            logger.log("Number of messages in event: " + event.getRecords().size());
+            logger.log("Number of messages in event: " + records.size());
 
             logger.log("Output Queue URL: " + outputQueueURL);
 
-            Collection<SendMessageBatchRequestEntry> entries = new ArrayList<>();
-
-            int idVal = 1;
-            for (SQSMessage m : event.getRecords()) {
-                logger.log("Adding message: " + m.getBody());
-                entries.add(SendMessageBatchRequestEntry.builder()
-                        .id("id_" + idVal)
-                        .messageBody(m.getBody())
-                        .build());
-                idVal++;
-            }
-
-            SendMessageBatchRequest sendBatchRequest = SendMessageBatchRequest.builder()
-                    .queueUrl(outputQueueURL)
-                    .entries(entries)
-                    .build();
-
-            SendMessageBatchResponse response = sqsClient.sendMessageBatch(sendBatchRequest);
-            if (!response.failed().isEmpty()) {
-                response.failed().forEach(failure ->
-                    logger.log("Failed message ID: " + failure.id() + ", Reason: " + failure.message())
-                );
-                return false;
-            } else {
-                logger.log("All messages sent successfully.");
-            }
+            failed = batchForwarder.forward(outputQueueURL, records, logger);
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log("Interrupted while sending messages.");
+            failed = allPositions(records);
         } catch (Exception e) {
             final String errorMessage = "Error occurred: " + e.getMessage();
             logger.log(errorMessage);
-            return false;
+            failed = allPositions(records);
         }
 
-        return true;
+        if (failed.isEmpty()) {
+            logger.log("All messages sent successfully.");
+        } else {
+            logger.log("Messages not sent: " + failed.size() + " of " + records.size());
+        }
+        return toBatchResponse(records, failed);
+    }
+
+    /**
+     * Map positions of failed records back to their message IDs.
+     */
+    static SQSBatchResponse toBatchResponse(final List<SQSMessage> records, final List<Integer> failed) {
+        final List<BatchItemFailure> failures = new ArrayList<>(failed.size());
+        for (Integer position : failed) {
+            failures.add(new BatchItemFailure(records.get(position).getMessageId()));
+        }
+        return new SQSBatchResponse(failures);
+    }
 
+    private static List<Integer> allPositions(final List<SQSMessage> records) {
+        return IntStream.range(0, records.size()).boxed().collect(Collectors.toList());
     }
 
 }
@@ -0,0 +1,143 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchForwarderTest {
+
+    private static final String QUEUE_URL = "https://queue.amazonaws.com/123456789012/my-output-queue";
+
+    @Mock
+    private SqsClient sqsClient;
+
+    @Mock
+    private LambdaLogger logger;
+
+    private final List<SendMessageBatchRequest> requests = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testPacksByEntryCount() throws InterruptedException {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            return SendMessageBatchResponse.builder().build();
+        });
+
+        final List<Integer> failed = new BatchForwarder(sqsClient, 3).forward(QUEUE_URL, messages(25, 10), logger);
+
+        assertTrue(failed.isEmpty());
+        assertEquals(Arrays.asList(5, 10, 10), batchSizes());
+        assertEquals(25, sentIds().size());
+    }
+
+    @Test
+    public void testPacksByPayloadSize() throws InterruptedException {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            return SendMessageBatchResponse.builder().build();
+        });
+
+        // Two 100 KB messages fit into 256 KB, a third one does not.
+        final List<Integer> failed = new BatchForwarder(sqsClient, 2)
+                .forward(QUEUE_URL, messages(5, 100 * 1024), logger);
+
+        assertTrue(failed.isEmpty());
+        assertEquals(Arrays.asList(1, 2, 2), batchSizes());
+    }
+
+    @Test
+    public void testRetriesOnlyFailedEntries() throws InterruptedException {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            final SendMessageBatchRequest request = invocation.getArgument(0);
+            requests.add(request);
+            return request.entries().size() > 1
+                    ? SendMessageBatchResponse.builder().failed(failure("3", false)).build()
+                    : SendMessageBatchResponse.builder().build();
+        });
+
+        final List<Integer> failed = new BatchForwarder(sqsClient, 1).forward(QUEUE_URL, messages(5, 10), logger);
+
+        assertTrue(failed.isEmpty());
+        assertEquals(2, requests.size());
+        assertEquals(Collections.singletonList("3"), requests.get(1).entries().stream()
+                .map(SendMessageBatchRequestEntry::id)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSenderFaultsAreNotRetried() throws InterruptedException {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            return SendMessageBatchResponse.builder().failed(failure("1", true)).build();
+        });
+
+        final List<Integer> failed = new BatchForwarder(sqsClient, 1).forward(QUEUE_URL, messages(3, 10), logger);
+
+        assertEquals(Collections.singletonList(1), failed);
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void testOversizedMessageIsNotSent() throws InterruptedException {
+        final List<Integer> failed = new BatchForwarder(sqsClient, 1)
+                .forward(QUEUE_URL, messages(1, BatchForwarder.MAX_BATCH_BYTES + 1), logger);
+
+        assertEquals(Collections.singletonList(0), failed);
+        verify(sqsClient, never()).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    private List<Integer> batchSizes() {
+        return requests.stream().map(request -> request.entries().size()).sorted().collect(Collectors.toList());
+    }
+
+    private Set<String> sentIds() {
+        final Set<String> ids = new TreeSet<>();
+        requests.forEach(request -> request.entries().forEach(entry -> ids.add(entry.id())));
+        return ids;
+    }
+
+    private static List<SQSMessage> messages(final int count, final int bodyLength) {
+        final List<SQSMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final SQSMessage message = new SQSMessage();
+            message.setMessageId("message-" + i);
+            message.setBody(String.join("", Collections.nCopies(bodyLength, "x")));
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static BatchResultErrorEntry failure(final String id, final boolean senderFault) {
+        return BatchResultErrorEntry.builder()
+                .id(id)
+                .senderFault(senderFault)
+                .code(senderFault ? "InvalidParameterValue" : "InternalError")
+                .message("Test failure")
+                .build();
+    }
+}
@@ -0,0 +1,190 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse.BatchItemFailure;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+public class SqsServiceImplTest {
+
+    private static final String QUEUE_URL = "https://queue.amazonaws.com/123456789012/my-output-queue";
+    private static final int MESSAGES = 1000;
+    // 1% of the messages are rejected by the output queue on every attempt.
+    private static final int POISON_EVERY = 100;
+    private static final int MAX_RECEIVE_COUNT = 3;
+
+    @Mock
+    private LambdaLogger logger;
+
+    @Test
+    public void testOnlyFailedMessagesAreReported() {
+        final LocalSqs localSqs = new LocalSqs();
+        final List<SQSMessage> records = messages(MESSAGES);
+
+        final SQSBatchResponse response = new SqsServiceImpl(localSqs, 4)
+                .processEvent(event(records), QUEUE_URL, logger);
+
+        final Set<String> expected = records.stream()
+                .filter(LocalSqs::isPoison)
+                .map(SQSMessage::getMessageId)
+                .collect(Collectors.toSet());
+        assertEquals(expected, failedIds(response));
+        assertEquals(MESSAGES - expected.size(), localSqs.received.size());
+    }
+
+    @Test
+    public void testAllMessagesAreReportedWhenSendFails() {
+        final SqsClient unavailable = new LocalSqs() {
+            @Override
+            public SendMessageBatchResponse sendMessageBatch(final SendMessageBatchRequest request) {
+                throw SqsException.builder().message("Service unavailable").build();
+            }
+        };
+        final List<SQSMessage> records = messages(25);
+
+        final SQSBatchResponse response = new SqsServiceImpl(unavailable, 2)
+                .processEvent(event(records), QUEUE_URL, logger);
+
+        assertEquals(records.stream().map(SQSMessage::getMessageId).collect(Collectors.toSet()),
+                failedIds(response));
+    }
+
+    @Test
+    public void testRedeliveryVolumeWithBatchItemFailures() {
+        final int partialRedeliveries = redeliver(true);
+        final int wholeBatchRedeliveries = redeliver(false);
+
+        final int poison = MESSAGES / POISON_EVERY;
+        assertEquals(poison * (MAX_RECEIVE_COUNT - 1), partialRedeliveries);
+        assertEquals(MESSAGES * (MAX_RECEIVE_COUNT - 1), wholeBatchRedeliveries);
+        assertTrue(partialRedeliveries * POISON_EVERY <= wholeBatchRedeliveries);
+    }
+
+    /**
+     * Simulate the event source mapping redelivering a batch until the poison messages reach the
+     * maximum receive count.
+     * @param reportBatchItemFailures true to redeliver only reported failures, false to redeliver the
+     *                                whole batch on any failure (the former Boolean response).
+     * @return number of messages delivered again after the first invocation.
+     */
+    private int redeliver(final boolean reportBatchItemFailures) {
+        final LocalSqs localSqs = new LocalSqs();
+        final SqsServiceImpl service = new SqsServiceImpl(localSqs, 4);
+
+        List<SQSMessage> pending = messages(MESSAGES);
+        int redelivered = 0;
+        for (int receive = 1; receive <= MAX_RECEIVE_COUNT && !pending.isEmpty(); receive++) {
+            if (receive > 1) {
+                redelivered += pending.size();
+            }
+            final Set<String> failed = failedIds(service.processEvent(event(pending), QUEUE_URL, logger));
+            if (reportBatchItemFailures) {
+                pending = pending.stream()
+                        .filter(message -> failed.contains(message.getMessageId()))
+                        .collect(Collectors.toList());
+            } else if (failed.isEmpty()) {
+                pending = Collections.emptyList();
+            }
+        }
+
+        if (reportBatchItemFailures) {
+            assertTrue(localSqs.received.values().stream().allMatch(count -> count.get() == 1),
+                    "Forwarded messages must not be forwarded twice");
+        }
+        return redelivered;
+    }
+
+    private static Set<String> failedIds(final SQSBatchResponse response) {
+        return response.getBatchItemFailures().stream()
+                .map(BatchItemFailure::getItemIdentifier)
+                .collect(Collectors.toSet());
+    }
+
+    private static SQSEvent event(final List<SQSMessage> records) {
+        final SQSEvent event = new SQSEvent();
+        event.setRecords(records);
+        return event;
+    }
+
+    private static List<SQSMessage> messages(final int count) {
+        final List<SQSMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final SQSMessage message = new SQSMessage();
+            message.setMessageId("message-" + i);
+            message.setBody("This is test message " + i);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * In-memory stand-in for the output queue that rejects every hundredth message.
+     */
+    private static class LocalSqs implements SqsClient {
+
+        private final Map<String, AtomicInteger> received = new ConcurrentHashMap<>();
+
+        static boolean isPoison(final SQSMessage message) {
+            return isPoison(message.getBody());
+        }
+
+        static boolean isPoison(final String body) {
+            return Integer.parseInt(body.substring(body.lastIndexOf(' ') + 1)) % POISON_EVERY == 0;
+        }
+
+        @Override
+        public SendMessageBatchResponse sendMessageBatch(final SendMessageBatchRequest request) {
+            final List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+            final List<BatchResultErrorEntry> failed = new ArrayList<>();
+            for (SendMessageBatchRequestEntry entry : request.entries()) {
+                if (isPoison(entry.messageBody())) {
+                    failed.add(BatchResultErrorEntry.builder()
+                            .id(entry.id())
+                            .senderFault(true)
+                            .code("InvalidMessageContents")
+                            .message("Rejected by test queue")
+                            .build());
+                } else {
+                    received.computeIfAbsent(entry.messageBody(), body -> new AtomicInteger()).incrementAndGet();
+                    successful.add(SendMessageBatchResultEntry.builder().id(entry.id()).build());
+                }
+            }
+            return SendMessageBatchResponse.builder().successful(successful).failed(failed).build();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -4,15 +4,16 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.sns.SnsClient;
-import software.amazon.awssdk.services.sns.model.PublishRequest;
-import software.amazon.awssdk.services.sns.model.PublishResponse;
 
 import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+import tech.heartin.books.serverlesscookbook.services.SnsService;
+import tech.heartin.books.serverlesscookbook.services.SnsServiceImpl;
 
 /**
  * RequestHandler implementation.
  */
-public final class LambdaSnsPublishHandler implements RequestHandler<Request, String> {
+public final class LambdaSnsPublishHandler implements RequestHandler<Request, Response> {
 
     private final SnsClient  snsClient;
 
@@ -27,22 +28,15 @@ public final class LambdaSnsPublishHandler implements RequestHandler<Request, St
      *
      * @param request  - input to lambda handler.
      * @param context - context object.
-     * @return Message id of the published message.
+     * @return Message ids of the published messages.
      */
-    public String handleRequest(final Request request, final Context context) {
+    public Response handleRequest(final Request request, final Context context) {
         context.getLogger().log("Received Request: " + request);
 
-        final PublishResponse  result;
-        try {
-            PublishRequest publishRequest = PublishRequest.builder()
-                .topicArn(request.getTopicArn())
-                .message(request.getMessage())
-                .build();
-            result = snsClient.publish(publishRequest);
-        } catch (Exception e) {
-            return "Exception occurred: " + e.getMessage();
+        final SnsService snsService = new SnsServiceImpl(this.snsClient);
+        if (request.getMessages() != null && !request.getMessages().isEmpty()) {
+            return snsService.publishBatch(request, context.getLogger());
         }
-
-        return "Message Id: " + result.messageId();
+        return snsService.publishMessage(request, context.getLogger());
     }
 }
@@ -0,0 +1,22 @@
+package tech.heartin.books.serverlesscookbook.domain;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One message of a batch publish request.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchMessage {
+    private String message;
+    // String message attributes by name.
+    private Map<String, String> messageAttributes;
+    // FIFO topics only.
+    private String messageGroupId;
+    private String messageDeduplicationId;
+}
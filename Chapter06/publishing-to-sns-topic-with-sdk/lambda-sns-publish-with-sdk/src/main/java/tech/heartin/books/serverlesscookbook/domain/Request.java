@@ -1,5 +1,7 @@
 package tech.heartin.books.serverlesscookbook.domain;
 
+import java.util.List;
+
 import lombok.Data;
 
 /**
@@ -9,4 +11,7 @@ import lombok.Data;
 public class Request {
     private String topicArn;
     private String message;
+    // Batch mode: publish all of these with PublishBatch instead of the single message.
+    private List<BatchMessage> messages;
+    private Integer maxInFlight;
 }
@@ -0,0 +1,17 @@
+package tech.heartin.books.serverlesscookbook.domain;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Response POJO.
+ */
+@Data
+@AllArgsConstructor
+public class Response {
+    private String message;
+    // Message ids in request order; null for messages that were not published.
+    private List<String> messageIds;
+}
@@ -0,0 +1,212 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.sns.SnsClient;
+import software.amazon.awssdk.services.sns.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sns.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequestEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+import software.amazon.awssdk.services.sns.model.PublishBatchResultEntry;
+
+import tech.heartin.books.serverlesscookbook.domain.BatchMessage;
+
+/**
+ * Publishes many messages to a topic with PublishBatch.<br/>
+ * Messages are packed into batches of at most 10 entries and 256 KB of payload, up to maxInFlight
+ * batches are published concurrently on the {@link ServiceExecutor}, and only the entries SNS reports
+ * as failed are published again, with jittered exponential backoff. Sender faults are not retried.
+ * Batches for a FIFO topic are published one at a time to keep the order within message groups.
+ */
+final class BatchPublisher {
+
+    static final int MAX_ENTRIES_PER_BATCH = 10;
+    static final int MAX_BATCH_BYTES = 256 * 1024;
+    static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    static final int MAX_RETRIES = 5;
+
+    private static final String FIFO_SUFFIX = ".fifo";
+    private static final String STRING_DATA_TYPE = "String";
+
+    private final SnsClient snsClient;
+
+    BatchPublisher(final SnsClient snsClient) {
+        this.snsClient = snsClient;
+    }
+
+    /**
+     * Publish the messages to the topic.
+     * @param topicArn Topic ARN.
+     * @param messages Messages to publish.
+     * @param maxInFlight Maximum number of PublishBatch requests in flight, null for the default.
+     * @param logger Lambda Logger from context.
+     * @return message ids in request order, null for messages that were not published.
+     * @throws InterruptedException if interrupted while waiting for batches to complete.
+     */
+    List<String> publish(final String topicArn, final List<BatchMessage> messages, final Integer maxInFlight,
+                         final LambdaLogger logger) throws InterruptedException {
+
+        final String[] messageIds = new String[messages.size()];
+        final List<List<PublishBatchRequestEntry>> batches = pack(messages, logger);
+
+        final Semaphore inFlight = new Semaphore(topicArn.endsWith(FIFO_SUFFIX) ? 1 : maxInFlight(maxInFlight));
+        final List<Future<Map<String, String>>> results = new ArrayList<>();
+        try {
+            for (List<PublishBatchRequestEntry> batch : batches) {
+                inFlight.acquire();
+                results.add(ServiceExecutor.get().submit(() -> {
+                    try {
+                        return publishBatch(topicArn, batch, logger);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+
+            for (Future<Map<String, String>> result : results) {
+                try {
+                    result.get().forEach((id, messageId) -> messageIds[Integer.parseInt(id)] = messageId);
+                } catch (ExecutionException e) {
+                    logger.log("Batch failed: " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            results.forEach(result -> result.cancel(true));
+            throw e;
+        }
+
+        return Arrays.asList(messageIds);
+    }
+
+    /**
+     * Group messages into batches by entry count and payload size. The entry id is the position of the
+     * message in the request. Messages that cannot fit into any batch are left out.
+     */
+    static List<List<PublishBatchRequestEntry>> pack(final List<BatchMessage> messages, final LambdaLogger logger) {
+        final List<List<PublishBatchRequestEntry>> batches = new ArrayList<>();
+        List<PublishBatchRequestEntry> batch = new ArrayList<>();
+        int batchBytes = 0;
+
+        for (int i = 0; i < messages.size(); i++) {
+            final BatchMessage message = messages.get(i);
+            final int bytes = size(message);
+            if (message.getMessage() == null || bytes > MAX_BATCH_BYTES) {
+                logger.log("Message at position " + i + " is empty or larger than " + MAX_BATCH_BYTES
+                        + " bytes; not published.");
+                continue;
+            }
+
+            if (batch.size() == MAX_ENTRIES_PER_BATCH || batchBytes + bytes > MAX_BATCH_BYTES) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(toEntry(String.valueOf(i), message));
+            batchBytes += bytes;
+        }
+
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Publish one batch, re-publishing only the retryable failed entries.
+     * @return message ids by entry id of the published entries.
+     */
+    private Map<String, String> publishBatch(final String topicArn,
+                                             final List<PublishBatchRequestEntry> batch,
+                                             final LambdaLogger logger) throws InterruptedException {
+
+        final Map<String, String> published = new HashMap<>();
+        List<PublishBatchRequestEntry> pending = batch;
+        int attempt = 0;
+
+        while (true) {
+            final PublishBatchResponse response = snsClient.publishBatch(PublishBatchRequest.builder()
+                    .topicArn(topicArn)
+                    .publishBatchRequestEntries(pending)
+                    .build());
+            for (PublishBatchResultEntry success : response.successful()) {
+                published.put(success.id(), success.messageId());
+            }
+            if (response.failed().isEmpty()) {
+                return published;
+            }
+
+            final Set<String> retryable = new TreeSet<>();
+            for (BatchResultErrorEntry failure : response.failed()) {
+                if (Boolean.TRUE.equals(failure.senderFault())) {
+                    logger.log("Failed entry ID: " + failure.id() + ", Reason: " + failure.message());
+                } else {
+                    retryable.add(failure.id());
+                }
+            }
+
+            if (retryable.isEmpty()) {
+                return published;
+            }
+            if (++attempt > MAX_RETRIES) {
+                logger.log("Giving up on entry IDs " + retryable + " after " + MAX_RETRIES + " retries.");
+                return published;
+            }
+
+            pending = pending.stream()
+                    .filter(entry -> retryable.contains(entry.id()))
+                    .collect(Collectors.toList());
+            Thread.sleep(Backoff.fullJitterMillis(attempt));
+        }
+    }
+
+    private static PublishBatchRequestEntry toEntry(final String id, final BatchMessage message) {
+        final Map<String, MessageAttributeValue> attributes = new HashMap<>();
+        if (message.getMessageAttributes() != null) {
+            message.getMessageAttributes().forEach((name, value) -> attributes.put(name,
+                    MessageAttributeValue.builder().dataType(STRING_DATA_TYPE).stringValue(value).build()));
+        }
+        return PublishBatchRequestEntry.builder()
+                .id(id)
+                .message(message.getMessage())
+                .messageAttributes(attributes)
+                .messageGroupId(message.getMessageGroupId())
+                .messageDeduplicationId(message.getMessageDeduplicationId())
+                .build();
+    }
+
+    /**
+     * Payload size as SNS counts it: the message plus name, type and value of every attribute.
+     */
+    static int size(final BatchMessage message) {
+        int bytes = utf8Length(message.getMessage());
+        if (message.getMessageAttributes() != null) {
+            for (Map.Entry<String, String> attribute : message.getMessageAttributes().entrySet()) {
+                bytes += utf8Length(attribute.getKey()) + STRING_DATA_TYPE.length() + utf8Length(attribute.getValue());
+            }
+        }
+        return bytes;
+    }
+
+    private static int utf8Length(final String str) {
+        return str == null ? 0 : str.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static int maxInFlight(final Integer maxInFlight) {
+        return maxInFlight != null && maxInFlight > 0
+                ? Math.min(maxInFlight, ServiceExecutor.MAX_THREADS) : DEFAULT_MAX_IN_FLIGHT;
+    }
+}
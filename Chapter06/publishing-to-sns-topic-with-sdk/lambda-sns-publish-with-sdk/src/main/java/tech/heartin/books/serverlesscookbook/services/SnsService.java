@@ -0,0 +1,29 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+/**
+ * Service class interface for SNS operations.
+ */
+public interface SnsService {
+
+    /**
+     * Publish the message of the request to the topic.
+     * @param request Request domain object.
+     * @param logger Lambda Logger from context.
+     * @return Response domain object with the message id.
+     */
+    Response publishMessage(Request request, LambdaLogger logger);
+
+    /**
+     * Publish the messages of the request to the topic with PublishBatch.
+     * @param request Request domain object.
+     * @param logger Lambda Logger from context.
+     * @return Response domain object with the message ids in request order.
+     */
+    Response publishBatch(Request request, LambdaLogger logger);
+
+}
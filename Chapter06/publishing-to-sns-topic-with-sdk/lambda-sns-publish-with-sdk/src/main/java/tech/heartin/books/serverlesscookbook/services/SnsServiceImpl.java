@@ -0,0 +1,63 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.sns.SnsClient;
+import software.amazon.awssdk.services.sns.model.PublishRequest;
+import software.amazon.awssdk.services.sns.model.PublishResponse;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+/**
+ * Implementation class for SnsService.
+ */
+public class SnsServiceImpl implements SnsService {
+
+    private final SnsClient snsClient;
+    private final BatchPublisher batchPublisher;
+
+    public SnsServiceImpl(final SnsClient snsClient) {
+        this.snsClient = snsClient;
+        this.batchPublisher = new BatchPublisher(snsClient);
+    }
+
+    @Override
+    public final Response publishMessage(final Request request, final LambdaLogger logger) {
+        final PublishResponse  result;
+        try {
+            PublishRequest publishRequest = PublishRequest.builder()
+                .topicArn(request.getTopicArn())
+                .message(request.getMessage())
+                .build();
+            result = snsClient.publish(publishRequest);
+        } catch (Exception e) {
+            return new Response("Exception occurred: " + e.getMessage(), null);
+        }
+
+        return new Response("Message Id: " + result.messageId(), Collections.singletonList(result.messageId()));
+    }
+
+    @Override
+    public final Response publishBatch(final Request request, final LambdaLogger logger) {
+        final List<String> messageIds;
+        try {
+            messageIds = batchPublisher.publish(request.getTopicArn(), request.getMessages(),
+                    request.getMaxInFlight(), logger);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Response("Interrupted while publishing messages.", null);
+        } catch (Exception e) {
+            return new Response("Exception occurred: " + e.getMessage(), null);
+        }
+
+        final long published = messageIds.stream().filter(Objects::nonNull).count();
+        final String message = "Published " + published + " of " + messageIds.size() + " messages.";
+        logger.log(message);
+        return new Response(message, messageIds);
+    }
+
+}
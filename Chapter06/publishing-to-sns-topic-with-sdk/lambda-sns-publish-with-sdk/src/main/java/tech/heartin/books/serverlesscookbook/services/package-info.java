@@ -0,0 +1,4 @@
+/**
+ * Package for service classes.
+ */
+package tech.heartin.books.serverlesscookbook.services;
@@ -0,0 +1,127 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.sns.SnsClient;
+import software.amazon.awssdk.services.sns.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequestEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+import software.amazon.awssdk.services.sns.model.PublishBatchResultEntry;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import tech.heartin.books.serverlesscookbook.domain.BatchMessage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchPublisherTest {
+
+    private static final String TOPIC_ARN = "arn:aws:sns:us-east-1:123456789012:my-first-sns-topic";
+
+    @Mock
+    private SnsClient snsClient;
+
+    @Mock
+    private LambdaLogger logger;
+
+    private final List<PublishBatchRequest> requests = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testPublishesInBatchesOfTenAndReturnsIdsInOrder() throws InterruptedException {
+        when(snsClient.publishBatch(any(PublishBatchRequest.class))).thenAnswer(invocation -> {
+            final PublishBatchRequest request = invocation.getArgument(0);
+            requests.add(request);
+            return PublishBatchResponse.builder().successful(successful(request.publishBatchRequestEntries())).build();
+        });
+
+        final List<String> messageIds = new BatchPublisher(snsClient).publish(TOPIC_ARN, messages(25), 3, logger);
+
+        assertEquals(3, requests.size());
+        assertEquals(25, messageIds.size());
+        for (int i = 0; i < messageIds.size(); i++) {
+            assertEquals("message-id-" + i, messageIds.get(i));
+        }
+    }
+
+    @Test
+    public void testRetriesOnlyFailedEntries() throws InterruptedException {
+        when(snsClient.publishBatch(any(PublishBatchRequest.class))).thenAnswer(invocation -> {
+            final PublishBatchRequest request = invocation.getArgument(0);
+            requests.add(request);
+            final List<PublishBatchRequestEntry> entries = request.publishBatchRequestEntries();
+            if (entries.size() == 1) {
+                return PublishBatchResponse.builder().successful(successful(entries)).build();
+            }
+            return PublishBatchResponse.builder()
+                    .successful(successful(entries.stream().filter(e -> !"2".equals(e.id()))
+                            .collect(Collectors.toList())))
+                    .failed(BatchResultErrorEntry.builder().id("2").senderFault(false).code("Throttled").build())
+                    .build();
+        });
+
+        final List<String> messageIds = new BatchPublisher(snsClient).publish(TOPIC_ARN, messages(5), 1, logger);
+
+        assertEquals(2, requests.size());
+        assertEquals(Collections.singletonList("2"), requests.get(1).publishBatchRequestEntries().stream()
+                .map(PublishBatchRequestEntry::id)
+                .collect(Collectors.toList()));
+        assertEquals("message-id-2", messageIds.get(2));
+    }
+
+    @Test
+    public void testSenderFaultIsNotRetried() throws InterruptedException {
+        when(snsClient.publishBatch(any(PublishBatchRequest.class))).thenAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            return PublishBatchResponse.builder()
+                    .failed(BatchResultErrorEntry.builder().id("0").senderFault(true).code("InvalidParameter").build())
+                    .build();
+        });
+
+        final List<String> messageIds = new BatchPublisher(snsClient).publish(TOPIC_ARN, messages(1), 1, logger);
+
+        assertEquals(1, requests.size());
+        assertNull(messageIds.get(0));
+    }
+
+    @Test
+    public void testPacksByPayloadSizeIncludingAttributes() {
+        final List<BatchMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            messages.add(new BatchMessage(String.join("", Collections.nCopies(100 * 1024, "x")),
+                    Collections.singletonMap("eventType", "order-created"), null, null));
+        }
+
+        final List<List<PublishBatchRequestEntry>> batches = BatchPublisher.pack(messages, logger);
+
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals("order-created", batches.get(0).get(0).messageAttributes().get("eventType").stringValue());
+    }
+
+    private static List<PublishBatchResultEntry> successful(final List<PublishBatchRequestEntry> entries) {
+        return entries.stream()
+                .map(entry -> PublishBatchResultEntry.builder().id(entry.id()).messageId("message-id-" + entry.id())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    private static List<BatchMessage> messages(final int count) {
+        final List<BatchMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(new BatchMessage("test payload " + i, null, null, null));
+        }
+        return messages;
+    }
+}
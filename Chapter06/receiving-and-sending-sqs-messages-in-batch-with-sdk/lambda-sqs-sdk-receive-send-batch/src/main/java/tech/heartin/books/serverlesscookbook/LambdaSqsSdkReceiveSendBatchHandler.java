@@ -35,6 +35,9 @@ public final class LambdaSqsSdkReceiveSendBatchHandler implements RequestHandler
         context.getLogger().log("Received Request: " + request);
 
         final SqsService sqsService =  new SqsServiceImpl(this.sqsClient);
+        if (Boolean.TRUE.equals(request.getDrain())) {
+            return sqsService.drainMessages(request, context);
+        }
         return sqsService.sendMessage(request, context.getLogger());
 
     }
@@ -11,4 +11,11 @@ public class Request {
     private String outputQueueURL;
     private int maxMessagesToReceive;
     private int delay;
+
+    // Drain mode: keep long-polling and forwarding until the queue is empty, the budget is used up
+    // or the invocation is close to its deadline.
+    private Boolean drain;
+    private Integer waitTimeSeconds;
+    private Integer concurrentReceives;
+    private Integer messageBudget;
 }
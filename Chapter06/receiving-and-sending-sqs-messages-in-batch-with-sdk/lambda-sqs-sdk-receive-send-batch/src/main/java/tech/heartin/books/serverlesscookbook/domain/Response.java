@@ -10,4 +10,10 @@ import lombok.Data;
 @AllArgsConstructor
 public class Response {
     private String message;
+    private Integer messagesDrained;
+    private Double messagesPerSecond;
+
+    public Response(final String message) {
+        this(message, null, null);
+    }
 }
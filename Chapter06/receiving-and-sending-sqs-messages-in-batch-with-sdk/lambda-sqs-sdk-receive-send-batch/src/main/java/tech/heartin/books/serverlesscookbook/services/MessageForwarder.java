@@ -0,0 +1,134 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+
+/**
+ * Sends received messages to the output queue with SendMessageBatch and deletes the sent ones from
+ * the input queue with DeleteMessageBatch.<br/>
+ * Messages are grouped by the batch limits of 10 entries and 256 KB of payload. A message is only
+ * deleted once it was sent, so a failure anywhere leads to redelivery rather than loss.
+ */
+final class MessageForwarder {
+
+    static final int MAX_ENTRIES_PER_BATCH = 10;
+    static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    private final SqsClient sqsClient;
+
+    MessageForwarder(final SqsClient sqsClient) {
+        this.sqsClient = sqsClient;
+    }
+
+    /**
+     * Send the messages to the output queue of the request.
+     * @param messages Messages received from the input queue.
+     * @param request Request with the output queue URL and delay.
+     * @param logger Lambda Logger from context.
+     * @return the messages that were sent and can be deleted from the input queue.
+     */
+    List<Message> forward(final List<Message> messages, final Request request, final LambdaLogger logger) {
+        final List<Message> forwarded = new ArrayList<>(messages.size());
+        for (List<Message> batch : chunk(messages)) {
+            final List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                entries.add(SendMessageBatchRequestEntry.builder()
+                        .id(String.valueOf(i))
+                        .messageBody(batch.get(i).body())
+                        .delaySeconds(request.getDelay())
+                        .build());
+            }
+
+            final SendMessageBatchResponse response = sqsClient.sendMessageBatch(SendMessageBatchRequest.builder()
+                    .queueUrl(request.getOutputQueueURL())
+                    .entries(entries)
+                    .build());
+
+            final Set<String> failed = new HashSet<>();
+            for (BatchResultErrorEntry failure : response.failed()) {
+                logger.log("Failed message ID: " + batch.get(Integer.parseInt(failure.id())).messageId()
+                        + ", Reason: " + failure.message());
+                failed.add(failure.id());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                if (!failed.contains(String.valueOf(i))) {
+                    forwarded.add(batch.get(i));
+                }
+            }
+        }
+        return forwarded;
+    }
+
+    /**
+     * Delete forwarded messages from the input queue.
+     * @param messages Messages that were sent to the output queue.
+     * @param queueUrl Input queue URL.
+     * @param logger Lambda Logger from context.
+     * @return number of messages deleted; the others become visible again and are forwarded twice.
+     */
+    int delete(final List<Message> messages, final String queueUrl, final LambdaLogger logger) {
+        int deleted = 0;
+        for (int from = 0; from < messages.size(); from += MAX_ENTRIES_PER_BATCH) {
+            final List<Message> batch = messages.subList(from, Math.min(from + MAX_ENTRIES_PER_BATCH, messages.size()));
+            final List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                entries.add(DeleteMessageBatchRequestEntry.builder()
+                        .id(String.valueOf(i))
+                        .receiptHandle(batch.get(i).receiptHandle())
+                        .build());
+            }
+
+            final DeleteMessageBatchResponse response = sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(entries)
+                    .build());
+            for (BatchResultErrorEntry failure : response.failed()) {
+                logger.log("Failed to delete message ID: " + batch.get(Integer.parseInt(failure.id())).messageId()
+                        + ", Reason: " + failure.message());
+            }
+            deleted += batch.size() - response.failed().size();
+        }
+        return deleted;
+    }
+
+    /**
+     * Group messages by entry count and payload size. A message larger than the payload limit goes
+     * into a batch of its own.
+     */
+    static List<List<Message>> chunk(final List<Message> messages) {
+        final List<List<Message>> batches = new ArrayList<>();
+        List<Message> batch = new ArrayList<>();
+        int batchBytes = 0;
+        for (Message message : messages) {
+            final int bytes = message.body().getBytes(StandardCharsets.UTF_8).length;
+            if (!batch.isEmpty()
+                    && (batch.size() == MAX_ENTRIES_PER_BATCH || batchBytes + bytes > MAX_BATCH_BYTES)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(message);
+            batchBytes += bytes;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+}
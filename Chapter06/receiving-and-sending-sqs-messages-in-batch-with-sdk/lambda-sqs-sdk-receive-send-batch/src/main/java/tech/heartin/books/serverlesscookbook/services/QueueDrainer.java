@@ -0,0 +1,187 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+/**
+ * Drains the input queue into the output queue within one invocation.<br/>
+ * Several receivers long-poll the input queue concurrently on the {@link ServiceExecutor}, each
+ * forwarding what it received and then polling again while the forwarded messages are deleted in the
+ * background with DeleteMessageBatch. A receiver stops when a long poll comes back empty, when the
+ * message budget is used up, or when the remaining invocation time could not cover another long poll
+ * plus forwarding. A receiver that fails stops, and the messages it forwarded until then are still counted.
+ */
+final class QueueDrainer {
+
+    static final int MAX_MESSAGES_PER_RECEIVE = 10;
+    static final int MAX_WAIT_TIME_SECONDS = 20;
+    static final int DEFAULT_WAIT_TIME_SECONDS = 20;
+    static final int DEFAULT_CONCURRENT_RECEIVES = 4;
+    // Time kept in reserve after the last long poll for forwarding, deleting and returning.
+    static final long SAFETY_MARGIN_MILLIS = 2000;
+
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    private final SqsClient sqsClient;
+    private final MessageForwarder messageForwarder;
+
+    QueueDrainer(final SqsClient sqsClient) {
+        this.sqsClient = sqsClient;
+        this.messageForwarder = new MessageForwarder(sqsClient);
+    }
+
+    Response drain(final Request request, final Context context) {
+        final LambdaLogger logger = context.getLogger();
+        final int waitTimeSeconds = waitTimeSeconds(request);
+        final int receivers = concurrentReceives(request);
+        final AtomicInteger budget = new AtomicInteger(
+                request.getMessageBudget() != null && request.getMessageBudget() > 0
+                        ? request.getMessageBudget() : Integer.MAX_VALUE);
+
+        final long start = System.nanoTime();
+        final List<Future<Lane>> lanes = new ArrayList<>(receivers);
+        int drained = 0;
+        String lastError = null;
+        try {
+            for (int i = 0; i < receivers; i++) {
+                lanes.add(ServiceExecutor.get().submit(() -> drainLane(request, context, waitTimeSeconds, budget)));
+            }
+            for (Future<Lane> lane : lanes) {
+                try {
+                    final Lane result = lane.get();
+                    drained += result.drained;
+                    if (result.error != null) {
+                        lastError = result.error;
+                    }
+                } catch (ExecutionException e) {
+                    lastError = e.getCause().getMessage();
+                    logger.log("Receiver failed: " + lastError);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lanes.forEach(lane -> lane.cancel(true));
+            return new Response("Drain interrupted.");
+        }
+
+        final long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        final double perSecond = drained * MILLIS_PER_SECOND / elapsedMillis;
+        final String message = "Drained " + drained + " messages in " + elapsedMillis + " ms with "
+                + receivers + " receivers" + (lastError != null ? ". Last error: " + lastError : ".");
+        logger.log(message);
+        return new Response(message, drained, perSecond);
+    }
+
+    /**
+     * One receiver: long-poll, forward and delete until there is nothing left to do. The delete of a
+     * batch runs during the next receive, and is awaited before the following delete is issued so each
+     * receiver has at most one delete in flight. A failed receive or forward stops the receiver; a failed
+     * delete is logged and the receiver goes on, as the messages become visible again and are forwarded twice.
+     * @return number of messages forwarded, and the last error, if any.
+     */
+    private Lane drainLane(final Request request, final Context context, final int waitTimeSeconds,
+                           final AtomicInteger budget) {
+        final LambdaLogger logger = context.getLogger();
+        final long reserveMillis = TimeUnit.SECONDS.toMillis(waitTimeSeconds) + SAFETY_MARGIN_MILLIS;
+        final Lane lane = new Lane();
+        CompletableFuture<Integer> pendingDelete = CompletableFuture.completedFuture(0);
+
+        try {
+            while (context.getRemainingTimeInMillis() > reserveMillis) {
+                final int reserved = reserve(budget, MAX_MESSAGES_PER_RECEIVE);
+                if (reserved == 0) {
+                    break;
+                }
+
+                List<Message> messages = Collections.emptyList();
+                try {
+                    messages = sqsClient.receiveMessage(ReceiveMessageRequest.builder()
+                            .queueUrl(request.getInputQueueURL())
+                            .maxNumberOfMessages(reserved)
+                            .waitTimeSeconds(waitTimeSeconds)
+                            .build()).messages();
+                } finally {
+                    // Give back what was not received, so that the other receivers can use it.
+                    budget.addAndGet(reserved - messages.size());
+                }
+                if (messages.isEmpty()) {
+                    break;
+                }
+
+                final List<Message> forwarded = messageForwarder.forward(messages, request, logger);
+                lane.drained += forwarded.size();
+
+                awaitDelete(pendingDelete, lane, logger);
+                pendingDelete = CompletableFuture.supplyAsync(
+                        () -> messageForwarder.delete(forwarded, request.getInputQueueURL(), logger),
+                        ServiceExecutor.deletes());
+            }
+        } catch (RuntimeException e) {
+            lane.error = e.getMessage();
+            logger.log("Receiver failed after forwarding " + lane.drained + " messages: " + lane.error);
+        } finally {
+            // Never return with a delete still running; an unfinished delete means a duplicate later.
+            awaitDelete(pendingDelete, lane, logger);
+        }
+        return lane;
+    }
+
+    private static void awaitDelete(final CompletableFuture<Integer> pendingDelete, final Lane lane,
+                                    final LambdaLogger logger) {
+        try {
+            pendingDelete.join();
+        } catch (CompletionException e) {
+            lane.error = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+            logger.log("Delete failed, the forwarded messages will be received again: " + lane.error);
+        }
+    }
+
+    /**
+     * Take up to max messages from the budget.
+     * @return number of messages taken, 0 if the budget is used up.
+     */
+    static int reserve(final AtomicInteger budget, final int max) {
+        while (true) {
+            final int available = budget.get();
+            final int taken = Math.min(available, max);
+            if (taken <= 0 || budget.compareAndSet(available, available - taken)) {
+                return Math.max(taken, 0);
+            }
+        }
+    }
+
+    static int waitTimeSeconds(final Request request) {
+        return request.getWaitTimeSeconds() != null && request.getWaitTimeSeconds() >= 0
+                ? Math.min(request.getWaitTimeSeconds(), MAX_WAIT_TIME_SECONDS) : DEFAULT_WAIT_TIME_SECONDS;
+    }
+
+    static int concurrentReceives(final Request request) {
+        return request.getConcurrentReceives() != null && request.getConcurrentReceives() > 0
+                ? Math.min(request.getConcurrentReceives(), ServiceExecutor.MAX_THREADS)
+                : DEFAULT_CONCURRENT_RECEIVES;
+    }
+
+    /**
+     * Outcome of one receiver, read by the invocation thread once the receiver is done.
+     */
+    private static final class Lane {
+        private int drained;
+        private String error;
+    }
+}
@@ -0,0 +1,36 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded thread pools shared by the concurrent receive and delete operations of a container.<br/>
+ * Deletes have their own pool so they can overlap the long polls that occupy the receive threads.
+ * Threads are daemons so they never keep the runtime from shutting down.
+ */
+final class ServiceExecutor {
+
+    static final int MAX_THREADS = 16;
+
+    private static final ExecutorService EXECUTOR = newPool("sqs-drain-worker");
+    private static final ExecutorService DELETE_EXECUTOR = newPool("sqs-delete-worker");
+
+    private ServiceExecutor() {
+    }
+
+    static ExecutorService get() {
+        return EXECUTOR;
+    }
+
+    static ExecutorService deletes() {
+        return DELETE_EXECUTOR;
+    }
+
+    private static ExecutorService newPool(final String threadName) {
+        return Executors.newFixedThreadPool(MAX_THREADS, runnable -> {
+            final Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -3,6 +3,7 @@ package tech.heartin.books.serverlesscookbook.services;
 import tech.heartin.books.serverlesscookbook.domain.Request;
 import tech.heartin.books.serverlesscookbook.domain.Response;
 
+import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 
 /**
@@ -18,4 +19,13 @@ public interface SqsService {
      */
     Response sendMessage(Request request, LambdaLogger logger);
 
+    /**
+     * Forward messages from the input queue to the output queue until the input queue is empty,
+     * the message budget is used up or the invocation is close to its deadline.
+     * @param request Request domain object.
+     * @param context Lambda context, for the logger and the remaining time.
+     * @return Response domain object with the number of messages drained per second.
+     */
+    Response drainMessages(Request request, Context context);
+
 }
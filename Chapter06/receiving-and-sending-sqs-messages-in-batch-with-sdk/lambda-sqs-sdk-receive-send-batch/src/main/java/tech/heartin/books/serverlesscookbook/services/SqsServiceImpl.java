@@ -1,15 +1,11 @@
 package tech.heartin.books.serverlesscookbook.services;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
+import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger; 
 import software.amazon.awssdk.services.sqs.SqsClient; 
-import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest; 
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
-import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
-import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry; 
 import software.amazon.awssdk.services.sqs.model.Message;
 
 import tech.heartin.books.serverlesscookbook.domain.Request;
@@ -21,9 +17,13 @@ import tech.heartin.books.serverlesscookbook.domain.Response;
 public class SqsServiceImpl implements SqsService {
 
     private final SqsClient  sqsClient;
+    private final MessageForwarder messageForwarder;
+    private final QueueDrainer queueDrainer;
 
     public SqsServiceImpl(final SqsClient  sqsClient) {
         this.sqsClient = sqsClient;
+        this.messageForwarder = new MessageForwarder(sqsClient);
+        this.queueDrainer = new QueueDrainer(sqsClient);
     }
 
     @Override
@@ -41,34 +41,13 @@ public class SqsServiceImpl implements SqsService {
 
             logger.log("Number of messages: " + messages.size());
 
-            Collection<SendMessageBatchRequestEntry> entries = new ArrayList<>();
-
-            int idVal = 1;
-            for (Message m : messages) {
-                logger.log("Adding message: " + m.body());
-                entries.add(SendMessageBatchRequestEntry.builder()
-                        .id("id_" + idVal)
-                        .messageBody(m.body())
-                        .delaySeconds(request.getDelay())
-                        .build());
-                idVal++;
-            }
-
-            // Send batch messages
-            if (!entries.isEmpty()) {
-                final SendMessageBatchRequest sendBatchRequest = SendMessageBatchRequest.builder()
-                        .queueUrl(request.getOutputQueueURL())
-                        .entries(entries)
-                        .build();
-                this.sqsClient.sendMessageBatch(sendBatchRequest);
-            }
+            // Send batch messages, then delete only the messages that were sent.
+            final List<Message> forwarded = messageForwarder.forward(messages, request, logger);
+            messageForwarder.delete(forwarded, request.getInputQueueURL(), logger);
 
-            // delete messages from the queue with receipt handle.
-            for (Message m : messages) {
-                sqsClient.deleteMessage(DeleteMessageRequest.builder()
-                        .queueUrl(request.getInputQueueURL())
-                        .receiptHandle(m.receiptHandle())
-                        .build());
+            if (forwarded.size() < messages.size()) {
+                return new Response("Forwarded " + forwarded.size() + " of " + messages.size()
+                        + " messages; the rest will be received again.");
             }
         } catch (Exception e) {
             final String errorMessage = "Error occurred: " + e.getMessage();
@@ -80,5 +59,16 @@ public class SqsServiceImpl implements SqsService {
 
     }
 
+    @Override
+    public final Response drainMessages(final Request request, final Context context) {
+        try {
+            return queueDrainer.drain(request, context);
+        } catch (Exception e) {
+            final String errorMessage = "Error occurred: " + e.getMessage();
+            context.getLogger().log(errorMessage);
+            return new Response(errorMessage);
+        }
+    }
+
 
 }
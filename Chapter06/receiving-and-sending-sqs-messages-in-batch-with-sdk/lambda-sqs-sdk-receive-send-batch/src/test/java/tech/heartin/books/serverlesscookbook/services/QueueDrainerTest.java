@@ -0,0 +1,183 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class QueueDrainerTest {
+
+    private static final long REMAINING_MILLIS = 300_000;
+
+    @Mock
+    private SqsClient sqsClient;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final Set<String> deleted = Collections.synchronizedSet(new TreeSet<>());
+
+    @BeforeEach
+    public void setUp() {
+        when(context.getLogger()).thenReturn(logger);
+        when(context.getRemainingTimeInMillis()).thenReturn((int) REMAINING_MILLIS);
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenAnswer(invocation -> receive(invocation.getArgument(0)));
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class))).thenAnswer(invocation -> {
+            final DeleteMessageBatchRequest request = invocation.getArgument(0);
+            request.entries().stream().map(DeleteMessageBatchRequestEntry::receiptHandle).forEach(deleted::add);
+            return DeleteMessageBatchResponse.builder().build();
+        });
+    }
+
+    @Test
+    public void testDrainsUntilQueueIsEmpty() {
+        backlog.set(35);
+
+        final Response response = new QueueDrainer(sqsClient).drain(request(null, 3), context);
+
+        assertEquals(35, response.getMessagesDrained());
+        assertTrue(response.getMessagesPerSecond() > 0);
+        assertEquals(35, deleted.size());
+    }
+
+    @Test
+    public void testDeletesOnlyForwardedMessages() {
+        backlog.set(10);
+        // The output queue rejects the third entry of every batch.
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder().id("2").senderFault(false).message("Test").build())
+                        .build());
+
+        final Response response = new QueueDrainer(sqsClient).drain(request(10, 1), context);
+
+        assertEquals(9, response.getMessagesDrained());
+        assertEquals(9, deleted.size());
+        assertFalse(deleted.contains("receipt-3"));
+    }
+
+    @Test
+    public void testStopsAtMessageBudget() {
+        backlog.set(100);
+
+        final Response response = new QueueDrainer(sqsClient).drain(request(15, 4), context);
+
+        assertEquals(15, response.getMessagesDrained());
+        assertEquals(15, sequence.get());
+    }
+
+    @Test
+    public void testStopsBeforeDeadline() {
+        backlog.set(10);
+        when(context.getRemainingTimeInMillis()).thenReturn((int) QueueDrainer.SAFETY_MARGIN_MILLIS);
+
+        final Response response = new QueueDrainer(sqsClient).drain(request(null, 2), context);
+
+        assertEquals(0, response.getMessagesDrained());
+        verify(sqsClient, never()).receiveMessage(any(ReceiveMessageRequest.class));
+    }
+
+    @Test
+    public void testKeepsTheCountOfAReceiverThatFails() {
+        backlog.set(100);
+        final AtomicInteger receives = new AtomicInteger();
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(invocation -> {
+            if (receives.incrementAndGet() == 3) {
+                throw SqsException.builder().message("Service unavailable").build();
+            }
+            return receive(invocation.getArgument(0));
+        });
+
+        final Response response = new QueueDrainer(sqsClient).drain(request(null, 1), context);
+
+        assertEquals(20, response.getMessagesDrained());
+        assertTrue(response.getMessage().endsWith("Last error: Service unavailable"), response.getMessage());
+        assertEquals(20, deleted.size());
+    }
+
+    @Test
+    public void testKeepsDrainingWhenADeleteFails() {
+        backlog.set(30);
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenThrow(SqsException.builder().message("Delete throttled").build());
+
+        final Response response = new QueueDrainer(sqsClient).drain(request(null, 1), context);
+
+        assertEquals(30, response.getMessagesDrained());
+        assertTrue(response.getMessage().endsWith("Last error: Delete throttled"), response.getMessage());
+        verify(logger, times(3)).log("Delete failed, the forwarded messages will be received again: Delete throttled");
+    }
+
+    /**
+     * Up to the requested number of messages from the backlog.
+     */
+    private ReceiveMessageResponse receive(final ReceiveMessageRequest request) {
+        final List<Message> messages = new ArrayList<>();
+        while (messages.size() < request.maxNumberOfMessages() && backlog.getAndDecrement() > 0) {
+            final int id = sequence.incrementAndGet();
+            messages.add(Message.builder()
+                    .messageId("message-" + id)
+                    .receiptHandle("receipt-" + id)
+                    .body("This is test message " + id)
+                    .build());
+        }
+        return ReceiveMessageResponse.builder().messages(messages).build();
+    }
+
+    private static Request request(final Integer messageBudget, final int concurrentReceives) {
+        final Request request = new Request();
+        request.setInputQueueURL("https://queue.amazonaws.com/123456789012/my-input-queue");
+        request.setOutputQueueURL("https://queue.amazonaws.com/123456789012/my-output-queue");
+        request.setDrain(true);
+        request.setWaitTimeSeconds(1);
+        request.setConcurrentReceives(concurrentReceives);
+        request.setMessageBudget(messageBudget);
+        return request;
+    }
+}
@@ -1,42 +1,132 @@
 package tech.heartin.books.serverlesscookbook;
 
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
-import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+import com.amazonaws.services.lambda.runtime.events.KinesisTimeWindowEvent;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import com.amazonaws.services.lambda.runtime.events.TimeWindowEventResponse;
+
+import tech.heartin.books.serverlesscookbook.services.KinesisService;
+import tech.heartin.books.serverlesscookbook.services.KinesisServiceImpl;
+import tech.heartin.books.serverlesscookbook.services.RecordProcessor;
+import tech.heartin.books.serverlesscookbook.services.WindowAggregator;
 
 /**
- * RequestHandler implementation.
+ * RequestHandler implementation.<br/>
+ * Takes the events of an event source mapping with or without a tumbling window; without one, the window
+ * and state of the event are null and so is the state of the response.
  */
-public final class LambdaKinesisEventHandler implements RequestHandler<KinesisEvent, Boolean> {
+public final class LambdaKinesisEventHandler
+        implements RequestHandler<KinesisTimeWindowEvent, TimeWindowEventResponse> {
+
+    private static final long MILLIS_PER_SECOND = 1000;
 
+    private final KinesisService kinesisService;
+    private final WindowAggregator windowAggregator;
+
+    public LambdaKinesisEventHandler() {
+        // Replace with the processing of your records; the batch summary is logged either way.
+        this((record, data) -> { }, windowAggregator());
+    }
+
+    public LambdaKinesisEventHandler(final RecordProcessor recordProcessor) {
+        this(recordProcessor, null);
+    }
+
+    /**
+     * @param recordProcessor Processor of the decoded records.
+     * @param windowAggregator Aggregation of the records into windows, or null. It only sees the records before
+     *                         the checkpoint, so records retried by the event source mapping are counted once.
+     */
+    public LambdaKinesisEventHandler(final RecordProcessor recordProcessor, final WindowAggregator windowAggregator) {
+        this.windowAggregator = windowAggregator;
+        this.kinesisService = new KinesisServiceImpl(recordProcessor, parallelism(), windowAggregator);
+    }
 
     /**
      * Handle request.
      *
      * @param kinesisEvent  - Kinesis Event passed as input to lambda handler
      * @param context - context object
-     * @return true if success, else false.
+     * @return batch item failure for the first record that was not processed, if any, and the window state.
+     */
+    public TimeWindowEventResponse handleRequest(final KinesisTimeWindowEvent kinesisEvent, final Context context) {
+        final LambdaLogger logger = context.getLogger();
+        // With a tumbling window on the event source mapping, the window state comes with every event of the
+        // window; without one, the aggregator keeps its state as long as the container lives.
+        final boolean lambdaWindow = windowAggregator != null && kinesisEvent.getWindow() != null;
+        if (lambdaWindow) {
+            windowAggregator.restore(kinesisEvent.getState() == null
+                    ? null : kinesisEvent.getState().get(WindowAggregator.STATE_KEY));
+        }
+
+        final StreamsEventResponse response = kinesisService.processEvent(kinesisEvent, logger);
+
+        Map<String, String> state = null;
+        if (windowAggregator != null) {
+            // The state is discarded after the last invocation of a Lambda window, so all windows are closed.
+            final boolean finalInvoke = lambdaWindow && Boolean.TRUE.equals(kinesisEvent.getIsFinalInvokeForWindow());
+            windowAggregator.closeWindows(finalInvoke).forEach(logger::log);
+            if (lambdaWindow) {
+                String windows = windowAggregator.state();
+                if (windows.length() > WindowAggregator.MAX_STATE_CHARS) {
+                    // Too many keys to hand over: close the windows as they are rather than fail the batch.
+                    // Only happens with keys longer than the allowance or a maximum above what fits the state.
+                    logger.log("{\"event\":\"kinesis-window-state-overflow\",\"stateChars\":" + windows.length()
+                            + ",\"maxStateChars\":" + WindowAggregator.MAX_STATE_CHARS + "}");
+                    windowAggregator.closeWindows(true).forEach(logger::log);
+                    windows = windowAggregator.state();
+                }
+                state = Collections.singletonMap(WindowAggregator.STATE_KEY, windows);
+            }
+        }
+        return new TimeWindowEventResponse(state, failures(response));
+    }
+
+    private static List<TimeWindowEventResponse.BatchItemFailure> failures(final StreamsEventResponse response) {
+        final List<TimeWindowEventResponse.BatchItemFailure> failures = new ArrayList<>();
+        for (StreamsEventResponse.BatchItemFailure failure : response.getBatchItemFailures()) {
+            failures.add(new TimeWindowEventResponse.BatchItemFailure(failure.getItemIdentifier()));
+        }
+        return failures;
+    }
+
+    /**
+     * Number of partition keys processed at the same time, from SPC_PARALLELISM; 0 uses one thread per
+     * available processor, and the batch is processed in order on one thread when not set.
+     */
+    private static int parallelism() {
+        final String parallelism = System.getenv("SPC_PARALLELISM");
+        return parallelism == null || parallelism.isEmpty() ? 1 : Integer.parseInt(parallelism);
+    }
+
+    /**
+     * Window aggregation from SPC_WINDOW_SECONDS (window length; no aggregation when not set),
+     * SPC_WINDOW_SLIDE_SECONDS (tumbling windows when not set), SPC_WINDOW_KEY_FIELD, SPC_WINDOW_VALUE_FIELD,
+     * SPC_WINDOW_DISTINCT_FIELD and SPC_WINDOW_MAX_KEYS.
      */
-    public Boolean handleRequest(final KinesisEvent kinesisEvent, final Context context) {
-
-        LambdaLogger logger = context.getLogger();
-        logger.log("Received Kinesis event: " + kinesisEvent);
-        logger.log("Number of records: " + kinesisEvent.getRecords().size());
-
-        try {
-            kinesisEvent.getRecords().forEach(r -> {
-                final KinesisEvent.Record kr = r.getKinesis();
-                logger.log("Record: " + kr.toString());
-                logger.log("Data: " + StandardCharsets.UTF_8.decode(kr.getData()).toString());
-            });
-        } catch (final Exception e) {
-            logger.log("There was an exception: " + e.getMessage());
-            return false;
+    private static WindowAggregator windowAggregator() {
+        final String size = System.getenv("SPC_WINDOW_SECONDS");
+        if (size == null || size.isEmpty()) {
+            return null;
         }
+        final String slide = System.getenv("SPC_WINDOW_SLIDE_SECONDS");
+        final String maxKeys = System.getenv("SPC_WINDOW_MAX_KEYS");
+        return new WindowAggregator(Long.parseLong(size) * MILLIS_PER_SECOND,
+                (slide == null || slide.isEmpty() ? Long.parseLong(size) : Long.parseLong(slide)) * MILLIS_PER_SECOND,
+                emptyToNull(System.getenv("SPC_WINDOW_KEY_FIELD")),
+                emptyToNull(System.getenv("SPC_WINDOW_VALUE_FIELD")),
+                emptyToNull(System.getenv("SPC_WINDOW_DISTINCT_FIELD")),
+                maxKeys == null || maxKeys.isEmpty() ? 0 : Integer.parseInt(maxKeys));
+    }
 
-        return true;
+    private static String emptyToNull(final String value) {
+        return value == null || value.isEmpty() ? null : value;
     }
 }
@@ -0,0 +1,99 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Approximate distinct count in a fixed number of one byte registers.<br/>
+ * With precision p there are 2^p registers and the standard error is about 1.04 / sqrt(2^p).
+ */
+final class HyperLogLog {
+
+    private static final int HASH_BITS = 64;
+    // Small range correction applies up to 5/2 times the number of registers.
+    private static final double SMALL_RANGE = 2.5;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long MIX_1 = 0xff51afd7ed558ccdL;
+    private static final long MIX_2 = 0xc4ceb9fe1a85ec53L;
+    private static final int MIX_SHIFT = 33;
+    // Bias correction: alpha = ALPHA / (1 + ALPHA_M / m) for m registers.
+    private static final double ALPHA = 0.7213;
+    private static final double ALPHA_M = 1.079;
+
+    private final int precision;
+    private final byte[] registers;
+
+    HyperLogLog(final int precision) {
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    void add(final CharSequence value) {
+        addHash(hash(value));
+    }
+
+    void addHash(final long hash) {
+        final int index = (int) (hash >>> (HASH_BITS - precision));
+        final int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), HASH_BITS - precision) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds the values counted by another HyperLogLog of the same precision.
+     */
+    void merge(final HyperLogLog other) {
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    long estimate() {
+        final int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        final double alpha = ALPHA / (1 + ALPHA_M / m);
+        final double estimate = alpha * m * m / sum;
+        if (estimate <= SMALL_RANGE * m && zeros > 0) {
+            return Math.round(m * Math.log((double) m / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    void write(final DataOutput out) throws IOException {
+        out.write(registers);
+    }
+
+    static HyperLogLog read(final DataInput in, final int precision) throws IOException {
+        final HyperLogLog hll = new HyperLogLog(precision);
+        in.readFully(hll.registers);
+        return hll;
+    }
+
+    /**
+     * 64 bit FNV-1a of the characters, finished with the MurmurHash3 mix so that all bits are spread.
+     */
+    static long hash(final CharSequence value) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * FNV_PRIME;
+        }
+        h ^= h >>> MIX_SHIFT;
+        h *= MIX_1;
+        h ^= h >>> MIX_SHIFT;
+        h *= MIX_2;
+        h ^= h >>> MIX_SHIFT;
+        return h;
+    }
+}
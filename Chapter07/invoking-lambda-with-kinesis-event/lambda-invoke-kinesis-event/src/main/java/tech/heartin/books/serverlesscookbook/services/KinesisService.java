@@ -0,0 +1,19 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+
+/**
+ * Service class interface for Kinesis event processing.
+ */
+public interface KinesisService {
+
+    /**
+     * Process KinesisEvent.
+     * @param event Kinesis event received.
+     * @param logger Lambda Logger from context.
+     * @return batch item failure with the sequence number of the first record that was not processed, if any.
+     */
+    StreamsEventResponse processEvent(KinesisEvent event, LambdaLogger logger);
+}
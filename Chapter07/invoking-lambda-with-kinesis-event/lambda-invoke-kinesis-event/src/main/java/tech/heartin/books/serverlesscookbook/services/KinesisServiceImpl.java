@@ -0,0 +1,246 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent.KinesisEventRecord;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse.BatchItemFailure;
+
+/**
+ * Implementation class for KinesisService.<br/>
+ * Record data is decoded straight from its buffer by a {@link RecordDecoder} and handed to the
+ * {@link RecordProcessor}; instead of logging every record, one JSON line sums up the batch.
+ * Records aggregated by the KPL are unpacked first by the {@link RecordDeaggregator}, so the processor
+ * sees every user record.
+ * An instance is meant to live as long as the container, so the decode buffer is reused.<br/>
+ * With a parallelism above 1, user records are grouped by partition key and the groups are processed
+ * concurrently on a fork/join pool. Records of a key are still processed in order, and the batch
+ * returns only after every group is done.<br/>
+ * A failure is reported as a batch item failure with the sequence number of the first failed record, so the
+ * event source mapping (with ReportBatchItemFailures enabled) retries from that record instead of the whole batch.
+ * Checkpoints are per Kinesis record, so the user records aggregated before a failed one are processed again.<br/>
+ * State that must not see a record twice, such as window aggregates, goes in a checkpointed processor. It gets,
+ * in shard order and after the batch, only the user records of the Kinesis records before the checkpoint,
+ * which are never delivered again.
+ */
+public class KinesisServiceImpl implements KinesisService {
+
+    private final RecordProcessor recordProcessor;
+    // Null when there is no checkpointed processor.
+    private final RecordProcessor checkpointedProcessor;
+    // Null when the batch is processed in order on the calling thread.
+    private final ForkJoinPool pool;
+    // A RecordDecoder is not thread safe, so every thread processing records gets its own.
+    private final ThreadLocal<RecordDecoder> decoders = ThreadLocal.withInitial(RecordDecoder::new);
+
+    public KinesisServiceImpl(final RecordProcessor recordProcessor) {
+        this(recordProcessor, 1);
+    }
+
+    /**
+     * @param recordProcessor Processor of the decoded records.
+     * @param parallelism Number of partition keys processed at the same time; 1 processes the batch in order
+     *                    on the calling thread, 0 uses one thread per available processor.
+     */
+    public KinesisServiceImpl(final RecordProcessor recordProcessor, final int parallelism) {
+        this(recordProcessor, parallelism, null);
+    }
+
+    /**
+     * @param recordProcessor Processor of the decoded records.
+     * @param parallelism Number of partition keys processed at the same time; 1 processes the batch in order
+     *                    on the calling thread, 0 uses one thread per available processor.
+     * @param checkpointedProcessor Processor of the user records before the checkpoint, or null. It should not
+     *                              fail: a failure moves the checkpoint back to its Kinesis record, and the user
+     *                              records before it in the same Kinesis record are processed again.
+     */
+    public KinesisServiceImpl(final RecordProcessor recordProcessor, final int parallelism,
+                              final RecordProcessor checkpointedProcessor) {
+        this.recordProcessor = recordProcessor;
+        this.checkpointedProcessor = checkpointedProcessor;
+        final int threads = parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
+        // Fork/join worker threads are daemons, so the pool never keeps the runtime from shutting down.
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    @Override
+    public final StreamsEventResponse processEvent(final KinesisEvent event, final LambdaLogger logger) {
+
+        final long start = System.nanoTime();
+        final List<KinesisEventRecord> records = event.getRecords();
+        final long now = System.currentTimeMillis();
+        final List<UserRecord> userRecords = new ArrayList<>(records.size());
+        long bytes = 0;
+        long maxLagMillis = 0;
+
+        for (KinesisEventRecord r : records) {
+            final KinesisEvent.Record kr = r.getKinesis();
+            bytes += kr.getData().remaining();
+            if (kr.getApproximateArrivalTimestamp() != null) {
+                maxLagMillis = Math.max(maxLagMillis, now - kr.getApproximateArrivalTimestamp().getTime());
+            }
+            userRecords.addAll(RecordDeaggregator.deaggregate(kr));
+        }
+
+        final Outcome outcome = pool == null ? process(userRecords) : processByPartitionKey(userRecords);
+        if (checkpointedProcessor != null) {
+            processCheckpointed(userRecords, outcome);
+        }
+
+        logger.log(summary(records, userRecords.size(), outcome.processed, bytes, maxLagMillis,
+                System.nanoTime() - start, outcome.failed, outcome.error));
+        return toResponse(outcome.failed == null ? null : outcome.failed.getSequenceNumber());
+    }
+
+    /**
+     * Response that checkpoints before the failed record, or the whole batch when nothing failed.
+     */
+    static StreamsEventResponse toResponse(final String failedSequenceNumber) {
+        return new StreamsEventResponse(failedSequenceNumber == null
+                ? Collections.emptyList()
+                : Collections.singletonList(new BatchItemFailure(failedSequenceNumber)));
+    }
+
+    /**
+     * Processes the user records in order, stopping at the first one that fails.
+     */
+    private Outcome process(final List<UserRecord> userRecords) {
+        final RecordDecoder decoder = decoders.get();
+        final Outcome outcome = new Outcome();
+        for (UserRecord r : userRecords) {
+            try {
+                recordProcessor.process(r, decoder.decode(r.getData()));
+                outcome.processed++;
+            } catch (final Exception e) {
+                outcome.failed = r;
+                outcome.error = e.getMessage() != null ? e.getMessage() : e.toString();
+                break;
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * Processes the records of each partition key in order, and the keys concurrently. A failure stops only
+     * the records of its key; the failed record earliest in the shard is reported, so records of other keys
+     * after it are processed again on retry.
+     */
+    private Outcome processByPartitionKey(final List<UserRecord> userRecords) {
+        final Map<String, List<UserRecord>> groups = new LinkedHashMap<>();
+        for (UserRecord r : userRecords) {
+            groups.computeIfAbsent(r.getPartitionKey(), key -> new ArrayList<>()).add(r);
+        }
+
+        final List<List<UserRecord>> keyGroups = new ArrayList<>(groups.values());
+        final List<ForkJoinTask<Outcome>> tasks = new ArrayList<>(keyGroups.size());
+        for (List<UserRecord> group : keyGroups) {
+            tasks.add(pool.submit(() -> process(group)));
+        }
+
+        // Joining every task is the barrier: no record is processed after the invocation returns.
+        final Outcome outcome = new Outcome();
+        for (int i = 0; i < tasks.size(); i++) {
+            final ForkJoinTask<Outcome> task = tasks.get(i);
+            task.quietlyJoin();
+            final UserRecord failed;
+            final String error;
+            if (task.isCompletedAbnormally()) {
+                // Which record was being processed is unknown, so the key is retried from its first record.
+                failed = keyGroups.get(i).get(0);
+                error = String.valueOf(task.getException());
+            } else {
+                outcome.processed += task.getRawResult().processed;
+                failed = task.getRawResult().failed;
+                error = task.getRawResult().error;
+            }
+            if (failed != null && (outcome.failed == null || before(failed, outcome.failed))) {
+                outcome.failed = failed;
+                outcome.error = error;
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * Hands the user records of the Kinesis records before the failed one to the checkpointed processor, in
+     * shard order. Retries start at the failed Kinesis record, so none of these records is delivered again.
+     */
+    private void processCheckpointed(final List<UserRecord> userRecords, final Outcome outcome) {
+        final RecordDecoder decoder = decoders.get();
+        final BigInteger checkpoint = outcome.failed == null
+                ? null : new BigInteger(outcome.failed.getSequenceNumber());
+        for (UserRecord r : userRecords) {
+            if (checkpoint != null && new BigInteger(r.getSequenceNumber()).compareTo(checkpoint) >= 0) {
+                break;
+            }
+            try {
+                checkpointedProcessor.process(r, decoder.decode(r.getData()));
+            } catch (final Exception e) {
+                outcome.failed = r;
+                outcome.error = e.getMessage() != null ? e.getMessage() : e.toString();
+                break;
+            }
+        }
+    }
+
+    private static boolean before(final UserRecord record, final UserRecord other) {
+        final int order = new BigInteger(record.getSequenceNumber())
+                .compareTo(new BigInteger(other.getSequenceNumber()));
+        return order < 0 || order == 0 && record.getSubSequenceNumber() < other.getSubSequenceNumber();
+    }
+
+    /**
+     * One line of JSON for the batch, so it can be queried with CloudWatch Logs Insights.
+     */
+    static String summary(final List<KinesisEventRecord> records, final int userRecords, final int processed,
+                          final long bytes, final long maxLagMillis, final long elapsedNanos, final UserRecord failed,
+                          final String error) {
+        final StringBuilder line = new StringBuilder(256)
+                .append("{\"event\":\"kinesis-batch\",\"records\":").append(records.size())
+                .append(",\"userRecords\":").append(userRecords)
+                .append(",\"processed\":").append(processed)
+                .append(",\"bytes\":").append(bytes)
+                .append(",\"maxLagMillis\":").append(maxLagMillis)
+                .append(",\"durationMillis\":").append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        if (!records.isEmpty()) {
+            final KinesisEventRecord first = records.get(0);
+            line.append(",\"eventSourceARN\":\"").append(first.getEventSourceARN())
+                    .append("\",\"firstSequenceNumber\":\"").append(first.getKinesis().getSequenceNumber())
+                    .append("\",\"lastSequenceNumber\":\"")
+                    .append(records.get(records.size() - 1).getKinesis().getSequenceNumber()).append('"');
+        }
+        if (failed != null) {
+            line.append(",\"failedSequenceNumber\":\"").append(failed.getSequenceNumber()).append('"');
+            if (failed.isAggregated()) {
+                line.append(",\"failedSubSequenceNumber\":").append(failed.getSubSequenceNumber());
+            }
+        }
+        if (error != null) {
+            line.append(",\"error\":\"").append(escape(error)).append('"');
+        }
+        return line.append('}').toString();
+    }
+
+    /**
+     * User records processed, and the user record that failed and its error, if any.
+     */
+    private static final class Outcome {
+        private int processed;
+        private UserRecord failed;
+        private String error;
+    }
+
+    private static String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
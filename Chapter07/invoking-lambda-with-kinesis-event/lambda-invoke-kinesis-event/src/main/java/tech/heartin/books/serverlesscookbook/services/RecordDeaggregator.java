@@ -0,0 +1,212 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+
+/**
+ * Unpacks the user records of Kinesis records aggregated by the KPL.<br/>
+ * An aggregated record is the 4 byte magic number, an AggregatedRecord protobuf message (partition key and
+ * explicit hash key tables, and the user records pointing into them) and the MD5 digest of that message.
+ * User record data is a view of the Kinesis record data, so no bytes are copied. Like the KCL, a record
+ * without the magic number, with a digest that does not match or that cannot be parsed is passed on as it is.
+ */
+final class RecordDeaggregator {
+
+    static final byte[] MAGIC = {(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2};
+    static final int DIGEST_BYTES = 16;
+
+    // AggregatedRecord fields.
+    private static final int PARTITION_KEY_TABLE = 1;
+    private static final int EXPLICIT_HASH_KEY_TABLE = 2;
+    private static final int RECORDS = 3;
+    // Record fields.
+    private static final int PARTITION_KEY_INDEX = 1;
+    private static final int EXPLICIT_HASH_KEY_INDEX = 2;
+    private static final int DATA = 3;
+
+    // Protobuf wire types.
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int FIXED32 = 5;
+    private static final int WIRE_TYPE_BITS = 3;
+    private static final int WIRE_TYPE_MASK = 0x7;
+
+    private static final int VARINT_BITS = 7;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_MORE = 0x80;
+    private static final int MAX_VARINT_SHIFT = 63;
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(RecordDeaggregator::md5);
+
+    private RecordDeaggregator() {
+    }
+
+    /**
+     * User records of a Kinesis record, in order.
+     */
+    static List<UserRecord> deaggregate(final KinesisEvent.Record record) {
+        final ByteBuffer data = record.getData();
+        if (isAggregated(data) && digestMatches(data)) {
+            try {
+                return parse(record, data);
+            } catch (final RuntimeException e) {
+                // Not an aggregated record after all.
+            }
+        }
+        return Collections.singletonList(new UserRecord(record, record.getPartitionKey(), null, 0, data, false));
+    }
+
+    static boolean isAggregated(final ByteBuffer data) {
+        if (data.remaining() <= MAGIC.length + DIGEST_BYTES) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data.get(data.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean digestMatches(final ByteBuffer data) {
+        final int digestAt = data.limit() - DIGEST_BYTES;
+        final MessageDigest md5 = MD5.get();
+        md5.reset();
+        md5.update(data.duplicate().position(data.position() + MAGIC.length).limit(digestAt));
+        final byte[] digest = md5.digest();
+        for (int i = 0; i < DIGEST_BYTES; i++) {
+            if (data.get(digestAt + i) != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the AggregatedRecord message. The key tables may come after the records, so the records are
+     * collected as {partition key index, explicit hash key index, data index, data length} first.
+     */
+    private static List<UserRecord> parse(final KinesisEvent.Record record, final ByteBuffer data) {
+        final ByteBuffer in = data.duplicate().position(data.position() + MAGIC.length)
+                .limit(data.limit() - DIGEST_BYTES);
+        final List<String> partitionKeys = new ArrayList<>();
+        final List<String> explicitHashKeys = new ArrayList<>();
+        final List<int[]> records = new ArrayList<>();
+
+        while (in.hasRemaining()) {
+            final int tag = (int) readVarint(in);
+            final int field = tag >>> WIRE_TYPE_BITS;
+            final int wireType = tag & WIRE_TYPE_MASK;
+            if (field == PARTITION_KEY_TABLE && wireType == LENGTH_DELIMITED) {
+                partitionKeys.add(readString(in));
+            } else if (field == EXPLICIT_HASH_KEY_TABLE && wireType == LENGTH_DELIMITED) {
+                explicitHashKeys.add(readString(in));
+            } else if (field == RECORDS && wireType == LENGTH_DELIMITED) {
+                records.add(readRecord(in));
+            } else {
+                skip(in, wireType);
+            }
+        }
+
+        final List<UserRecord> userRecords = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            final int[] r = records.get(i);
+            if (r[0] < 0 || r[0] >= partitionKeys.size() || r[1] >= explicitHashKeys.size() || r[2] < 0) {
+                throw new IllegalArgumentException("Invalid aggregated record " + i);
+            }
+            final String explicitHashKey = r[1] < 0 ? null : explicitHashKeys.get(r[1]);
+            userRecords.add(new UserRecord(record, partitionKeys.get(r[0]), explicitHashKey, i,
+                    data.slice(r[2], r[3]), true));
+        }
+        return userRecords;
+    }
+
+    private static int[] readRecord(final ByteBuffer in) {
+        final int length = readLength(in);
+        final int end = in.position() + length;
+        final int[] r = {-1, -1, -1, 0};
+        while (in.position() < end) {
+            final int tag = (int) readVarint(in);
+            final int field = tag >>> WIRE_TYPE_BITS;
+            final int wireType = tag & WIRE_TYPE_MASK;
+            if (field == PARTITION_KEY_INDEX && wireType == VARINT) {
+                r[0] = (int) readVarint(in);
+            } else if (field == EXPLICIT_HASH_KEY_INDEX && wireType == VARINT) {
+                r[1] = (int) readVarint(in);
+            } else if (field == DATA && wireType == LENGTH_DELIMITED) {
+                r[3] = readLength(in);
+                r[2] = in.position();
+                in.position(r[2] + r[3]);
+            } else {
+                skip(in, wireType);
+            }
+        }
+        if (in.position() != end) {
+            throw new IllegalArgumentException("Record overruns its length");
+        }
+        return r;
+    }
+
+    private static String readString(final ByteBuffer in) {
+        final int length = readLength(in);
+        final String value = StandardCharsets.UTF_8.decode(in.slice(in.position(), length)).toString();
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void skip(final ByteBuffer in, final int wireType) {
+        switch (wireType) {
+            case VARINT:
+                readVarint(in);
+                break;
+            case FIXED64:
+                in.position(in.position() + Long.BYTES);
+                break;
+            case LENGTH_DELIMITED:
+                final int length = readLength(in);
+                in.position(in.position() + length);
+                break;
+            case FIXED32:
+                in.position(in.position() + Integer.BYTES);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported wire type " + wireType);
+        }
+    }
+
+    private static int readLength(final ByteBuffer in) {
+        final long length = readVarint(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Length " + length + " overruns the record");
+        }
+        return (int) length;
+    }
+
+    private static long readVarint(final ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift <= MAX_VARINT_SHIFT; shift += VARINT_BITS) {
+            final int b = in.get();
+            value |= (long) (b & VARINT_MASK) << shift;
+            if ((b & VARINT_MORE) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
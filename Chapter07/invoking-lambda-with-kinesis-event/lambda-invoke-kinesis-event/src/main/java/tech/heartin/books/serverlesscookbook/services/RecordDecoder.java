@@ -0,0 +1,40 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes record data as UTF-8 into one reusable CharBuffer, without copying the bytes first.<br/>
+ * Not thread safe; use one decoder per thread.
+ */
+final class RecordDecoder {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer chars = CharBuffer.allocate(INITIAL_CAPACITY);
+
+    /**
+     * Decode the remaining bytes of the buffer, leaving its position where it was.
+     * @return the decoded characters, valid until the next call.
+     */
+    CharBuffer decode(final ByteBuffer data) {
+        final int position = data.position();
+        // UTF-8 never decodes to more characters than bytes.
+        if (chars.capacity() < data.remaining()) {
+            chars = CharBuffer.allocate(Math.max(data.remaining(), chars.capacity() * 2));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(data, chars, true);
+        decoder.flush(chars);
+        chars.flip();
+        data.position(position);
+        return chars;
+    }
+}
@@ -0,0 +1,16 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+/**
+ * Processes the user records of a Kinesis event, one at a time.
+ */
+public interface RecordProcessor {
+
+    /**
+     * Process one user record.
+     * @param record User record, with the data buffer untouched.
+     * @param data Record data decoded as UTF-8. The buffer is reused for the next record, so copy
+     *             it (e.g. with toString()) to keep it beyond this call.
+     * @throws Exception if the record could not be processed.
+     */
+    void process(UserRecord record, CharSequence data) throws Exception;
+}
@@ -0,0 +1,200 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Merging t-digest for approximate percentiles.<br/>
+ * Values are buffered and merged into centroids whose size is limited by the k1 scale function, so
+ * centroids near the tails stay small and the digest never holds more than about compression * pi / 2
+ * centroids, however many values are added.
+ */
+final class TDigest {
+
+    // Values buffered before they are merged, as a multiple of the compression.
+    private static final int BUFFER_FACTOR = 5;
+
+    private final double compression;
+    private double[] means;
+    private long[] weights;
+    private int centroids;
+    private final double[] bufferMeans;
+    private final long[] bufferWeights;
+    private int buffered;
+    private long totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    TDigest(final double compression) {
+        this.compression = compression;
+        final int capacity = maxCentroids(compression);
+        this.means = new double[capacity];
+        this.weights = new long[capacity];
+        final int bufferSize = (int) (compression * BUFFER_FACTOR);
+        this.bufferMeans = new double[bufferSize];
+        this.bufferWeights = new long[bufferSize];
+    }
+
+    void add(final double value) {
+        add(value, 1);
+    }
+
+    private void add(final double mean, final long weight) {
+        if (buffered == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[buffered] = mean;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        totalWeight += weight;
+        min = Math.min(min, mean);
+        max = Math.max(max, mean);
+    }
+
+    /**
+     * Adds the values of another digest.
+     */
+    void merge(final TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    long size() {
+        return totalWeight;
+    }
+
+    /**
+     * Approximate value at the quantile, interpolating between the centres of the centroids.
+     * @param q Quantile from 0 to 1.
+     * @return the value, or NaN if the digest is empty.
+     */
+    double quantile(final double q) {
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        } else if (centroids == 1) {
+            return means[0];
+        }
+        final double target = q * totalWeight;
+        final double firstCentre = weights[0] / 2.0;
+        if (target <= firstCentre) {
+            return min + (means[0] - min) * target / firstCentre;
+        }
+        double cumulative = 0;
+        for (int i = 0; i < centroids - 1; i++) {
+            final double left = cumulative + weights[i] / 2.0;
+            final double right = cumulative + weights[i] + weights[i + 1] / 2.0;
+            if (target <= right) {
+                return means[i] + (means[i + 1] - means[i]) * (target - left) / (right - left);
+            }
+            cumulative += weights[i];
+        }
+        final double lastCentre = totalWeight - weights[centroids - 1] / 2.0;
+        return means[centroids - 1] + (max - means[centroids - 1]) * Math.min(1, (target - lastCentre)
+                / (totalWeight - lastCentre));
+    }
+
+    /**
+     * Merges the buffered values into the centroids.
+     */
+    void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        final int count = centroids + buffered;
+        final Integer[] order = new Integer[count];
+        final double[] allMeans = Arrays.copyOf(means, count);
+        final long[] allWeights = Arrays.copyOf(weights, count);
+        System.arraycopy(bufferMeans, 0, allMeans, centroids, buffered);
+        System.arraycopy(bufferWeights, 0, allWeights, centroids, buffered);
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> allMeans[i]));
+
+        int merged = 0;
+        double mean = allMeans[order[0]];
+        long weight = allWeights[order[0]];
+        long before = 0;
+        for (int i = 1; i < count; i++) {
+            final int next = order[i];
+            final double qLeft = (double) before / totalWeight;
+            final double qRight = (double) (before + weight + allWeights[next]) / totalWeight;
+            if (k(qRight) - k(qLeft) <= 1) {
+                weight += allWeights[next];
+                mean += (allMeans[next] - mean) * allWeights[next] / weight;
+            } else {
+                merged = append(merged, mean, weight);
+                before += weight;
+                mean = allMeans[next];
+                weight = allWeights[next];
+            }
+        }
+        centroids = append(merged, mean, weight);
+        buffered = 0;
+    }
+
+    private int append(final int index, final double mean, final long weight) {
+        if (index == means.length) {
+            means = Arrays.copyOf(means, index * 2);
+            weights = Arrays.copyOf(weights, index * 2);
+        }
+        means[index] = mean;
+        weights[index] = weight;
+        return index + 1;
+    }
+
+    /**
+     * The k1 scale function: a centroid may span at most one unit of k.
+     */
+    private double k(final double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, q) - 1);
+    }
+
+    void write(final DataOutput out) throws IOException {
+        compress();
+        out.writeInt(centroids);
+        if (centroids > 0) {
+            out.writeDouble(min);
+            out.writeDouble(max);
+        }
+        for (int i = 0; i < centroids; i++) {
+            out.writeDouble(means[i]);
+            out.writeLong(weights[i]);
+        }
+    }
+
+    /**
+     * Largest size written by {@link #write(DataOutput)} for a digest of the given compression.
+     */
+    static int maxBytes(final double compression) {
+        return Integer.BYTES + 2 * Double.BYTES + maxCentroids(compression) * (Double.BYTES + Long.BYTES);
+    }
+
+    private static int maxCentroids(final double compression) {
+        return (int) Math.ceil(compression * Math.PI / 2) + 1;
+    }
+
+    static TDigest read(final DataInput in, final double compression) throws IOException {
+        final TDigest digest = new TDigest(compression);
+        final int centroids = in.readInt();
+        if (centroids > 0) {
+            digest.min = in.readDouble();
+            digest.max = in.readDouble();
+        }
+        for (int i = 0; i < centroids; i++) {
+            final double mean = in.readDouble();
+            final long weight = in.readLong();
+            digest.centroids = digest.append(digest.centroids, mean, weight);
+            digest.totalWeight += weight;
+        }
+        return digest;
+    }
+}
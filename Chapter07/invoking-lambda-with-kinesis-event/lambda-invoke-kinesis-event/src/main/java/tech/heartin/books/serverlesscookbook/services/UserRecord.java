@@ -0,0 +1,72 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.nio.ByteBuffer;
+
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+
+/**
+ * A record as the producer put it: a Kinesis record, or one of the user records a KPL producer
+ * aggregated into it.
+ */
+public final class UserRecord {
+
+    private final KinesisEvent.Record kinesisRecord;
+    private final String partitionKey;
+    private final String explicitHashKey;
+    private final long subSequenceNumber;
+    private final ByteBuffer data;
+    private final boolean aggregated;
+
+    UserRecord(final KinesisEvent.Record kinesisRecord, final String partitionKey, final String explicitHashKey,
+               final long subSequenceNumber, final ByteBuffer data, final boolean aggregated) {
+        this.kinesisRecord = kinesisRecord;
+        this.partitionKey = partitionKey;
+        this.explicitHashKey = explicitHashKey;
+        this.subSequenceNumber = subSequenceNumber;
+        this.data = data;
+        this.aggregated = aggregated;
+    }
+
+    /**
+     * Kinesis record the user record came in.
+     */
+    public KinesisEvent.Record getKinesisRecord() {
+        return kinesisRecord;
+    }
+
+    /**
+     * Sequence number of the Kinesis record; user records aggregated into one record share it.
+     */
+    public String getSequenceNumber() {
+        return kinesisRecord.getSequenceNumber();
+    }
+
+    /**
+     * Position of the user record in its aggregated record, 0 for a record that is not aggregated.
+     */
+    public long getSubSequenceNumber() {
+        return subSequenceNumber;
+    }
+
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    /**
+     * Explicit hash key given to the aggregated user record, or null.
+     */
+    public String getExplicitHashKey() {
+        return explicitHashKey;
+    }
+
+    /**
+     * Data of the user record: a view of the Kinesis record data, not a copy.
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public boolean isAggregated() {
+        return aggregated;
+    }
+}
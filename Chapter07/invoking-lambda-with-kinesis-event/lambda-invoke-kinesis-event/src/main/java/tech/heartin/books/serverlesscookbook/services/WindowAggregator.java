@@ -0,0 +1,375 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Tumbling and sliding window aggregation of user records per key: count, sum, min, max, approximate
+ * distinct count (HyperLogLog) and approximate percentiles (t-digest).<br/>
+ * Windows are aligned to the slide and use the arrival time of the records. Each record goes into a pane as
+ * long as the slide, and a window is the merge of the panes it covers, so a sliding window costs one pane per
+ * slide rather than one copy per window. A window is closed once a record arrives after its end; records
+ * for windows that are all closed are dropped as late.<br/>
+ * The panes are the whole state. {@link #state()} serializes them into one compressed blob, so they can be
+ * handed over to the next invocation in the state of a Lambda tumbling window rather than written to a
+ * database per record. Memory is bounded by the number of panes, the keys per pane and the fixed size of the
+ * sketches; keys beyond the maximum are counted under {@link #OTHER_KEY}. By default the maximum is what fits
+ * in {@link #MAX_STATE_CHARS} even when every sketch is full and nothing compresses.<br/>
+ * Thread safe, so it can process records of several partition keys at the same time.
+ */
+public final class WindowAggregator implements RecordProcessor {
+
+    /**
+     * Key of the serialized panes in the state of a Lambda tumbling window.
+     */
+    public static final String STATE_KEY = "windows";
+    public static final String OTHER_KEY = "(other)";
+    /**
+     * Limit for the state of a Lambda tumbling window, 1 MB, with room for the key.
+     */
+    public static final int MAX_STATE_CHARS = 1024 * 1024 - 1024;
+
+    // About 3% standard error for 1 KB of registers.
+    static final int HLL_PRECISION = 10;
+    static final double COMPRESSION = 50;
+    // Bytes of a key the default maximum keys allows for; longer keys take more of the state.
+    static final int KEY_BYTES_ALLOWANCE = 64;
+    // Headers of the state and of the panes, and the framing of incompressible data by deflate.
+    private static final int STATE_OVERHEAD_BYTES = 1024;
+    // Count, values, sum, min and max.
+    private static final int AGGREGATE_FIELDS = 5;
+    private static final int BASE64_CHARS = 4;
+    private static final int BASE64_BYTES = 3;
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99"};
+    private static final int STATE_VERSION = 1;
+
+    private final long sizeMillis;
+    private final long slideMillis;
+    private final String keyField;
+    private final String valueField;
+    private final String distinctField;
+    private final int maxKeys;
+
+    // Pane start time to the aggregates of the keys in the pane.
+    private TreeMap<Long, Map<String, Aggregate>> panes = new TreeMap<>();
+    // Arrival time of the latest record.
+    private long watermark = Long.MIN_VALUE;
+    // End of the last window closed, Long.MIN_VALUE before the first record.
+    private long closedUntil = Long.MIN_VALUE;
+    private long lateRecords;
+
+    /**
+     * @param sizeMillis Length of a window.
+     * @param slideMillis Time between the starts of windows; the size for tumbling windows. Must divide the size.
+     * @param keyField JSON field to aggregate by, or null for the partition key.
+     * @param valueField JSON field with the value for sums and percentiles, or null for a numeric payload.
+     * @param distinctField JSON field to count distinct values of, or null for the whole payload.
+     * @param maxKeys Maximum number of keys per pane; 0 or less uses as many as fit in the state, see
+     *                {@link #stateMaxKeys(long)}.
+     */
+    public WindowAggregator(final long sizeMillis, final long slideMillis, final String keyField,
+                            final String valueField, final String distinctField, final int maxKeys) {
+        if (sizeMillis <= 0 || slideMillis <= 0 || sizeMillis % slideMillis != 0) {
+            throw new IllegalArgumentException("The window size must be a multiple of the slide: " + sizeMillis
+                    + " ms, " + slideMillis + " ms");
+        }
+        this.sizeMillis = sizeMillis;
+        this.slideMillis = slideMillis;
+        this.keyField = keyField;
+        this.valueField = valueField;
+        this.distinctField = distinctField;
+        this.maxKeys = maxKeys > 0 ? maxKeys : stateMaxKeys(sizeMillis / slideMillis);
+    }
+
+    /**
+     * Keys per pane that always fit in {@link #MAX_STATE_CHARS}: the state holds the panes of one window, and
+     * each key takes at most its name up to {@link #KEY_BYTES_ALLOWANCE}, the counters, every register of the
+     * HyperLogLog and the most centroids of a t-digest, assuming none of it compresses.
+     * @param panes Panes per window: the size divided by the slide.
+     */
+    static int stateMaxKeys(final long panes) {
+        final long aggregateBytes = Short.BYTES + KEY_BYTES_ALLOWANCE + AGGREGATE_FIELDS * Long.BYTES
+                + (1 << HLL_PRECISION) + TDigest.maxBytes(COMPRESSION);
+        final long stateBytes = (long) MAX_STATE_CHARS / BASE64_CHARS * BASE64_BYTES - STATE_OVERHEAD_BYTES;
+        // One key of each pane is taken by OTHER_KEY.
+        return (int) Math.max(1, stateBytes / aggregateBytes / panes - 1);
+    }
+
+    @Override
+    public synchronized void process(final UserRecord record, final CharSequence data) {
+        final long time = record.getKinesisRecord().getApproximateArrivalTimestamp() != null
+                ? record.getKinesisRecord().getApproximateArrivalTimestamp().getTime()
+                : System.currentTimeMillis();
+        final long pane = Math.floorDiv(time, slideMillis) * slideMillis;
+        if (closedUntil == Long.MIN_VALUE) {
+            closedUntil = pane;
+        } else if (pane < firstOpenPane()) {
+            lateRecords++;
+            return;
+        }
+        watermark = Math.max(watermark, time);
+
+        final String payload = data.toString();
+        String key = keyField == null ? record.getPartitionKey() : field(payload, keyField);
+        if (key == null) {
+            key = record.getPartitionKey();
+        }
+        final Map<String, Aggregate> keys = panes.computeIfAbsent(pane, start -> new HashMap<>());
+        if (!keys.containsKey(key) && keys.size() >= maxKeys) {
+            key = OTHER_KEY;
+        }
+        final Aggregate aggregate = keys.computeIfAbsent(key, k -> new Aggregate());
+        aggregate.count++;
+        final Double value = number(valueField == null ? payload : field(payload, valueField));
+        if (value != null) {
+            aggregate.add(value);
+        }
+        final String distinct = distinctField == null ? payload : field(payload, distinctField);
+        if (distinct != null) {
+            aggregate.distinct.add(distinct);
+        }
+    }
+
+    /**
+     * Closes the windows that ended before the latest record.
+     * @param all true to close the remaining windows as well, e.g. when the state is about to be discarded.
+     * @return one JSON line per key of each closed window, and one with the number of late records, if any.
+     */
+    public synchronized List<String> closeWindows(final boolean all) {
+        final List<String> lines = new ArrayList<>();
+        final long until = all && !panes.isEmpty()
+                ? Math.max(watermark, panes.lastKey() + sizeMillis) : watermark;
+        while (!panes.isEmpty() && closedUntil + slideMillis <= until) {
+            // Skip windows without panes, e.g. after the stream was idle: the first pane is in the windows
+            // ending one slide after it or later.
+            closedUntil = Math.max(closedUntil, panes.firstKey());
+            final long end = closedUntil + slideMillis;
+            if (end > until) {
+                break;
+            }
+            close(end - sizeMillis, end, end <= watermark, lines);
+            closedUntil = end;
+            panes.headMap(firstOpenPane()).clear();
+        }
+        if (all) {
+            panes.clear();
+        }
+        if (lateRecords > 0) {
+            lines.add("{\"event\":\"kinesis-window-late\",\"records\":" + lateRecords + "}");
+            lateRecords = 0;
+        }
+        return lines;
+    }
+
+    /**
+     * Earliest pane that is part of a window still open.
+     */
+    private long firstOpenPane() {
+        return closedUntil + slideMillis - sizeMillis;
+    }
+
+    private void close(final long start, final long end, final boolean complete, final List<String> lines) {
+        final Map<String, Aggregate> window = new TreeMap<>();
+        for (Map<String, Aggregate> pane : panes.subMap(start, end).values()) {
+            pane.forEach((key, aggregate) -> window.computeIfAbsent(key, k -> new Aggregate()).merge(aggregate));
+        }
+        window.forEach((key, aggregate) -> lines.add(aggregate.toJson(key, start, end, complete)));
+    }
+
+    /**
+     * Serialized panes and window progress: deflated and Base64 encoded.
+     */
+    public synchronized String state() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeByte(STATE_VERSION);
+            out.writeLong(sizeMillis);
+            out.writeLong(slideMillis);
+            out.writeLong(watermark);
+            out.writeLong(closedUntil);
+            out.writeLong(lateRecords);
+            out.writeInt(panes.size());
+            for (Map.Entry<Long, Map<String, Aggregate>> pane : panes.entrySet()) {
+                out.writeLong(pane.getKey());
+                out.writeInt(pane.getValue().size());
+                for (Map.Entry<String, Aggregate> key : pane.getValue().entrySet()) {
+                    out.writeUTF(key.getKey());
+                    key.getValue().write(out);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Replaces the panes with the serialized ones. Without a state, or with the state of windows of another
+     * size, the aggregation starts over.
+     */
+    public synchronized void restore(final String state) {
+        panes = new TreeMap<>();
+        watermark = Long.MIN_VALUE;
+        closedUntil = Long.MIN_VALUE;
+        lateRecords = 0;
+        if (state == null || state.isEmpty()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(state))))) {
+            if (in.readByte() != STATE_VERSION || in.readLong() != sizeMillis || in.readLong() != slideMillis) {
+                return;
+            }
+            watermark = in.readLong();
+            closedUntil = in.readLong();
+            lateRecords = in.readLong();
+            final int paneCount = in.readInt();
+            for (int p = 0; p < paneCount; p++) {
+                final long start = in.readLong();
+                final int keyCount = in.readInt();
+                final Map<String, Aggregate> keys = new HashMap<>(keyCount * 2);
+                for (int k = 0; k < keyCount; k++) {
+                    keys.put(in.readUTF(), Aggregate.read(in));
+                }
+                panes.put(start, keys);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Value of a top level field of a JSON payload, or null if there is no such field.
+     */
+    static String field(final String payload, final String name) {
+        final int nameAt = payload.indexOf('"' + name + '"');
+        final int colon = nameAt < 0 ? -1 : payload.indexOf(':', nameAt + name.length() + 2);
+        if (colon < 0) {
+            return null;
+        }
+        int start = colon + 1;
+        while (start < payload.length() && Character.isWhitespace(payload.charAt(start))) {
+            start++;
+        }
+        if (start < payload.length() && payload.charAt(start) == '"') {
+            final int end = payload.indexOf('"', start + 1);
+            return end < 0 ? null : payload.substring(start + 1, end);
+        }
+        int end = start;
+        while (end < payload.length() && ",}] \t\r\n".indexOf(payload.charAt(end)) < 0) {
+            end++;
+        }
+        return end == start ? null : payload.substring(start, end);
+    }
+
+    private static Double number(final String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Aggregates of one key in a pane or window.
+     */
+    private static final class Aggregate {
+        private long count;
+        private long values;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private final HyperLogLog distinct;
+        private final TDigest digest;
+
+        Aggregate() {
+            this(new HyperLogLog(HLL_PRECISION), new TDigest(COMPRESSION));
+        }
+
+        private Aggregate(final HyperLogLog distinct, final TDigest digest) {
+            this.distinct = distinct;
+            this.digest = digest;
+        }
+
+        void add(final double value) {
+            values++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            digest.add(value);
+        }
+
+        void merge(final Aggregate other) {
+            count += other.count;
+            values += other.values;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            distinct.merge(other.distinct);
+            digest.merge(other.digest);
+        }
+
+        String toJson(final String key, final long start, final long end, final boolean complete) {
+            final StringBuilder line = new StringBuilder(256)
+                    .append("{\"event\":\"kinesis-window\",\"windowStart\":\"").append(Instant.ofEpochMilli(start))
+                    .append("\",\"windowEnd\":\"").append(Instant.ofEpochMilli(end))
+                    .append("\",\"key\":\"").append(key.replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append("\",\"count\":").append(count)
+                    .append(",\"distinct\":").append(distinct.estimate());
+            if (values > 0) {
+                line.append(",\"sum\":").append(sum)
+                        .append(",\"min\":").append(min)
+                        .append(",\"max\":").append(max);
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    line.append(",\"").append(PERCENTILE_NAMES[i]).append("\":")
+                            .append(digest.quantile(PERCENTILES[i]));
+                }
+            }
+            return line.append(",\"complete\":").append(complete).append('}').toString();
+        }
+
+        void write(final DataOutputStream out) throws IOException {
+            out.writeLong(count);
+            out.writeLong(values);
+            out.writeDouble(sum);
+            out.writeDouble(min);
+            out.writeDouble(max);
+            distinct.write(out);
+            digest.write(out);
+        }
+
+        static Aggregate read(final DataInputStream in) throws IOException {
+            final long count = in.readLong();
+            final long values = in.readLong();
+            final double sum = in.readDouble();
+            final double min = in.readDouble();
+            final double max = in.readDouble();
+            final Aggregate aggregate = new Aggregate(HyperLogLog.read(in, HLL_PRECISION),
+                    TDigest.read(in, COMPRESSION));
+            aggregate.count = count;
+            aggregate.values = values;
+            aggregate.sum = sum;
+            aggregate.min = min;
+            aggregate.max = max;
+            return aggregate;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HyperLogLogTest {
+
+    // Three times the standard error of precision 10.
+    private static final double TOLERANCE = 0.1;
+
+    @Test
+    public void testEstimatesSmallAndLargeCounts() {
+        for (int distinct : new int[] {10, 1000, 100_000}) {
+            final HyperLogLog hll = new HyperLogLog(WindowAggregator.HLL_PRECISION);
+            for (int i = 0; i < distinct; i++) {
+                // Every value twice, duplicates must not count.
+                hll.add("device-" + i);
+                hll.add("device-" + i);
+            }
+            assertClose(distinct, hll.estimate());
+        }
+    }
+
+    @Test
+    public void testMergeCountsTheUnion() {
+        final HyperLogLog first = new HyperLogLog(WindowAggregator.HLL_PRECISION);
+        final HyperLogLog second = new HyperLogLog(WindowAggregator.HLL_PRECISION);
+        for (int i = 0; i < 30_000; i++) {
+            first.add("device-" + i);
+            second.add("device-" + (i + 10_000));
+        }
+
+        first.merge(second);
+
+        assertClose(40_000, first.estimate());
+    }
+
+    @Test
+    public void testEmptyEstimatesZero() {
+        assertEquals(0, new HyperLogLog(WindowAggregator.HLL_PRECISION).estimate());
+    }
+
+    private static void assertClose(final long expected, final long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * TOLERANCE, "Expected about " + expected + ": " + actual);
+    }
+}
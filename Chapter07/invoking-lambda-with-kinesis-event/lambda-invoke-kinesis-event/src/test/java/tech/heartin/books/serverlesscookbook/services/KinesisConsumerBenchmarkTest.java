@@ -0,0 +1,144 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Latency, allocation and GC per 10,000 record batch of the consumer against the previous loop, which
+ * logged toString() and the decoded data of every record. The figures are written as one JSON line per
+ * variant to target/kinesis-consumer-benchmark.json.<br/>
+ * Run with: mvn test -Dkinesis.benchmark=true
+ */
+@EnabledIfSystemProperty(named = "kinesis.benchmark", matches = "true")
+public class KinesisConsumerBenchmarkTest {
+
+    private static final int RECORDS = 10_000;
+    private static final int PAYLOAD_BYTES = 512;
+    private static final int WARM_UP_BATCHES = 50;
+    private static final int BATCHES = 200;
+    private static final Path REPORT = Paths.get("target", "kinesis-consumer-benchmark.json");
+
+    @Test
+    public void benchmarkConsumerAgainstPerRecordLogging() throws IOException {
+        final KinesisEvent event = event();
+        // Counts what reaches the log instead of writing it, like a cheap logger would.
+        final long[] logged = new long[1];
+        final LambdaLogger logger = new LambdaLogger() {
+            @Override
+            public void log(final String message) {
+                logged[0] += message.length();
+            }
+
+            @Override
+            public void log(final byte[] message) {
+                logged[0] += message.length;
+            }
+        };
+        final KinesisService service = new KinesisServiceImpl((record, data) -> logged[0] += data.length());
+
+        final Measurement perRecordLogging = measure("per-record logging", () -> perRecordLogging(event, logger));
+        final Measurement decode = measure("decode into reused buffer", () -> service.processEvent(event, logger));
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, List.of(perRecordLogging.toJson(), decode.toJson()));
+
+        assertTrue(decode.bytesPerBatch < perRecordLogging.bytesPerBatch, decode.toJson());
+    }
+
+    /**
+     * Runs the batch after a warm-up, and measures it on the calling thread.
+     */
+    private static Measurement measure(final String name, final Runnable batch) {
+        for (int i = 0; i < WARM_UP_BATCHES; i++) {
+            batch.run();
+        }
+
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long gcCountBefore = gcCount();
+        final long gcMillisBefore = gcMillis();
+        final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        for (int i = 0; i < BATCHES; i++) {
+            batch.run();
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        return new Measurement(name, elapsed / BATCHES, allocated / BATCHES, gcCount() - gcCountBefore,
+                gcMillis() - gcMillisBefore);
+    }
+
+    /**
+     * The previous handler loop.
+     */
+    private static void perRecordLogging(final KinesisEvent event, final LambdaLogger logger) {
+        logger.log("Number of records: " + event.getRecords().size());
+        event.getRecords().forEach(r -> {
+            final KinesisEvent.Record kr = r.getKinesis();
+            logger.log("Record: " + kr.toString());
+            // Decode a view, so that the buffer can be read again in the next batch.
+            logger.log("Data: " + StandardCharsets.UTF_8.decode(kr.getData().duplicate()).toString());
+        });
+    }
+
+    private static KinesisEvent event() {
+        final char[] payload = new char[PAYLOAD_BYTES];
+        Arrays.fill(payload, 'x');
+        final String[] payloads = new String[RECORDS];
+        Arrays.fill(payloads, new String(payload));
+        return KinesisServiceImplTest.event(payloads);
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    /**
+     * Figures of one variant, per batch except for the GC totals.
+     */
+    private static final class Measurement {
+        private final String name;
+        private final long nanosPerBatch;
+        private final long bytesPerBatch;
+        private final long gcCount;
+        private final long gcMillis;
+
+        Measurement(final String name, final long nanosPerBatch, final long bytesPerBatch, final long gcCount,
+                    final long gcMillis) {
+            this.name = name;
+            this.nanosPerBatch = nanosPerBatch;
+            this.bytesPerBatch = bytesPerBatch;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        String toJson() {
+            return "{\"benchmark\":\"" + name + "\",\"records\":" + RECORDS + ",\"payloadBytes\":" + PAYLOAD_BYTES
+                    + ",\"batches\":" + BATCHES + ",\"nanosPerBatch\":" + nanosPerBatch
+                    + ",\"bytesPerBatch\":" + bytesPerBatch + ",\"gcCount\":" + gcCount
+                    + ",\"gcMillis\":" + gcMillis + "}";
+        }
+    }
+}
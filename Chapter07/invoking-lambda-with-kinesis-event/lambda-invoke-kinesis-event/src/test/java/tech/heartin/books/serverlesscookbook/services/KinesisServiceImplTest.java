@@ -0,0 +1,300 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent.KinesisEventRecord;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse.BatchItemFailure;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class KinesisServiceImplTest {
+
+    static final String STREAM_ARN = "arn:aws:kinesis:us-east-1:123456789012:stream/kinesis-stream-for-event";
+
+    @Mock
+    private LambdaLogger logger;
+
+    @Test
+    public void testDecodesRecordsAndLogsOneLinePerBatch() {
+        final List<String> received = new ArrayList<>();
+        final KinesisEvent event = event("testpayload1", "grüße 2", "🙂 3");
+
+        final StreamsEventResponse response = new KinesisServiceImpl((record, data) -> received.add(data.toString()))
+                .processEvent(event, logger);
+
+        assertEquals(List.of(), failedSequenceNumbers(response));
+        assertEquals(List.of("testpayload1", "grüße 2", "🙂 3"), received);
+        // The data buffers are left for other readers.
+        assertEquals("testpayload1", StandardCharsets.UTF_8.decode(
+                event.getRecords().get(0).getKinesis().getData()).toString());
+
+        final ArgumentCaptor<String> line = ArgumentCaptor.forClass(String.class);
+        verify(logger, times(1)).log(line.capture());
+        assertTrue(line.getValue().startsWith(
+                "{\"event\":\"kinesis-batch\",\"records\":3,\"userRecords\":3,\"processed\":3,"));
+        assertTrue(line.getValue().contains("\"firstSequenceNumber\":\"1\",\"lastSequenceNumber\":\"3\""));
+    }
+
+    @Test
+    public void testReusesDecodeBufferForLargerRecords() {
+        final StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            large.append('x');
+        }
+        final List<Integer> lengths = new ArrayList<>();
+
+        new KinesisServiceImpl((record, data) -> lengths.add(data.length()))
+                .processEvent(event("small", large.toString(), "small again"), logger);
+
+        assertEquals(List.of(5, 5000, 11), lengths);
+    }
+
+    @Test
+    public void testStopsAtFailedRecord() {
+        final List<String> received = new ArrayList<>();
+
+        final StreamsEventResponse response = new KinesisServiceImpl((record, data) -> {
+            if (data.toString().equals("bad")) {
+                throw new IllegalArgumentException("Cannot process \"bad\"");
+            }
+            received.add(data.toString());
+        }).processEvent(event("good", "bad", "good again"), logger);
+
+        // Retries resume from the failed record, the one before it is checkpointed.
+        assertEquals(List.of("2"), failedSequenceNumbers(response));
+        assertEquals(List.of("good"), received);
+        final ArgumentCaptor<String> line = ArgumentCaptor.forClass(String.class);
+        verify(logger).log(line.capture());
+        assertTrue(line.getValue().contains("\"processed\":1"));
+        assertTrue(line.getValue().contains("\"failedSequenceNumber\":\"2\""));
+        assertTrue(line.getValue().endsWith(",\"error\":\"Cannot process \\\"bad\\\"\"}"));
+    }
+
+    @Test
+    public void testProcessesAggregatedUserRecords() {
+        final KinesisEvent event = event("plain", "aggregated", "after");
+        event.getRecords().get(1).getKinesis().setData(ByteBuffer.wrap(RecordDeaggregatorTest.aggregate(
+                "device-1", "first", "device-2", "bad", "device-1", "third")));
+        final List<String> received = new ArrayList<>();
+
+        final StreamsEventResponse response = new KinesisServiceImpl((record, data) -> {
+            if (data.toString().equals("bad")) {
+                throw new IllegalArgumentException("Cannot process \"bad\"");
+            }
+            received.add(record.getPartitionKey() + "=" + data);
+        }).processEvent(event, logger);
+
+        // Checkpoints are per Kinesis record, so the retry starts at the aggregated record.
+        assertEquals(List.of("2"), failedSequenceNumbers(response));
+        assertEquals(List.of("12345=plain", "device-1=first"), received);
+        final ArgumentCaptor<String> line = ArgumentCaptor.forClass(String.class);
+        verify(logger).log(line.capture());
+        assertTrue(line.getValue().contains("\"records\":3,\"userRecords\":5,\"processed\":2,"));
+        assertTrue(line.getValue().contains("\"failedSequenceNumber\":\"2\",\"failedSubSequenceNumber\":1,"));
+    }
+
+    @Test
+    public void testProcessesPartitionKeysConcurrentlyInOrder() {
+        final int keys = 4;
+        final int recordsPerKey = 50;
+        final KinesisEvent event = keyedEvent(keys, recordsPerKey);
+        final Map<String, List<String>> received = new ConcurrentHashMap<>();
+        // Released only when the first record of every key is being processed at the same time.
+        final CountDownLatch allKeysStarted = new CountDownLatch(keys);
+
+        final StreamsEventResponse response = new KinesisServiceImpl((record, data) -> {
+            final List<String> ofKey = received.computeIfAbsent(record.getPartitionKey(),
+                    key -> Collections.synchronizedList(new ArrayList<>()));
+            if (ofKey.isEmpty()) {
+                allKeysStarted.countDown();
+                if (!allKeysStarted.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Partition keys were not processed concurrently");
+                }
+            }
+            ofKey.add(data.toString());
+        }, keys).processEvent(event, logger);
+
+        assertEquals(List.of(), failedSequenceNumbers(response));
+        assertEquals(keys, received.size());
+        for (int k = 0; k < keys; k++) {
+            final List<String> expected = new ArrayList<>();
+            for (int i = 0; i < recordsPerKey; i++) {
+                expected.add("key-" + k + ":" + i);
+            }
+            assertEquals(expected, received.get("key-" + k));
+        }
+        final ArgumentCaptor<String> line = ArgumentCaptor.forClass(String.class);
+        verify(logger).log(line.capture());
+        assertTrue(line.getValue().contains("\"processed\":" + keys * recordsPerKey));
+    }
+
+    @Test
+    public void testFailureStopsOnlyItsPartitionKey() {
+        final Map<String, List<String>> received = new ConcurrentHashMap<>();
+
+        final StreamsEventResponse response = new KinesisServiceImpl((record, data) -> {
+            if (data.toString().equals("key-0:1")) {
+                throw new IllegalArgumentException("Cannot process key-0:1");
+            }
+            received.computeIfAbsent(record.getPartitionKey(), key -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(data.toString());
+        }, 2).processEvent(keyedEvent(2, 3), logger);
+
+        assertEquals(List.of("3"), failedSequenceNumbers(response));
+        assertEquals(List.of("key-0:0"), received.get("key-0"));
+        assertEquals(List.of("key-1:0", "key-1:1", "key-1:2"), received.get("key-1"));
+        final ArgumentCaptor<String> line = ArgumentCaptor.forClass(String.class);
+        verify(logger).log(line.capture());
+        assertTrue(line.getValue().contains("\"processed\":4"));
+        assertTrue(line.getValue().endsWith(",\"error\":\"Cannot process key-0:1\"}"));
+    }
+
+    @Test
+    public void testReportsEarliestFailureAcrossPartitionKeys() {
+        // Sequence numbers: key-0:0 1, key-1:0 2, key-0:1 3, key-1:1 4, key-0:2 5, key-1:2 6.
+        final StreamsEventResponse response = new KinesisServiceImpl((record, data) -> {
+            if (data.toString().equals("key-0:2") || data.toString().equals("key-1:1")) {
+                throw new IllegalArgumentException("Cannot process " + data);
+            }
+        }, 2).processEvent(keyedEvent(2, 3), logger);
+
+        assertEquals(List.of("4"), failedSequenceNumbers(response));
+        final ArgumentCaptor<String> line = ArgumentCaptor.forClass(String.class);
+        verify(logger).log(line.capture());
+        assertTrue(line.getValue().endsWith(",\"error\":\"Cannot process key-1:1\"}"));
+    }
+
+    @Test
+    public void testWindowsCountRetriedRecordsOnce() {
+        // key-0:1 fails once; sequence numbers: key-0:0 1, key-1:0 2, key-0:1 3, key-1:1 4, key-0:2 5, key-1:2 6.
+        final KinesisEvent event = keyedEvent(2, 3);
+        // All in one window.
+        event.getRecords().forEach(r -> r.getKinesis().setApproximateArrivalTimestamp(new Date(0)));
+        final WindowAggregator aggregator = new WindowAggregator(60_000, 60_000, null, null, null, 0);
+        final KinesisServiceImpl service = new KinesisServiceImpl(failingOnce("key-0:1"), 2, aggregator);
+
+        final StreamsEventResponse response = service.processEvent(event, logger);
+        assertEquals(List.of("3"), failedSequenceNumbers(response));
+        // key-1:1 and key-1:2 were processed, but are retried with the rest of the batch from key-0:1.
+        assertEquals(List.of(), failedSequenceNumbers(service.processEvent(retry(event, "3"), logger)));
+
+        final List<String> lines = aggregator.closeWindows(true);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("\"key\":\"key-0\",\"count\":3,"), lines.get(0));
+        assertTrue(lines.get(1).contains("\"key\":\"key-1\",\"count\":3,"), lines.get(1));
+    }
+
+    @Test
+    public void testWindowsCountRetriedAggregatedRecordsOnce() {
+        final KinesisEvent event = event("plain", "aggregated", "after");
+        event.getRecords().get(1).getKinesis().setData(ByteBuffer.wrap(RecordDeaggregatorTest.aggregate(
+                "device-1", "first", "device-2", "bad", "device-1", "third")));
+        // All in one window.
+        event.getRecords().forEach(r -> r.getKinesis().setApproximateArrivalTimestamp(new Date(0)));
+        final WindowAggregator aggregator = new WindowAggregator(60_000, 60_000, null, null, null, 0);
+        final KinesisServiceImpl service = new KinesisServiceImpl(failingOnce("bad"), 1, aggregator);
+
+        final StreamsEventResponse response = service.processEvent(event, logger);
+        assertEquals(List.of("2"), failedSequenceNumbers(response));
+        // The retry starts again at the first user record of the aggregated record.
+        assertEquals(List.of(), failedSequenceNumbers(service.processEvent(retry(event, "2"), logger)));
+
+        final List<String> lines = aggregator.closeWindows(true);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"key\":\"12345\",\"count\":2,"), lines.get(0));
+        assertTrue(lines.get(1).contains("\"key\":\"device-1\",\"count\":2,"), lines.get(1));
+        assertTrue(lines.get(2).contains("\"key\":\"device-2\",\"count\":1,"), lines.get(2));
+    }
+
+    /**
+     * Processor that fails the first time it sees the given payload.
+     */
+    private static RecordProcessor failingOnce(final String payload) {
+        final Set<String> failed = ConcurrentHashMap.newKeySet();
+        return (record, data) -> {
+            if (data.toString().equals(payload) && failed.add(payload)) {
+                throw new IllegalArgumentException("Cannot process " + payload);
+            }
+        };
+    }
+
+    /**
+     * Records the event source mapping delivers again after a batch item failure.
+     */
+    private static KinesisEvent retry(final KinesisEvent event, final String failedSequenceNumber) {
+        final KinesisEvent retry = new KinesisEvent();
+        retry.setRecords(event.getRecords().stream()
+                .filter(r -> new BigInteger(r.getKinesis().getSequenceNumber())
+                        .compareTo(new BigInteger(failedSequenceNumber)) >= 0)
+                .collect(Collectors.toList()));
+        return retry;
+    }
+
+    private static List<String> failedSequenceNumbers(final StreamsEventResponse response) {
+        return response.getBatchItemFailures().stream()
+                .map(BatchItemFailure::getItemIdentifier)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Event with the records of the given number of partition keys interleaved, each with payload key:index.
+     */
+    static KinesisEvent keyedEvent(final int keys, final int recordsPerKey) {
+        final String[] payloads = new String[keys * recordsPerKey];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = "key-" + i % keys + ":" + i / keys;
+        }
+        final KinesisEvent event = event(payloads);
+        for (int i = 0; i < payloads.length; i++) {
+            event.getRecords().get(i).getKinesis().setPartitionKey("key-" + i % keys);
+        }
+        return event;
+    }
+
+    /**
+     * Event with one record per payload, sequence numbers counting from 1.
+     */
+    static KinesisEvent event(final String... payloads) {
+        final List<KinesisEventRecord> records = new ArrayList<>();
+        for (int i = 0; i < payloads.length; i++) {
+            final KinesisEvent.Record kinesis = new KinesisEvent.Record();
+            kinesis.setData(ByteBuffer.wrap(payloads[i].getBytes(StandardCharsets.UTF_8)));
+            kinesis.setSequenceNumber(String.valueOf(i + 1));
+            kinesis.setPartitionKey("12345");
+            kinesis.setApproximateArrivalTimestamp(new Date());
+            final KinesisEventRecord record = new KinesisEventRecord();
+            record.setKinesis(kinesis);
+            record.setEventSourceARN(STREAM_ARN);
+            record.setEventID("shardId-000000000000:" + (i + 1));
+            records.add(record);
+        }
+        final KinesisEvent event = new KinesisEvent();
+        event.setRecords(records);
+        return event;
+    }
+}
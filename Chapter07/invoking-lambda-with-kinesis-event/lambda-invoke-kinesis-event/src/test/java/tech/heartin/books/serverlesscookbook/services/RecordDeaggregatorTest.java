@@ -0,0 +1,143 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordDeaggregatorTest {
+
+    @Test
+    public void testPassesPlainRecordOn() {
+        final KinesisEvent.Record record = record("12345", "plain payload".getBytes(StandardCharsets.UTF_8));
+
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record);
+
+        assertEquals(1, userRecords.size());
+        final UserRecord userRecord = userRecords.get(0);
+        assertFalse(userRecord.isAggregated());
+        assertSame(record.getData(), userRecord.getData());
+        assertEquals("12345", userRecord.getPartitionKey());
+        assertEquals(0, userRecord.getSubSequenceNumber());
+    }
+
+    @Test
+    public void testUnpacksAggregatedRecordWithoutCopying() {
+        final byte[] data = aggregate("device-1", "first", "device-2", "second", "device-1", "third");
+        final KinesisEvent.Record record = record("device-1", data);
+
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record);
+
+        assertEquals(3, userRecords.size());
+        final String[] keys = {"device-1", "device-2", "device-1"};
+        final String[] payloads = {"first", "second", "third"};
+        for (int i = 0; i < userRecords.size(); i++) {
+            final UserRecord userRecord = userRecords.get(i);
+            assertTrue(userRecord.isAggregated());
+            assertEquals(i, userRecord.getSubSequenceNumber());
+            assertEquals("1", userRecord.getSequenceNumber());
+            assertEquals(keys[i], userRecord.getPartitionKey());
+            assertNull(userRecord.getExplicitHashKey());
+            assertEquals(payloads[i], StandardCharsets.UTF_8.decode(userRecord.getData().duplicate()).toString());
+            // A view of the record data, not a copy.
+            assertSame(data, userRecord.getData().array());
+        }
+        // The record data is left for other readers.
+        assertEquals(0, record.getData().position());
+    }
+
+    @Test
+    public void testPassesRecordWithWrongDigestOn() {
+        final byte[] data = aggregate("device-1", "first", "device-2", "second");
+        data[data.length - 1]++;
+
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record("device-1", data));
+
+        assertEquals(1, userRecords.size());
+        assertFalse(userRecords.get(0).isAggregated());
+    }
+
+    @Test
+    public void testPassesUnparsableRecordOn() throws Exception {
+        // Magic number and a matching digest, but a record length past the end of the message.
+        final byte[] message = {3 << 3 | 2, 100, 1};
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(RecordDeaggregator.MAGIC);
+        out.write(message);
+        out.write(MessageDigest.getInstance("MD5").digest(message));
+
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record("device-1", out.toByteArray()));
+
+        assertEquals(1, userRecords.size());
+        assertFalse(userRecords.get(0).isAggregated());
+    }
+
+    /**
+     * Aggregated record in the KPL format.
+     * @param keysAndData Partition key and data of each user record, in turn.
+     */
+    static byte[] aggregate(final String... keysAndData) {
+        final List<String> keys = new ArrayList<>();
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (int i = 0; i < keysAndData.length; i += 2) {
+            if (!keys.contains(keysAndData[i])) {
+                keys.add(keysAndData[i]);
+                writeBytes(message, 1 << 3 | 2, keysAndData[i].getBytes(StandardCharsets.UTF_8));
+            }
+            final ByteArrayOutputStream record = new ByteArrayOutputStream();
+            writeVarint(record, 1 << 3);
+            writeVarint(record, keys.indexOf(keysAndData[i]));
+            writeBytes(record, 3 << 3 | 2, keysAndData[i + 1].getBytes(StandardCharsets.UTF_8));
+            writeBytes(records, 3 << 3 | 2, record.toByteArray());
+        }
+        final byte[] body = records.toByteArray();
+        message.write(body, 0, body.length);
+
+        try {
+            final byte[] bytes = message.toByteArray();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(RecordDeaggregator.MAGIC);
+            out.write(bytes);
+            out.write(MessageDigest.getInstance("MD5").digest(bytes));
+            return out.toByteArray();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static KinesisEvent.Record record(final String partitionKey, final byte[] data) {
+        final KinesisEvent.Record record = new KinesisEvent.Record();
+        record.setPartitionKey(partitionKey);
+        record.setSequenceNumber("1");
+        record.setData(ByteBuffer.wrap(data));
+        return record;
+    }
+
+    private static void writeBytes(final ByteArrayOutputStream out, final int tag, final byte[] bytes) {
+        writeVarint(out, tag);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(final ByteArrayOutputStream out, final int value) {
+        int rest = value;
+        while ((rest & ~0x7F) != 0) {
+            out.write((rest & 0x7F) | 0x80);
+            rest >>>= 7;
+        }
+        out.write(rest);
+    }
+}
@@ -0,0 +1,66 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TDigestTest {
+
+    private static final int VALUES = 100_000;
+
+    @Test
+    public void testQuantilesOfUniformValues() {
+        final TDigest digest = new TDigest(WindowAggregator.COMPRESSION);
+        final Random random = new Random(42);
+        for (int i = 0; i < VALUES; i++) {
+            digest.add(random.nextDouble() * 1000);
+        }
+
+        assertEquals(VALUES, digest.size());
+        assertEquals(500, digest.quantile(0.5), 10);
+        assertEquals(900, digest.quantile(0.9), 5);
+        assertEquals(990, digest.quantile(0.99), 2);
+    }
+
+    @Test
+    public void testMemoryIsBounded() throws Exception {
+        final TDigest digest = new TDigest(WindowAggregator.COMPRESSION);
+        for (int i = 0; i < VALUES; i++) {
+            digest.add(i);
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        digest.write(new DataOutputStream(bytes));
+        // Count, min, max and 16 bytes per centroid, at most about compression * pi / 2 centroids.
+        assertTrue(bytes.size() <= 4 + 16 + 16 * (int) Math.ceil(WindowAggregator.COMPRESSION * Math.PI / 2),
+                "Serialized size " + bytes.size());
+
+        final TDigest read = TDigest.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                WindowAggregator.COMPRESSION);
+        assertEquals(VALUES, read.size());
+        assertEquals(digest.quantile(0.99), read.quantile(0.99), 0.001);
+    }
+
+    @Test
+    public void testMergeKeepsQuantiles() {
+        final TDigest low = new TDigest(WindowAggregator.COMPRESSION);
+        final TDigest high = new TDigest(WindowAggregator.COMPRESSION);
+        for (int i = 0; i < VALUES / 2; i++) {
+            low.add(i);
+            high.add(VALUES / 2 + i);
+        }
+
+        low.merge(high);
+
+        assertEquals(VALUES, low.size());
+        assertEquals(VALUES / 2, low.quantile(0.5), VALUES * 0.01);
+        assertEquals(VALUES * 0.99, low.quantile(0.99), VALUES * 0.002);
+    }
+}
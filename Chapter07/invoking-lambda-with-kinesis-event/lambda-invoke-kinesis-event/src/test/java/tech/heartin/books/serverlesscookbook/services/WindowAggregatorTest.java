@@ -0,0 +1,206 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WindowAggregatorTest {
+
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final int KEYS = 1000;
+    // Distinct users and values per key and pane that set 95% of the HyperLogLog registers and fill the t-digest.
+    private static final int DENSE_RECORDS = 3000;
+
+    @Test
+    public void testTumblingWindowsPerKey() {
+        final WindowAggregator aggregator = aggregator(MINUTE, MINUTE, 0);
+        process(aggregator, 0, "a", 1, "u1");
+        process(aggregator, 10 * SECOND, "b", 10, "u1");
+        process(aggregator, 20 * SECOND, "a", 2, "u2");
+        process(aggregator, 59 * SECOND, "a", 3, "u1");
+
+        // Nothing arrived after the end of the first window yet.
+        assertEquals(List.of(), aggregator.closeWindows(false));
+
+        process(aggregator, 65 * SECOND, "a", 4, "u3");
+        final List<String> lines = aggregator.closeWindows(false);
+
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"event\":\"kinesis-window\",\"windowStart\":\"1970-01-01T00:00:00Z\","
+                + "\"windowEnd\":\"1970-01-01T00:01:00Z\",\"key\":\"a\",\"count\":3,\"distinct\":2,\"sum\":6.0,"
+                + "\"min\":1.0,\"max\":3.0,\"p50\":2.0,"), lines.get(0));
+        assertTrue(lines.get(0).endsWith(",\"complete\":true}"));
+        assertTrue(lines.get(1).contains("\"key\":\"b\",\"count\":1,\"distinct\":1,\"sum\":10.0,"), lines.get(1));
+    }
+
+    @Test
+    public void testSlidingWindowsShareTheirPanes() {
+        final WindowAggregator aggregator = aggregator(MINUTE, 20 * SECOND, 0);
+        process(aggregator, 5 * SECOND, "a", 1, "u1");
+        process(aggregator, 25 * SECOND, "a", 2, "u2");
+        process(aggregator, 45 * SECOND, "a", 3, "u3");
+        process(aggregator, 125 * SECOND, "a", 4, "u4");
+
+        final List<String> lines = aggregator.closeWindows(false);
+
+        // Windows ending at 0:20, 0:40, 1:00, 1:20 and 1:40; the one ending at 2:00 has no records.
+        assertEquals(5, lines.size());
+        final int[] counts = {1, 2, 3, 2, 1};
+        for (int i = 0; i < counts.length; i++) {
+            assertTrue(lines.get(i).contains("\"count\":" + counts[i] + ","), lines.get(i));
+        }
+        assertTrue(lines.get(2).contains(
+                "\"windowStart\":\"1970-01-01T00:00:00Z\",\"windowEnd\":\"1970-01-01T00:01:00Z\""));
+    }
+
+    @Test
+    public void testStateCarriesAcrossInvocations() {
+        final WindowAggregator first = aggregator(MINUTE, MINUTE, 0);
+        process(first, 0, "a", 1, "u1");
+        process(first, 30 * SECOND, "a", 2, "u2");
+        assertEquals(List.of(), first.closeWindows(false));
+        final String state = first.state();
+
+        // The next invocation may run in another container.
+        final WindowAggregator second = aggregator(MINUTE, MINUTE, 0);
+        second.restore(state);
+        process(second, 50 * SECOND, "a", 3, "u3");
+        process(second, 70 * SECOND, "a", 4, "u4");
+        final List<String> lines = second.closeWindows(false);
+
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"key\":\"a\",\"count\":3,\"distinct\":3,\"sum\":6.0,"), lines.get(0));
+    }
+
+    @Test
+    public void testStateOfOtherWindowsIsIgnored() {
+        final WindowAggregator tumbling = aggregator(MINUTE, MINUTE, 0);
+        process(tumbling, 0, "a", 1, "u1");
+
+        final WindowAggregator sliding = aggregator(MINUTE, 20 * SECOND, 0);
+        sliding.restore(tumbling.state());
+        process(sliding, 10 * MINUTE, "a", 1, "u1");
+
+        assertEquals(List.of(), sliding.closeWindows(false));
+    }
+
+    @Test
+    public void testDropsLateRecords() {
+        final WindowAggregator aggregator = aggregator(MINUTE, MINUTE, 0);
+        process(aggregator, 0, "a", 1, "u1");
+        process(aggregator, 70 * SECOND, "a", 2, "u2");
+        assertEquals(1, aggregator.closeWindows(false).size());
+
+        process(aggregator, 30 * SECOND, "a", 3, "u3");
+
+        assertEquals(List.of("{\"event\":\"kinesis-window-late\",\"records\":1}"), aggregator.closeWindows(false));
+    }
+
+    @Test
+    public void testKeysBeyondTheMaximumAreCountedTogether() {
+        final WindowAggregator aggregator = aggregator(MINUTE, MINUTE, 2);
+        for (String key : new String[] {"a", "b", "c", "d", "a"}) {
+            process(aggregator, 0, key, 1, "u1");
+        }
+
+        final List<String> lines = aggregator.closeWindows(true);
+
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"key\":\"" + WindowAggregator.OTHER_KEY + "\",\"count\":2,"), lines.get(0));
+        assertTrue(lines.get(1).contains("\"key\":\"a\",\"count\":2,"), lines.get(1));
+        assertTrue(lines.get(2).contains("\"key\":\"b\",\"count\":1,"), lines.get(2));
+    }
+
+    @Test
+    public void testClosingAllWindowsMarksOpenOnesIncomplete() {
+        final WindowAggregator aggregator = aggregator(MINUTE, MINUTE, 0);
+        process(aggregator, 0, "a", 1, "u1");
+        process(aggregator, 70 * SECOND, "a", 2, "u2");
+
+        final List<String> lines = aggregator.closeWindows(true);
+
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).endsWith(",\"complete\":true}"));
+        assertTrue(lines.get(1).endsWith(",\"complete\":false}"));
+        assertEquals(List.of(), aggregator.closeWindows(true));
+    }
+
+    @Test
+    public void testStateStaysWithinTheLambdaLimit() {
+        final WindowAggregator aggregator = aggregator(5 * MINUTE, MINUTE, 0);
+        for (int pane = 0; pane < 5; pane++) {
+            for (int i = 0; i < 20_000; i++) {
+                process(aggregator, pane * MINUTE + i % MINUTE, "device-" + i % KEYS,
+                        i % 97, "user-" + i);
+            }
+        }
+
+        final String state = aggregator.state();
+
+        assertTrue(state.length() < WindowAggregator.MAX_STATE_CHARS, "State of " + state.length() + " bytes");
+        final WindowAggregator restored = aggregator(5 * MINUTE, MINUTE, 0);
+        restored.restore(state);
+        assertEquals(aggregator.closeWindows(true), restored.closeWindows(true));
+    }
+
+    @Test
+    public void testDenseStateOfTheDefaultMaximumKeysStaysWithinTheLambdaLimit() {
+        final WindowAggregator aggregator = aggregator(5 * MINUTE, MINUTE, 0);
+        processDense(aggregator, 5, WindowAggregator.stateMaxKeys(5) + 10);
+
+        final String state = aggregator.state();
+
+        assertTrue(state.length() < WindowAggregator.MAX_STATE_CHARS, "State of " + state.length() + " bytes");
+        final WindowAggregator restored = aggregator(5 * MINUTE, MINUTE, 0);
+        restored.restore(state);
+        assertEquals(aggregator.closeWindows(true), restored.closeWindows(true));
+    }
+
+    @Test
+    public void testDenseStateOfMoreKeysOverflowsTheLambdaLimit() {
+        // What the handler falls back from: a fixed maximum that is far above what the state holds.
+        final WindowAggregator aggregator = aggregator(MINUTE, MINUTE, 4 * WindowAggregator.stateMaxKeys(1));
+        processDense(aggregator, 1, 4 * WindowAggregator.stateMaxKeys(1));
+
+        final String state = aggregator.state();
+
+        assertTrue(state.length() > WindowAggregator.MAX_STATE_CHARS, "State of " + state.length() + " bytes");
+    }
+
+    private static void processDense(final WindowAggregator aggregator, final int panes, final int keys) {
+        for (int pane = 0; pane < panes; pane++) {
+            for (int key = 0; key < keys; key++) {
+                for (int i = 0; i < DENSE_RECORDS; i++) {
+                    // Users and values of their own per key and pane, so that deflate finds no repeated sketches.
+                    final String user = "user-" + pane + "-" + key + "-" + i;
+                    process(aggregator, pane * MINUTE + i % MINUTE, "device-" + key, HyperLogLog.hash(user) % 1000,
+                            user);
+                }
+            }
+        }
+    }
+
+    private static WindowAggregator aggregator(final long size, final long slide, final int maxKeys) {
+        return new WindowAggregator(size, slide, "deviceId", "value", "user", maxKeys);
+    }
+
+    private static void process(final WindowAggregator aggregator, final long time, final String deviceId,
+                                final double value, final String user) {
+        final String payload = "{\"deviceId\": \"" + deviceId + "\", \"value\": " + value + ", \"user\": \""
+                + user + "\"}";
+        final KinesisEvent.Record record = new KinesisEvent.Record();
+        record.setPartitionKey("12345");
+        record.setSequenceNumber("1");
+        record.setApproximateArrivalTimestamp(new Date(time));
+        record.setData(ByteBuffer.wrap(payload.getBytes()));
+        aggregator.process(new UserRecord(record, "12345", null, 0, record.getData(), false), payload);
+    }
+}
@@ -36,7 +36,7 @@ public final class LambdaKinesisSdkWriteHandler implements RequestHandler<Reques
         context.getLogger().log("Received Request: " + request);
 
         final KinesisService kinesisService =  new KinesisServiceImpl(this.kinesisClient);
-        return kinesisService.addRecords(request, context.getLogger());
+        return kinesisService.addRecords(request, context);
 
     }
 }
@@ -12,4 +12,10 @@ public class Request {
     private String payload;
     private int  count;
     private int batchSize;
+    // Pack records into KPL aggregated records of up to aggregationMaxBytes (0 for the default).
+    private boolean aggregate;
+    private int aggregationMaxBytes;
+    // fixed (partitionKey), random, round-robin (over the open shards) or hash (of partitionKeyField).
+    private String partitionStrategy;
+    private String partitionKeyField;
 }
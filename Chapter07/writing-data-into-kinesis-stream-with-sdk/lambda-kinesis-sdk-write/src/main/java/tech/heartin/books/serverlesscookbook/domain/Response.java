@@ -10,5 +10,10 @@ import lombok.Data;
 @AllArgsConstructor
 public class Response {
     private String message;
+    // Records delivered to the stream.
     private int count;
+    // Records sent again after Kinesis failed them, once per resend.
+    private int retried;
+    // Records given up on.
+    private int dropped;
 }
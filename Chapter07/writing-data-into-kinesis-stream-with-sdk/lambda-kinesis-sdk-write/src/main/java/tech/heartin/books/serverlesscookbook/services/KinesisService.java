@@ -3,7 +3,7 @@ package tech.heartin.books.serverlesscookbook.services;
 import tech.heartin.books.serverlesscookbook.domain.Request;
 import tech.heartin.books.serverlesscookbook.domain.Response;
 
-import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.Context;
 
 /**
  * Service class interface for Kinesis operations.
@@ -13,9 +13,9 @@ public interface KinesisService {
     /**
      * Add records to Kinesis Data Stream.
      * @param request Request domain object.
-     * @param logger Lambda Logger from context.
+     * @param context Lambda context, for the logger and the remaining time for retries.
      * @return Response domain object.
      */
-    Response addRecords(Request request, LambdaLogger logger);
+    Response addRecords(Request request, Context context);
 
 }
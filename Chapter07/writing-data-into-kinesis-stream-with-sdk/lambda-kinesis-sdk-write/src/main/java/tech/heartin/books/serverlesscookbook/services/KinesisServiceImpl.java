@@ -3,42 +3,73 @@ package tech.heartin.books.serverlesscookbook.services;
 import tech.heartin.books.serverlesscookbook.domain.Request;
 import tech.heartin.books.serverlesscookbook.domain.Response;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
+import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 import software.amazon.awssdk.services.kinesis.model.DescribeStreamRequest;
 import software.amazon.awssdk.services.kinesis.model.DescribeStreamResponse;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
 
 /**
- * Implementation class for KinesisService.
+ * Implementation class for KinesisService.<br/>
+ * With aggregation enabled, user records are packed into KPL aggregated records by the
+ * {@link RecordAggregator}, so a shard takes many user records for each of its 1,000 records per second.
+ * Records failed by throttling or internal errors are put again, alone, with jittered exponential backoff.
+ * The {@link PartitionStrategy} of the request spreads the records over the shards of the stream.
  */
 public class KinesisServiceImpl implements KinesisService {
 
+    // PutRecords limits per request.
+    static final int MAX_ENTRIES_PER_REQUEST = 500;
+    static final int MAX_REQUEST_BYTES = 5 * 1024 * 1024;
+
+    static final int MAX_RETRIES = 5;
+    // Time kept back from retries for the rest of the invocation.
+    static final long SAFETY_MARGIN_MILLIS = 1000;
+
+    private static final Set<String> RETRYABLE_ERROR_CODES = new HashSet<>(Arrays.asList(
+            "ProvisionedThroughputExceededException", "InternalFailure", "KMSThrottlingException"));
+
     private final KinesisClient  kinesisClient;
     private final List<PutRecordsRequestEntry> kinesisBatch;
+    // Number of user records in each entry of the batch.
+    private final List<Integer> kinesisBatchUserRecords;
     private static final String ERROR_MESSAGE = "Request completed with errors. Check Lambda logs for more details.";
     private static final String SUCCESS_MESSAGE = "Request completed without errors.";
 
     private boolean isError = false;
-    private int documentAddedCount;
+    private int deliveredCount;
+    private int retriedCount;
+    private int droppedCount;
+    private int kinesisBatchBytes;
+    private int kinesisRecordCount;
 
 
     public KinesisServiceImpl(final KinesisClient kinesisClient) {
         this.kinesisClient = kinesisClient;
         this.kinesisBatch = new ArrayList<>();
+        this.kinesisBatchUserRecords = new ArrayList<>();
     }
 
     @Override
-    public final Response addRecords(final Request request, final LambdaLogger logger) {
+    public final Response addRecords(final Request request, final Context context) {
 
-        this.documentAddedCount = request.getCount();
+        final LambdaLogger logger = context.getLogger();
 
         DescribeStreamResponse result = this.kinesisClient.describeStream(
                 DescribeStreamRequest.builder().streamName(request.getStreamName()).build()
@@ -47,71 +78,182 @@ public class KinesisServiceImpl implements KinesisService {
 
         logger.log("Adding records to Stream...");
 
+        final PartitionStrategy partitionStrategy = PartitionStrategy.of(request, this.kinesisClient);
+        // Consumers drop the user records of an aggregated record that hash outside its shard, so records
+        // with keys of different shards are aggregated per shard; an aggregated record goes to the shard of
+        // its first user record.
+        final ShardMap shardMap = request.isAggregate() && perShardAggregation(request.getPartitionStrategy())
+                ? ShardMap.load(this.kinesisClient, request.getStreamName()) : null;
+        final Map<Integer, RecordAggregator> aggregators = new TreeMap<>();
         String payload;
 
         for (int i = 1; i <= request.getCount(); i++) {
 
             payload = request.getPayload() + i;
+            final String partitionKey = partitionStrategy.partitionKey(payload);
 
-            this.kinesisBatch.add(PutRecordsRequestEntry.builder()
-                    .partitionKey(request.getPartitionKey())
-                    .data(SdkBytes.fromUtf8String(payload))
-                    .build());
-
-            if (this.kinesisBatch.size() >= request.getBatchSize()) {
-
-                try {
-                    logger.log("Flushing records to Stream...");
-                    flushBatch(request.getStreamName(), logger);
-                } catch (Exception e) {
-                    logger.log("Exception occurred: " + e);
-                    this.isError = false;
-                } finally {
-                    this.kinesisBatch.clear();
-                }
+            if (!request.isAggregate()) {
+                addToBatch(PutRecordsRequestEntry.builder()
+                        .partitionKey(partitionKey)
+                        .explicitHashKey(partitionStrategy.explicitHashKey())
+                        .data(SdkBytes.fromUtf8String(payload))
+                        .build(), 1, request, context);
+                continue;
             }
 
+            final RecordAggregator aggregator = aggregators.computeIfAbsent(
+                    shardMap == null ? 0 : shardMap.shardFor(partitionKey),
+                    shard -> new RecordAggregator(request.getAggregationMaxBytes()));
+            final byte[] data = payload.getBytes(StandardCharsets.UTF_8);
+            if (!aggregator.fits(partitionKey, aggregator.explicitHashKey(), data)) {
+                addAggregated(aggregator, request, context);
+            }
+            // The user records of an aggregated record carry its explicit hash key, so that they stay on its shard.
+            final String explicitHashKey = aggregator.size() == 0
+                    ? partitionStrategy.explicitHashKey() : aggregator.explicitHashKey();
+            aggregator.add(partitionKey, explicitHashKey, data);
+
+        }
+
+        for (RecordAggregator aggregator : aggregators.values()) {
+            if (aggregator.size() > 0) {
+                addAggregated(aggregator, request, context);
+            }
         }
+        if (!this.kinesisBatch.isEmpty()) {
+            flush(request.getStreamName(), context);
+        }
+
+        logger.log("Added " + deliveredCount + " records in " + kinesisRecordCount + " Kinesis records, retried "
+                + retriedCount + ", dropped " + droppedCount + ".");
 
         if (this.isError) {
-            return new Response(ERROR_MESSAGE, documentAddedCount);
+            return new Response(ERROR_MESSAGE, deliveredCount, retriedCount, droppedCount);
         } else {
-            return new Response(SUCCESS_MESSAGE, documentAddedCount);
+            return new Response(SUCCESS_MESSAGE, deliveredCount, retriedCount, droppedCount);
         }
     }
 
-    private void flushBatch(final String streamName, final LambdaLogger logger) {
-        final PutRecordsResponse  result = this.kinesisClient.putRecords(PutRecordsRequest.builder()
-                .streamName(streamName)
-                .records(this.kinesisBatch)
-                .build());
-
-        result.records().forEach(record -> {
-            if  (record.errorCode() == null || record.errorCode().isEmpty()) {
-                String successMessage = "Successfully processed record with sequence number: "
-                        + record.sequenceNumber() + ", shard id: " + record.shardId();
-                logger.log(successMessage);
-            } else {
-                this.documentAddedCount--;
-
-                String errorMessage = "Did not process record with error code: " + record.errorCode()
-                        + ", error message: " + record.errorMessage();
-                logger.log(errorMessage);
-                this.isError = true;
-            }
-        });
+    /**
+     * Whether user records of the strategy can have keys of different shards, the fixed key being on one
+     * shard and round-robin giving all user records of an aggregated record the same explicit hash key.
+     */
+    private static boolean perShardAggregation(final String partitionStrategy) {
+        return PartitionStrategy.HASH.equals(partitionStrategy) || PartitionStrategy.RANDOM.equals(partitionStrategy);
+    }
+
+    private void addAggregated(final RecordAggregator aggregator, final Request request, final Context context) {
+        final int userRecords = aggregator.size();
+        addToBatch(aggregator.drain(), userRecords, request, context);
+    }
+
+    /**
+     * Add an entry to the batch, flushing first if it would go over the PutRecords size limit and
+     * after if the batch is full.
+     */
+    private void addToBatch(final PutRecordsRequestEntry entry, final int userRecords, final Request request,
+                            final Context context) {
+
+        final int entryBytes = entry.data().asByteBuffer().remaining()
+                + entry.partitionKey().getBytes(StandardCharsets.UTF_8).length;
+        if (!this.kinesisBatch.isEmpty() && this.kinesisBatchBytes + entryBytes > MAX_REQUEST_BYTES) {
+            flush(request.getStreamName(), context);
+        }
 
+        this.kinesisBatch.add(entry);
+        this.kinesisBatchUserRecords.add(userRecords);
+        this.kinesisBatchBytes += entryBytes;
 
-        // You may also implement a retry logic only for failed records (e.g. Create a list for failed records,
-        // add error records to that list and finally retry all failed records until a max retry count is reached.)
-        /*
-        if (result.failedRecordCount() != null && result.failedRecordCount() > 0) {
-            result.records().forEach(r -> {
-                if ((r != null) && (StringUtils.isNotBlank(r.errorCode()))) {
-                    // add this record to the retry list.
+        if (this.kinesisBatch.size() >= Math.min(request.getBatchSize(), MAX_ENTRIES_PER_REQUEST)) {
+            flush(request.getStreamName(), context);
+        }
+    }
+
+    private void flush(final String streamName, final Context context) {
+        final LambdaLogger logger = context.getLogger();
+        try {
+            logger.log("Flushing records to Stream...");
+            flushBatch(streamName, context);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log("Interrupted while retrying records.");
+        } finally {
+            this.kinesisBatch.clear();
+            this.kinesisBatchUserRecords.clear();
+            this.kinesisBatchBytes = 0;
+        }
+    }
+
+    /**
+     * Put the batch, then put again only the records that failed with a retryable error code, with
+     * jittered exponential backoff, until all are in, MAX_RETRIES is reached or the next attempt would
+     * not finish within the remaining invocation time.
+     */
+    private void flushBatch(final String streamName, final Context context) throws InterruptedException {
+        final LambdaLogger logger = context.getLogger();
+        List<PutRecordsRequestEntry> pending = new ArrayList<>(this.kinesisBatch);
+        List<Integer> pendingUserRecords = new ArrayList<>(this.kinesisBatchUserRecords);
+        int attempt = 0;
+
+        while (!pending.isEmpty()) {
+            final List<PutRecordsRequestEntry> retry = new ArrayList<>();
+            final List<Integer> retryUserRecords = new ArrayList<>();
+
+            try {
+                final PutRecordsResponse  result = this.kinesisClient.putRecords(PutRecordsRequest.builder()
+                        .streamName(streamName)
+                        .records(pending)
+                        .build());
+                this.kinesisRecordCount += pending.size();
+
+                // Result records are in the order of the request entries.
+                for (int i = 0; i < result.records().size(); i++) {
+                    final PutRecordsResultEntry record = result.records().get(i);
+                    if  (record.errorCode() == null || record.errorCode().isEmpty()) {
+                        this.deliveredCount += pendingUserRecords.get(i);
+                    } else if (RETRYABLE_ERROR_CODES.contains(record.errorCode())) {
+                        retry.add(pending.get(i));
+                        retryUserRecords.add(pendingUserRecords.get(i));
+                    } else {
+                        logger.log("Did not process record with error code: " + record.errorCode()
+                                + ", error message: " + record.errorMessage());
+                        drop(pendingUserRecords.get(i));
+                    }
                 }
-            });
+            } catch (SdkException e) {
+                // The SDK has already retried the request itself; try the whole request again as well.
+                logger.log("Exception occurred: " + e);
+                retry.addAll(pending);
+                retryUserRecords.addAll(pendingUserRecords);
+            }
+
+            if (retry.isEmpty()) {
+                return;
+            }
+
+            final long delayMillis = Backoff.fullJitterMillis(++attempt);
+            final int userRecords = retryUserRecords.stream().mapToInt(Integer::intValue).sum();
+            if (attempt > MAX_RETRIES
+                    || context.getRemainingTimeInMillis() < delayMillis + SAFETY_MARGIN_MILLIS) {
+                logger.log("Dropping " + retry.size() + " records after " + (attempt - 1) + " retries.");
+                drop(userRecords);
+                return;
+            }
+
+            this.retriedCount += userRecords;
+            pending = retry;
+            pendingUserRecords = retryUserRecords;
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                drop(userRecords);
+                throw e;
+            }
         }
-        */
+    }
+
+    private void drop(final int userRecords) {
+        this.droppedCount += userRecords;
+        this.isError = true;
     }
 }
@@ -0,0 +1,104 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+
+/**
+ * Chooses the partition key and explicit hash key, and with them the shard, of the records put.
+ */
+interface PartitionStrategy {
+
+    String FIXED = "fixed";
+    String RANDOM = "random";
+    String ROUND_ROBIN = "round-robin";
+    String HASH = "hash";
+
+    /**
+     * Partition key of a user record.
+     * @param payload Payload of the record.
+     */
+    String partitionKey(String payload);
+
+    /**
+     * Explicit hash key of the next Kinesis record, or null to let Kinesis hash the partition key.
+     * Called once per Kinesis record, so aggregated records are spread as well.
+     */
+    default String explicitHashKey() {
+        return null;
+    }
+
+    /**
+     * Strategy for the request; the request partition key is used when no strategy is given.
+     */
+    static PartitionStrategy of(final Request request, final KinesisClient kinesisClient) {
+        final String strategy = request.getPartitionStrategy();
+        if (strategy == null || strategy.isEmpty() || FIXED.equals(strategy)) {
+            return payload -> request.getPartitionKey();
+        } else if (RANDOM.equals(strategy)) {
+            return payload -> Long.toHexString(ThreadLocalRandom.current().nextLong());
+        } else if (ROUND_ROBIN.equals(strategy)) {
+            return new RoundRobin(request.getPartitionKey(), ShardMap.load(kinesisClient, request.getStreamName()));
+        } else if (HASH.equals(strategy)) {
+            return payload -> field(payload, request.getPartitionKeyField());
+        }
+        throw new IllegalArgumentException("Unknown partition strategy: " + strategy);
+    }
+
+    /**
+     * Value of a top level field of a JSON payload, or the whole payload if there is no such field.
+     */
+    static String field(final String payload, final String name) {
+        if (name == null || name.isEmpty()) {
+            return payload;
+        }
+        final int nameAt = payload.indexOf('"' + name + '"');
+        final int colon = nameAt < 0 ? -1 : payload.indexOf(':', nameAt + name.length() + 2);
+        if (colon < 0) {
+            return payload;
+        }
+        int start = colon + 1;
+        while (start < payload.length() && Character.isWhitespace(payload.charAt(start))) {
+            start++;
+        }
+        if (start < payload.length() && payload.charAt(start) == '"') {
+            final int end = payload.indexOf('"', start + 1);
+            return end < 0 ? payload : payload.substring(start + 1, end);
+        }
+        int end = start;
+        while (end < payload.length() && ",}] \t\r\n".indexOf(payload.charAt(end)) < 0) {
+            end++;
+        }
+        return end == start ? payload : payload.substring(start, end);
+    }
+
+    /**
+     * Sends each Kinesis record to the next open shard in turn, through an explicit hash key in the
+     * middle of the shard's range. The partition key is still required but no longer picks the shard.
+     */
+    final class RoundRobin implements PartitionStrategy {
+
+        private final String partitionKey;
+        private final ShardMap shardMap;
+        private int next;
+
+        RoundRobin(final String partitionKey, final ShardMap shardMap) {
+            this.partitionKey = partitionKey;
+            this.shardMap = shardMap;
+        }
+
+        @Override
+        public String partitionKey(final String payload) {
+            return partitionKey;
+        }
+
+        @Override
+        public String explicitHashKey() {
+            final String hashKey = shardMap.midpointHashKey(next);
+            next = (next + 1) % shardMap.size();
+            return hashKey;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+
+/**
+ * Packs many user records into one Kinesis record in the KPL aggregation format.<br/>
+ * An aggregated record is the 4 byte magic number, an AggregatedRecord protobuf message (partition key and
+ * explicit hash key tables and the user records, each pointing to its keys in the tables) and the MD5 digest
+ * of that message. Consumers using the KCL or the KPL de-aggregation libraries get the user records back,
+ * keeping only those whose explicit hash key, or else the hash of their partition key, falls in the range of
+ * the shard; the caller must therefore only aggregate user records of the same shard. A record that holds
+ * only one user record is sent as it is, as the KPL does.
+ */
+final class RecordAggregator {
+
+    static final byte[] MAGIC = {(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2};
+    static final int DIGEST_BYTES = 16;
+
+    // Same default as the KPL AggregationMaxSize.
+    static final int DEFAULT_MAX_BYTES = 50 * 1024;
+    // Data plus partition key of one Kinesis record.
+    static final int MAX_RECORD_BYTES = 1024 * 1024;
+
+    // Protobuf tags: field number << 3 | wire type (0 varint, 2 length delimited).
+    private static final int PARTITION_KEY_TABLE_TAG = 1 << 3 | 2;
+    private static final int EXPLICIT_HASH_KEY_TABLE_TAG = 2 << 3 | 2;
+    private static final int RECORDS_TAG = 3 << 3 | 2;
+    private static final int PARTITION_KEY_INDEX_TAG = 1 << 3;
+    private static final int EXPLICIT_HASH_KEY_INDEX_TAG = 2 << 3;
+    private static final int DATA_TAG = 3 << 3 | 2;
+
+    private static final int VARINT_BITS = 7;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_MORE = 0x80;
+
+    private final int maxBytes;
+
+    private final ByteArrayOutputStream partitionKeyTable = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream explicitHashKeyTable = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+    private final Map<String, Integer> partitionKeyIndexes = new HashMap<>();
+    private final Map<String, Integer> explicitHashKeyIndexes = new HashMap<>();
+
+    private String firstPartitionKey;
+    private String firstExplicitHashKey;
+    private byte[] firstData;
+    private int count;
+
+    /**
+     * @param maxBytes Target size of an aggregated record; 0 or less uses the default.
+     */
+    RecordAggregator(final int maxBytes) {
+        this.maxBytes = maxBytes > 0 ? Math.min(maxBytes, MAX_RECORD_BYTES) : DEFAULT_MAX_BYTES;
+    }
+
+    /**
+     * Number of user records in the current aggregated record.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Explicit hash key of the first user record of the current aggregated record, which is also the explicit
+     * hash key of the aggregated record; null if there is none or no user record was added.
+     */
+    String explicitHashKey() {
+        return firstExplicitHashKey;
+    }
+
+    /**
+     * Whether the user record can be added without the aggregated record going over the target size.
+     * An empty aggregator takes any record.
+     * @param explicitHashKey Explicit hash key of the user record, or null.
+     */
+    boolean fits(final String partitionKey, final String explicitHashKey, final byte[] data) {
+        if (count == 0) {
+            return true;
+        }
+        int keyBytes = 0;
+        Integer index = partitionKeyIndexes.get(partitionKey);
+        if (index == null) {
+            index = partitionKeyIndexes.size();
+            keyBytes += tableEntrySize(partitionKey);
+        }
+        Integer hashKeyIndex = null;
+        if (explicitHashKey != null) {
+            hashKeyIndex = explicitHashKeyIndexes.get(explicitHashKey);
+            if (hashKeyIndex == null) {
+                hashKeyIndex = explicitHashKeyIndexes.size();
+                keyBytes += tableEntrySize(explicitHashKey);
+            }
+        }
+        final int recordBytes = fieldSize(recordSize(index, hashKeyIndex, data.length));
+        return aggregatedSize() + keyBytes + recordBytes <= maxBytes;
+    }
+
+    /**
+     * Add a user record to the current aggregated record.
+     * @param explicitHashKey Explicit hash key of the user record, or null to use the hash of its partition key.
+     */
+    void add(final String partitionKey, final String explicitHashKey, final byte[] data) {
+        final int index = tableIndex(partitionKeyIndexes, partitionKeyTable, PARTITION_KEY_TABLE_TAG, partitionKey);
+        final Integer hashKeyIndex = explicitHashKey == null ? null
+                : tableIndex(explicitHashKeyIndexes, explicitHashKeyTable, EXPLICIT_HASH_KEY_TABLE_TAG,
+                        explicitHashKey);
+
+        writeVarint(records, RECORDS_TAG);
+        writeVarint(records, recordSize(index, hashKeyIndex, data.length));
+        writeVarint(records, PARTITION_KEY_INDEX_TAG);
+        writeVarint(records, index);
+        if (hashKeyIndex != null) {
+            writeVarint(records, EXPLICIT_HASH_KEY_INDEX_TAG);
+            writeVarint(records, hashKeyIndex);
+        }
+        writeBytes(records, DATA_TAG, data);
+
+        if (count == 0) {
+            firstPartitionKey = partitionKey;
+            firstExplicitHashKey = explicitHashKey;
+            firstData = data;
+        }
+        count++;
+    }
+
+    /**
+     * Entry for the current aggregated record, which is then cleared.
+     * @return the entry, or null if no user record was added.
+     */
+    PutRecordsRequestEntry drain() {
+        if (count == 0) {
+            return null;
+        }
+
+        final PutRecordsRequestEntry entry;
+        if (count == 1) {
+            entry = PutRecordsRequestEntry.builder()
+                    .partitionKey(firstPartitionKey)
+                    .explicitHashKey(firstExplicitHashKey)
+                    .data(SdkBytes.fromByteArrayUnsafe(firstData))
+                    .build();
+        } else {
+            final byte[] aggregated = new byte[aggregatedSize()];
+            System.arraycopy(MAGIC, 0, aggregated, 0, MAGIC.length);
+            int offset = MAGIC.length;
+            for (ByteArrayOutputStream part : new ByteArrayOutputStream[] {
+                    partitionKeyTable, explicitHashKeyTable, records}) {
+                final byte[] bytes = part.toByteArray();
+                System.arraycopy(bytes, 0, aggregated, offset, bytes.length);
+                offset += bytes.length;
+            }
+            final MessageDigest md5 = md5();
+            md5.update(aggregated, MAGIC.length, offset - MAGIC.length);
+            System.arraycopy(md5.digest(), 0, aggregated, aggregated.length - DIGEST_BYTES, DIGEST_BYTES);
+            entry = PutRecordsRequestEntry.builder()
+                    .partitionKey(firstPartitionKey)
+                    .explicitHashKey(firstExplicitHashKey)
+                    .data(SdkBytes.fromByteArrayUnsafe(aggregated))
+                    .build();
+        }
+
+        partitionKeyTable.reset();
+        explicitHashKeyTable.reset();
+        records.reset();
+        partitionKeyIndexes.clear();
+        explicitHashKeyIndexes.clear();
+        firstPartitionKey = null;
+        firstExplicitHashKey = null;
+        firstData = null;
+        count = 0;
+        return entry;
+    }
+
+    private int aggregatedSize() {
+        return MAGIC.length + partitionKeyTable.size() + explicitHashKeyTable.size() + records.size() + DIGEST_BYTES;
+    }
+
+    /**
+     * Index of the key in its table, adding it to the table if it is not there yet.
+     */
+    private static int tableIndex(final Map<String, Integer> indexes, final ByteArrayOutputStream table,
+                                  final int tag, final String key) {
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = indexes.size();
+            indexes.put(key, index);
+            writeBytes(table, tag, key.getBytes(StandardCharsets.UTF_8));
+        }
+        return index;
+    }
+
+    private static int tableEntrySize(final String key) {
+        return fieldSize(key.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static int recordSize(final int partitionKeyIndex, final Integer explicitHashKeyIndex,
+                                  final int dataLength) {
+        return 1 + varintSize(partitionKeyIndex)
+                + (explicitHashKeyIndex == null ? 0 : 1 + varintSize(explicitHashKeyIndex))
+                + fieldSize(dataLength);
+    }
+
+    /**
+     * Size of a length delimited field: tag, length and the bytes.
+     */
+    private static int fieldSize(final int length) {
+        return 1 + varintSize(length) + length;
+    }
+
+    static int varintSize(final int value) {
+        int size = 1;
+        int rest = value >>> VARINT_BITS;
+        while (rest != 0) {
+            size++;
+            rest >>>= VARINT_BITS;
+        }
+        return size;
+    }
+
+    private static void writeBytes(final ByteArrayOutputStream out, final int tag, final byte[] bytes) {
+        writeVarint(out, tag);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(final ByteArrayOutputStream out, final int value) {
+        int rest = value;
+        while ((rest & ~VARINT_MASK) != 0) {
+            out.write((rest & VARINT_MASK) | VARINT_MORE);
+            rest >>>= VARINT_BITS;
+        }
+        out.write(rest);
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+/**
+ * Hash key ranges of the open shards of a stream, from ListShards.<br/>
+ * Kinesis sends a record to the shard whose range holds the MD5 hash of its partition key, or its
+ * explicit hash key when one is given.
+ */
+final class ShardMap {
+
+    private final List<String> shardIds = new ArrayList<>();
+    private final List<BigInteger> startingHashKeys = new ArrayList<>();
+    private final List<BigInteger> endingHashKeys = new ArrayList<>();
+
+    private ShardMap(final List<Shard> shards) {
+        shards.stream()
+                .filter(shard -> shard.sequenceNumberRange().endingSequenceNumber() == null)
+                .sorted(Comparator.comparing(shard -> new BigInteger(shard.hashKeyRange().startingHashKey())))
+                .forEach(shard -> {
+                    shardIds.add(shard.shardId());
+                    startingHashKeys.add(new BigInteger(shard.hashKeyRange().startingHashKey()));
+                    endingHashKeys.add(new BigInteger(shard.hashKeyRange().endingHashKey()));
+                });
+        if (shardIds.isEmpty()) {
+            throw new IllegalStateException("Stream has no open shards");
+        }
+    }
+
+    /**
+     * Load the open shards of the stream.
+     */
+    static ShardMap load(final KinesisClient kinesisClient, final String streamName) {
+        final List<Shard> shards = new ArrayList<>();
+        ListShardsResponse response = kinesisClient.listShards(ListShardsRequest.builder()
+                .streamName(streamName)
+                .build());
+        shards.addAll(response.shards());
+        while (response.nextToken() != null) {
+            // The stream name must not be given together with a token.
+            response = kinesisClient.listShards(ListShardsRequest.builder()
+                    .nextToken(response.nextToken())
+                    .build());
+            shards.addAll(response.shards());
+        }
+        return new ShardMap(shards);
+    }
+
+    int size() {
+        return shardIds.size();
+    }
+
+    String shardId(final int index) {
+        return shardIds.get(index);
+    }
+
+    /**
+     * Explicit hash key in the middle of the range of the shard, which keeps it in one of the two
+     * children if the shard is split evenly.
+     */
+    String midpointHashKey(final int index) {
+        return startingHashKeys.get(index).add(endingHashKeys.get(index)).shiftRight(1).toString();
+    }
+
+    /**
+     * Index of the shard a record with the partition key is sent to.
+     */
+    int shardFor(final String partitionKey) {
+        return shardForHashKey(hashKey(partitionKey));
+    }
+
+    int shardForHashKey(final BigInteger hashKey) {
+        int low = 0;
+        int high = startingHashKeys.size() - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (startingHashKeys.get(middle).compareTo(hashKey) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The hash key Kinesis derives from a partition key: its MD5 digest as an unsigned 128 bit integer.
+     */
+    static BigInteger hashKey(final String partitionKey) {
+        try {
+            return new BigInteger(1, MessageDigest.getInstance("MD5")
+                    .digest(partitionKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.kinesis.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.StreamDescription;
+import software.amazon.awssdk.services.kinesis.model.StreamStatus;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * User records per shard-second with and without aggregation, and the producer side latency, allocation
+ * and GC. The stream is stubbed, so the shard write limits of 1,000 records and 1 MB per second are applied
+ * to what would have been sent. The figures are written as one JSON line per mode to
+ * target/kinesis-aggregation-benchmark.json.<br/>
+ * Run with: mvn test -Dkinesis.benchmark=true
+ */
+@EnabledIfSystemProperty(named = "kinesis.benchmark", matches = "true")
+public class KinesisAggregationBenchmarkTest {
+
+    private static final int RECORDS = 200_000;
+    private static final int BATCH_SIZE = 500;
+    private static final int SHARD_RECORDS_PER_SECOND = 1000;
+    private static final double SHARD_BYTES_PER_SECOND = 1024 * 1024;
+    private static final Path REPORT = Paths.get("target", "kinesis-aggregation-benchmark.json");
+
+    @Test
+    public void benchmarkAggregationAgainstOneRecordPerEntry() throws IOException {
+        final Measurement plain = measure("one record per entry", false);
+        final Measurement aggregated = measure("aggregated", true);
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, List.of(plain.toJson(), aggregated.toJson()));
+
+        assertTrue(aggregated.userRecordsPerShardSecond > plain.userRecordsPerShardSecond, aggregated.toJson());
+    }
+
+    /**
+     * Sends the records to a stubbed stream, and measures the producer on the calling thread.
+     */
+    private static Measurement measure(final String name, final boolean aggregate) {
+        final AtomicLong entries = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final KinesisClient kinesisClient = mock(KinesisClient.class);
+        when(kinesisClient.describeStream(any(DescribeStreamRequest.class))).thenReturn(DescribeStreamResponse.builder()
+                .streamDescription(StreamDescription.builder().streamStatus(StreamStatus.ACTIVE).build())
+                .build());
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenAnswer(invocation -> {
+            final PutRecordsRequest request = invocation.getArgument(0);
+            for (PutRecordsRequestEntry entry : request.records()) {
+                entries.incrementAndGet();
+                bytes.addAndGet(entry.data().asByteBuffer().remaining() + entry.partitionKey().length());
+            }
+            return KinesisServiceImplTest.successful(request.records());
+        });
+
+        final Context context = mock(Context.class);
+        when(context.getLogger()).thenReturn(mock(LambdaLogger.class));
+        final Request request = KinesisServiceImplTest.request(RECORDS, BATCH_SIZE, aggregate);
+
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long gcCountBefore = gcCount();
+        final long gcMillisBefore = gcMillis();
+        final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        new KinesisServiceImpl(kinesisClient).addRecords(request, context);
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // A shard is busy for as long as the tighter of its two write limits takes.
+        final double shardSeconds = Math.max(entries.get() / (double) SHARD_RECORDS_PER_SECOND,
+                bytes.get() / SHARD_BYTES_PER_SECOND);
+        return new Measurement(name, entries.get(), bytes.get(), (long) (RECORDS / shardSeconds),
+                elapsed / RECORDS, allocated / RECORDS, gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    /**
+     * Figures of one mode; the producer figures are per user record except for the GC totals.
+     */
+    private static final class Measurement {
+        private final String name;
+        private final long kinesisRecords;
+        private final long kinesisBytes;
+        private final long userRecordsPerShardSecond;
+        private final long nanosPerRecord;
+        private final long bytesPerRecord;
+        private final long gcCount;
+        private final long gcMillis;
+
+        Measurement(final String name, final long kinesisRecords, final long kinesisBytes,
+                    final long userRecordsPerShardSecond, final long nanosPerRecord, final long bytesPerRecord,
+                    final long gcCount, final long gcMillis) {
+            this.name = name;
+            this.kinesisRecords = kinesisRecords;
+            this.kinesisBytes = kinesisBytes;
+            this.userRecordsPerShardSecond = userRecordsPerShardSecond;
+            this.nanosPerRecord = nanosPerRecord;
+            this.bytesPerRecord = bytesPerRecord;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        String toJson() {
+            return "{\"benchmark\":\"" + name + "\",\"userRecords\":" + RECORDS
+                    + ",\"kinesisRecords\":" + kinesisRecords + ",\"kinesisBytes\":" + kinesisBytes
+                    + ",\"userRecordsPerShardSecond\":" + userRecordsPerShardSecond
+                    + ",\"nanosPerRecord\":" + nanosPerRecord + ",\"bytesPerRecord\":" + bytesPerRecord
+                    + ",\"gcCount\":" + gcCount + ",\"gcMillis\":" + gcMillis + "}";
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.kinesis.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+import software.amazon.awssdk.services.kinesis.model.StreamDescription;
+import software.amazon.awssdk.services.kinesis.model.StreamStatus;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+import tech.heartin.books.serverlesscookbook.domain.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class KinesisServiceImplTest {
+
+    @Mock
+    private KinesisClient kinesisClient;
+
+    @Mock
+    private LambdaLogger logger;
+
+    @Mock
+    private Context context;
+
+    @BeforeEach
+    public void setUp() {
+        when(context.getLogger()).thenReturn(logger);
+        when(context.getRemainingTimeInMillis()).thenReturn(60_000);
+        when(kinesisClient.describeStream(any(DescribeStreamRequest.class))).thenReturn(DescribeStreamResponse.builder()
+                .streamDescription(StreamDescription.builder().streamStatus(StreamStatus.ACTIVE).build())
+                .build());
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenAnswer(invocation ->
+                successful(invocation.<PutRecordsRequest>getArgument(0).records()));
+    }
+
+    @Test
+    public void testFlushesRemainingRecords() {
+        final Response response = new KinesisServiceImpl(kinesisClient).addRecords(request(12, 5, false), context);
+
+        assertEquals(12, response.getCount());
+        verify(kinesisClient, times(3)).putRecords(any(PutRecordsRequest.class));
+    }
+
+    @Test
+    public void testAggregatesRecords() throws Exception {
+        final Request request = request(1000, 500, true);
+        final Response response = new KinesisServiceImpl(kinesisClient).addRecords(request, context);
+
+        assertEquals(1000, response.getCount());
+        final ArgumentCaptor<PutRecordsRequest> captor = ArgumentCaptor.forClass(PutRecordsRequest.class);
+        verify(kinesisClient, times(1)).putRecords(captor.capture());
+        final List<PutRecordsRequestEntry> entries = captor.getValue().records();
+        assertEquals(1, entries.size());
+        final List<String[]> records = RecordAggregatorTest.deaggregate(entries.get(0).data().asByteArray());
+        assertEquals(1000, records.size());
+        assertEquals("testpayload1", records.get(0)[1]);
+        assertEquals("testpayload1000", records.get(999)[1]);
+    }
+
+    @Test
+    public void testFailedAggregatedRecordCountsAllUserRecords() {
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(1)
+                .records(PutRecordsResultEntry.builder().errorCode("KMSAccessDeniedException").build())
+                .build());
+
+        final Response response = new KinesisServiceImpl(kinesisClient).addRecords(request(100, 500, true), context);
+
+        assertEquals(0, response.getCount());
+        assertEquals(100, response.getDropped());
+        verify(kinesisClient, times(1)).putRecords(any(PutRecordsRequest.class));
+    }
+
+    @Test
+    public void testRetriesOnlyThrottledRecords() {
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class)))
+                .thenReturn(PutRecordsResponse.builder()
+                        .failedRecordCount(2)
+                        .records(successfulEntry(), throttled(), successfulEntry(), throttled(), successfulEntry())
+                        .build())
+                .thenAnswer(invocation -> successful(invocation.<PutRecordsRequest>getArgument(0).records()));
+
+        final Response response = new KinesisServiceImpl(kinesisClient).addRecords(request(5, 5, false), context);
+
+        final ArgumentCaptor<PutRecordsRequest> captor = ArgumentCaptor.forClass(PutRecordsRequest.class);
+        verify(kinesisClient, times(2)).putRecords(captor.capture());
+        final List<String> retried = captor.getAllValues().get(1).records().stream()
+                .map(entry -> entry.data().asUtf8String())
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("testpayload2", "testpayload4"), retried);
+        assertEquals(5, response.getCount());
+        assertEquals(2, response.getRetried());
+        assertEquals(0, response.getDropped());
+    }
+
+    @Test
+    public void testDropsRecordsWhenOutOfTime() {
+        when(context.getRemainingTimeInMillis()).thenReturn(500);
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(1)
+                .records(throttled())
+                .build());
+
+        final Response response = new KinesisServiceImpl(kinesisClient).addRecords(request(1, 5, false), context);
+
+        verify(kinesisClient, times(1)).putRecords(any(PutRecordsRequest.class));
+        assertEquals(0, response.getCount());
+        assertEquals(1, response.getDropped());
+        assertEquals("Request completed with errors. Check Lambda logs for more details.", response.getMessage());
+    }
+
+    @Test
+    public void testRetriesAfterException() {
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class)))
+                .thenThrow(SdkClientException.create("Unable to execute HTTP request"))
+                .thenAnswer(invocation -> successful(invocation.<PutRecordsRequest>getArgument(0).records()));
+
+        final Response response = new KinesisServiceImpl(kinesisClient).addRecords(request(3, 5, false), context);
+
+        assertEquals(3, response.getCount());
+        assertEquals(3, response.getRetried());
+    }
+
+    static Request request(final int count, final int batchSize, final boolean aggregate) {
+        final Request request = new Request();
+        request.setStreamName("my-first-kinesis-stream");
+        request.setPartitionKey("12345");
+        request.setPayload("testpayload");
+        request.setCount(count);
+        request.setBatchSize(batchSize);
+        request.setAggregate(aggregate);
+        return request;
+    }
+
+    static PutRecordsResponse successful(final List<PutRecordsRequestEntry> entries) {
+        return PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(entries.stream()
+                        .map(entry -> successfulEntry())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private static PutRecordsResultEntry successfulEntry() {
+        return PutRecordsResultEntry.builder().sequenceNumber("1").shardId("shardId-000000000000").build();
+    }
+
+    private static PutRecordsResultEntry throttled() {
+        return PutRecordsResultEntry.builder()
+                .errorCode("ProvisionedThroughputExceededException")
+                .errorMessage("Rate exceeded for shard shardId-000000000000")
+                .build();
+    }
+}
@@ -0,0 +1,245 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.kinesis.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.kinesis.model.HashKeyRange;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.SequenceNumberRange;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+import software.amazon.awssdk.services.kinesis.model.StreamDescription;
+import software.amazon.awssdk.services.kinesis.model.StreamStatus;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import tech.heartin.books.serverlesscookbook.domain.Request;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Counts the records each strategy puts on every shard of a stream with four open shards and one closed.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class PartitionStrategyTest {
+
+    private static final int SHARDS = 4;
+    private static final int RECORDS = 4000;
+    // Allowed deviation from an even spread for hashed keys.
+    private static final double TOLERANCE = 0.15;
+
+    @Mock
+    private KinesisClient kinesisClient;
+
+    @Mock
+    private LambdaLogger logger;
+
+    @Mock
+    private Context context;
+
+    private final List<PutRecordsRequestEntry> entries = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        when(context.getLogger()).thenReturn(logger);
+        when(context.getRemainingTimeInMillis()).thenReturn(60_000);
+        when(kinesisClient.describeStream(any(DescribeStreamRequest.class))).thenReturn(DescribeStreamResponse.builder()
+                .streamDescription(StreamDescription.builder().streamStatus(StreamStatus.ACTIVE).build())
+                .build());
+        when(kinesisClient.listShards(any(ListShardsRequest.class))).thenReturn(ListShardsResponse.builder()
+                .shards(shards())
+                .build());
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenAnswer(invocation -> {
+            final PutRecordsRequest request = invocation.getArgument(0);
+            entries.addAll(request.records());
+            return KinesisServiceImplTest.successful(request.records());
+        });
+    }
+
+    @Test
+    public void testFixedKeyUsesOneShard() {
+        final int[] perShard = recordsPerShard(request(PartitionStrategy.FIXED, false));
+
+        assertEquals(1, Arrays.stream(perShard).filter(count -> count > 0).count());
+    }
+
+    @Test
+    public void testRandomSpreadsRecords() {
+        assertEven(recordsPerShard(request(PartitionStrategy.RANDOM, false)));
+    }
+
+    @Test
+    public void testRoundRobinSpreadsRecordsExactly() {
+        final int[] perShard = recordsPerShard(request(PartitionStrategy.ROUND_ROBIN, false));
+
+        for (int count : perShard) {
+            assertEquals(RECORDS / SHARDS, count);
+        }
+    }
+
+    @Test
+    public void testRoundRobinSpreadsAggregatedRecords() {
+        final Request request = request(PartitionStrategy.ROUND_ROBIN, true);
+        request.setAggregationMaxBytes(1024);
+        recordsPerShard(request);
+
+        final int[] kinesisRecords = new int[SHARDS];
+        final ShardMap shardMap = ShardMap.load(kinesisClient, request.getStreamName());
+        entries.forEach(entry -> kinesisRecords[shardOf(shardMap, entry)]++);
+        for (int count : kinesisRecords) {
+            assertTrue(Math.abs(count - entries.size() / SHARDS) <= 1);
+        }
+    }
+
+    @Test
+    public void testHashSpreadsRecords() {
+        assertEven(recordsPerShard(request(PartitionStrategy.HASH, false)));
+    }
+
+    @Test
+    public void testHashKeepsKeysOnTheirShardWhenAggregating() throws Exception {
+        final Request request = request(PartitionStrategy.HASH, true);
+        request.setPayload("{\"value\": 1, \"deviceId\": ");
+        request.setPartitionKeyField("deviceId");
+
+        assertUserRecordsStayOnTheirShard(request);
+        assertEquals(SHARDS, entries.size());
+    }
+
+    @Test
+    public void testRandomKeepsKeysOnTheirShardWhenAggregating() throws Exception {
+        assertUserRecordsStayOnTheirShard(request(PartitionStrategy.RANDOM, true));
+        assertEquals(SHARDS, entries.size());
+    }
+
+    @Test
+    public void testRoundRobinKeepsUserRecordsOnTheShardOfTheirRecord() throws Exception {
+        final Request request = request(PartitionStrategy.ROUND_ROBIN, true);
+        request.setAggregationMaxBytes(1024);
+
+        assertUserRecordsStayOnTheirShard(request);
+        assertTrue(entries.size() > SHARDS);
+    }
+
+    @Test
+    public void testFieldOfJsonPayload() {
+        assertEquals("device-7", PartitionStrategy.field("{\"deviceId\": \"device-7\", \"value\": 1}", "deviceId"));
+        assertEquals("42", PartitionStrategy.field("{\"id\":42,\"value\":1}", "id"));
+        assertEquals("plain payload", PartitionStrategy.field("plain payload", "id"));
+    }
+
+    private int[] recordsPerShard(final Request request) {
+        new KinesisServiceImpl(kinesisClient).addRecords(request, context);
+
+        final ShardMap shardMap = ShardMap.load(kinesisClient, request.getStreamName());
+        final int[] perShard = new int[SHARDS];
+        for (PutRecordsRequestEntry entry : entries) {
+            perShard[shardOf(shardMap, entry)] += request.isAggregate()
+                    ? countUserRecords(entry) : 1;
+        }
+        assertEquals(RECORDS, Arrays.stream(perShard).sum());
+        return perShard;
+    }
+
+    /**
+     * Puts the records and checks that the effective hash key of every user record, its explicit hash key or
+     * else the hash of its partition key, is in the range of the shard its Kinesis record goes to, as the KCL
+     * drops user records outside that range when it de-aggregates.
+     */
+    private void assertUserRecordsStayOnTheirShard(final Request request) throws Exception {
+        new KinesisServiceImpl(kinesisClient).addRecords(request, context);
+
+        final ShardMap shardMap = ShardMap.load(kinesisClient, request.getStreamName());
+        int userRecords = 0;
+        for (PutRecordsRequestEntry entry : entries) {
+            final int shard = shardOf(shardMap, entry);
+            for (String[] record : RecordAggregatorTest.deaggregate(entry.data().asByteArray())) {
+                final BigInteger hashKey = record[2] != null
+                        ? new BigInteger(record[2]) : ShardMap.hashKey(record[0]);
+                assertEquals(shard, shardMap.shardForHashKey(hashKey));
+                userRecords++;
+            }
+        }
+        assertEquals(RECORDS, userRecords);
+    }
+
+    private static int countUserRecords(final PutRecordsRequestEntry entry) {
+        final byte[] data = entry.data().asByteArray();
+        if (!Arrays.equals(RecordAggregator.MAGIC, Arrays.copyOf(data, RecordAggregator.MAGIC.length))) {
+            return 1;
+        }
+        try {
+            return RecordAggregatorTest.deaggregate(data).size();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int shardOf(final ShardMap shardMap, final PutRecordsRequestEntry entry) {
+        return entry.explicitHashKey() != null
+                ? shardMap.shardForHashKey(new BigInteger(entry.explicitHashKey()))
+                : shardMap.shardFor(entry.partitionKey());
+    }
+
+    private static void assertEven(final int[] perShard) {
+        for (int count : perShard) {
+            assertTrue(Math.abs(count - RECORDS / SHARDS) <= RECORDS / SHARDS * TOLERANCE,
+                    "Uneven spread: " + Arrays.toString(perShard));
+        }
+    }
+
+    private static Request request(final String strategy, final boolean aggregate) {
+        final Request request = KinesisServiceImplTest.request(RECORDS, 500, aggregate);
+        request.setPartitionStrategy(strategy);
+        return request;
+    }
+
+    /**
+     * Four open shards splitting the hash key space evenly, plus a closed parent shard.
+     */
+    private static List<Shard> shards() {
+        final BigInteger width = BigInteger.ONE.shiftLeft(128).divide(BigInteger.valueOf(SHARDS));
+        final List<Shard> shards = new ArrayList<>();
+        shards.add(shard("shardId-000000000000", BigInteger.ZERO, BigInteger.ONE.shiftLeft(128).subtract(
+                BigInteger.ONE), "49590338271490256608559692538361571095921575989136588898"));
+        for (int i = 0; i < SHARDS; i++) {
+            final BigInteger start = width.multiply(BigInteger.valueOf(i));
+            shards.add(shard("shardId-00000000000" + (i + 1), start, start.add(width).subtract(BigInteger.ONE), null));
+        }
+        return shards;
+    }
+
+    private static Shard shard(final String shardId, final BigInteger start, final BigInteger end,
+                               final String endingSequenceNumber) {
+        return Shard.builder()
+                .shardId(shardId)
+                .hashKeyRange(HashKeyRange.builder()
+                        .startingHashKey(start.toString())
+                        .endingHashKey(end.toString())
+                        .build())
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("49590338271490256608559692538361571095921575989136588898")
+                        .endingSequenceNumber(endingSequenceNumber)
+                        .build())
+                .build();
+    }
+}
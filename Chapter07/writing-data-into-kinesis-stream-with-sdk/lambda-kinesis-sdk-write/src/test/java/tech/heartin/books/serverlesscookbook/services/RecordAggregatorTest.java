@@ -0,0 +1,154 @@
+package tech.heartin.books.serverlesscookbook.services;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordAggregatorTest {
+
+    @Test
+    public void testAggregatedRecordRoundTrip() throws NoSuchAlgorithmException {
+        final RecordAggregator aggregator = new RecordAggregator(0);
+        final List<String> payloads = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            final String payload = "testpayload" + i;
+            payloads.add(payload);
+            aggregator.add(i % 2 == 0 ? "12345" : "67890", null, payload.getBytes(StandardCharsets.UTF_8));
+        }
+
+        final PutRecordsRequestEntry entry = aggregator.drain();
+
+        assertEquals("12345", entry.partitionKey());
+        final List<String[]> records = deaggregate(entry.data().asByteArray());
+        assertEquals(payloads.size(), records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i % 2 == 0 ? "12345" : "67890", records.get(i)[0]);
+            assertEquals(payloads.get(i), records.get(i)[1]);
+            assertNull(records.get(i)[2]);
+        }
+        assertEquals(0, aggregator.size());
+        assertNull(aggregator.drain());
+    }
+
+    @Test
+    public void testStopsAtTargetSize() {
+        final RecordAggregator aggregator = new RecordAggregator(1024);
+        final byte[] data = new byte[100];
+        int added = 0;
+        while (aggregator.fits("12345", null, data)) {
+            aggregator.add("12345", null, data);
+            added++;
+        }
+
+        assertTrue(added > 1);
+        assertTrue(aggregator.drain().data().asByteArray().length <= 1024);
+    }
+
+    @Test
+    public void testExplicitHashKeysRoundTrip() throws NoSuchAlgorithmException {
+        final RecordAggregator aggregator = new RecordAggregator(0);
+        final String explicitHashKey = "85070591730234615865843651857942052864";
+        for (int i = 0; i < 3; i++) {
+            aggregator.add("12345", explicitHashKey, ("testpayload" + i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        final PutRecordsRequestEntry entry = aggregator.drain();
+
+        assertEquals(explicitHashKey, entry.explicitHashKey());
+        final List<String[]> records = deaggregate(entry.data().asByteArray());
+        assertEquals(3, records.size());
+        records.forEach(record -> assertEquals(explicitHashKey, record[2]));
+        assertNull(aggregator.explicitHashKey());
+    }
+
+    @Test
+    public void testSingleRecordIsNotAggregated() {
+        final RecordAggregator aggregator = new RecordAggregator(0);
+        final byte[] data = "testpayload1".getBytes(StandardCharsets.UTF_8);
+        aggregator.add("12345", null, data);
+
+        final byte[] sent = aggregator.drain().data().asByteArray();
+
+        assertArrayEquals(data, sent);
+        assertFalse(Arrays.equals(RecordAggregator.MAGIC, Arrays.copyOf(sent, RecordAggregator.MAGIC.length)));
+    }
+
+    /**
+     * Minimal reader of the KPL format: checks magic number and digest and returns partition key, data and
+     * explicit hash key (null if none) of every user record.
+     */
+    static List<String[]> deaggregate(final byte[] aggregated) throws NoSuchAlgorithmException {
+        final int magic = RecordAggregator.MAGIC.length;
+        assertArrayEquals(RecordAggregator.MAGIC, Arrays.copyOf(aggregated, magic));
+        final int messageEnd = aggregated.length - RecordAggregator.DIGEST_BYTES;
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+        md5.update(aggregated, magic, messageEnd - magic);
+        assertArrayEquals(md5.digest(), Arrays.copyOfRange(aggregated, messageEnd, aggregated.length));
+
+        final ByteBuffer message = ByteBuffer.wrap(aggregated, magic, messageEnd - magic);
+        final List<String> partitionKeys = new ArrayList<>();
+        final List<String> explicitHashKeys = new ArrayList<>();
+        final List<String[]> records = new ArrayList<>();
+        while (message.hasRemaining()) {
+            final int tag = readVarint(message);
+            final byte[] field = new byte[readVarint(message)];
+            message.get(field);
+            if (tag >>> 3 == 1) {
+                partitionKeys.add(new String(field, StandardCharsets.UTF_8));
+            } else if (tag >>> 3 == 2) {
+                explicitHashKeys.add(new String(field, StandardCharsets.UTF_8));
+            } else if (tag >>> 3 == 3) {
+                final ByteBuffer record = ByteBuffer.wrap(field);
+                int partitionKeyIndex = -1;
+                int explicitHashKeyIndex = -1;
+                String data = null;
+                while (record.hasRemaining()) {
+                    final int recordTag = readVarint(record);
+                    if (recordTag >>> 3 == 1) {
+                        partitionKeyIndex = readVarint(record);
+                    } else if (recordTag >>> 3 == 2) {
+                        explicitHashKeyIndex = readVarint(record);
+                    } else {
+                        final byte[] bytes = new byte[readVarint(record)];
+                        record.get(bytes);
+                        data = new String(bytes, StandardCharsets.UTF_8);
+                    }
+                }
+                records.add(new String[] {String.valueOf(partitionKeyIndex), data,
+                        String.valueOf(explicitHashKeyIndex)});
+            }
+        }
+        records.forEach(record -> {
+            record[0] = partitionKeys.get(Integer.parseInt(record[0]));
+            final int explicitHashKeyIndex = Integer.parseInt(record[2]);
+            record[2] = explicitHashKeyIndex < 0 ? null : explicitHashKeys.get(explicitHashKeyIndex);
+        });
+        return records;
+    }
+
+    private static int readVarint(final ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}